@@ -0,0 +1,41 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+package gr.ait.holmes;
+
+/**
+ * estimates the (relative) cost of processing keys, so that sets of key ranges
+ * can be split into pieces of near-equal work rather than near-equal size.
+ * Costs must be non-negative.
+ *
+ * @author itc
+ */
+public interface KeyCostEstimatorIntf {
+
+  /**
+   * return the estimated cost of processing the given key.
+   *
+   * @param key long
+   * @return double must be &ge; 0
+   */
+  public double getCost(long key);
+
+  /**
+   * return the estimated cost of processing all keys in the closed range
+   * [start, end]. The default implementation simply sums up the per-key costs,
+   * which is linear in the length of the range; implementations that can
+   * compute range costs faster (e.g. from prefix sums or histograms) should
+   * override this method.
+   *
+   * @param start long
+   * @param end long
+   * @return double zero if end &lt; start
+   */
+  public default double getCost(long start, long end) {
+    double sum = 0.0;
+    for (long k = start; k <= end; k++) {
+      sum += getCost(k);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+package gr.ait.holmes;
+
+import gr.ait.holmes.server.exceptions.InvalidRange;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * splits a <CODE>KeyRangeSet</CODE> into a number of sub-sets of near-equal
+ * work, so that the sub-sets can be handed out to worker threads or nodes.
+ * Work is measured either as the number of keys (cardinality) or as the sum of
+ * the per-key costs given by a <CODE>KeyCostEstimatorIntf</CODE>. If a
+ * partition map is given (as the sorted array of the first keys owned by each
+ * owner), no range of the produced sub-sets crosses an owner boundary, and
+ * split points that fall close enough to an owner boundary are moved onto it.
+ * The ranges of the set to split are assumed to be pair-wise disjoint.
+ * Objects of this class are immutable and thus thread-safe.
+ *
+ * @author itc
+ */
+public final class KeyRangeSetPartitioner {
+
+  private final long[] _ownerStarts;  // sorted first keys of each owner
+  private final double _slack;  // fraction of the ideal piece work within
+                                // which split points snap to range boundaries
+
+  /**
+   * constructs a partitioner that is not aware of any owner boundaries.
+   */
+  public KeyRangeSetPartitioner() {
+    _ownerStarts = new long[0];
+    _slack = 0.0;
+  }
+
+  /**
+   * constructs a partitioner that respects the owner boundaries of the given
+   * partition map.
+   *
+   * @param ownerStarts long[] the first key owned by each owner, in ascending
+   * order. May be null
+   * @param slack double in [0,1): a split point is moved to the nearest owner
+   * (or range) boundary if doing so changes the work of the piece by at most
+   * this fraction of the ideal work per piece
+   * @throws IllegalArgumentException if the keys don't ascend or if slack is
+   * not in [0,1)
+   */
+  public KeyRangeSetPartitioner(long[] ownerStarts, double slack) {
+    if (slack < 0 || slack >= 1 || Double.isNaN(slack)) {
+      throw new IllegalArgumentException("slack must be in [0,1)");
+    }
+    if (ownerStarts == null) {
+      _ownerStarts = new long[0];
+    } else {
+      for (int i = 1; i < ownerStarts.length; i++) {
+        if (ownerStarts[i] <= ownerStarts[i - 1]) {
+          throw new IllegalArgumentException("owner starts not in ascending order");
+        }
+      }
+      _ownerStarts = Arrays.copyOf(ownerStarts, ownerStarts.length);
+    }
+    _slack = slack;
+  }
+
+  /**
+   * return the total number of keys in the given set.
+   *
+   * @param set KeyRangeSet
+   * @return long
+   */
+  public static long getCardinality(KeyRangeSet set) {
+    long card = 0;
+    for (int i = 0; i < set.getNumRanges(); i++) {
+      KeyRange r = set.getRange(i);
+      card += r.getEnd() - r.getStart() + 1;
+    }
+    return card;
+  }
+
+  /**
+   * splits the given set into at most n non-empty sub-sets of near-equal
+   * cardinality.
+   *
+   * @param set KeyRangeSet
+   * @param n int the number of pieces wanted
+   * @return List&lt;KeyRangeSet&gt; the pieces, in ascending key order. Fewer
+   * than n pieces are returned only if the set has fewer than n keys
+   * @throws IllegalArgumentException if set is null or n &le; 0
+   */
+  public List<KeyRangeSet> partition(KeyRangeSet set, int n) {
+    return partition(set, n, null);
+  }
+
+  /**
+   * splits the given set into at most n non-empty sub-sets of near-equal
+   * total cost.
+   *
+   * @param set KeyRangeSet
+   * @param n int the number of pieces wanted
+   * @param cost KeyCostEstimatorIntf if null, every key costs one unit
+   * @return List&lt;KeyRangeSet&gt; the pieces, in ascending key order; empty
+   * if the set is empty, and a copy of the set if its keys cost nothing.
+   * Otherwise fewer than n pieces are returned only if the set has fewer than
+   * n keys
+   * @throws IllegalArgumentException if set is null or n &le; 0
+   */
+  public List<KeyRangeSet> partition(KeyRangeSet set, int n,
+          KeyCostEstimatorIntf cost) {
+    if (set == null || n <= 0) {
+      throw new IllegalArgumentException("null set or n<=0");
+    }
+    long[][] segs = getSegments(set);
+    final int ns = segs.length;
+    double[] prefix = new double[ns + 1];  // prefix[s]: work before segment s
+    for (int s = 0; s < ns; s++) {
+      prefix[s + 1] = prefix[s] + getWork(segs[s][0], segs[s][1], cost);
+    }
+    final double total = prefix[ns];
+    if (ns == 0) {
+      return new ArrayList<>();  // nothing to split
+    }
+    if (total <= 0) {  // no work to balance: a single piece
+      List<KeyRange> ranges = new ArrayList<>();
+      for (int i = 0; i < set.getNumRanges(); i++) {
+        KeyRange r = set.getRange(i);
+        ranges.add(newRange(r.getStart(), r.getEnd()));
+      }
+      List<KeyRangeSet> result = new ArrayList<>();
+      result.add(new KeyRangeSet(ranges));
+      return result;
+    }
+    final double ideal = total / n;
+    // cuts[p] is the (segment, last key included) pair where piece p ends.
+    // last key equal to the segment start - 1 means cut before the segment
+    int[] cut_seg = new int[n];
+    long[] cut_key = new long[n];
+    for (int p = 0; p < n - 1; p++) {
+      final double goal = ideal * (p + 1);
+      int s = upperSegment(prefix, goal);
+      long start = segs[s][0];
+      long end = segs[s][1];
+      long key;
+      double before = goal - prefix[s];
+      double after = prefix[s + 1] - goal;
+      if (before <= _slack * ideal && before <= after) {
+        key = start - 1;  // snap to the start of the segment
+      } else if (after <= _slack * ideal) {
+        key = end;  // snap to the end of the segment
+      } else {
+        key = findSplitKey(start, end, before, cost);
+      }
+      // cuts must not move backwards
+      if (p > 0 && (s < cut_seg[p - 1]
+              || (s == cut_seg[p - 1] && key < cut_key[p - 1]))) {
+        s = cut_seg[p - 1];
+        key = cut_key[p - 1];
+      }
+      cut_seg[p] = s;
+      cut_key[p] = key;
+    }
+    cut_seg[n - 1] = ns - 1;
+    cut_key[n - 1] = segs[ns - 1][1];
+    spreadCuts(segs, cut_seg, cut_key);
+    // assemble the pieces
+    List<KeyRangeSet> result = new ArrayList<>();
+    int s = 0;
+    long next = segs[0][0];  // first key not yet assigned
+    for (int p = 0; p < n; p++) {
+      List<KeyRange> ranges = new ArrayList<>();
+      while (s < cut_seg[p]) {
+        if (next <= segs[s][1]) {
+          ranges.add(newRange(next, segs[s][1]));
+        }
+        ++s;
+        next = segs[s][0];
+      }
+      if (next <= cut_key[p]) {
+        ranges.add(newRange(next, cut_key[p]));
+        next = cut_key[p] + 1;
+      }
+      if (ranges.size() > 0) {
+        result.add(new KeyRangeSet(ranges));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * moves the cuts, where needed, so that each of the first min(n,K) pieces
+   * gets at least one key, n being the number of cuts and K the number of keys
+   * of the segments: snapping to boundaries, or keys of high cost, may
+   * otherwise leave pieces between them empty. The cuts are handled as ranks,
+   * ie as numbers of keys up to and including the cut; the last cut must be
+   * at the last key.
+   *
+   * @param segs long[][] the segments, as returned by getSegments()
+   * @param cut_seg int[] the segment of each cut, in non-descending order
+   * @param cut_key long[] the last key of each piece, in its segment or just
+   * before it
+   */
+  private static void spreadCuts(long[][] segs, int[] cut_seg, long[] cut_key) {
+    final int ns = segs.length;
+    final int n = cut_seg.length;
+    long[] before = new long[ns + 1];  // before[s]: number of keys before s
+    for (int s = 0; s < ns; s++) {
+      before[s + 1] = before[s] + segs[s][1] - segs[s][0] + 1;
+    }
+    final long keys = before[ns];
+    final long m = Math.min(n, keys);  // the number of non-empty pieces
+    long prev = 0;  // rank of the previous cut
+    int s = 0;
+    for (int p = 0; p < n - 1; p++) {
+      long rank = before[cut_seg[p]] + cut_key[p] - segs[cut_seg[p]][0] + 1;
+      if (p < m - 1) {  // leave a key for this and each later piece
+        rank = Math.min(Math.max(rank, prev + 1), keys - (m - 1 - p));
+      } else {
+        rank = keys;
+      }
+      while (before[s + 1] < rank) {
+        ++s;
+      }
+      cut_seg[p] = s;
+      cut_key[p] = segs[s][0] + rank - before[s] - 1;
+      prev = rank;
+    }
+  }
+
+  /**
+   * return the ranges of the set, sorted by their start and cut at the owner
+   * boundaries, as {start,end} pairs.
+   *
+   * @param set KeyRangeSet
+   * @return long[][]
+   */
+  private long[][] getSegments(KeyRangeSet set) {
+    List<long[]> ranges = new ArrayList<>();
+    for (int i = 0; i < set.getNumRanges(); i++) {
+      KeyRange r = set.getRange(i);
+      ranges.add(new long[]{r.getStart(), r.getEnd()});
+    }
+    ranges.sort(Comparator.comparingLong(r -> r[0]));
+    List<long[]> segs = new ArrayList<>();
+    for (long[] r : ranges) {
+      long start = r[0];
+      // first owner start strictly after the range start
+      int o = Arrays.binarySearch(_ownerStarts, start);
+      o = o >= 0 ? o + 1 : -(o + 1);
+      while (o < _ownerStarts.length && _ownerStarts[o] <= r[1]) {
+        segs.add(new long[]{start, _ownerStarts[o] - 1});
+        start = _ownerStarts[o++];
+      }
+      segs.add(new long[]{start, r[1]});
+    }
+    return segs.toArray(new long[segs.size()][]);
+  }
+
+  /**
+   * return the index s of the segment in which the cumulative work reaches
+   * the goal, ie the smallest s such that prefix[s+1] &ge; goal.
+   *
+   * @param prefix double[]
+   * @param goal double
+   * @return int
+   */
+  private static int upperSegment(double[] prefix, double goal) {
+    int lo = 0;
+    int hi = prefix.length - 2;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (prefix[mid + 1] >= goal) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * return the key k in [start-1, end] such that the work of [start, k] is
+   * closest to the given amount.
+   *
+   * @param start long
+   * @param end long
+   * @param work double
+   * @param cost KeyCostEstimatorIntf may be null
+   * @return long
+   */
+  private static long findSplitKey(long start, long end, double work,
+          KeyCostEstimatorIntf cost) {
+    if (cost == null) {
+      long k = start - 1 + Math.round(work);
+      return Math.max(start - 1, Math.min(end, k));
+    }
+    // binary search for the smallest k with cost(start,k) >= work
+    long lo = start;
+    long hi = end;
+    while (lo < hi) {
+      long mid = lo + (hi - lo) / 2;
+      if (cost.getCost(start, mid) >= work) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    double w_lo = cost.getCost(start, lo);
+    double w_prev = lo > start ? cost.getCost(start, lo - 1) : 0.0;
+    return w_lo - work <= work - w_prev ? lo : lo - 1;
+  }
+
+  /**
+   * return the work of the closed range [start,end].
+   *
+   * @param start long
+   * @param end long
+   * @param cost KeyCostEstimatorIntf may be null
+   * @return double
+   */
+  private static double getWork(long start, long end,
+          KeyCostEstimatorIntf cost) {
+    return cost == null ? (double) (end - start + 1) : cost.getCost(start, end);
+  }
+
+  /**
+   * creates a new range, turning the (impossible here) checked exception into
+   * an unchecked one.
+   *
+   * @param start long
+   * @param end long
+   * @return KeyRange
+   * @throws IllegalStateException if the range is invalid
+   */
+  private static KeyRange newRange(long start, long end) {
+    try {
+      return new KeyRange(start, end);
+    } catch (InvalidRange e) {
+      throw new IllegalStateException("invalid range [" + start + "," + end + "]");
+    }
+  }
+}
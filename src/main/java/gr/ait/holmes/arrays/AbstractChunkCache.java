@@ -0,0 +1,319 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * base class of the <CODE>ChunkCacheIntf</CODE> implementations, that keeps
+ * the weight and the statistics counters. All public methods except
+ * <CODE>recordHit()</CODE> run while holding the cache's lock, so sub-classes
+ * implement the policy-specific methods without worrying about concurrency.
+ * <CODE>recordHit()</CODE> never blocks: it counts the hit in a
+ * <CODE>LongAdder</CODE>, and writes the chunk into a lossy ring buffer of one
+ * of several stripes chosen by the calling thread; whenever a thread fills a
+ * stripe's buffer it tries to acquire the lock (without waiting) to replay
+ * the buffered accesses to the policy, and the buffers are also drained
+ * before any other operation under the lock. Accesses overwritten before
+ * being drained are lost, which only makes the policy slightly less accurate.
+ * @author itc
+ */
+public abstract class AbstractChunkCache implements ChunkCacheIntf {
+  private final static int _STRIPES = 16;  // must be a power of 2
+  private final static int _STRIPE_SIZE = 32;  // must be a power of 2
+  private final static int _PAD = 16;  // longs between stripe counters
+
+  private final long _maxWeight;
+  private final ReentrantLock _lock = new ReentrantLock();
+  private long _weight;  // guarded by _lock
+  private final LongAdder _hits = new LongAdder();
+  private long _misses;  // guarded by _lock
+  private long _evictions;  // guarded by _lock
+  private volatile ChunkEvictionListenerIntf _listener;
+  // lossy access buffers: slot values are chunk+1, zero meaning empty
+  private final AtomicIntegerArray _buffer =
+    new AtomicIntegerArray(_STRIPES*_STRIPE_SIZE);
+  private final AtomicLongArray _writeCounts = new AtomicLongArray(_STRIPES*_PAD);
+
+
+  /**
+   * sole constructor.
+   * @param maxWeight long the budget of the cache
+   * @throws IllegalArgumentException if maxWeight&le;0
+   */
+  protected AbstractChunkCache(long maxWeight) {
+    if (maxWeight<=0)
+      throw new IllegalArgumentException("maxWeight must be positive");
+    _maxWeight = maxWeight;
+  }
+
+
+  /**
+   * return the weight of a chunk, i.e. the total number of non-zeros of its
+   * rows plus the number of its rows.
+   * @param rows DblArray1SparseVector[]
+   * @return long
+   */
+  public static long weigh(DblArray1SparseVector[] rows) {
+    long w = rows.length;
+    for (int i=0; i<rows.length; i++) w += rows[i].getNumNonZeros();
+    return w;
+  }
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public final DblArray1SparseVector[] get(int chunk) {
+    _lock.lock();
+    try {
+      drainBuffers();
+      DblArray1SparseVector[] rows = lookup(chunk, true);
+      if (rows==null) ++_misses;
+      else _hits.increment();
+      return rows;
+    }
+    finally {
+      _lock.unlock();
+    }
+  }
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public final DblArray1SparseVector[] peek(int chunk) {
+    _lock.lock();
+    try {
+      return lookup(chunk, false);
+    }
+    finally {
+      _lock.unlock();
+    }
+  }
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public final void put(int chunk, DblArray1SparseVector[] rows) {
+    final long w = weigh(rows);
+    _lock.lock();
+    try {
+      drainBuffers();
+      if (lookup(chunk, false)!=null) return;
+      _weight += w;
+      insert(chunk, rows, w);
+      evict();
+    }
+    finally {
+      _lock.unlock();
+    }
+  }
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public final void recordHit(int chunk) {
+    _hits.increment();
+    final int s = (int) mix(Thread.currentThread().getId()) & (_STRIPES-1);
+    final long k = _writeCounts.getAndIncrement(s*_PAD);
+    final int pos = (int) (k & (_STRIPE_SIZE-1));
+    _buffer.lazySet(s*_STRIPE_SIZE+pos, chunk+1);
+    if (pos==_STRIPE_SIZE-1 && _lock.tryLock()) {
+      try {
+        drainBuffers();
+      }
+      finally {
+        _lock.unlock();
+      }
+    }
+  }
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public final void recordMiss(int chunk) {
+    _lock.lock();
+    try {
+      drainBuffers();
+      lookup(chunk, true);
+      ++_misses;
+    }
+    finally {
+      _lock.unlock();
+    }
+  }
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public final void setEvictionListener(ChunkEvictionListenerIntf listener) {
+    _listener = listener;
+  }
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public final void clear() {
+    _lock.lock();
+    try {
+      for (int k=0; k<_buffer.length(); k++) _buffer.set(k, 0);
+      removeAll();
+    }
+    finally {
+      _lock.unlock();
+    }
+  }
+
+
+  public final long getHitCount() {
+    return _hits.sum();
+  }
+
+
+  public final long getMissCount() {
+    _lock.lock();
+    try {
+      return _misses;
+    }
+    finally {
+      _lock.unlock();
+    }
+  }
+
+
+  public final long getEvictionCount() {
+    _lock.lock();
+    try {
+      return _evictions;
+    }
+    finally {
+      _lock.unlock();
+    }
+  }
+
+
+  public final long getWeight() {
+    _lock.lock();
+    try {
+      return _weight;
+    }
+    finally {
+      _lock.unlock();
+    }
+  }
+
+
+  public final long getMaxWeight() {
+    return _maxWeight;
+  }
+
+
+  /**
+   * return a String with the statistics of this cache.
+   * @return String
+   */
+  public String toString() {
+    return getClass().getSimpleName()+"[weight="+getWeight()+"/"+_maxWeight+
+           ", hits="+getHitCount()+", misses="+getMissCount()+
+           ", evictions="+getEvictionCount()+"]";
+  }
+
+
+  /**
+   * called by sub-classes whenever they have removed a chunk from the cache,
+   * either from within <CODE>evict()</CODE> or from within
+   * <CODE>removeAll()</CODE>.
+   * @param chunk int
+   * @param rows DblArray1SparseVector[]
+   * @param weight long
+   * @param eviction boolean true iff called from <CODE>evict()</CODE>
+   */
+  protected final void removed(int chunk, DblArray1SparseVector[] rows,
+                               long weight, boolean eviction) {
+    _weight -= weight;
+    if (eviction) ++_evictions;
+    ChunkEvictionListenerIntf listener = _listener;
+    if (listener!=null) listener.removed(chunk, rows);
+  }
+
+
+  /**
+   * return true iff the weight of the cache exceeds its budget.
+   * @return boolean
+   */
+  protected final boolean isOverweight() {
+    return _weight>_maxWeight;
+  }
+
+
+  /**
+   * find the rows of the given chunk. Called while holding the cache's lock.
+   * @param chunk int
+   * @param access boolean true if the call counts as an access to the chunk
+   * (whether found or not) for the eviction policy
+   * @return DblArray1SparseVector[] null if not in the cache
+   */
+  protected abstract DblArray1SparseVector[] lookup(int chunk, boolean access);
+
+
+  /**
+   * insert a chunk that is not in the cache. Called while holding the cache's
+   * lock; the weight of the cache has already been increased by weight.
+   * @param chunk int
+   * @param rows DblArray1SparseVector[]
+   * @param weight long
+   */
+  protected abstract void insert(int chunk, DblArray1SparseVector[] rows,
+                                 long weight);
+
+
+  /**
+   * evict chunks until <CODE>isOverweight()</CODE> returns false, calling
+   * <CODE>removed(...,true)</CODE> for each. Called while holding the cache's
+   * lock.
+   */
+  protected abstract void evict();
+
+
+  /**
+   * remove all chunks, calling <CODE>removed(...,false)</CODE> for each.
+   * Called while holding the cache's lock.
+   */
+  protected abstract void removeAll();
+
+
+  /**
+   * replays the accesses recorded in the lossy buffers to the policy. Called
+   * while holding the cache's lock.
+   */
+  private void drainBuffers() {
+    for (int k=0; k<_buffer.length(); k++) {
+      if (_buffer.get(k)==0) continue;
+      final int v = _buffer.getAndSet(k, 0);
+      if (v!=0) lookup(v-1, true);
+    }
+  }
+
+
+  /**
+   * spreads the bits of a thread id.
+   * @param x long
+   * @return long
+   */
+  private static long mix(long x) {
+    x *= 0x9e3779b97f4a7c15L;
+    return x ^ (x>>>29);
+  }
+}
@@ -4,59 +4,233 @@
 
 package gr.ait.holmes.arrays;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import gr.ait.holmes.utils.Messenger;
 import java.io.IOException;
-import java.lang.ref.SoftReference;
-import java.util.StringTokenizer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import gr.ait.holmes.utils.Messenger;
 
 
 /**
  * class represents very large matrices that are stored on disk but cannot be
- * easily retrieved in memory all at once. The class therefore utilizes soft-
- * references to hold chunks of the matrix in memory, with enough intelligence
- * to retrieve data not currently in memory from disk. Representation is row-
- * based.
+ * easily retrieved in memory all at once. The class therefore holds chunks of
+ * consecutive rows of the matrix in a bounded <CODE>ChunkCacheIntf</CODE>
+ * cache, with enough intelligence to retrieve data not currently in memory
+ * from disk; the chunk is the unit of loading and eviction, and the cache's
+ * budget and eviction policy are chosen at construction. Representation is
+ * row-based. For sequential sweeps over the rows, a read-ahead window can be
+ * set, so that when a chunk is first accessed, the chunks after it are loaded
+ * by a background thread while the caller computes on the current one.
+ * Requests for rows of cached chunks are lock-free: the rows of each cached
+ * chunk are published in a volatile array slot (cleared by the cache when it
+ * evicts the chunk), and only a miss takes a lock, to load the chunk once via
+ * a per-chunk <CODE>FutureTask</CODE> that other threads missing on the same
+ * chunk wait for. The data file may be either in the text format described in
+ * <CODE>SparseTextMatrixReader</CODE>, or in the indexed binary format of
+ * <CODE>SparseMatrixBinaryFile</CODE> (the format is detected automatically
+ * by the file's first bytes). With the text format, reading a chunk requires
+ * skipping all lines before it; with the binary format, any row is read in
+ * time proportional to its number of non-zeros, so for large files the
+ * one-time conversion via <CODE>SparseMatrixBinaryFile.convert()</CODE> is
+ * recommended.
+ * <p>The matrix is mutable: <CODE>setCoord()</CODE> records the write in an
+ * in-memory delta overlay (per row, a sparse vector of the cells written,
+ * whose default value NaN marks the cells not written), and appends it to the
+ * delta log file <CODE>&lt;datafile&gt;.delta</CODE>, so that writes survive
+ * the process and are replayed into the overlay when the matrix is opened
+ * again. Reads merge the base row with its delta, if any. Once the number of
+ * writes since the last compaction reaches the compaction threshold, a
+ * background thread compacts the matrix: the overlay is frozen (new writes go
+ * to a fresh overlay and log), the base with the frozen deltas applied is
+ * written to a new binary file that atomically replaces the data file (so a
+ * text data file becomes binary), and the frozen overlay and its log are then
+ * dropped. Reads and writes proceed while the new file is being written.</p>
+ * <p>Columns are read via <CODE>getIthCol()</CODE> from a compressed-sparse-
+ * column companion file <CODE>&lt;datafile&gt;.csc</CODE> (the transpose of
+ * the data file in binary format, built by <CODE>SparseMatrixTransposer
+ * </CODE>) in time proportional to the number of non-zeros of the column,
+ * plus the number of rows with writes not yet compacted. The companion is 
+ * built on the first column request, re-used across processes as long as it
+ * is newer than the data file, and rebuilt after a compaction.</p>
  * @author itc
  */
 public final class BigDiskSupportedDblArray2SparseMatrix implements MatrixIntf {
-  private final SoftReference<DblArray1SparseVector>[] _rows;  // data
+  private final ChunkCacheIntf _cache;  // data
   private final String _datafile;  // underlying data source
+  private volatile State _state;  // data source and delta overlays
   private final int _r;
   private final int _c;
   
+  private final int _rowsPerChunk;
+  
   private final static int _MIN_ROWS_CHUNK_2_READ = 100000;
 
-  private ReentrantReadWriteLock _rwRowChunkLocks[];
+  private final int _numChunks;
+  /**
+   * _slots[k] holds the rows of chunk k iff chunk k is in the cache (modulo
+   * the short intervals between a load and the cache insertion, and between
+   * an eviction and the listener call).
+   */
+  private final AtomicReferenceArray<DblArray1SparseVector[]> _slots;
+  /**
+   * _loads[k] is the task loading chunk k, if such a load is in progress.
+   */
+  private final AtomicReferenceArray<FutureTask<DblArray1SparseVector[]>> _loads;
+  
+  private volatile int _readAheadWindow;  // 0 means no read-ahead
+  private ExecutorService _prefetcher;  // guarded by this
+  private final Set<Integer> _prefetching = ConcurrentHashMap.newKeySet();
+  private volatile int _lastChunk = -1;  // chunk of the last row requested
+  private final AtomicLong _numPrefetched = new AtomicLong();
+  
+  private final static long _DEFAULT_COMPACTION_THRESHOLD = 1L<<20;
+  private SparseDeltaLog _log;  // guarded by this; opened on first write
+  /**
+   * writers hold the read lock; freezing the overlay takes the write lock.
+   */
+  private final ReentrantReadWriteLock _writeLock = 
+    new ReentrantReadWriteLock();
+  /**
+   * chunk loads and column reads hold the read lock; switching to a new data
+   * source takes the write lock, so that no chunk of the old source gets 
+   * cached after it, and the old source and column file can be closed.
+   */
+  private final ReentrantReadWriteLock _swapLock = new ReentrantReadWriteLock();
+  private final Object _compactionLock = new Object();
+  private final AtomicLong _numDeltaWrites = new AtomicLong();
+  private volatile long _compactionThreshold = _DEFAULT_COMPACTION_THRESHOLD;
+  private final AtomicBoolean _compactionScheduled = new AtomicBoolean();
+  private ExecutorService _compactor;  // guarded by this
   
 
   /**
    * construct a big matrix of sparse vectors, supported by an underlying
-   * text file that serves as the data source. No data are read at construction
-   * time; only the first line of the file containing the so-called header 
-   * describing the matrix dimensions is read, and instead when rows or elements 
-   * are requested, pieces of the data are read from disk and saved into 
-   * soft-references in memory.
+   * file that serves as the data source. No data are read at construction
+   * time; only the header describing the matrix dimensions is read (and for 
+   * binary files, the file is memory-mapped), and instead when rows or 
+   * elements are requested, chunks of 100000 rows are read from disk and 
+   * saved into an LRU cache whose budget is a quarter of the max. heap size.
+   * Writes left in the delta log by a previous process are replayed.
    * @param filename String
    * @throws IOException 
    */
   public BigDiskSupportedDblArray2SparseMatrix(String filename) 
     throws IOException {
+    this(filename, _MIN_ROWS_CHUNK_2_READ, null);
+  }
+  
+  
+  /**
+   * construct a big matrix of sparse vectors, supported by an underlying
+   * file that serves as the data source, with the given chunk size and cache.
+   * No data are read at construction time, except for the replay of the 
+   * writes left in the delta log by a previous process.
+   * @param filename String
+   * @param rowsPerChunk int the number of rows read from disk at once
+   * @param cache ChunkCacheIntf the cache of the chunks, which must not be 
+   * shared with other matrices; if null, an <CODE>LRUChunkCache</CODE> with a
+   * budget of a quarter of the max. heap size is used
+   * @throws IOException 
+   * @throws IllegalArgumentException if rowsPerChunk&le;0
+   */
+  public BigDiskSupportedDblArray2SparseMatrix(String filename, 
+                                               int rowsPerChunk,
+                                               ChunkCacheIntf cache) 
+    throws IOException {
+    if (rowsPerChunk<=0) 
+      throw new IllegalArgumentException("rowsPerChunk must be positive");
     _datafile = filename;
-    BufferedReader br = new BufferedReader(new FileReader(_datafile));
-    String line = br.readLine();
-    br.close();
-    String[] data = line.split(" ");
-    _r = Integer.parseInt(data[0]);
-    _c = Integer.parseInt(data[1]);
-    _rows = new SoftReference[_r];
-    int num_chunks = _r / (int) Math.min(_MIN_ROWS_CHUNK_2_READ, _r);
-    if (_r % num_chunks > 0) ++num_chunks;
-    _rwRowChunkLocks = new ReentrantReadWriteLock[num_chunks];
-    for (int i=0; i<_rwRowChunkLocks.length; i++) 
-      _rwRowChunkLocks[i] = new ReentrantReadWriteLock();
+    final SparseRowSourceIntf source;
+    if (SparseMatrixBinaryFile.isBinaryFile(filename)) 
+      source = new SparseMatrixBinaryFile(filename);
+    else source = new TextSparseRowSource(filename);
+    _r = source.getNumRows();
+    _c = source.getNumCols();
+    _state = new State(source, null, null, new ConcurrentHashMap<>());
+    _rowsPerChunk = rowsPerChunk;
+    _cache = cache!=null ? cache : 
+      new LRUChunkCache(Runtime.getRuntime().maxMemory()/4/12);
+    _numChunks = _r==0 ? 0 : (_r-1)/_rowsPerChunk + 1;
+    _slots = new AtomicReferenceArray<>(_numChunks);
+    _loads = new AtomicReferenceArray<>(_numChunks);
+    _cache.setEvictionListener((chunk, rows) -> {
+      if (chunk<_numChunks) _slots.compareAndSet(chunk, rows, null);
+    });
+    recover();
+  }
+  
+  
+  /**
+   * get the cache holding the chunks of this matrix, e.g. to inspect its 
+   * statistics.
+   * @return ChunkCacheIntf
+   */
+  public ChunkCacheIntf getCache() {
+    return _cache;
+  }
+  
+  
+  /**
+   * sets the read-ahead window: whenever a row of a chunk k different from the
+   * chunk of the previously requested row is requested, the chunks k+1,...,
+   * k+window that are not in the cache are scheduled for loading by a 
+   * background (daemon) thread. A thread requesting a row of a chunk that is 
+   * being prefetched waits for the prefetch to complete instead of reading 
+   * the chunk again. Read-ahead pays off for sequential sweeps over the rows,
+   * provided the cache's budget can hold window+1 chunks.
+   * @param window int zero (the default) disables read-ahead and stops the 
+   * background thread
+   * @throws IllegalArgumentException if window&lt;0
+   */
+  public synchronized void setReadAheadWindow(int window) {
+    if (window<0) 
+      throw new IllegalArgumentException("read-ahead window must be >= 0");
+    _readAheadWindow = window;
+    if (window>0 && _prefetcher==null) {
+      _prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "BigDiskReadAhead");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    else if (window==0 && _prefetcher!=null) {
+      _prefetcher.shutdown();
+      _prefetcher = null;
+    }
+  }
+  
+  
+  /**
+   * get the read-ahead window.
+   * @return int
+   */
+  public int getReadAheadWindow() {
+    return _readAheadWindow;
+  }
+  
+  
+  /**
+   * get the number of chunks loaded so far by read-ahead.
+   * @return long
+   */
+  public long getNumPrefetchedChunks() {
+    return _numPrefetched.get();
   }
   
   
@@ -78,6 +252,15 @@ public final class BigDiskSupportedDblArray2SparseMatrix implements MatrixIntf {
   }
   
   
+  /**
+   * get the number of rows of each chunk (the last chunk may have fewer).
+   * @return int
+   */
+  int getRowsPerChunk() {
+    return _rowsPerChunk;
+  }
+  
+  
   /**
    * the main operation of this object: get the value of its (i,j)-th cell.
    * @param i int in [0,#rows-1]
@@ -85,136 +268,195 @@ public final class BigDiskSupportedDblArray2SparseMatrix implements MatrixIntf {
    * @return double
    * @throws IndexOutOfBoundsException if the arguments are out-of-bounds 
    * (unchecked)
-   * @throws IOException if the data source for some reason is not available 
-   * (unchecked)
+   * @throws IllegalStateException if the data source for some reason is not 
+   * available (unchecked)
    */
   public double getCoord(int i, int j) {
     checkRanges(i,j);
-    double result = Double.NaN;
-    int start_chunk = getChunkReadLock(i);
-    SoftReference<DblArray1SparseVector> rowrefi = _rows[i];
-    if (rowrefi==null) {  // chunk into which i-th row belongs not read yet
+    final State s = _state;
+    final double v = s.getDelta(i, j);
+    if (!Double.isNaN(v)) return v;
+    return getBaseRow(s, i).getCoord(j);
+  }
+  
+  
+  /**
+   * set the value of the (i,j)-th cell. The write is recorded in the delta
+   * overlay and appended to the delta log (it is forced to the device only by
+   * <CODE>flush()</CODE> or <CODE>close()</CODE>, or when the log's buffer 
+   * fills up). May schedule a background compaction.
+   * @param i int in [0,#rows-1]
+   * @param j int in [0,#cols-1]
+   * @param val double must not be NaN
+   * @throws IndexOutOfBoundsException if the indices are out-of-bounds
+   * @throws IllegalArgumentException if val is NaN
+   * @throws IllegalStateException if the delta log cannot be written 
+   * (unchecked)
+   */
+  public void setCoord(int i, int j, double val) {
+    checkRanges(i,j);
+    if (Double.isNaN(val)) 
+      throw new IllegalArgumentException("NaN values not supported");
+    _writeLock.readLock().lock();
+    try {
+      DblArray1SparseVector d = _state._active.computeIfAbsent(i, 
+        k -> new DblArray1SparseVector(_c, Double.NaN));
+      // log under the row's lock, so the log order of writes to the same cell
+      // is the order in which they were applied
+      synchronized (d) {
+        d.setCoord(j, val);
+        getLog().append(i, j, val);
+      }
+    }
+    catch (IOException e) {
+      throw new IllegalStateException("delta log not writable");
+    }
+    finally {
+      _writeLock.readLock().unlock();
+    }
+    final long t = _compactionThreshold;
+    if (_numDeltaWrites.incrementAndGet()>=t && t>0) scheduleCompaction();
+  }
+  
+  
+  /**
+   * sets the number of writes after which a background compaction is started.
+   * @param threshold long zero disables background compaction
+   * @throws IllegalArgumentException if threshold&lt;0
+   */
+  public void setCompactionThreshold(long threshold) {
+    if (threshold<0) 
+      throw new IllegalArgumentException("threshold must be >= 0");
+    _compactionThreshold = threshold;
+  }
+  
+  
+  /**
+   * get the compaction threshold (by default 2^20 writes).
+   * @return long
+   */
+  public long getCompactionThreshold() {
+    return _compactionThreshold;
+  }
+  
+  
+  /**
+   * get the number of writes made since the last compaction started.
+   * @return long
+   */
+  public long getNumDeltaWrites() {
+    return _numDeltaWrites.get();
+  }
+  
+  
+  /**
+   * forces the writes made so far to the delta log on the device.
+   * @throws IOException
+   */
+  public void flush() throws IOException {
+    SparseDeltaLog log;
+    synchronized (this) {
+      log = _log;
+    }
+    if (log!=null) log.flush();
+  }
+  
+  
+  /**
+   * waits for any background compaction to finish, stops the background 
+   * threads and closes the delta log. The matrix may still be read afterwards,
+   * but writes re-open the log.
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    setReadAheadWindow(0);
+    ExecutorService compactor;
+    synchronized (this) {
+      compactor = _compactor;
+      _compactor = null;
+    }
+    if (compactor!=null) {
+      compactor.shutdown();
       try {
-        _rwRowChunkLocks[start_chunk].readLock().unlock();
-        _rwRowChunkLocks[start_chunk].writeLock().lock();
-        rowrefi = _rows[i];
-        if (rowrefi!=null) {  // check again, maybe now the chunk's been read
-          DblArray1SparseVector ri = rowrefi.get();
-          if (ri!=null) return ri.getCoord(j);
-        }
-        if (_rows[i]==null) {
-          BufferedReader br=null;
-          try {
-            br = new BufferedReader(new FileReader(_datafile));
-            br.readLine();  // go past header
-            int cnt=0;
-            while (cnt++<start_chunk) {
-              br.readLine();
-            }
-            for (int c=0; c<_MIN_ROWS_CHUNK_2_READ; c++) {
-              String line = br.readLine();
-              if (line==null) break;  // EOF
-              StringTokenizer st = new StringTokenizer(line," ");
-              DblArray1SparseVector v = new DblArray1SparseVector(_c);
-              while (st.hasMoreTokens()) {
-                String token = st.nextToken();
-                String[] nds = token.split(",");
-                int dim = Integer.parseInt(nds[0])-1;
-                double val = Double.parseDouble(nds[1]);
-                v.setCoord(dim, val);
-              }
-              _rows[start_chunk+c] = new SoftReference<>(v);
-              if (start_chunk+c==i) {
-                rowrefi = _rows[i];
-                result = v.getCoord(j);
-              }
-            }
-            return result;
-          }
-          catch (IOException e) {
-            throw new IllegalStateException("data file no longer available");
-          }
-          finally {
-            try {
-              if (br!=null) br.close();
-            }
-            catch (IOException e) {
-              e.printStackTrace();
-            }
-          }
-        }
-        // else fall-off to reading again
+        compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
       }
-      finally {
-        _rwRowChunkLocks[start_chunk].writeLock().unlock();
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
-    }  // _rows[i]==null
-    // rowrefi not null, but maybe actual ref is gc'ed
-    DblArray1SparseVector vi = rowrefi.get();
-    if (vi==null) {  // chunk was read, but row-i evicted by gc
-      // only read row i
-      try {
-        _rwRowChunkLocks[start_chunk].readLock().unlock();
-        _rwRowChunkLocks[start_chunk].writeLock().lock();
-        vi = _rows[i].get();  // check the soft-ref value again
-        if (vi==null) {
-          BufferedReader br=null;
-          try {
-            br = new BufferedReader(new FileReader(_datafile));
-            br.readLine();  // go past header
-            int cnt=0;
-            while (cnt++<i) {
-              br.readLine();
-            }
-            for (int c=0; c<1; c++) {
-              String line = br.readLine();
-              StringTokenizer st = new StringTokenizer(line," ");
-              DblArray1SparseVector v = new DblArray1SparseVector(_c);
-              while (st.hasMoreTokens()) {
-                String token = st.nextToken();
-                String[] nds = token.split(",");
-                int dim = Integer.parseInt(nds[0])-1;
-                double val = Double.parseDouble(nds[1]);
-                v.setCoord(dim, val);
-              }
-              _rows[i+c] = new SoftReference<>(v);  // put it back in
-              if (c==0) result = v.getCoord(j);
-            }
-            return result;
-          }
-          catch (IOException e) {
-            throw new IllegalStateException("data file no longer available");
-          }
-          finally {
-            try {
-              if (br!=null) br.close();
-            }
-            catch (IOException e) {
-              e.printStackTrace();
-            }
-          }
+    }
+    _writeLock.writeLock().lock();
+    try {
+      synchronized (this) {
+        if (_log!=null) {
+          _log.close();
+          _log = null;
         }
-        else return vi.getCoord(j);
       }
-      finally {
-        _rwRowChunkLocks[start_chunk].writeLock().unlock();
-      }      
-    }  // vi==null
-    else {
-      _rwRowChunkLocks[start_chunk].readLock().unlock();
-      return vi.getCoord(j);
+    }
+    finally {
+      _writeLock.writeLock().unlock();
     }
   }
   
   
   /**
-   * always throws for now.
-   * @param i int
-   * @param j int
-   * @param val double
+   * applies all writes made so far to the data file, which is replaced by a
+   * binary file (see <CODE>SparseMatrixBinaryFile</CODE>) holding the current
+   * contents of the matrix. Reads and writes may proceed concurrently; writes 
+   * made after the call started are not included, and remain in the overlay.
+   * Does nothing if there are no writes to apply. Usually invoked by the 
+   * background compaction thread, but may be called directly.
+   * @throws IOException
    */
-  public void setCoord(int i, int j, double val) {
-    throw new UnsupportedOperationException("setCoord() not yet supported");
+  public void compact() throws IOException {
+    synchronized (_compactionLock) {
+      final State s = freeze();
+      if (s==null) return;
+      final String tmp = _datafile+".compact.tmp";
+      try (SparseMatrixBinaryFile.Writer w = 
+             new SparseMatrixBinaryFile.Writer(tmp, _r, _c,
+                                               getValueType(s._source))) {
+        DblArray1SparseVector[] rows = 
+          new DblArray1SparseVector[Math.min(_rowsPerChunk, _r)];
+        for (int from=0; from<_r; from+=_rowsPerChunk) {
+          final int to = (int) Math.min((long)from+_rowsPerChunk, _r);
+          s._source.readRows(from, to, rows);
+          for (int i=from; i<to; i++) {
+            DblArray1SparseVector d = s._frozen.get(i);
+            w.writeRow(d==null ? rows[i-from] : applyDelta(rows[i-from], d));
+          }
+        }
+      }
+      final Path target = Paths.get(_datafile);
+      // no chunk loads while the file is replaced, as a text source re-opens 
+      // the file by name
+      _swapLock.writeLock().lock();
+      try {
+        try {
+          Files.move(Paths.get(tmp), target, 
+                     StandardCopyOption.REPLACE_EXISTING,
+                     StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+          Files.move(Paths.get(tmp), target, 
+                     StandardCopyOption.REPLACE_EXISTING);
+        }
+        SparseMatrixBinaryFile source = new SparseMatrixBinaryFile(_datafile);
+        _cache.clear();
+        final State old = _state;
+        _state = new State(source, null, null, old._active);
+        // chunk loads and column reads use the current state under the read 
+        // lock, and the transposer runs under the compaction lock, so no one
+        // reads the old source or column file any more
+        old._source.close();
+        if (old._columns!=null) old._columns.close();
+      }
+      finally {
+        _swapLock.writeLock().unlock();
+      }
+      Files.deleteIfExists(Paths.get(_datafile+".delta.compacting"));
+      Files.deleteIfExists(Paths.get(_datafile+".csc"));
+    }
   }
   
   
@@ -224,65 +466,500 @@ public final class BigDiskSupportedDblArray2SparseMatrix implements MatrixIntf {
    * @param i int in [0,_r-1]
    * @return DblArray1SparseVector 
    * @throws IndexOutOfBoundsException if the argument is not within range.
+   * @throws IllegalStateException if the data source for some reason is not 
+   * available (unchecked)
    */
   public DblArray1SparseVector getIthRow(int i) {
     checkRanges(i,0);
-    int start_chunk = getChunkReadLock(i);
-    boolean read_locked = true;
-    boolean write_locked = false;
-    DblArray1SparseVector ri=null;
+    final State s = _state;
+    return s.apply(i, getBaseRow(s, i));
+  }
+  
+  
+  /**
+   * get the rows from...to-1 of this matrix. Each chunk of the range is 
+   * looked up (or loaded) once, counting as a single cache access, rather 
+   * than once per row.
+   * @param from int
+   * @param to int
+   * @return DblArray1SparseVector[] of length to-from
+   * @throws IndexOutOfBoundsException if [from,to) is not a range of rows
+   * @throws IllegalStateException if the data source for some reason is not 
+   * available (unchecked)
+   */
+  public DblArray1SparseVector[] getRows(int from, int to) {
+    MatrixOps.checkRowRange(this, from, to);
+    final DblArray1SparseVector[] res = new DblArray1SparseVector[to-from];
+    forEachRow(from, to, (i, row) -> res[i-from] = (DblArray1SparseVector) row);
+    return res;
+  }
+  
+  
+  /**
+   * passes the rows from...to-1 of this matrix, in order, to the given 
+   * consumer. Each chunk of the range is looked up (or loaded) once, 
+   * counting as a single cache access, and its rows are passed while the 
+   * chunk is held, so eviction of the chunk meanwhile does not cause it to be
+   * read again. Writes made while the consumer runs may or may not be seen 
+   * by rows of the same chunk not yet passed.
+   * @param from int
+   * @param to int
+   * @param consumer RowConsumerIntf
+   * @throws IndexOutOfBoundsException if [from,to) is not a range of rows
+   * @throws IllegalArgumentException if consumer is null
+   * @throws IllegalStateException if the data source for some reason is not 
+   * available (unchecked)
+   */
+  public void forEachRow(int from, int to, RowConsumerIntf consumer) {
+    MatrixOps.checkRowRange(this, from, to);
+    if (consumer==null) throw new IllegalArgumentException("null consumer");
+    int i = from;
+    while (i<to) {
+      final int chunk = i / _rowsPerChunk;
+      final int base = chunk*_rowsPerChunk;
+      final int end = (int) Math.min((long)base+_rowsPerChunk, to);
+      final State s = _state;  // read before the chunk slot
+      final DblArray1SparseVector[] rows = getChunkRows(chunk);
+      for (; i<end; i++) consumer.accept(i, s.apply(i, rows[i-base]));
+    }
+  }
+  
+  
+  /**
+   * get the entire j-th column of this matrix as a sparse vector, of 
+   * dimension <CODE>getNumRows()</CODE>. The first call, and the first call
+   * after a compaction, builds the column file (unless a column file newer 
+   * than the data file exists), which takes time comparable to a full sweep
+   * over the rows; any other call reads the column file in time proportional
+   * to the column's number of non-zeros, plus the number of rows with writes
+   * not yet compacted.
+   * @param j int in [0,_c-1]
+   * @return DblArray1SparseVector
+   * @throws IndexOutOfBoundsException if the argument is not within range.
+   * @throws IllegalStateException if the data source or the column file for 
+   * some reason is not available (unchecked)
+   */
+  public DblArray1SparseVector getIthCol(int j) {
+    checkRanges(0,j);
+    while (true) {
+      // the column file is not closed by a compaction while being read
+      _swapLock.readLock().lock();
+      try {
+        final State s = _state;
+        if (s._columns!=null) 
+          return s.applyToColumn(j, s._columns.getIthRow(j));
+      }
+      finally {
+        _swapLock.readLock().unlock();
+      }
+      try {
+        buildColumns();
+      }
+      catch (IOException e) {
+        throw new IllegalStateException("column file not available");
+      }
+    }
+  }
+  
+  
+  /**
+   * get the i-th row of the data source of the given state, or of a later 
+   * state. Since compaction writes the frozen deltas into the new source, 
+   * applying the deltas of the given state to the row returned gives the 
+   * current row either way.
+   * @param s State must be read before the row's chunk slot
+   * @param i int
+   * @return DblArray1SparseVector
+   */
+  private DblArray1SparseVector getBaseRow(State s, int i) {
+    final int chunk = i / _rowsPerChunk;
+    return getChunkRows(chunk)[i-chunk*_rowsPerChunk];
+  }
+  
+  
+  /**
+   * return the rows of the given chunk of the data source of the current 
+   * state (see <CODE>getBaseRow()</CODE>), counting a hit or a miss on the 
+   * cache, and scheduling read-ahead.
+   * @param chunk int
+   * @return DblArray1SparseVector[]
+   */
+  private DblArray1SparseVector[] getChunkRows(int chunk) {
+    if (_readAheadWindow>0) readAhead(chunk);
+    DblArray1SparseVector[] rows = _slots.get(chunk);
+    if (rows!=null) _cache.recordHit(chunk);
+    else rows = loadChunk(chunk, true);
+    return rows;
+  }
+  
+  
+  /**
+   * return the rows of the given chunk, loading it from the data source if 
+   * needed. At most one load per chunk is in progress at any time: threads
+   * that find a load of the chunk in progress wait for it to complete.
+   * @param chunk int
+   * @param demand boolean false for loads made by read-ahead, which are not
+   * counted as misses, but as prefetched chunks if they do read the chunk
+   * @return DblArray1SparseVector[]
+   * @throws IllegalStateException if the data source for some reason is not 
+   * available, or if the thread is interrupted while waiting
+   */
+  private DblArray1SparseVector[] loadChunk(final int chunk, boolean demand) {
+    while (true) {
+      FutureTask<DblArray1SparseVector[]> task = _loads.get(chunk);
+      if (task==null) {
+        DblArray1SparseVector[] rows = _slots.get(chunk);
+        if (rows!=null) return rows;  // loaded meanwhile
+        task = new FutureTask<>(() -> readChunk(chunk));
+        if (!_loads.compareAndSet(chunk, null, task)) continue;
+        if (demand) _cache.recordMiss(chunk);
+        _swapLock.readLock().lock();
+        try {
+          task.run();
+          rows = getLoaded(task);
+          if (!demand) _numPrefetched.incrementAndGet();
+          // publish before inserting, so that an immediate eviction clears it
+          _slots.set(chunk, rows);
+          _cache.put(chunk, rows);
+          return rows;
+        }
+        finally {
+          _swapLock.readLock().unlock();
+          _loads.compareAndSet(chunk, task, null);
+        }
+      }
+      if (demand) _cache.recordMiss(chunk);
+      return getLoaded(task);
+    }
+  }
+  
+  
+  /**
+   * waits for the given load task to complete and returns its result.
+   * @param task FutureTask
+   * @return DblArray1SparseVector[]
+   * @throws IllegalStateException if the load failed or the thread was 
+   * interrupted while waiting
+   */
+  private static DblArray1SparseVector[] getLoaded(
+    FutureTask<DblArray1SparseVector[]> task) {
     try {
-      SoftReference<DblArray1SparseVector> refi = _rows[i];
-      if (refi!=null) {
-        ri = refi.get();
-        if (ri!=null) return ri;
+      return task.get();
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("data file no longer available");
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while loading rows");
+    }
+  }
+  
+  
+  /**
+   * reads all rows of the given chunk from the data source.
+   * @param chunk int
+   * @return DblArray1SparseVector[] the rows of the chunk
+   * @throws IOException 
+   */
+  private DblArray1SparseVector[] readChunk(int chunk) throws IOException {
+    final int from = chunk*_rowsPerChunk;
+    final int to = (int) Math.min((long)from+_rowsPerChunk, _r);
+    DblArray1SparseVector[] rows = new DblArray1SparseVector[to-from];
+    _state._source.readRows(from, to, rows);
+    return rows;
+  }
+  
+  
+  /**
+   * opens the column file of the current data source, first writing it if it
+   * does not exist or is older than the data file, unless the current state 
+   * already has it. Holds the compaction lock, so the data source does not 
+   * change meanwhile.
+   * @throws IOException
+   */
+  private void buildColumns() throws IOException {
+    synchronized (_compactionLock) {
+      final State s = _state;
+      if (s._columns!=null) return;
+      final Path csc = Paths.get(_datafile+".csc");
+      SparseMatrixBinaryFile columns = null;
+      if (Files.exists(csc) && 
+          Files.getLastModifiedTime(csc).compareTo(
+            Files.getLastModifiedTime(Paths.get(_datafile)))>=0 &&
+          SparseMatrixBinaryFile.isBinaryFile(csc.toString())) {
+        columns = new SparseMatrixBinaryFile(csc.toString());
+        if (columns.getNumRows()!=_c || columns.getNumCols()!=_r) 
+          columns = null;
       }
-      // read entire chunk
-      _rwRowChunkLocks[start_chunk].readLock().unlock();
-      read_locked=false;
-      _rwRowChunkLocks[start_chunk].writeLock().lock();
-      write_locked = true;
-      // now check again
-      refi = _rows[i];
-      if (refi!=null) {
-        ri = refi.get();
-        if (ri!=null) return ri;
+      if (columns==null) {
+        final Path tmp = Paths.get(_datafile+".csc.tmp");
+        SparseMatrixTransposer.transpose(s._source, tmp.toString(), 
+                                         SparseMatrixTransposer.
+                                           getDefaultMaxEntries(),
+                                         getValueType(s._source));
+        Files.move(tmp, csc, StandardCopyOption.REPLACE_EXISTING);
+        columns = new SparseMatrixBinaryFile(csc.toString());
       }
-      // no luck, do the work  
-      //BufferedReader br=null;
-      try(BufferedReader br=new BufferedReader(new FileReader(_datafile))) {
-        //br = new BufferedReader(new FileReader(_datafile));
-        br.readLine();  // go past header
-        int cnt=0;
-        while (cnt++<start_chunk) {
-          br.readLine();
+      _writeLock.writeLock().lock();  // freeze() is excluded by _compactionLock
+      try {
+        final State cur = _state;
+        _state = new State(cur._source, columns, cur._frozen, cur._active);
+      }
+      finally {
+        _writeLock.writeLock().unlock();
+      }
+    }
+  }
+  
+  
+  /**
+   * return the delta log, opening it if needed.
+   * @return SparseDeltaLog
+   * @throws IOException
+   */
+  private synchronized SparseDeltaLog getLog() throws IOException {
+    if (_log==null) _log = new SparseDeltaLog(_datafile+".delta");
+    return _log;
+  }
+  
+  
+  /**
+   * freezes the active overlay: it becomes the frozen overlay (merged with 
+   * the frozen overlay of a previous compaction that failed, if any), its log
+   * is appended to (or becomes) the log of the frozen overlay, and new writes 
+   * go to a new active overlay and log.
+   * @return State the new state, or null if there are no writes to compact
+   * @throws IOException
+   */
+  private State freeze() throws IOException {
+    _writeLock.writeLock().lock();
+    try {
+      final State cur = _state;
+      if (cur._active.isEmpty() && cur._frozen==null) return null;
+      final Path log = Paths.get(_datafile+".delta");
+      final Path frozen_log = Paths.get(_datafile+".delta.compacting");
+      synchronized (this) {
+        if (_log!=null) {
+          _log.close();
+          _log = null;
         }
-        for (int c=0; c<_MIN_ROWS_CHUNK_2_READ; c++) {
-          String line = br.readLine();
-          if (line==null) break;  // EOF
-          StringTokenizer st = new StringTokenizer(line," ");
-          DblArray1SparseVector v = new DblArray1SparseVector(_c);
-          while (st.hasMoreTokens()) {
-            String token = st.nextToken();
-            String[] nds = token.split(",");
-            int dim = Integer.parseInt(nds[0])-1;
-            double val = Double.parseDouble(nds[1]);
-            v.setCoord(dim, val);
+      }
+      if (Files.exists(log)) {
+        if (Files.exists(frozen_log)) {
+          try (SparseDeltaLog fl = new SparseDeltaLog(frozen_log.toString())) {
+            SparseDeltaLog.replay(log.toString(), fl::append);
           }
-          _rows[start_chunk+c] = new SoftReference<>(v);
-          if (start_chunk+c==i) {
-            ri = v;
+          Files.delete(log);
+        }
+        else Files.move(log, frozen_log, StandardCopyOption.REPLACE_EXISTING);
+      }
+      Map<Integer, DblArray1SparseVector> frozen = cur._active;
+      if (cur._frozen!=null) {
+        frozen = new ConcurrentHashMap<>(cur._frozen);
+        for (Map.Entry<Integer, DblArray1SparseVector> e : 
+             cur._active.entrySet()) {
+          frozen.merge(e.getKey(), e.getValue(), 
+                       (a, b) -> applyDelta(a, b));
+        }
+      }
+      State s = new State(cur._source, cur._columns, frozen, 
+                          new ConcurrentHashMap<>());
+      _state = s;
+      _numDeltaWrites.set(0);
+      return s;
+    }
+    finally {
+      _writeLock.writeLock().unlock();
+    }
+  }
+  
+  
+  /**
+   * schedules a compaction in the background thread, unless one is already
+   * scheduled or running. Failures are reported via the 
+   * <CODE>Messenger</CODE>.
+   */
+  private void scheduleCompaction() {
+    if (!_compactionScheduled.compareAndSet(false, true)) return;
+    ExecutorService compactor;
+    synchronized (this) {
+      if (_compactor==null) {
+        _compactor = Executors.newSingleThreadExecutor(r -> {
+          Thread t = new Thread(r, "BigDiskCompaction");
+          t.setDaemon(true);
+          return t;
+        });
+      }
+      compactor = _compactor;
+    }
+    try {
+      compactor.execute(() -> {
+        try {
+          compact();
+        }
+        catch (IOException | RuntimeException e) {
+          Messenger.getInstance().msg("BigDiskSupportedDblArray2SparseMatrix:"+
+                                      " compaction of "+_datafile+
+                                      " failed: "+e, 0);
+        }
+        finally {
+          _compactionScheduled.set(false);
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {  // closed meanwhile
+      _compactionScheduled.set(false);
+    }
+  }
+  
+  
+  /**
+   * replays into the overlay the writes left in the delta logs by a previous
+   * process: first those of a compaction that did not complete, then the 
+   * later ones. If both logs exist, they are replaced by a single log holding
+   * the overlay.
+   * @throws IOException
+   */
+  private void recover() throws IOException {
+    final String log = _datafile+".delta";
+    final String frozen_log = _datafile+".delta.compacting";
+    final ConcurrentHashMap<Integer, DblArray1SparseVector> active = 
+      _state._active;
+    final SparseDeltaLog.RecordConsumer replayer = (row, col, val) -> {
+      if (row<0 || row>=_r || col<0 || col>=_c || Double.isNaN(val)) 
+        throw new IOException("corrupt delta log record ("+row+","+col+")");
+      active.computeIfAbsent(row, 
+        k -> new DblArray1SparseVector(_c, Double.NaN)).setCoord(col, val);
+    };
+    SparseDeltaLog.replay(frozen_log, replayer);
+    if (!Files.exists(Paths.get(frozen_log))) {
+      SparseDeltaLog.replay(log, replayer);
+    }
+    else {
+      SparseDeltaLog.replay(log, replayer);
+      final String tmp = log+".tmp";
+      Files.deleteIfExists(Paths.get(tmp));
+      try (SparseDeltaLog out = new SparseDeltaLog(tmp)) {
+        for (Map.Entry<Integer, DblArray1SparseVector> e : active.entrySet()) {
+          DblArray1SparseVector d = e.getValue();
+          for (int k=0; k<d.getNumNonZeros(); k++) {
+            out.append(e.getKey(), d.getIthNonZeroPos(k), 
+                       d.getIthNonZeroVal(k));
           }
         }
-        return ri;
       }
-      catch (IOException e) {
-        throw new IllegalStateException("data file no longer available");
-      }    
+      Files.move(Paths.get(tmp), Paths.get(log), 
+                 StandardCopyOption.REPLACE_EXISTING);
+      Files.delete(Paths.get(frozen_log));
+    }
+    long n = 0;
+    for (DblArray1SparseVector d : active.values()) n += d.getNumNonZeros();
+    _numDeltaWrites.set(n);
+  }
+  
+  
+  /**
+   * return the type of the values stored by the given source: that of the
+   * binary file, or doubles for text files. Compaction and transposition keep
+   * the precision of the data file this way.
+   * @param src SparseRowSourceIntf
+   * @return int
+   */
+  private static int getValueType(SparseRowSourceIntf src) {
+    return src instanceof SparseMatrixBinaryFile ?
+      ((SparseMatrixBinaryFile) src).getValueType() :
+      SparseMatrixBinaryFile._DOUBLE_VALUES;
+  }
+  
+  
+  /**
+   * return the row with the cells written in the given delta (those whose 
+   * value is not the delta's default) overriding the cells of the given row.
+   * The result has the row's default value, and none of its non-defaults are
+   * equal to it. If the row is a delta too, the result is their merged delta.
+   * @param row DblArray1SparseVector
+   * @param delta DblArray1SparseVector
+   * @return DblArray1SparseVector
+   */
+  private static DblArray1SparseVector applyDelta(DblArray1SparseVector row,
+                                                  DblArray1SparseVector delta) {
+    final double def = row.getDefaultValue();
+    final int[] ri = row.getIndices();
+    final double[] rv = row.getValues();
+    final int rlen = row.getILen();
+    final int[] di = delta.getIndices();
+    final double[] dv = delta.getValues();
+    final int dlen = delta.getILen();
+    int[] inds = new int[rlen+dlen];
+    double[] vals = new double[rlen+dlen];
+    int p = 0, q = 0, n = 0;
+    while (p<rlen || q<dlen) {
+      final int ind;
+      final double val;
+      if (q>=dlen || (p<rlen && ri[p]<di[q])) {
+        ind = ri[p];
+        val = rv[p++];
+      }
+      else {
+        if (p<rlen && ri[p]==di[q]) ++p;
+        ind = di[q];
+        val = dv[q++];
+      }
+      if (Double.compare(val, def)!=0) {
+        inds[n] = ind;
+        vals[n++] = val;
+      }
+    }
+    return new DblArray1SparseVector(def, inds, vals, row.getNumCoords(), n);
+  }
+  
+  
+  /**
+   * schedules the loading of the chunks in the read-ahead window after the 
+   * given chunk, if the chunk differs from the last one requested.
+   * @param chunk int
+   */
+  private void readAhead(int chunk) {
+    if (chunk==_lastChunk) return;
+    _lastChunk = chunk;
+    final int window = _readAheadWindow;
+    ExecutorService prefetcher;
+    synchronized (this) {
+      prefetcher = _prefetcher;
+    }
+    if (prefetcher==null) return;
+    final int last = (int) Math.min((long)chunk+window, _numChunks-1);
+    for (int k=chunk+1; k<=last; k++) {
+      if (_slots.get(k)!=null || _loads.get(k)!=null || !_prefetching.add(k)) 
+        continue;
+      final int kk = k;
+      try {
+        prefetcher.execute(() -> prefetch(kk));
+      }
+      catch (RejectedExecutionException e) {  // read-ahead just turned off
+        _prefetching.remove(k);
+        return;
+      }
+    }
+  }
+  
+  
+  /**
+   * loads the given chunk into the cache, unless it is already there. Runs in
+   * the read-ahead thread. I/O errors are ignored, as they will be reported
+   * to the thread that requests a row of the chunk.
+   * @param chunk int
+   */
+  private void prefetch(int chunk) {
+    try {
+      if (_slots.get(chunk)==null) loadChunk(chunk, false);
+    }
+    catch (IllegalStateException e) {
+      // no-op
     }
     finally {
-      if (read_locked) _rwRowChunkLocks[start_chunk].readLock().unlock();
-      if (write_locked) _rwRowChunkLocks[start_chunk].writeLock().unlock();
+      _prefetching.remove(chunk);
     }
   }
   
@@ -301,14 +978,93 @@ public final class BigDiskSupportedDblArray2SparseMatrix implements MatrixIntf {
   
   
   /**
-   * finds the index of the chunk into which row belongs, and gets a read-lock
-   * on it.
-   * @param row int
-   * @return int the chunk-index of the row passed in
+   * auxiliary immutable class holding the data source of the matrix, its 
+   * column file (null if not opened yet) and the delta overlays: the active 
+   * one receiving the writes, and the one frozen by a compaction in progress
+   * (null otherwise). The deltas of the active overlay are accessed while 
+   * holding their lock; frozen deltas are no longer modified.
    */
-  private int getChunkReadLock(int row) {
-    int start_chunk = row / _MIN_ROWS_CHUNK_2_READ;
-    _rwRowChunkLocks[start_chunk].readLock().lock();
-    return start_chunk;
+  private static final class State {
+    private final SparseRowSourceIntf _source;
+    private final SparseMatrixBinaryFile _columns;
+    private final Map<Integer, DblArray1SparseVector> _frozen;
+    private final ConcurrentHashMap<Integer, DblArray1SparseVector> _active;
+    
+    private State(SparseRowSourceIntf source, SparseMatrixBinaryFile columns,
+                  Map<Integer, DblArray1SparseVector> frozen,
+                  ConcurrentHashMap<Integer, DblArray1SparseVector> active) {
+      _source = source;
+      _columns = columns;
+      _frozen = frozen;
+      _active = active;
+    }
+    
+    /**
+     * return the value last written to the (i,j)-th cell, or NaN if not 
+     * written.
+     */
+    private double getDelta(int i, int j) {
+      DblArray1SparseVector d = _active.get(i);
+      if (d!=null) {
+        final double v;
+        synchronized (d) {
+          v = d.getCoord(j);
+        }
+        if (!Double.isNaN(v)) return v;
+      }
+      if (_frozen!=null && (d=_frozen.get(i))!=null) return d.getCoord(j);
+      return Double.NaN;
+    }
+    
+    /**
+     * return the base row i with its deltas applied; the base row itself if
+     * it has no deltas.
+     */
+    private DblArray1SparseVector apply(int i, DblArray1SparseVector base) {
+      DblArray1SparseVector f = _frozen!=null ? _frozen.get(i) : null;
+      DblArray1SparseVector a = _active.get(i);
+      DblArray1SparseVector row = base;
+      if (f!=null) row = applyDelta(row, f);
+      if (a!=null) {
+        synchronized (a) {
+          row = applyDelta(row, a);
+        }
+      }
+      return row;
+    }
+    
+    /**
+     * return the base column j with the writes to its cells applied; the 
+     * base column itself if none of its cells were written.
+     */
+    private DblArray1SparseVector applyToColumn(int j, 
+                                                DblArray1SparseVector base) {
+      TreeMap<Integer, Double> writes = null;
+      if (_frozen!=null) {
+        for (Map.Entry<Integer, DblArray1SparseVector> e : _frozen.entrySet()) {
+          final double v = e.getValue().getCoord(j);
+          if (Double.isNaN(v)) continue;
+          if (writes==null) writes = new TreeMap<>();
+          writes.put(e.getKey(), v);
+        }
+      }
+      for (Map.Entry<Integer, DblArray1SparseVector> e : _active.entrySet()) {
+        final DblArray1SparseVector d = e.getValue();
+        final double v;
+        synchronized (d) {
+          v = d.getCoord(j);
+        }
+        if (Double.isNaN(v)) continue;
+        if (writes==null) writes = new TreeMap<>();
+        writes.put(e.getKey(), v);
+      }
+      if (writes==null) return base;
+      DblArray1SparseVector delta = 
+        new DblArray1SparseVector(base.getNumCoords(), Double.NaN);
+      for (Map.Entry<Integer, Double> e : writes.entrySet()) {
+        delta.setCoord(e.getKey(), e.getValue());  // appends, as keys ascend
+      }
+      return applyDelta(base, delta);
+    }
   }
 }
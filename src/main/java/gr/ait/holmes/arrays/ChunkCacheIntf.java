@@ -0,0 +1,115 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+
+/**
+ * interface of bounded caches of row chunks of disk-backed matrices such as
+ * <CODE>BigDiskSupportedDblArray2SparseMatrix</CODE>. A chunk is a block of
+ * consecutive rows, identified by its index, and it is the unit of loading
+ * and eviction. The capacity of a cache is a budget on the total weight of
+ * the chunks it holds, the weight of a chunk being the total number of
+ * non-zeros of its rows plus the number of its rows (so that empty rows are
+ * not free); each non-zero of a sparse row takes 12 bytes of heap, so a
+ * budget of w corresponds to roughly 12*w bytes. Implementations must be
+ * thread-safe.
+ * @author itc
+ */
+public interface ChunkCacheIntf {
+  /**
+   * return the rows of the given chunk if it is in the cache, else null. The
+   * call counts as a hit or a miss, and as an access for the eviction policy.
+   * @param chunk int
+   * @return DblArray1SparseVector[] may be null
+   */
+  public DblArray1SparseVector[] get(int chunk);
+
+
+  /**
+   * return the rows of the given chunk if it is in the cache, else null,
+   * without counting a hit or miss.
+   * @param chunk int
+   * @return DblArray1SparseVector[] may be null
+   */
+  public DblArray1SparseVector[] peek(int chunk);
+
+
+  /**
+   * adds the given chunk to the cache, evicting other chunks (or, depending on
+   * the policy, the chunk itself) as needed to stay within the budget. If the
+   * chunk is already in the cache, the call has no effect.
+   * @param chunk int
+   * @param rows DblArray1SparseVector[]
+   */
+  public void put(int chunk, DblArray1SparseVector[] rows);
+
+
+  /**
+   * records a hit on the given chunk, for callers that found the chunk in
+   * their own index of the cached chunks (kept up-to-date via an eviction
+   * listener) instead of calling <CODE>get()</CODE>. The call must not block:
+   * implementations may record the access for the eviction policy lazily, or
+   * even drop it under contention, but must count the hit.
+   * @param chunk int
+   */
+  public void recordHit(int chunk);
+
+
+  /**
+   * records a miss on the given chunk, for callers that did not find the
+   * chunk in their own index of the cached chunks.
+   * @param chunk int
+   */
+  public void recordMiss(int chunk);
+
+
+  /**
+   * sets the listener notified whenever a chunk leaves the cache.
+   * @param listener ChunkEvictionListenerIntf may be null
+   */
+  public void setEvictionListener(ChunkEvictionListenerIntf listener);
+
+
+  /**
+   * removes all chunks from the cache (not counted as evictions, but notified
+   * to the eviction listener).
+   */
+  public void clear();
+
+
+  /**
+   * get the number of <CODE>get()</CODE> calls that found their chunk.
+   * @return long
+   */
+  public long getHitCount();
+
+
+  /**
+   * get the number of <CODE>get()</CODE> calls that did not find their chunk.
+   * @return long
+   */
+  public long getMissCount();
+
+
+  /**
+   * get the number of chunks evicted so far to stay within the budget.
+   * @return long
+   */
+  public long getEvictionCount();
+
+
+  /**
+   * get the total weight of the chunks currently in the cache.
+   * @return long
+   */
+  public long getWeight();
+
+
+  /**
+   * get the weight budget of this cache.
+   * @return long
+   */
+  public long getMaxWeight();
+}
@@ -0,0 +1,23 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+
+/**
+ * interface of objects notified when chunks leave a <CODE>ChunkCacheIntf
+ * </CODE> cache, used by owners of the cache that keep their own lock-free
+ * index of the cached chunks.
+ * @author itc
+ */
+public interface ChunkEvictionListenerIntf {
+  /**
+   * called when the given chunk leaves the cache, either because it was
+   * evicted or because the cache was cleared. The call is made while the
+   * cache's lock is held, so it must be fast and must not call the cache.
+   * @param chunk int
+   * @param rows DblArray1SparseVector[] the rows of the chunk
+   */
+  public void removed(int chunk, DblArray1SparseVector[] rows);
+}
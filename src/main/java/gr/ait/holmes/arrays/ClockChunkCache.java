@@ -0,0 +1,85 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+
+/**
+ * chunk cache implementing the CLOCK (second-chance) approximation of LRU:
+ * chunks sit on a circular queue with a reference bit that is set on every
+ * access; the eviction hand clears set bits and evicts the first chunk found
+ * with its bit clear. Accesses only set a bit, and do not re-order any list.
+ * @author itc
+ */
+public class ClockChunkCache extends AbstractChunkCache {
+  private final HashMap<Integer, Entry> _map = new HashMap<>();
+  private final ArrayDeque<Entry> _clock = new ArrayDeque<>();  // head=hand
+
+
+  /**
+   * sole constructor.
+   * @param maxWeight long the budget of the cache
+   * @throws IllegalArgumentException if maxWeight&le;0
+   */
+  public ClockChunkCache(long maxWeight) {
+    super(maxWeight);
+  }
+
+
+  protected DblArray1SparseVector[] lookup(int chunk, boolean access) {
+    Entry e = _map.get(chunk);
+    if (e==null) return null;
+    if (access) e._ref = true;
+    return e._rows;
+  }
+
+
+  protected void insert(int chunk, DblArray1SparseVector[] rows, long weight) {
+    Entry e = new Entry(chunk, rows, weight);
+    _map.put(chunk, e);
+    _clock.addLast(e);  // just behind the hand
+  }
+
+
+  protected void evict() {
+    while (isOverweight() && !_clock.isEmpty()) {
+      Entry e = _clock.pollFirst();
+      if (e._ref) {  // second chance
+        e._ref = false;
+        _clock.addLast(e);
+      }
+      else {
+        _map.remove(e._chunk);
+        removed(e._chunk, e._rows, e._weight, true);
+      }
+    }
+  }
+
+
+  protected void removeAll() {
+    for (Entry e : _clock) removed(e._chunk, e._rows, e._weight, false);
+    _map.clear();
+    _clock.clear();
+  }
+
+
+  /**
+   * auxiliary class holding a chunk, its weight and its reference bit.
+   */
+  private static final class Entry {
+    private final int _chunk;
+    private final DblArray1SparseVector[] _rows;
+    private final long _weight;
+    private boolean _ref;
+
+    private Entry(int chunk, DblArray1SparseVector[] rows, long weight) {
+      _chunk = chunk;
+      _rows = rows;
+      _weight = weight;
+    }
+  }
+}
@@ -0,0 +1,665 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+
+
+/**
+ * immutable sparse implementation of VectorIntf storing the indices of its
+ * non-zeros delta-encoded: the non-zeros are grouped in blocks of 128, the
+ * first index of each block is stored as an int (the skip table), and each
+ * other index as the gap from the previous one, minus one, in a variable-
+ * length byte code (7 bits per byte, the high bit marking that more bytes
+ * follow). Sorted indices of text-feature vectors have small gaps, so the
+ * indices take 1 to 2 bytes each instead of 4, plus 8 bytes per block. The
+ * values are kept as doubles, so the vector is an exact, compressed copy of
+ * a <CODE>DblArray1SparseVector</CODE> or <CODE>IntArray1SparseVector</CODE>
+ * with zero default value.
+ * <p><CODE>getCoord()</CODE> binary-searches the skip table and decodes at
+ * most one block. The kernels (inner products, and the row kernels of
+ * <CODE>MatrixOps</CODE> via <CODE>gather()</CODE> and
+ * <CODE>scatter()</CODE>) decode the indices sequentially as they go, and
+ * sequential calls of <CODE>getIthNonZeroPos()</CODE> decode each block once,
+ * so the usual loops over the non-zeros cost O(1) per non-zero.
+ * <CODE>CompressedDblArray2SparseMatrix</CODE> holds matrices whose rows are
+ * vectors of this class.</p>
+ * Methods that would modify the vector (<CODE>setCoord(), addMul(), div()
+ * </CODE>) throw <CODE>UnsupportedOperationException</CODE>;
+ * <CODE>newCopy()</CODE> and <CODE>newInstance()</CODE> return mutable
+ * <CODE>DblArray1SparseVector</CODE> copies, while the other operations
+ * producing new vectors (<CODE>newCopyMultBy(), newInstance(double[])</CODE>)
+ * return compressed vectors. The class is thread-safe.
+ * @author itc
+ */
+public final class CompressedDblArray1SparseVector implements SparseVectorIntf {
+  private static final long serialVersionUID = 1L;
+  private final static int _BLOCK_SHIFT = 7;
+  private final static int _BLOCK_SIZE = 1 << _BLOCK_SHIFT;
+
+  private final int _n;
+  private final int _ilen;
+  private final int[] _blockFirst;  // the first index of each block
+  private final int[] _blockOffset;  // the position in _gaps of each block
+  private final byte[] _gaps;
+  private final double[] _values;
+  /**
+   * the last block decoded by <CODE>getIthNonZeroPos()</CODE>.
+   */
+  private transient volatile DecodedBlock _lastBlock;
+
+
+  /**
+   * constructs the compressed copy of the given sparse vector.
+   * @param v SparseVectorIntf must have zero default value
+   * @throws IllegalArgumentException if v is null or has non-zero default
+   * value
+   */
+  public CompressedDblArray1SparseVector(SparseVectorIntf v) {
+    if (v==null || Double.compare(v.getDefaultValue(), 0.0)!=0)
+      throw new IllegalArgumentException("null vector or non-zero default");
+    final int nnz = v.getNumNonZeros();
+    int[] inds = new int[nnz];
+    double[] vals = new double[nnz];
+    int len = 0;
+    for (int k=0; k<nnz; k++) {
+      final double val = v.getIthNonZeroVal(k);
+      if (val==0.0) continue;
+      inds[len] = v.getIthNonZeroPos(k);
+      vals[len++] = val;
+    }
+    _n = v.getNumCoords();
+    _ilen = len;
+    _values = Arrays.copyOf(vals, len);
+    _blockFirst = new int[numBlocks(len)];
+    _blockOffset = new int[_blockFirst.length];
+    _gaps = encode(inds, len, _blockFirst, _blockOffset);
+  }
+
+
+  /**
+   * public constructor, compressing the arrays passed in.
+   * @param indices int[] must be in strictly ascending order
+   * @param values double[] must not contain zeros
+   * @param n int total length of the vector
+   * @throws IllegalArgumentException if the arrays are null or their lengths
+   * don't match, if indices don't ascend or are out of range, or if some value
+   * is zero
+   */
+  public CompressedDblArray1SparseVector(int[] indices, double[] values,
+                                         int n) {
+    if (indices==null || values==null || indices.length!=values.length)
+      throw new IllegalArgumentException("Arguments null or dimensions "+
+                                         "don't match");
+    if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+    final int ilen = indices.length;
+    for (int i=0; i<ilen; i++) {
+      if (indices[i]<0 || indices[i]>=n || (i>0 && indices[i]<=indices[i-1]))
+        throw new IllegalArgumentException("indices not in ascending order "+
+                                           "or out of range");
+      if (values[i]==0.0)
+        throw new IllegalArgumentException("zero component "+i);
+    }
+    _n = n;
+    _ilen = ilen;
+    _values = Arrays.copyOf(values, ilen);
+    _blockFirst = new int[numBlocks(ilen)];
+    _blockOffset = new int[_blockFirst.length];
+    _gaps = encode(indices, ilen, _blockFirst, _blockOffset);
+  }
+
+
+  /**
+   * package-private constructor sharing the encoded indices of the given
+   * vector, with the values passed in (not copied).
+   * @param v CompressedDblArray1SparseVector
+   * @param values double[] of the same length as v's values, with no zeros
+   */
+  private CompressedDblArray1SparseVector(CompressedDblArray1SparseVector v,
+                                          double[] values) {
+    _n = v._n;
+    _ilen = v._ilen;
+    _blockFirst = v._blockFirst;
+    _blockOffset = v._blockOffset;
+    _gaps = v._gaps;
+    _values = values;
+  }
+
+
+  /**
+   * same as <CODE>newInstance()</CODE>.
+   * @return VectorIntf  // DblArray1SparseVector
+   */
+  public VectorIntf newCopy() {
+    return newInstance();
+  }
+
+
+  /**
+   * return a new compressed vector, with each component multiplied by the
+   * argument. The new vector shares the encoded indices of this one.
+   * @param multFactor double
+   * @return VectorIntf
+   */
+  public VectorIntf newCopyMultBy(double multFactor) {
+    double[] vals = new double[_ilen];
+    for (int k=0; k<_ilen; k++) {
+      vals[k] = _values[k]*multFactor;
+      if (vals[k]==0.0) {  // some product underflowed
+        return new CompressedDblArray1SparseVector(
+          (SparseVectorIntf) toDblArray1SparseVector().newCopyMultBy(multFactor));
+      }
+    }
+    return new CompressedDblArray1SparseVector(this, vals);
+  }
+
+
+  /**
+   * return a new (mutable) copy of this vector, as callers of this method
+   * expect to be able to modify the copy.
+   * @return VectorIntf  // DblArray1SparseVector
+   */
+  public VectorIntf newInstance() {
+    return toDblArray1SparseVector();
+  }
+
+
+  /**
+   * return a new compressed vector holding the non-zeros of the argument.
+   * @param arg double[]
+   * @return VectorIntf
+   * @throws IllegalArgumentException if arg is null or empty
+   */
+  public VectorIntf newInstance(double[] arg) {
+    if (arg==null || arg.length==0)
+      throw new IllegalArgumentException("null or empty arg");
+    int nnz = 0;
+    for (int i=0; i<arg.length; i++) if (arg[i]!=0.0) ++nnz;
+    int[] inds = new int[nnz];
+    double[] vals = new double[nnz];
+    int k = 0;
+    for (int i=0; i<arg.length; i++) {
+      if (arg[i]!=0.0) {
+        inds[k] = i;
+        vals[k++] = arg[i];
+      }
+    }
+    return new CompressedDblArray1SparseVector(inds, vals, arg.length);
+  }
+
+
+  /**
+   * return a new (mutable) <CODE>DblArray1SparseVector</CODE> with the same
+   * components as this vector.
+   * @return DblArray1SparseVector
+   */
+  public DblArray1SparseVector toDblArray1SparseVector() {
+    return new DblArray1SparseVector(0.0, decodeIndices(), _values, _n, _ilen);
+  }
+
+
+  /**
+   * return the number of coordinates of this vector.
+   * @return int
+   */
+  public int getNumCoords() {
+    return _n;
+  }
+
+
+  /**
+   * return a double[] representation of this vector.
+   * @return double[]
+   */
+  public double[] getDblArray1() {
+    double[] x = new double[_n];
+    final int[] inds = new int[Math.min(_ilen, _BLOCK_SIZE)];
+    for (int b=0; b<_blockFirst.length; b++) {
+      final int len = decodeBlock(b, inds, 0);
+      final int off = b << _BLOCK_SHIFT;
+      for (int k=0; k<len; k++) x[inds[k]] = _values[off+k];
+    }
+    return x;
+  }
+
+
+  /**
+   * return the i-th coordinate of this vector, in O(log(nnz/128)) time plus
+   * the decoding of at most one block (which is kept, as in
+   * <CODE>getIthNonZeroPos()</CODE>).
+   * @param i int
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getCoord(int i) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    int lo = 0, hi = _blockFirst.length;  // find the last block starting <= i
+    while (lo<hi) {
+      final int mid = (lo+hi) >>> 1;
+      if (_blockFirst[mid]<=i) lo = mid+1;
+      else hi = mid;
+    }
+    final int b = lo-1;
+    if (b<0) return 0.0;
+    final int k = Arrays.binarySearch(getBlock(b)._inds, i);
+    return k>=0 ? _values[(b << _BLOCK_SHIFT)+k] : 0.0;
+  }
+
+
+  /**
+   * unsupported: vectors of this class are immutable.
+   * @param i int
+   * @param val double
+   * @throws UnsupportedOperationException always
+   */
+  public void setCoord(int i, double val) {
+    throw new UnsupportedOperationException("immutable vector");
+  }
+
+
+  /**
+   * get the number of non-zeros of this vector.
+   * @return int
+   */
+  public int getNumNonZeros() {
+    return _ilen;
+  }
+
+
+  /**
+   * get the index of the i-th non-zero of this vector. The block of the
+   * non-zero is decoded and kept for subsequent calls, so that a loop over
+   * all non-zeros in order decodes each block once.
+   * @param i int
+   * @return int
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public int getIthNonZeroPos(int i) {
+    if (i<0 || i>=_ilen)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _ilen+"]");
+    return getBlock(i >>> _BLOCK_SHIFT)._inds[i & (_BLOCK_SIZE-1)];
+  }
+
+
+  /**
+   * get the value of the i-th non-zero of this vector.
+   * @param i int
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getIthNonZeroVal(int i) {
+    if (i<0 || i>=_ilen)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _ilen+"]");
+    return _values[i];
+  }
+
+
+  /**
+   * unsupported: vectors of this class are immutable.
+   * @param m double
+   * @param other VectorIntf
+   * @throws UnsupportedOperationException always
+   */
+  public void addMul(double m, VectorIntf other) {
+    throw new UnsupportedOperationException("immutable vector");
+  }
+
+
+  /**
+   * unsupported: vectors of this class are immutable.
+   * @param h double
+   * @throws UnsupportedOperationException always
+   */
+  public void div(double h) {
+    throw new UnsupportedOperationException("immutable vector");
+  }
+
+
+  /**
+   * unsupported: vectors of this class are immutable.
+   * @param a double
+   * @throws UnsupportedOperationException always
+   */
+  public void scale(double a) {
+    throw new UnsupportedOperationException("immutable vector");
+  }
+
+
+  /**
+   * unsupported: vectors of this class are immutable.
+   * @param a double
+   * @param x VectorIntf
+   * @param b double
+   * @throws UnsupportedOperationException always
+   */
+  public void axpby(double a, VectorIntf x, double b) {
+    throw new UnsupportedOperationException("immutable vector");
+  }
+
+
+  /**
+   * return true iff all components are zero.
+   * @return boolean
+   */
+  public boolean isAtOrigin() {
+    return _ilen==0;
+  }
+
+
+  /**
+   * compute the inner product of this vector with the argument. Against
+   * <CODE>DblArray1Vector</CODE> objects the values are gathered from the
+   * dense array as the indices are decoded; against sparse vectors with zero
+   * default the indices are decoded once and the product is a linear merge of
+   * the two index sequences.
+   * @param other VectorIntf
+   * @return double
+   * @throws IllegalArgumentException if other is null or its dimension
+   * doesn't match this vector's dimension
+   */
+  public double innerProduct(VectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("dimensions don't match or null "+
+                                         "argument passed in");
+    if (other instanceof DblArray1Vector) {
+      return gather(((DblArray1Vector) other).get_x());
+    }
+    int[] ib = null;
+    double[] vb = null;
+    int fb = 0;
+    int tb = 0;
+    if (other instanceof DblArray1SparseVector &&
+        Double.compare(((DblArray1SparseVector) other).getDefaultValue(),
+                       0.0)==0) {
+      DblArray1SparseVector o = (DblArray1SparseVector) other;
+      ib = o.getIndices(); vb = o.getValues(); tb = o.getILen();
+    }
+    else if (other instanceof DblArray1CSRRowView) {
+      DblArray1CSRRowView o = (DblArray1CSRRowView) other;
+      ib = o.getColInds(); vb = o.getVals(); fb = o.getFrom(); tb = o.getTo();
+    }
+    if (ib!=null) {
+      return SparseKernels.dot(decodeIndices(), _values, 0, _ilen,
+                               ib, vb, fb, tb);
+    }
+    if (SparseKernels.isZeroDefaultSparse(other)) {
+      return SparseKernels.dot(this, (SparseVectorIntf) other);
+    }
+    final int[] inds = decodeIndices();
+    double sum = 0.0;
+    for (int k=0; k<_ilen; k++) sum += _values[k]*other.getCoord(inds[k]);
+    return sum;
+  }
+
+
+  /**
+   * return the k-th norm of this vector.
+   * @param k int
+   * @return double
+   * @throws IllegalArgumentException if k &le; 0
+   */
+  public double norm(int k) {
+    if (k<=0) throw new IllegalArgumentException("k<=0");
+    if (k==2) return norm2();
+    double res = 0.0;
+    for (int i=0; i<_ilen; i++) res += Math.pow(Math.abs(_values[i]), k);
+    return Math.pow(res, 1.0/k);
+  }
+
+
+  /**
+   * short-cut for norm(2).
+   * @return double
+   */
+  public double norm2() {
+    double res2 = 0.0;
+    for (int i=0; i<_ilen; i++) res2 += _values[i]*_values[i];
+    return Math.sqrt(res2);
+  }
+
+
+  /**
+   * computes the infinity norm of this vector.
+   * @return double
+   */
+  public double normInfinity() {
+    double res = 0.0;
+    for (int i=0; i<_ilen; i++) {
+      final double absxi = Math.abs(_values[i]);
+      if (absxi>res) res = absxi;
+    }
+    return res;
+  }
+
+
+  /**
+   * return the number of bytes the encoded indices take, including the skip
+   * table.
+   * @return long
+   */
+  public long getIndexBytes() {
+    return _gaps.length+8L*_blockFirst.length;
+  }
+
+
+  /**
+   * return true iff the other vector is exactly equal to this one
+   * component-wise, regardless of its representation.
+   * @param other Object
+   * @return boolean
+   */
+  public boolean equals(Object other) {
+    if (other==null || other instanceof VectorIntf == false) return false;
+    VectorIntf o = (VectorIntf) other;
+    if (o.getNumCoords()!=_n) return false;
+    if (other instanceof SparseVectorIntf) {
+      return SparseKernels.equals(this, (SparseVectorIntf) other);
+    }
+    if (other instanceof DblArray1Vector) {
+      return SparseKernels.equals(this, ((DblArray1Vector) other).get_x());
+    }
+    for (int i=0; i<_n; i++) {
+      if (Double.compare(getCoord(i), o.getCoord(i))!=0) return false;
+    }
+    return true;
+  }
+
+
+  /**
+   * return the integer part of the first component of this vector, as the
+   * other vector classes of this package do.
+   * @return int
+   */
+  public int hashCode() {
+    return (int) getCoord(0);
+  }
+
+
+  /**
+   * return a String representation of this vector.
+   * @return String
+   */
+  public String toString() {
+    final int[] inds = decodeIndices();
+    StringBuilder x = new StringBuilder("[");
+    for (int i=0; i<_ilen; i++) {
+      if (i>0) x.append(", ");
+      x.append("(").append(inds[i]).append(",").append(_values[i]).append(")");
+    }
+    x.append("](_n=").append(_n).append("/ _ilen=").append(_ilen).append(")");
+    return x.toString();
+  }
+
+
+  /**
+   * return sum(v[k]*x[i[k]]) over the non-zeros (i[k],v[k]) of this vector,
+   * decoding the indices as it goes.
+   * @param x double[] of length getNumCoords()
+   * @return double
+   */
+  double gather(double[] x) {
+    double sum = 0.0;
+    final int[] inds = new int[Math.min(_ilen, _BLOCK_SIZE)];
+    for (int b=0; b<_blockFirst.length; b++) {
+      final int len = decodeBlock(b, inds, 0);
+      final int off = b << _BLOCK_SHIFT;
+      for (int k=0; k<len; k++) sum += _values[off+k]*x[inds[k]];
+    }
+    return sum;
+  }
+
+
+  /**
+   * performs acc[i[k]] += a*v[k] over the non-zeros (i[k],v[k]) of this
+   * vector, decoding the indices as it goes.
+   * @param a double
+   * @param acc double[] of length getNumCoords()
+   */
+  void scatter(double a, double[] acc) {
+    final int[] inds = new int[Math.min(_ilen, _BLOCK_SIZE)];
+    for (int b=0; b<_blockFirst.length; b++) {
+      final int len = decodeBlock(b, inds, 0);
+      final int off = b << _BLOCK_SHIFT;
+      for (int k=0; k<len; k++) acc[inds[k]] += a*_values[off+k];
+    }
+  }
+
+
+  /**
+   * return the indices of the non-zeros, decoded into a new int[].
+   * @return int[]
+   */
+  int[] decodeIndices() {
+    int[] inds = new int[_ilen];
+    for (int b=0; b<_blockFirst.length; b++) {
+      decodeBlock(b, inds, b << _BLOCK_SHIFT);
+    }
+    return inds;
+  }
+
+
+  /**
+   * package-private accessor to the values array.
+   * @return double[]
+   */
+  double[] getValues() {
+    return _values;
+  }
+
+
+  /**
+   * return the decoded indices of block b, decoding them unless they are the
+   * ones last decoded by this method.
+   * @param b int
+   * @return DecodedBlock
+   */
+  private DecodedBlock getBlock(int b) {
+    DecodedBlock db = _lastBlock;
+    if (db==null || db._block!=b) {
+      int[] inds = new int[blockEnd(b)-(b << _BLOCK_SHIFT)];
+      decodeBlock(b, inds, 0);
+      db = new DecodedBlock(b, inds);
+      _lastBlock = db;
+    }
+    return db;
+  }
+
+
+  /**
+   * decodes the indices of block b into out[off...]. This is the only place
+   * the gaps are decoded.
+   * @param b int
+   * @param out int[]
+   * @param off int
+   * @return int the number of indices of the block
+   */
+  private int decodeBlock(int b, int[] out, int off) {
+    final int len = blockEnd(b)-(b << _BLOCK_SHIFT);
+    int idx = _blockFirst[b];
+    int p = _blockOffset[b];
+    out[off] = idx;
+    for (int k=1; k<len; k++) {
+      int gap = 0;
+      int shift = 0;
+      byte c;
+      do {
+        c = _gaps[p++];
+        gap |= (c & 0x7F) << shift;
+        shift += 7;
+      } while (c<0);
+      idx += gap+1;
+      out[off+k] = idx;
+    }
+    return len;
+  }
+
+
+  /**
+   * return the position after the last non-zero of block b.
+   * @param b int
+   * @return int
+   */
+  private int blockEnd(int b) {
+    return Math.min((b+1) << _BLOCK_SHIFT, _ilen);
+  }
+
+
+  /**
+   * return the number of blocks for the given number of non-zeros.
+   * @param ilen int
+   * @return int
+   */
+  private static int numBlocks(int ilen) {
+    return (ilen+_BLOCK_SIZE-1) >>> _BLOCK_SHIFT;
+  }
+
+
+  /**
+   * encodes the first len (strictly ascending) indices, filling in the skip
+   * table, and returns the encoded gaps.
+   * @param inds int[]
+   * @param len int
+   * @param blockFirst int[] output
+   * @param blockOffset int[] output
+   * @return byte[]
+   */
+  private static byte[] encode(int[] inds, int len, int[] blockFirst,
+                               int[] blockOffset) {
+    byte[] out = new byte[len+len/4+8];
+    int p = 0;
+    for (int k=0; k<len; k++) {
+      if ((k & (_BLOCK_SIZE-1))==0) {
+        blockFirst[k >>> _BLOCK_SHIFT] = inds[k];
+        blockOffset[k >>> _BLOCK_SHIFT] = p;
+        continue;
+      }
+      if (out.length-p<5) out = Arrays.copyOf(out, 2*out.length);
+      int gap = inds[k]-inds[k-1]-1;
+      while ((gap & ~0x7F)!=0) {
+        out[p++] = (byte) ((gap & 0x7F) | 0x80);
+        gap >>>= 7;
+      }
+      out[p++] = (byte) gap;
+    }
+    return Arrays.copyOf(out, p);
+  }
+
+
+  /**
+   * the decoded indices of a block.
+   */
+  private static final class DecodedBlock {
+    private final int _block;
+    private final int[] _inds;
+
+    DecodedBlock(int block, int[] inds) {
+      _block = block;
+      _inds = inds;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+
+/**
+ * immutable sparse matrix whose rows are
+ * <CODE>CompressedDblArray1SparseVector</CODE> objects, i.e. a
+ * <CODE>DblArray2SparseMatrix</CODE> with delta-encoded row indices, for
+ * matrices that must stay resident in memory. <CODE>MatrixOps</CODE> processes
+ * its rows with loops decoding the indices on the fly. <CODE>setCoord()
+ * </CODE> throws <CODE>UnsupportedOperationException</CODE>. The class is
+ * thread-safe.
+ * @author itc
+ */
+public final class CompressedDblArray2SparseMatrix implements MatrixIntf {
+	private final CompressedDblArray1SparseVector[] _rows;
+	private final int _cols;
+
+
+	/**
+	 * constructs the compressed copy of the given matrix, row by row. Rows that
+	 * are sparse vectors with zero default value are compressed directly; other
+	 * rows go through their <CODE>getDblArray1()</CODE> representation.
+	 * @param A MatrixIntf
+	 * @throws IllegalArgumentException if A is null
+	 */
+	public CompressedDblArray2SparseMatrix(MatrixIntf A) {
+		if (A==null) throw new IllegalArgumentException("null matrix");
+		final int rows = A.getNumRows();
+		_cols = A.getNumCols();
+		_rows = new CompressedDblArray1SparseVector[rows];
+		for (int i=0; i<rows; i++) {
+			final VectorIntf ri = A.getIthRow(i);
+			if (ri instanceof CompressedDblArray1SparseVector) {
+				_rows[i] = (CompressedDblArray1SparseVector) ri;
+			}
+			else if (SparseKernels.isZeroDefaultSparse(ri)) {
+				_rows[i] = new CompressedDblArray1SparseVector((SparseVectorIntf) ri);
+			}
+			else {
+				final double[] x = ri.getDblArray1();
+				int nnz = 0;
+				for (int j=0; j<x.length; j++) if (x[j]!=0.0) ++nnz;
+				int[] inds = new int[nnz];
+				double[] vals = new double[nnz];
+				int k = 0;
+				for (int j=0; j<x.length; j++) {
+					if (x[j]!=0.0) {
+						inds[k] = j;
+						vals[k++] = x[j];
+					}
+				}
+				_rows[i] = new CompressedDblArray1SparseVector(inds, vals, _cols);
+			}
+		}
+	}
+
+
+	/**
+	 * return the (i,j) element of this matrix.
+	 * @param i int
+	 * @param j int
+	 * @return double
+	 * @throws IndexOutOfBoundsException if i or j are out of range
+	 */
+	public double getCoord(int i, int j) {
+		return _rows[i].getCoord(j);
+	}
+
+
+	/**
+	 * unsupported: matrices of this class are immutable.
+	 * @param i int
+	 * @param j int
+	 * @param val double
+	 * @throws UnsupportedOperationException always
+	 */
+	public void setCoord(int i, int j, double val) {
+		throw new UnsupportedOperationException("immutable matrix");
+	}
+
+
+	/**
+	 * return the i-th row of this matrix (not a copy; rows are immutable).
+	 * @param i int
+	 * @return CompressedDblArray1SparseVector
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public CompressedDblArray1SparseVector getIthRow(int i) {
+		return _rows[i];
+	}
+
+
+	/**
+	 * return the number of rows of this matrix.
+	 * @return int
+	 */
+	public int getNumRows() {
+		return _rows.length;
+	}
+
+
+	/**
+	 * return the number of columns of this matrix.
+	 * @return int
+	 */
+	public int getNumCols() {
+		return _cols;
+	}
+
+
+	/**
+	 * return the number of bytes the encoded row indices take, in total.
+	 * @return long
+	 */
+	public long getIndexBytes() {
+		long res = 0;
+		for (int i=0; i<_rows.length; i++) res += _rows[i].getIndexBytes();
+		return res;
+	}
+}
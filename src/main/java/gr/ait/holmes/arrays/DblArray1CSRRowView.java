@@ -0,0 +1,408 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+
+
+/**
+ * light-weight <CODE>SparseVectorIntf</CODE> view of a single row of a
+ * <CODE>DblArray2CSRMatrix</CODE>. The view holds no data of its own; it only
+ * remembers the slice of the matrix arrays where the row lives. As with the
+ * matrix itself, the non-zero structure of the view is fixed: only values of
+ * components that are already stored can be modified, and operations that
+ * would need to add new non-zeros throw <CODE>UnsupportedOperationException
+ * </CODE>. Methods creating new vectors (<CODE>newCopy()</CODE> etc.) return
+ * independent <CODE>DblArray1SparseVector</CODE> objects. When serialized, a
+ * view is replaced by such an independent copy.
+ * The default value of the components of a view is always zero.
+ * @author itc
+ */
+public final class DblArray1CSRRowView implements SparseVectorIntf {
+	private static final long serialVersionUID = -3120474315316409181L;
+	private final transient int[] _colInds;
+	private final transient double[] _vals;
+	private final transient int _from;  // first position of the row, inclusive
+	private final transient int _to;  // last position of the row, exclusive
+	private final transient int _n;
+
+
+	/**
+	 * package-private constructor, only called from the matrix.
+	 * @param A DblArray2CSRMatrix
+	 * @param r int the row
+	 */
+	DblArray1CSRRowView(DblArray2CSRMatrix A, int r) {
+		_colInds = A.getColInds();
+		_vals = A.getVals();
+		_from = A.getRowPtr()[r];
+		_to = A.getRowPtr()[r+1];
+		_n = A.getNumCols();
+	}
+
+
+	/**
+	 * return a new (unmanaged) <CODE>DblArray1SparseVector</CODE> holding a copy
+	 * of the data of this row.
+	 * @return VectorIntf  // DblArray1SparseVector
+	 */
+	public VectorIntf newInstance() {
+		DblArray1SparseVector r = new DblArray1SparseVector(_n);
+		final int ilen = _to-_from;
+		if (ilen>0) {
+			r.setIndices(Arrays.copyOfRange(_colInds, _from, _to));
+			r.setValues(Arrays.copyOfRange(_vals, _from, _to));
+			r.setILen(ilen);
+		}
+		return r;
+	}
+
+
+	/**
+	 * same as <CODE>newInstance()</CODE>.
+	 * @return VectorIntf  // DblArray1SparseVector
+	 */
+	public VectorIntf newCopy() {
+		return newInstance();
+	}
+
+
+	/**
+	 * return a new <CODE>DblArray1SparseVector</CODE> holding a copy of the
+	 * data of this row, multiplied by the argument.
+	 * @param multFactor double
+	 * @return VectorIntf  // DblArray1SparseVector
+	 */
+	public VectorIntf newCopyMultBy(double multFactor) {
+		DblArray1SparseVector r = (DblArray1SparseVector) newInstance();
+		if (Double.compare(multFactor, 1.0)!=0) {
+			if (Double.compare(multFactor, 0.0)==0) r.reset();
+			else {
+				double[] vals = r.getValues();
+				for (int i=0; i<r.getILen(); i++) vals[i] *= multFactor;
+			}
+		}
+		return r;
+	}
+
+
+	/**
+	 * return a new <CODE>DblArray1SparseVector</CODE> holding the data of the
+	 * argument.
+	 * @param arg double[]
+	 * @return VectorIntf  // DblArray1SparseVector
+	 * @throws IllegalArgumentException if arg is null
+	 */
+	public VectorIntf newInstance(double[] arg) {
+		return new DblArray1SparseVector(_n).newInstance(arg);
+	}
+
+
+	/**
+	 * return the i-th coordinate of this row. Has O(log(nnz)) complexity.
+	 * @param i int
+	 * @return double
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public double getCoord(int i) throws IndexOutOfBoundsException {
+		final int k = find(i);
+		return k>=0 ? _vals[k] : 0.0;
+	}
+
+
+	/**
+	 * set the i-th coordinate of this row, which must be already stored.
+	 * @param i int
+	 * @param val double
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 * @throws UnsupportedOperationException if the i-th component is not stored
+	 * and val is not zero
+	 */
+	public void setCoord(int i, double val) throws IndexOutOfBoundsException {
+		final int k = find(i);
+		if (k>=0) _vals[k] = val;
+		else if (Double.compare(val, 0.0)!=0)
+			throw new UnsupportedOperationException("cannot add non-zero "+i+
+				                                      " to a CSR row");
+	}
+
+
+	/**
+	 * modifies this row by adding the quantity m*other to it. The non-zeros of
+	 * the other vector must be among the stored components of this row.
+	 * @param m double
+	 * @param other VectorIntf
+	 * @throws IllegalArgumentException if other is null or does not have the
+	 * same dimensions as this vector or if m is NaN
+	 * @throws UnsupportedOperationException if the operation would add new
+	 * non-zeros to this row
+	 */
+	public void addMul(double m, VectorIntf other) {
+		if (other==null || other.getNumCoords()!=_n || Double.isNaN(m))
+			throw new IllegalArgumentException("cannot call addMul(m,v) with v "+
+																				 "having different dimensions than "+
+																				 "this vector or with m being NaN.");
+		if (other instanceof SparseVectorIntf &&
+			  Double.compare(((SparseVectorIntf) other).getDefaultValue(), 0.0)==0) {
+			SparseVectorIntf o = (SparseVectorIntf) other;
+			final int onz = o.getNumNonZeros();
+			for (int i=0; i<onz; i++) {
+				final int pi = o.getIthNonZeroPos(i);
+				final int k = find(pi);
+				final double vi = m*o.getIthNonZeroVal(i);
+				if (k>=0) _vals[k] += vi;
+				else if (Double.compare(vi, 0.0)!=0)
+					throw new UnsupportedOperationException("cannot add non-zero "+pi+
+						                                      " to a CSR row");
+			}
+		}
+		else {
+			for (int i=0; i<_n; i++) {
+				final double vi = m*other.getCoord(i);
+				if (Double.compare(vi, 0.0)==0) continue;
+				final int k = find(i);
+				if (k>=0) _vals[k] += vi;
+				else throw new UnsupportedOperationException("cannot add non-zero "+i+
+					                                           " to a CSR row");
+			}
+		}
+	}
+
+
+	/**
+	 * divide the components of this row by the argument h.
+	 * @param h double must have absolute value &ge; 1.e-120.
+	 * @throws IllegalArgumentException if h is (almost) zero
+	 */
+	public void div(double h) {
+		if (Double.isNaN(h) || Math.abs(h)<1.e-120)
+			throw new IllegalArgumentException("division by (almost) zero or NaN");
+		for (int k=_from; k<_to; k++) _vals[k] /= h;
+	}
+
+
+	/**
+	 * multiplies the stored components of this row by a, in place. Components
+	 * that become zero stay stored, as 0.0 (never -0.0).
+	 * @param a double
+	 * @throws IllegalArgumentException if a is NaN
+	 */
+	public void scale(double a) {
+		if (Double.isNaN(a)) throw new IllegalArgumentException("a is NaN");
+		for (int k=_from; k<_to; k++) {
+			final double v = a*_vals[k];
+			_vals[k] = v==0.0 ? 0.0 : v;
+		}
+	}
+
+
+	/**
+	 * sets this row to a*x + b*this, in place: a pass over the stored
+	 * components of this row (none if b is 1) followed by
+	 * <CODE>addMul(a,x)</CODE>. When b is zero the old components of this row
+	 * are not read. The non-zeros of x must be among the stored components of
+	 * this row.
+	 * @param a double
+	 * @param x VectorIntf
+	 * @param b double
+	 * @throws IllegalArgumentException if x is null or does not have the same
+	 * dimensions as this vector, or if a or b is NaN
+	 * @throws UnsupportedOperationException if the operation would add new
+	 * non-zeros to this row (in which case this row may already have been
+	 * scaled by b)
+	 */
+	public void axpby(double a, VectorIntf x, double b) {
+		if (x==null || x.getNumCoords()!=_n || Double.isNaN(a) || Double.isNaN(b))
+			throw new IllegalArgumentException("cannot call axpby(a,x,b) with x "+
+																				 "having different dimensions than "+
+																				 "this vector or with a or b being "+
+																				 "NaN.");
+		if (x==this) {
+			scale(a+b);
+			return;
+		}
+		if (b==0.0) Arrays.fill(_vals, _from, _to, 0.0);
+		else if (b!=1.0) scale(b);
+		addMul(a, x);
+	}
+
+
+	/**
+	 * return the number of components (dimensionality) of this row.
+	 * @return int
+	 */
+	public int getNumCoords() { return _n; }
+
+
+	/**
+	 * return true iff all components are zero.
+	 * @return boolean
+	 */
+	public boolean isAtOrigin() {
+		for (int k=_from; k<_to; k++)
+			if (Double.compare(_vals[k], 0.0)!=0) return false;
+		return true;
+	}
+
+
+	/**
+	 * return a double[] representation of this row.
+	 * @return double[]
+	 */
+	public double[] getDblArray1() {
+		double[] x = new double[_n];
+		for (int k=_from; k<_to; k++) x[_colInds[k]] = _vals[k];
+		return x;
+	}
+
+
+	/**
+	 * return the number of stored components of this row (which may include
+	 * explicitly stored zeros).
+	 * @return int
+	 */
+	public int getNumNonZeros() {
+		return _to-_from;
+	}
+
+
+	/**
+	 * return the index of the i-th stored component of this row.
+	 * @param i int
+	 * @return int
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public int getIthNonZeroPos(int i) throws IndexOutOfBoundsException {
+		if (i<0 || i>=_to-_from)
+			throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+				                                  (_to-_from)+"]");
+		return _colInds[_from+i];
+	}
+
+
+	/**
+	 * return the value of the i-th stored component of this row.
+	 * @param i int
+	 * @return double
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public double getIthNonZeroVal(int i) throws IndexOutOfBoundsException {
+		if (i<0 || i>=_to-_from)
+			throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+				                                  (_to-_from)+"]");
+		return _vals[_from+i];
+	}
+
+
+	/**
+	 * compute the inner product of this row with the argument passed in, going
+	 * only through the stored components of this row.
+	 * @param other VectorIntf
+	 * @return double
+	 * @throws IllegalArgumentException if other is null or dimensions don't
+	 * match
+	 */
+	public double innerProduct(VectorIntf other) {
+		if (other==null || other.getNumCoords()!=_n)
+			throw new IllegalArgumentException("dimensions don't match "+
+				                                 "or null argument passed in");
+		double sum = 0.0;
+		for (int k=_from; k<_to; k++) sum += _vals[k]*other.getCoord(_colInds[k]);
+		return sum;
+	}
+
+
+	/**
+	 * short-cut for the Euclidean norm of this row.
+	 * @return double
+	 */
+	public double norm2() {
+		double res2 = 0.0;
+		for (int k=_from; k<_to; k++) res2 += _vals[k]*_vals[k];
+		return Math.sqrt(res2);
+	}
+
+
+	/**
+	 * return true iff the other vector is exactly equal to this, component-wise.
+	 * @param other Object
+	 * @return boolean
+	 */
+	public boolean equals(Object other) {
+		if (other==null || other instanceof VectorIntf == false) return false;
+		VectorIntf o = (VectorIntf) other;
+		if (o.getNumCoords()!=_n) return false;
+		for (int k=_from; k<_to; k++)
+			if (Double.compare(_vals[k], o.getCoord(_colInds[k]))!=0) return false;
+		if (o instanceof SparseVectorIntf &&
+			  Double.compare(((SparseVectorIntf) o).getDefaultValue(), 0.0)==0) {
+			SparseVectorIntf osv = (SparseVectorIntf) o;
+			for (int i=0; i<osv.getNumNonZeros(); i++) {
+				final int pi = osv.getIthNonZeroPos(i);
+				if (Double.compare(osv.getIthNonZeroVal(i), getCoord(pi))!=0)
+					return false;
+			}
+			return true;
+		}
+		for (int i=0; i<_n; i++)
+			if (Double.compare(o.getCoord(i), getCoord(i))!=0) return false;
+		return true;
+	}
+
+
+	/**
+	 * return the integer part of the first component of this row.
+	 * @return int
+	 */
+	public int hashCode() {
+		return (int) getCoord(0);
+	}
+
+
+	/**
+	 * return a String representation of this row.
+	 * @return String
+	 */
+	public String toString() {
+		StringBuilder x = new StringBuilder("[");
+		for (int k=_from; k<_to; k++) {
+			x.append("(").append(_colInds[k]).append(",").append(_vals[k]).append(")");
+			if (k<_to-1) x.append(", ");
+		}
+		x.append(" _ilen=").append(_to-_from).append(" _n=").append(_n).append("]");
+		return x.toString();
+	}
+
+
+	/**
+	 * serialization replaces the view with an independent copy of the row.
+	 * @return Object  // DblArray1SparseVector
+	 */
+	private Object writeReplace() {
+		return newInstance();
+	}
+
+
+	/**
+	 * return the position of the i-th component in the matrix arrays, or -1 if
+	 * it is not stored.
+	 * @param i int
+	 * @return int
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	private int find(int i) {
+		if (i<0 || i>=_n)
+			throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+		final int k = Arrays.binarySearch(_colInds, _from, _to, i);
+		return k>=0 ? k : -1;
+	}
+
+
+	// package-private accessors for fast kernels
+	int[] getColInds() { return _colInds; }
+	double[] getVals() { return _vals; }
+	int getFrom() { return _from; }
+	int getTo() { return _to; }
+}
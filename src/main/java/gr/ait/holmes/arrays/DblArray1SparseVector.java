@@ -5,6 +5,11 @@
 package gr.ait.holmes.arrays;
 
 import gr.ait.holmes.utils.Messenger;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -21,13 +26,15 @@ import java.util.ArrayList;
  * be considered as reentrant in a multi-threaded environment. This choice is
  * made for speed considerations. Clients must therefore ensure on their own
  * that the application is race-condition free when using this class. 
+ * Serialization writes only the non-default components, in the encoding of
+ * <CODE>SparseVectorCodec</CODE>.
  * @author itc
  */
 public class DblArray1SparseVector implements SparseVectorIntf {
-  private static final long serialVersionUID = 6365520149403267798L;
-  private int[] _indices=null;  // _indices[0] indicates the first non-default 
+  private static final long serialVersionUID = -2719436614338791053L;
+  private transient int[] _indices=null;  // _indices[0] indicates the first non-default 
 	                              // element
-  private double[] _values=null;  // _values[0] is the value of the 
+  private transient double[] _values=null;  // _values[0] is the value of the 
 	                                // _indices[0]-th element of the array
   private int _ilen;  // pos of last non-default element in _indices & _values 
 	                    // arrays
@@ -618,7 +625,9 @@ public class DblArray1SparseVector implements SparseVectorIntf {
 
   /**
    * modifies this sparse vector by adding the quantity m*other to it. This
-   * operation may destroy the sparse nature of this object.
+   * operation may destroy the sparse nature of this object. When the other
+	 * vector's default value is zero, the operation is a linear merge of the
+	 * two index arrays, costing O(getNumNonZeros()+other.getNumNonZeros()).
    * @param m double
    * @param other DblArray1SparseVector
    * @throws IllegalArgumentException if other is null or does not have the
@@ -630,23 +639,29 @@ public class DblArray1SparseVector implements SparseVectorIntf {
                                          "having different dimensions than "+
                                          "this vector or with m being NaN.");
 		if (Double.compare(other.getDefaultValue(),0.0)==0) {
-			final int other_nz = other.getNumNonZeros();
-			for (int i=0; i<other_nz; i++) {
-				int pi = other.getIthNonZeroPos(i);
-				double vi = other.getIthNonZeroVal(i);
-				setCoord(pi, getCoord(pi)+m*vi);
-			}
+			if (other._ilen==0) return;
+			int[] indices = new int[_ilen+other._ilen];
+			double[] values = new double[_ilen+other._ilen];
+			_ilen = SparseKernels.mergeAddMul(_indices, _values, _ilen, _defVal, m,
+				                                other._indices, other._values, 0,
+				                                other._ilen, indices, values);
+			_indices = indices;
+			_values = values;
 		} else {  // revert to standard iteration
 	    for (int i=0; i<_n; i++) {
 		    setCoord(i, getCoord(i)+m*other.getCoord(i));
 			}
 		}
 	}
-	
+
 
   /**
    * modifies this sparse vector by adding the quantity m*other to it. This
-   * operation may destroy the sparse nature of this object.
+   * operation may destroy the sparse nature of this object. Specialized
+	 * linear-time kernels are used when other is a sparse vector of this package
+	 * with zero default value (merge of the index arrays) or a
+	 * <CODE>DblArray1Vector</CODE> (single pass over the dense array); for any
+	 * other vector type the operation costs O(n*getNumNonZeros()).
    * @param m double
    * @param other VectorIntf
    * @throws IllegalArgumentException if other is null or does not have the
@@ -657,6 +672,50 @@ public class DblArray1SparseVector implements SparseVectorIntf {
       throw new IllegalArgumentException("cannot call addMul(m,v) with v "+
                                          "having different dimensions than "+
                                          "this vector or with m being NaN.");
+		if (other instanceof DblArray1SparseVector) {
+			addMul(m, (DblArray1SparseVector) other);
+			return;
+		}
+		if (other instanceof IntArray1SparseVector) {
+			IntArray1SparseVector o = (IntArray1SparseVector) other;
+			if (o.getILen()==0) return;
+			int[] indices = new int[_ilen+o.getILen()];
+			double[] values = new double[_ilen+o.getILen()];
+			_ilen = SparseKernels.mergeAddMul(_indices, _values, _ilen, _defVal, m,
+				                                o.getIndices(), o.getValues(), 0,
+				                                o.getILen(), indices, values);
+			_indices = indices;
+			_values = values;
+			return;
+		}
+		if (other instanceof DblArray1CSRRowView) {
+			DblArray1CSRRowView o = (DblArray1CSRRowView) other;
+			final int olen = o.getTo()-o.getFrom();
+			if (olen==0) return;
+			int[] indices = new int[_ilen+olen];
+			double[] values = new double[_ilen+olen];
+			_ilen = SparseKernels.mergeAddMul(_indices, _values, _ilen, _defVal, m,
+				                                o.getColInds(), o.getVals(),
+				                                o.getFrom(), o.getTo(),
+				                                indices, values);
+			_indices = indices;
+			_values = values;
+			return;
+		}
+		if (other instanceof DblArray1Vector) {
+			final double[] x = ((DblArray1Vector) other).get_x();
+			final int ilen =
+				SparseKernels.addMulDense(_indices, _values, _ilen, _defVal, m, x,
+					                        null, null);
+			int[] indices = new int[ilen];
+			double[] values = new double[ilen];
+			SparseKernels.addMulDense(_indices, _values, _ilen, _defVal, m, x,
+				                        indices, values);
+			_indices = indices;
+			_values = values;
+			_ilen = ilen;
+			return;
+		}
     for (int i=0; i<_n; i++) {
       setCoord(i, getCoord(i)+m*other.getCoord(i));
     }
@@ -684,6 +743,78 @@ public class DblArray1SparseVector implements SparseVectorIntf {
   }
 
 
+  /**
+   * multiplies the components of this vector by a, in place. With zero 
+   * default value this is a pass over the non-zeros, dropping those that
+   * become zero; otherwise it goes through <CODE>setCoord()</CODE>, since the
+   * default value itself does not change.
+   * @param a double
+   * @throws IllegalArgumentException if a is NaN
+   */
+  public void scale(double a) throws IllegalArgumentException {
+    if (Double.isNaN(a)) throw new IllegalArgumentException("a is NaN");
+		if (Double.compare(_defVal,0.0)!=0) {
+			SparseVectorIntf.super.scale(a);
+			return;
+		}
+		int k = 0;
+		for (int i=0; i<_ilen; i++) {
+			final double v = a*_values[i];
+			if (v==0.0) continue;  // also drops -0.0
+			_indices[k] = _indices[i];
+			_values[k++] = v;
+		}
+		_ilen = k;
+  }
+
+
+  /**
+   * sets this vector to a*x + b*this, in place. With zero default value this
+   * is a pass over the non-zeros of this vector (none if b is 1) followed by
+   * <CODE>addMul(a,x)</CODE>, which merges the index arrays when x is a 
+   * sparse vector of this package. When b is zero the old components of this
+   * vector are not read.
+   * @param a double
+   * @param x VectorIntf
+   * @param b double
+   * @throws IllegalArgumentException if x is null or does not have the same
+   * dimensions as this vector, or if a or b is NaN
+   */
+  public void axpby(double a, VectorIntf x, double b) 
+    throws IllegalArgumentException {
+    if (x==null || x.getNumCoords()!=_n || Double.isNaN(a) || Double.isNaN(b))
+      throw new IllegalArgumentException("cannot call axpby(a,x,b) with x "+
+                                         "having different dimensions than "+
+                                         "this vector or with a or b being "+
+                                         "NaN.");
+		if (x==this) {
+			scale(a+b);
+			return;
+		}
+		if (Double.compare(_defVal,0.0)!=0) {
+			SparseVectorIntf.super.axpby(a, x, b);
+			return;
+		}
+		if (b==0.0) _ilen = 0;
+		else if (b!=1.0) scale(b);
+		addMul(a, x);
+  }
+
+
+  /**
+   * copies the components of this vector into dst[0...getNumCoords()-1].
+   * @param dst double[]
+   * @throws IllegalArgumentException if dst is null or shorter than the
+   * dimensions of this vector
+   */
+  public void copyInto(double[] dst) throws IllegalArgumentException {
+    if (dst==null || dst.length<_n)
+      throw new IllegalArgumentException("null or too short array");
+		Arrays.fill(dst, 0, _n, _defVal);
+		for (int i=0; i<_ilen; i++) dst[_indices[i]] = _values[i];
+  }
+
+
   /**
    * return true iff all components are zero.
    * @return boolean
@@ -738,8 +869,12 @@ public class DblArray1SparseVector implements SparseVectorIntf {
   /**
    * compute the inner product of this vector with the argument passed in.
    * The operation should be fast when this vector is sparse enough, as it only
-   * goes through the non-zero elements of the vector (assuming the default 
-	 * value for this vector is zero).
+   * goes through the non-zero elements of the vector (assuming the default
+	 * value for this vector is zero). Against dense
+	 * <CODE>DblArray1Vector</CODE> objects the values are gathered directly from
+	 * the dense array, and against the sparse vectors of this package the
+	 * product is a linear merge of the two index arrays, so in both cases no
+	 * binary searches are needed.
    * @param other VectorIntf
    * @throws IllegalArgumentException if vector dimensions don't match
    * @return double
@@ -748,7 +883,35 @@ public class DblArray1SparseVector implements SparseVectorIntf {
     if (other==null || other.getNumCoords()!=_n)
       throw new IllegalArgumentException("dimensions don't match "+
 				                                 "or null argument passed in");
+		if (other instanceof DblArray1Vector) {
+			final double[] x = ((DblArray1Vector) other).get_x();
+			double sum = SparseKernels.gather(_indices, _values, 0, _ilen, x);
+			if (Double.compare(_defVal, 0.0)!=0) {
+				double dsum = 0.0;
+				for (int i=0; i<_n; i++) dsum += x[i];
+				for (int i=0; i<_ilen; i++) dsum -= x[_indices[i]];
+				sum += _defVal*dsum;
+			}
+			return sum;
+		}
 		if (Double.compare(_defVal, 0.0)==0) {
+			if (other instanceof DblArray1SparseVector &&
+				  Double.compare(((DblArray1SparseVector) other)._defVal, 0.0)==0) {
+				DblArray1SparseVector o = (DblArray1SparseVector) other;
+				return SparseKernels.dot(_indices, _values, 0, _ilen,
+					                       o._indices, o._values, 0, o._ilen);
+			}
+			if (other instanceof IntArray1SparseVector) {
+				IntArray1SparseVector o = (IntArray1SparseVector) other;
+				return SparseKernels.dot(_indices, _values, 0, _ilen,
+					                       o.getIndices(), o.getValues(), 0, o.getILen());
+			}
+			if (other instanceof DblArray1CSRRowView) {
+				DblArray1CSRRowView o = (DblArray1CSRRowView) other;
+				return SparseKernels.dot(_indices, _values, 0, _ilen,
+					                       o.getColInds(), o.getVals(),
+					                       o.getFrom(), o.getTo());
+			}
 	    double sum=0.0;
 			for (int i=0; i<_ilen; i++) {
 				sum += _values[i]*other.getCoord(_indices[i]);
@@ -829,6 +992,9 @@ public class DblArray1SparseVector implements SparseVectorIntf {
 
   /**
    * return true iff the other vector is exactly equal to this, component-wise.
+	 * Against other sparse vectors the test is a linear merge of the two index
+	 * sequences (for any default values), and against <CODE>DblArray1Vector
+	 * </CODE> objects a single pass over the dense array.
    * @param other Object
    * @return boolean
    */
@@ -836,58 +1002,75 @@ public class DblArray1SparseVector implements SparseVectorIntf {
     if (other==null || other instanceof VectorIntf == false) return false;
     VectorIntf o = (VectorIntf) other;
     if (o.getNumCoords()!=_n) return false;
-		if (other instanceof DblArray1SparseVector) {  // short-cut? 
-			if (Double.compare(((DblArray1SparseVector)other)._defVal, _defVal)!=0) {
-				// no short-cut
-				for (int i=0; i<_n; i++) {
-					if (Double.compare(getCoord(i), o.getCoord(i))!=0) return false;
-				}
-				return true;
-			} else {
-				// short-cut
-	      DblArray1SparseVector osv = (DblArray1SparseVector) other;
-		    for (int i = 0; i < _ilen; i++) {
-			    if (_indices[i] != osv._indices[i] || 
-						  Double.compare(_values[i], osv._values[i]) != 0)
-				    return false;
-				}
-				return true;
+		if (other instanceof DblArray1SparseVector &&
+			  Double.compare(((DblArray1SparseVector)other)._defVal, _defVal)==0) {
+			// short-cut
+			DblArray1SparseVector osv = (DblArray1SparseVector) other;
+			if (osv._ilen!=_ilen) return false;
+			for (int i = 0; i < _ilen; i++) {
+				if (_indices[i] != osv._indices[i] ||
+						Double.compare(_values[i], osv._values[i]) != 0)
+					return false;
 			}
+			return true;
 		}
-    if (other instanceof SparseVectorIntf) {  // short-cut
-      SparseVectorIntf osv = (SparseVectorIntf) other;
-			if (Double.compare(osv.getDefaultValue(), _defVal)!=0) {
-				// no short-cut
-				for (int i=0; i<_n; i++) {
-					if (Double.compare(getCoord(i), o.getCoord(i))!=0) return false;
-				}
-				return true;
-			} else {  // same default-value
-				// short-cut
-		    for (int i = 0; i < _ilen; i++) {
-					int posi = osv.getIthNonZeroPos(i);
-			    if (_indices[i] != posi || 
-						  Double.compare(_values[i], osv.getCoord(posi)) != 0)
-				    return false;
-				}
-				return true;				
-			}
+    if (other instanceof SparseVectorIntf) {
+			return SparseKernels.equals(this, (SparseVectorIntf) other);
     }
-    else return o.equals(this);  // no short-cut
+		if (other instanceof DblArray1Vector) {
+			return SparseKernels.equals(this, ((DblArray1Vector) other).get_x());
+		}
+		for (int i=0; i<_n; i++) {  // no short-cut
+			if (Double.compare(getCoord(i), o.getCoord(i))!=0) return false;
+		}
+		return true;
   }
-	
-	
+
+
 	/**
-	 * return the integer part of the first value of the first non-zero element of 
-	 * this vector, if it exists, else return the integer part of the default 
-	 * value.
+	 * return the integer part of the first component of this vector, so that
+	 * vectors that are equal component-wise have equal hash codes regardless of
+	 * their representation (default value, or sparse vs. dense class).
 	 * @return int
 	 */
 	public int hashCode() {
-		return _ilen > 0 ? (int) _values[0] : (int) _defVal;
+		return (int) getCoord(0);
 	}
 
 
+  /**
+   * writes the dimension, default value and number of non-default components
+   * of this vector, then the first _ilen indices and values of the arrays in
+   * the encoding of <CODE>SparseVectorCodec</CODE>.
+   * @param out ObjectOutputStream
+   * @throws IOException
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    SparseVectorCodec.writeIndices(_indices, _ilen, out);
+    SparseVectorCodec.writeDoubles(_values, _ilen, out);
+  }
+
+
+  /**
+   * reads a vector written by <CODE>writeObject()</CODE>, with arrays of
+   * exactly _ilen elements.
+   * @param in ObjectInputStream
+   * @throws IOException if reading fails, or the data read are not a valid
+   * vector
+   * @throws ClassNotFoundException
+   */
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (_n<=0 || _ilen<0 || _ilen>_n)
+      throw new InvalidObjectException("invalid dimension or non-zeros");
+    if (_ilen==0) return;  // null arrays, as for a new vector
+    _indices = SparseVectorCodec.readIndices(in, _ilen, _n);
+    _values = SparseVectorCodec.readDoubles(in, _ilen);
+  }
+
+
   protected int[] getIndices() { return _indices; }
   protected void setIndices(int[] indices) { _indices = indices; }
   protected double[] getValues() { return _values; }
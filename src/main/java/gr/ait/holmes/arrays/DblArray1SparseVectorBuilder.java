@@ -0,0 +1,147 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+
+
+/**
+ * builder of <CODE>DblArray1SparseVector</CODE> objects from (index, value)
+ * pairs given in any order. Building a sparse vector by repeated calls to
+ * <CODE>DblArray1SparseVector.setCoord()</CODE> with unsorted indices costs
+ * O(nnz^2) time because of the array shifts on each insertion. Instead, this
+ * builder only appends the pairs to its work arrays, and when
+ * <CODE>build()</CODE> is called, sorts them once (pairs already in order are
+ * detected as they come and not sorted at all; otherwise a stable radix-sort
+ * is used), merges pairs with the same index, drops default values, and
+ * creates the vector with exactly-sized arrays.
+ * A builder is meant to be re-used for building many vectors of the same
+ * dimension (e.g. the rows of a matrix): after <CODE>build()</CODE> it is
+ * empty again but keeps its work arrays, so that in steady state the only
+ * allocations made are the arrays of the vectors built.
+ * The class is not thread-safe.
+ * @author itc
+ */
+public class DblArray1SparseVectorBuilder {
+	private final int _n;  // dimension of the vectors built
+	private final double _defVal;  // default value of the vectors built
+	private final boolean _sumDuplicates;
+	private int[] _indices;
+	private double[] _values;
+	private int _len;  // number of pairs added since last build
+	private boolean _sorted;  // true iff indices added so far strictly ascend
+	private int[] _tmpIndices;  // radix-sort scratch space, created lazily
+	private double[] _tmpValues;
+	private int[] _counts;
+
+
+	/**
+	 * constructs a builder for vectors in n-dimensional space with zero default
+	 * value. When the same index is added more than once, the last value added
+	 * wins, as with repeated calls to <CODE>setCoord()</CODE>.
+	 * @param n int
+	 * @throws IllegalArgumentException if n&le;0
+	 */
+	public DblArray1SparseVectorBuilder(int n) {
+		this(n, 0.0, false);
+	}
+
+
+	/**
+	 * constructs a builder for vectors in n-dimensional space.
+	 * @param n int
+	 * @param defVal double the default value of the vectors to build
+	 * @param sumDuplicates boolean if true, values added for the same index are
+	 * summed up, else the last value added wins
+	 * @throws IllegalArgumentException if n&le;0
+	 */
+	public DblArray1SparseVectorBuilder(int n, double defVal,
+		                                  boolean sumDuplicates) {
+		if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+		_n = n;
+		_defVal = defVal;
+		_sumDuplicates = sumDuplicates;
+		_indices = new int[16];
+		_values = new double[16];
+		_sorted = true;
+	}
+
+
+	/**
+	 * adds the pair (i, val).
+	 * @param i int must be in {0,...n-1}
+	 * @param val double
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public void add(int i, double val) {
+		if (i<0 || i>=_n)
+			throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+		if (_len==_indices.length) {
+			final int cap = _len<Integer.MAX_VALUE/2 ? 2*_len : Integer.MAX_VALUE-8;
+			_indices = Arrays.copyOf(_indices, cap);
+			_values = Arrays.copyOf(_values, cap);
+		}
+		if (_sorted && _len>0 && _indices[_len-1]>=i) _sorted = false;
+		_indices[_len] = i;
+		_values[_len++] = val;
+	}
+
+
+	/**
+	 * return the number of pairs added since the last build.
+	 * @return int
+	 */
+	public int size() {
+		return _len;
+	}
+
+
+	/**
+	 * discards all pairs added since the last build.
+	 */
+	public void reset() {
+		_len = 0;
+		_sorted = true;
+	}
+
+
+	/**
+	 * builds the vector from the pairs added since the last build, and empties
+	 * this builder.
+	 * @return DblArray1SparseVector
+	 */
+	public DblArray1SparseVector build() {
+		DblArray1SparseVector v = new DblArray1SparseVector(_n, _defVal);
+		if (!_sorted) {
+			if (_tmpIndices==null || _tmpIndices.length<_len) {
+				_tmpIndices = new int[_indices.length];
+				_tmpValues = new double[_indices.length];
+			}
+			if (_counts==null) _counts = new int[2048];
+			IntDblPairSort.radixSort(_indices, _values, _len,
+				                       _tmpIndices, _tmpValues, _counts);
+		}
+		// merge equal indices and drop default values, in place
+		int ilen = 0;
+		for (int k=0; k<_len; k++) {
+			double val = _values[k];
+			while (k+1<_len && _indices[k+1]==_indices[k]) {
+				++k;
+				val = _sumDuplicates ? val+_values[k] : _values[k];
+			}
+			if (Double.compare(val, _defVal)!=0) {
+				_indices[ilen] = _indices[k];
+				_values[ilen++] = val;
+			}
+		}
+		if (ilen>0) {
+			v.setIndices(Arrays.copyOf(_indices, ilen));
+			v.setValues(Arrays.copyOf(_values, ilen));
+			v.setILen(ilen);
+		}
+		reset();
+		return v;
+	}
+}
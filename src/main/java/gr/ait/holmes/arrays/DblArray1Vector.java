@@ -5,6 +5,7 @@
 package gr.ait.holmes.arrays;
 
 import gr.ait.holmes.tlop.*;
+import java.util.Arrays;
 import java.util.HashMap;
 
 
@@ -20,6 +21,7 @@ import java.util.HashMap;
 public class DblArray1Vector extends PoolableObject implements VectorIntf {
   // private final static long serialVersionUID=-1953111744690308391L;
 	private final static boolean _USE_POOLS=true;  // compile-time flag indicates use of pools or not
+	private final static int _TILE = 1 << 10;  // linearCombination() tile
   private final static HashMap<Integer, DblArray1VectorFactory>
           _fMap = _USE_POOLS ? new HashMap<>() : null;
   
@@ -206,6 +208,14 @@ public class DblArray1Vector extends PoolableObject implements VectorIntf {
     if (other==null || other instanceof VectorIntf == false) return false;
     VectorIntf o = (VectorIntf) other;
     if (o.getNumCoords() != _x.length) return false;
+		if (other instanceof DblArray1Vector) {
+			final double[] y = ((DblArray1Vector) other)._x;
+			for (int i = 0; i < _x.length; i++)
+				if (Double.compare(_x[i], y[i]) != 0) return false;
+			return true;
+		}
+		if (other instanceof SparseVectorIntf)  // no binary searches
+			return SparseKernels.equals((SparseVectorIntf) other, _x);
     for (int i = 0; i < _x.length; i++)
       if (Double.compare(_x[i], o.getCoord(i)) != 0)return false;
     return true;
@@ -266,7 +276,10 @@ public class DblArray1Vector extends PoolableObject implements VectorIntf {
 
 
   /**
-   * modifies this VectorIntf by adding the quantity m*other to it.
+   * modifies this VectorIntf by adding the quantity m*other to it. When other
+	 * is a <CODE>DblArray1Vector</CODE> the loop runs over the two arrays
+	 * directly, and when it is a sparse vector of this package with zero default
+	 * value, only its non-zeros are visited.
    * @param m double
    * @param other VectorIntf
    * @throws IllegalArgumentException if other is null or does not have the
@@ -277,12 +290,195 @@ public class DblArray1Vector extends PoolableObject implements VectorIntf {
       throw new IllegalArgumentException("cannot call addMul(m,v) with v "+
                                          "having different dimensions than "+
                                          "this vector or with m being NaN.");
+		if (other instanceof DblArray1Vector) {
+			DenseKernels.axpy(m, ((DblArray1Vector) other)._x, _x);
+			return;
+		}
+		if (other instanceof DblArray1SparseVector &&
+			  Double.compare(((DblArray1SparseVector) other).getDefaultValue(),
+					             0.0)==0) {
+			DblArray1SparseVector o = (DblArray1SparseVector) other;
+			SparseKernels.scatter(m, o.getIndices(), o.getValues(), 0, o.getILen(),
+				                    _x);
+			return;
+		}
+		if (other instanceof IntArray1SparseVector) {
+			IntArray1SparseVector o = (IntArray1SparseVector) other;
+			SparseKernels.scatter(m, o.getIndices(), o.getValues(), 0, o.getILen(),
+				                    _x);
+			return;
+		}
+		if (other instanceof DblArray1CSRRowView) {
+			DblArray1CSRRowView o = (DblArray1CSRRowView) other;
+			SparseKernels.scatter(m, o.getColInds(), o.getVals(),
+				                    o.getFrom(), o.getTo(), _x);
+			return;
+		}
+		if (SparseKernels.isZeroDefaultSparse(other)) {
+			SparseVectorIntf o = (SparseVectorIntf) other;
+			final int nnz = o.getNumNonZeros();
+			for (int k=0; k<nnz; k++) {
+				_x[o.getIthNonZeroPos(k)] += m*o.getIthNonZeroVal(k);
+			}
+			return;
+		}
     for (int i=0; i<_x.length; i++) {
       _x[i] += m*other.getCoord(i);
     }
   }
 
 
+  /**
+   * multiplies the components of this vector by a, in place.
+   * @param a double
+   * @throws IllegalArgumentException if a is NaN
+   */
+  public void scale(double a) throws IllegalArgumentException {
+    if (Double.isNaN(a)) throw new IllegalArgumentException("a is NaN");
+		DenseKernels.scale(a, _x, _x, 0, _x.length);
+  }
+
+
+  /**
+   * sets this vector to a*x + b*this, in place, in a single pass over the
+   * arrays when x is a <CODE>DblArray1Vector</CODE>, or a pass over this
+   * vector (none if b is 1) plus one over the non-zeros of x when x is a
+   * sparse vector with zero default value. When b is zero the old components
+   * of this vector are not read.
+   * @param a double
+   * @param x VectorIntf
+   * @param b double
+   * @throws IllegalArgumentException if x is null or does not have the same
+   * dimensions as this vector, or if a or b is NaN
+   */
+  public void axpby(double a, VectorIntf x, double b) 
+    throws IllegalArgumentException {
+    if (x==null || x.getNumCoords()!=_x.length || 
+        Double.isNaN(a) || Double.isNaN(b))
+      throw new IllegalArgumentException("cannot call axpby(a,x,b) with x "+
+                                         "having different dimensions than "+
+                                         "this vector or with a or b being "+
+                                         "NaN.");
+		if (x==this) {
+			scale(a+b);
+			return;
+		}
+		if (x instanceof DblArray1Vector) {
+			final double[] xa = ((DblArray1Vector) x)._x;
+			if (b==0.0) DenseKernels.scale(a, xa, _x, 0, _x.length);
+			else DenseKernels.axpby(a, xa, b, _x, 0, _x.length);
+			return;
+		}
+		if (SparseKernels.isZeroDefaultSparse(x)) {
+			if (b==0.0) Arrays.fill(_x, 0.0);
+			else if (b!=1.0) DenseKernels.scale(b, _x, _x, 0, _x.length);
+			addMul(a, x);
+			return;
+		}
+		VectorIntf.super.axpby(a, x, b);
+  }
+
+
+  /**
+   * sets this vector to the sum of coeffs[k]*vectors[k] over all k, in 
+   * place. When all vectors are <CODE>DblArray1Vector</CODE> objects, this
+   * vector is written in tiles small enough to stay in the L1 cache, each 
+   * tile accumulating all terms before the next, so that this vector is read
+   * and written once rather than once per term.
+   * @param coeffs double[]
+   * @param vectors VectorIntf[] of the same length as coeffs, not containing
+   * this vector
+   * @throws IllegalArgumentException if any argument is null or empty, their
+   * lengths differ, this vector is among the vectors, any vector does not
+   * have the same dimensions as this vector, or any coefficient is NaN
+   */
+  public void linearCombination(double[] coeffs, VectorIntf[] vectors)
+    throws IllegalArgumentException {
+		if (coeffs==null || vectors==null || coeffs.length==0 || 
+			  coeffs.length!=vectors.length) {
+			VectorIntf.super.linearCombination(coeffs, vectors);  // throws
+			return;
+		}
+		for (int k=0; k<vectors.length; k++) {
+			if (!(vectors[k] instanceof DblArray1Vector) || vectors[k]==this ||
+				  vectors[k].getNumCoords()!=_x.length || Double.isNaN(coeffs[k])) {
+				VectorIntf.super.linearCombination(coeffs, vectors);
+				return;
+			}
+		}
+		final int n = _x.length;
+		for (int lo=0; lo<n; lo+=_TILE) {
+			final int hi = Math.min(lo+_TILE, n);
+			DenseKernels.scale(coeffs[0], ((DblArray1Vector) vectors[0])._x, _x,
+				                 lo, hi);
+			for (int k=1; k<vectors.length; k++) {
+				DenseKernels.axpy(coeffs[k], ((DblArray1Vector) vectors[k])._x, lo,
+					                _x, lo, hi-lo);
+			}
+		}
+  }
+
+
+  /**
+   * copies the components of this vector into dst[0...getNumCoords()-1].
+   * @param dst double[]
+   * @throws IllegalArgumentException if dst is null or shorter than the
+   * dimensions of this vector
+   */
+  public void copyInto(double[] dst) throws IllegalArgumentException {
+    if (dst==null || dst.length<_x.length)
+      throw new IllegalArgumentException("null or too short array");
+		System.arraycopy(_x, 0, dst, 0, _x.length);
+  }
+
+
+  /**
+   * return the inner product of this vector with other. Against another 
+   * <CODE>DblArray1Vector</CODE> the product is a single pass over the two
+   * arrays; against sparse vectors it is computed by the sparse vector, over
+   * its non-zeros.
+   * @param other VectorIntf
+   * @return double
+   * @throws IllegalArgumentException if other is null or vector dimensions 
+   * don't match
+   */
+  public double innerProduct(VectorIntf other) 
+    throws IllegalArgumentException {
+    if (other==null || other.getNumCoords()!=_x.length)
+      throw new IllegalArgumentException("dimensions don't match "+
+                                         "or null argument passed in");
+		if (other instanceof DblArray1Vector) 
+			return DenseKernels.dot(_x, 0, ((DblArray1Vector) other)._x, 0, 
+				                      _x.length);
+		if (other instanceof SparseVectorIntf) return other.innerProduct(this);
+		return VectorIntf.super.innerProduct(other);
+  }
+
+
+  /**
+   * return the inner product of this vector with other, and stores the 
+   * euclidean norms of this vector and of other in norms[0] and norms[1].
+   * Against another <CODE>DblArray1Vector</CODE> the three sums are computed 
+   * in a single pass over the two arrays.
+   * @param other VectorIntf
+   * @param norms double[] of length at least 2
+   * @return double
+   * @throws IllegalArgumentException if other is null, vector dimensions 
+   * don't match, or norms is null or too short
+   */
+  public double innerProductAndNorms(VectorIntf other, double[] norms)
+    throws IllegalArgumentException {
+		if (!(other instanceof DblArray1Vector) || norms==null || 
+			  norms.length<2 || other.getNumCoords()!=_x.length)
+			return VectorIntf.super.innerProductAndNorms(other, norms);
+		final double res = 
+			DenseKernels.dotAndSumSquares(_x, ((DblArray1Vector) other)._x, norms);
+		norms[0] = Math.sqrt(norms[0]);
+		norms[1] = Math.sqrt(norms[1]);
+		return res;
+  }
+
+
   /**
    * divide the components of this vector by the argument h.
    * @param h double
@@ -291,8 +487,7 @@ public class DblArray1Vector extends PoolableObject implements VectorIntf {
   public void div(double h) throws IllegalArgumentException {
     if (Double.isNaN(h) || Math.abs(h)<1.e-120)
       throw new IllegalArgumentException("division by (almost) zero or NaN");
-    for (int i=0; i<_x.length; i++)
-      _x[i] /= h;
+    DenseKernels.div(_x, h);
   }
 
 
@@ -301,9 +496,7 @@ public class DblArray1Vector extends PoolableObject implements VectorIntf {
    * @return boolean
    */
   public boolean isAtOrigin() {
-    for (int i=0; i<_x.length; i++)
-      if (Double.compare(_x[i], 0.0) != 0) return false;
-    return true;
+    return DenseKernels.isZero(_x);
   }
 
 
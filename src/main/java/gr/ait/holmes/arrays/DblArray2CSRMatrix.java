@@ -0,0 +1,208 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+
+
+/**
+ * sparse 2-D matrix class containing doubles in Compressed Sparse Row (CSR)
+ * format. The whole matrix is held in three flat primitive arrays: the column
+ * indices and the values of all non-zeros, stored row after row with column
+ * indices ascending within each row, and the row-pointer array whose r-th
+ * element is the position in the other two arrays where the r-th row starts.
+ * Compared to <CODE>DblArray2SparseMatrix</CODE> there is no per-row object
+ * and no spare capacity, and row-order scans run over contiguous memory.
+ * The price is that the non-zero structure of the matrix is fixed once built
+ * (see <CODE>DblArray2CSRMatrixBuilder</CODE>); only the values of existing
+ * non-zeros can be modified.
+ * Notice that the class is not thread-safe when values are modified. Concurrent
+ * reads are safe.
+ * @author itc
+ */
+public class DblArray2CSRMatrix implements MatrixIntf {
+	private final int[] _rowPtr;  // _rowPtr[r] is start of row r, length is _r+1
+	private final int[] _colInds;  // column indices of non-zeros
+	private final double[] _vals;  // values of non-zeros
+	private final int _c;
+
+
+	/**
+	 * public constructor checks its arguments and copies them.
+	 * @param cols int the number of columns of the matrix
+	 * @param rowPtr int[] the row-pointer array of length #rows+1, starting with
+	 * zero and ending with the number of non-zeros
+	 * @param colInds int[] the column indices, strictly ascending within rows
+	 * @param vals double[] the values
+	 * @throws IllegalArgumentException if any of the arrays is null or the
+	 * arguments are not consistent with each other
+	 */
+	public DblArray2CSRMatrix(int cols, int[] rowPtr, int[] colInds,
+		                        double[] vals) {
+		if (rowPtr==null || colInds==null || vals==null || rowPtr.length<2 ||
+			  cols<=0)
+			throw new IllegalArgumentException("null or empty arguments");
+		final int nnz = rowPtr[rowPtr.length-1];
+		if (rowPtr[0]!=0 || colInds.length<nnz || vals.length<nnz)
+			throw new IllegalArgumentException("row pointers don't match arrays");
+		// all pointers lie in [0,nnz] once they ascend, so the indexing is safe
+		for (int r=0; r<rowPtr.length-1; r++) {
+			if (rowPtr[r+1]<rowPtr[r])
+				throw new IllegalArgumentException("row pointers don't ascend");
+		}
+		for (int r=0; r<rowPtr.length-1; r++) {
+			for (int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				if (colInds[k]<0 || colInds[k]>=cols ||
+					  (k>rowPtr[r] && colInds[k]<=colInds[k-1]))
+					throw new IllegalArgumentException("invalid column index at "+k);
+			}
+		}
+		_c = cols;
+		_rowPtr = rowPtr.clone();
+		_colInds = Arrays.copyOf(colInds, nnz);
+		_vals = Arrays.copyOf(vals, nnz);
+	}
+
+
+	/**
+	 * copy constructor creates a CSR matrix holding the same values as the
+	 * argument, which may be any <CODE>MatrixIntf</CODE> object.
+	 * @param A MatrixIntf
+	 */
+	public DblArray2CSRMatrix(MatrixIntf A) {
+		DblArray2CSRMatrix B = DblArray2CSRMatrixBuilder.newInstance(A);
+		_c = B._c;
+		_rowPtr = B._rowPtr;
+		_colInds = B._colInds;
+		_vals = B._vals;
+	}
+
+
+	/**
+	 * package-private constructor adopts the arrays passed in without checks or
+	 * copies. Used by the builder only.
+	 * @param cols int
+	 * @param rowPtr int[]
+	 * @param colInds int[]
+	 * @param vals double[]
+	 * @param dummy boolean unused, distinguishes the signature
+	 */
+	DblArray2CSRMatrix(int cols, int[] rowPtr, int[] colInds, double[] vals,
+		                 boolean dummy) {
+		_c = cols;
+		_rowPtr = rowPtr;
+		_colInds = colInds;
+		_vals = vals;
+	}
+
+
+	/**
+	 * get the number of rows of this matrix.
+	 * @return int
+	 */
+	public int getNumRows() { return _rowPtr.length-1; }
+
+
+	/**
+	 * get the number of columns of this matrix.
+	 * @return int
+	 */
+	public int getNumCols() { return _c; }
+
+
+	/**
+	 * get the number of (stored) non-zeros of this matrix.
+	 * @return int
+	 */
+	public int getNumNonZeros() { return _rowPtr[_rowPtr.length-1]; }
+
+
+	/**
+	 * return the a_{i,j} element of this matrix. Has O(log(nnz_i)) complexity
+	 * where nnz_i is the number of non-zeros of row i.
+	 * @param i int the row number starting from zero.
+	 * @param j int the column number starting from zero.
+	 * @return double the element at [i,j] position.
+	 * @throws IndexOutOfBoundsException if i or j are out of range
+	 */
+	public double getCoord(int i, int j) {
+		final int k = find(i, j);
+		return k>=0 ? _vals[k] : 0.0;
+	}
+
+
+	/**
+	 * sets the value of the a_{i,j} element of this matrix, which must already
+	 * be a (stored) non-zero of the matrix, as the structure of a CSR matrix is
+	 * fixed. Setting an existing element to zero keeps it stored as an
+	 * explicit zero.
+	 * @param i int the row number starting from zero.
+	 * @param j int the column number starting from zero.
+	 * @param val double the value to set for the element at [i,j] position.
+	 * @throws IndexOutOfBoundsException if i or j are out of range
+	 * @throws UnsupportedOperationException if the element is not stored and
+	 * val is not zero
+	 */
+	public void setCoord(int i, int j, double val) {
+		final int k = find(i, j);
+		if (k>=0) _vals[k] = val;
+		else if (Double.compare(val, 0.0)!=0)
+			throw new UnsupportedOperationException("cannot add non-zero ("+i+","+
+				                                      j+") to a CSR matrix");
+	}
+
+
+	/**
+	 * get a light-weight view of the i-th row of this matrix. The view does not
+	 * copy any data, so changes of values made through the view are reflected
+	 * on this matrix and vice versa.
+	 * @param r int row number starting from zero.
+	 * @return DblArray1CSRRowView
+	 * @throws IndexOutOfBoundsException if r is out of range
+	 */
+	public DblArray1CSRRowView getIthRow(int r) {
+		if (r<0 || r>=_rowPtr.length-1)
+			throw new IndexOutOfBoundsException("row "+r+" out of range");
+		return new DblArray1CSRRowView(this, r);
+	}
+
+
+	/**
+	 * return the position in the <CODE>_colInds,_vals</CODE> arrays of the
+	 * element (i,j), or -1 if it is not stored.
+	 * @param i int
+	 * @param j int
+	 * @return int
+	 * @throws IndexOutOfBoundsException if i or j are out of range
+	 */
+	int find(int i, int j) {
+		if (i<0 || i>=_rowPtr.length-1 || j<0 || j>=_c)
+			throw new IndexOutOfBoundsException("Indices ("+i+","+j+
+				                                  ") out of range");
+		final int k =
+			Arrays.binarySearch(_colInds, _rowPtr[i], _rowPtr[i+1], j);
+		return k>=0 ? k : -1;
+	}
+
+
+	// package-private accessors to the underlying arrays for fast kernels
+	int[] getRowPtr() { return _rowPtr; }
+	int[] getColInds() { return _colInds; }
+	double[] getVals() { return _vals; }
+
+
+	public String toString() {
+		StringBuilder res = new StringBuilder();
+		for (int row=0; row<getNumRows(); row++) {
+			res.append("| ");
+			for (int col=0; col<_c; col++) {
+				res.append(getCoord(row, col));
+				if (col<_c-1) res.append(" ");
+				else res.append(" |\n");
+			}
+		}
+		return res.toString();
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+
+
+/**
+ * builder of <CODE>DblArray2CSRMatrix</CODE> objects. Non-zeros may be added
+ * either as (row, column, value) triples (COO format) in any order, or as
+ * whole rows appended one after the other, or any mix of the two. Duplicate
+ * (row, column) entries are summed up, and entries that end up zero are
+ * dropped. When entries arrive already in row-major order (the common case
+ * when appending rows or reading a sorted file) no sorting is needed at all;
+ * otherwise the entries are bucketed by row with a counting sort and then
+ * sorted by column within each row.
+ * The builder is not thread-safe, and cannot be used anymore after
+ * <CODE>build()</CODE> has been called.
+ * @author itc
+ */
+public class DblArray2CSRMatrixBuilder {
+	private final int _r;
+	private final int _c;
+	private int[] _rowInds;
+	private int[] _colInds;
+	private double[] _vals;
+	private int _nnz;  // number of entries added so far
+	private int _nextRow;  // the row the next appended row will go to
+	private boolean _ordered;  // true iff entries so far are in strict
+	                           // row-major order
+
+
+	/**
+	 * constructor specifies the dimensions of the matrix to build.
+	 * @param rows int
+	 * @param cols int
+	 * @throws IllegalArgumentException if rows or cols are not positive
+	 */
+	public DblArray2CSRMatrixBuilder(int rows, int cols) {
+		this(rows, cols, 16);
+	}
+
+
+	/**
+	 * constructor specifies the dimensions of the matrix to build, and the
+	 * expected number of non-zeros.
+	 * @param rows int
+	 * @param cols int
+	 * @param expectedNNZ int initial capacity
+	 * @throws IllegalArgumentException if rows or cols are not positive
+	 */
+	public DblArray2CSRMatrixBuilder(int rows, int cols, int expectedNNZ) {
+		if (rows<=0 || cols<=0)
+			throw new IllegalArgumentException("dimensions must be >= 1");
+		_r = rows;
+		_c = cols;
+		final int cap = Math.max(expectedNNZ, 1);
+		_rowInds = new int[cap];
+		_colInds = new int[cap];
+		_vals = new double[cap];
+		_ordered = true;
+	}
+
+
+	/**
+	 * convenience factory method, builds the CSR equivalent of any matrix.
+	 * @param A MatrixIntf
+	 * @return DblArray2CSRMatrix
+	 */
+	public static DblArray2CSRMatrix newInstance(MatrixIntf A) {
+		final int rows = A.getNumRows();
+		DblArray2CSRMatrixBuilder b =
+			new DblArray2CSRMatrixBuilder(rows, A.getNumCols());
+		for (int i=0; i<rows; i++) b.addRow(A.getIthRow(i));
+		return b.build();
+	}
+
+
+	/**
+	 * add the value v at position (i,j). If a value was already added at the
+	 * same position, the two are summed up.
+	 * @param i int
+	 * @param j int
+	 * @param v double
+	 * @throws IndexOutOfBoundsException if i or j are out of range
+	 * @throws IllegalStateException if <CODE>build()</CODE> was already called
+	 */
+	public void add(int i, int j, double v) {
+		if (_vals==null) throw new IllegalStateException("builder already used");
+		if (i<0 || i>=_r || j<0 || j>=_c)
+			throw new IndexOutOfBoundsException("Indices ("+i+","+j+
+				                                  ") out of range");
+		if (_nnz==_vals.length) grow();
+		if (_ordered && _nnz>0) {
+			final int pi = _rowInds[_nnz-1];
+			_ordered = pi<i || (pi==i && _colInds[_nnz-1]<j);
+		}
+		_rowInds[_nnz] = i;
+		_colInds[_nnz] = j;
+		_vals[_nnz++] = v;
+		if (i>=_nextRow) _nextRow = i+1;
+	}
+
+
+	/**
+	 * append the given vector as the next row of the matrix, ie the row after
+	 * the last row for which any entry has been added so far.
+	 * @param row VectorIntf must have as many coordinates as the matrix columns
+	 * @throws IllegalArgumentException if row is null or has wrong dimension
+	 * @throws IndexOutOfBoundsException if all rows have been added already
+	 * @throws IllegalStateException if <CODE>build()</CODE> was already called
+	 */
+	public void addRow(VectorIntf row) {
+		if (row==null || row.getNumCoords()!=_c)
+			throw new IllegalArgumentException("null row or dimensions mismatch");
+		if (_nextRow>=_r)
+			throw new IndexOutOfBoundsException("all "+_r+" rows added already");
+		final int i = _nextRow;
+		if (row instanceof SparseVectorIntf &&
+			  Double.compare(((SparseVectorIntf) row).getDefaultValue(), 0.0)==0) {
+			SparseVectorIntf sr = (SparseVectorIntf) row;
+			final int nz = sr.getNumNonZeros();
+			for (int k=0; k<nz; k++) add(i, sr.getIthNonZeroPos(k), sr.getIthNonZeroVal(k));
+		}
+		else {
+			for (int j=0; j<_c; j++) {
+				final double v = row.getCoord(j);
+				if (Double.compare(v, 0.0)!=0) add(i, j, v);
+			}
+		}
+		_nextRow = i+1;  // even if the row was empty
+	}
+
+
+	/**
+	 * append the next row of the matrix given in sparse form: the first len
+	 * elements of the two arrays are the column indices and values of the row.
+	 * @param colInds int[]
+	 * @param vals double[]
+	 * @param len int
+	 * @throws IllegalArgumentException if either array is null, or len is 
+	 * negative or exceeds the length of either array
+	 * @throws IndexOutOfBoundsException if all rows have been added already or
+	 * some column index is out of range
+	 * @throws IllegalStateException if <CODE>build()</CODE> was already called
+	 */
+	public void addRow(int[] colInds, double[] vals, int len) {
+		if (colInds==null || vals==null || len<0 || len>colInds.length ||
+			  len>vals.length)
+			throw new IllegalArgumentException("null arrays or invalid length");
+		if (_nextRow>=_r)
+			throw new IndexOutOfBoundsException("all "+_r+" rows added already");
+		final int i = _nextRow;
+		for (int k=0; k<len; k++) add(i, colInds[k], vals[k]);
+		_nextRow = i+1;
+	}
+
+
+	/**
+	 * return the number of entries added so far (duplicates counted).
+	 * @return int
+	 */
+	public int getNumEntries() {
+		return _nnz;
+	}
+
+
+	/**
+	 * build the matrix. The returned matrix arrays are sized exactly.
+	 * @return DblArray2CSRMatrix
+	 * @throws IllegalStateException if <CODE>build()</CODE> was already called
+	 */
+	public DblArray2CSRMatrix build() {
+		if (_vals==null) throw new IllegalStateException("builder already used");
+		int[] row_ptr = new int[_r+1];
+		for (int k=0; k<_nnz; k++) row_ptr[_rowInds[k]+1]++;
+		for (int i=0; i<_r; i++) row_ptr[i+1] += row_ptr[i];
+		int[] cols;
+		double[] vals;
+		if (_ordered) {
+			cols = _colInds;
+			vals = _vals;
+		}
+		else {
+			// counting sort by row
+			cols = new int[_nnz];
+			vals = new double[_nnz];
+			int[] pos = Arrays.copyOf(row_ptr, _r);
+			for (int k=0; k<_nnz; k++) {
+				final int p = pos[_rowInds[k]]++;
+				cols[p] = _colInds[k];
+				vals[p] = _vals[k];
+			}
+			_colInds = null;
+			// sort each row by column
+			for (int i=0; i<_r; i++) {
+				if (!IntDblPairSort.isSorted(cols, row_ptr[i], row_ptr[i+1]))
+					IntDblPairSort.sort(cols, vals, row_ptr[i], row_ptr[i+1]);
+			}
+		}
+		_rowInds = null;
+		// merge duplicates and drop zeros, compacting in place
+		int nnz = 0;
+		int start = 0;
+		for (int i=0; i<_r; i++) {
+			final int end = row_ptr[i+1];
+			for (int k=start; k<end; k++) {
+				double v = vals[k];
+				while (k+1<end && cols[k+1]==cols[k]) v += vals[++k];
+				if (Double.compare(v, 0.0)!=0) {
+					cols[nnz] = cols[k];
+					vals[nnz++] = v;
+				}
+			}
+			start = end;
+			row_ptr[i+1] = nnz;
+		}
+		if (cols.length!=nnz) {
+			cols = Arrays.copyOf(cols, nnz);
+			vals = Arrays.copyOf(vals, nnz);
+		}
+		_colInds = null;
+		_vals = null;
+		return new DblArray2CSRMatrix(_c, row_ptr, cols, vals, true);
+	}
+
+
+	/**
+	 * doubles the capacity of the entry arrays.
+	 */
+	private void grow() {
+		final int cap = _vals.length < Integer.MAX_VALUE/2 ?
+			              2*_vals.length : Integer.MAX_VALUE-8;
+		if (cap<=_vals.length)
+			throw new IllegalStateException("too many non-zeros for a CSR matrix");
+		_rowInds = Arrays.copyOf(_rowInds, cap);
+		_colInds = Arrays.copyOf(_colInds, cap);
+		_vals = Arrays.copyOf(_vals, cap);
+	}
+}
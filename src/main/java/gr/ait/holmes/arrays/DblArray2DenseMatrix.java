@@ -0,0 +1,422 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * dense 2-D matrix class containing doubles in row-major order in one flat
+ * <CODE>double[]</CODE>: element (i,j) is at position i*#cols+j. Compared to
+ * <CODE>DblArray2SparseMatrix</CODE>, every access is a single array read
+ * instead of a binary search, and there are no per-row objects, so the class
+ * suits matrices that are dense or nearly so (Gram matrices, factor models).
+ * <p>The matrix-matrix product, the matrix-vector products and the transpose
+ * are cache-tiled: the matrices are processed in square tiles of
+ * <CODE>_TILE</CODE> x <CODE>_TILE</CODE> elements, small enough for the
+ * tiles involved in an inner loop to stay in the L1/L2 caches, with the
+ * innermost loops running over contiguous memory. The tiles (or strips of
+ * tiles) are processed in parallel in a fork/join pool. The matrix-vector
+ * products are also used by <CODE>MatrixOps.multiply()</CODE> and
+ * <CODE>MatrixOps.multiplyTransposed()</CODE> for matrices of this class.</p>
+ * Notice that the class is not thread-safe when values are modified.
+ * Concurrent reads are safe.
+ * @author itc
+ */
+public class DblArray2DenseMatrix implements MatrixIntf {
+	private final static int _TILE = 64;  // 64x64 doubles = 32KB
+	private final static int _MIN_FLOPS_PER_TASK = 1 << 16;
+	private final int _r;
+	private final int _c;
+	private final double[] _data;
+
+
+	/**
+	 * constructs the rows x cols zero matrix.
+	 * @param rows int
+	 * @param cols int
+	 * @throws IllegalArgumentException if rows or cols are not positive, or
+	 * the matrix has more elements than an array can hold
+	 */
+	public DblArray2DenseMatrix(int rows, int cols) {
+		if (rows<=0 || cols<=0)
+			throw new IllegalArgumentException("dimensions must be >= 1");
+		if ((long) rows*cols > Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("matrix too large for one array");
+		_r = rows;
+		_c = cols;
+		_data = new double[rows*cols];
+	}
+
+
+	/**
+	 * constructs the matrix with the given elements in row-major order, copying
+	 * the array passed in.
+	 * @param rows int
+	 * @param cols int
+	 * @param data double[] of length rows*cols
+	 * @throws IllegalArgumentException if data is null or has the wrong length,
+	 * or the dimensions are not valid
+	 */
+	public DblArray2DenseMatrix(int rows, int cols, double[] data) {
+		this(rows, cols);
+		if (data==null || data.length!=_data.length)
+			throw new IllegalArgumentException("null data or dimensions mismatch");
+		System.arraycopy(data, 0, _data, 0, _data.length);
+	}
+
+
+	/**
+	 * copy constructor creates a dense matrix holding the same values as the
+	 * argument, which may be any <CODE>MatrixIntf</CODE> object.
+	 * @param A MatrixIntf
+	 * @throws IllegalArgumentException if A is null or too large
+	 */
+	public DblArray2DenseMatrix(MatrixIntf A) {
+		this(A==null ? 0 : A.getNumRows(), A==null ? 0 : A.getNumCols());
+		for (int i=0; i<_r; i++) {
+			final VectorIntf row = A.getIthRow(i);
+			final int off = i*_c;
+			if (row instanceof SparseVectorIntf) {
+				final SparseVectorIntf sr = (SparseVectorIntf) row;
+				final double def = sr.getDefaultValue();
+				if (Double.compare(def, 0.0)!=0) {
+					for (int j=0; j<_c; j++) _data[off+j] = def;
+				}
+				final int nz = sr.getNumNonZeros();
+				for (int k=0; k<nz; k++) {
+					_data[off+sr.getIthNonZeroPos(k)] = sr.getIthNonZeroVal(k);
+				}
+			}
+			else {
+				for (int j=0; j<_c; j++) _data[off+j] = row.getCoord(j);
+			}
+		}
+	}
+
+
+	/**
+	 * get the number of rows of this matrix.
+	 * @return int
+	 */
+	public int getNumRows() { return _r; }
+
+
+	/**
+	 * get the number of columns of this matrix.
+	 * @return int
+	 */
+	public int getNumCols() { return _c; }
+
+
+	/**
+	 * return the a_{i,j} element of this matrix.
+	 * @param i int the row number starting from zero.
+	 * @param j int the column number starting from zero.
+	 * @return double
+	 * @throws IndexOutOfBoundsException if i or j are out of range
+	 */
+	public double getCoord(int i, int j) {
+		if (i<0 || i>=_r || j<0 || j>=_c)
+			throw new IndexOutOfBoundsException("Indices ("+i+","+j+
+				                                  ") out of range");
+		return _data[i*_c+j];
+	}
+
+
+	/**
+	 * sets the value of the a_{i,j} element of this matrix.
+	 * @param i int the row number starting from zero.
+	 * @param j int the column number starting from zero.
+	 * @param val double
+	 * @throws IndexOutOfBoundsException if i or j are out of range
+	 */
+	public void setCoord(int i, int j, double val) {
+		if (i<0 || i>=_r || j<0 || j>=_c)
+			throw new IndexOutOfBoundsException("Indices ("+i+","+j+
+				                                  ") out of range");
+		_data[i*_c+j] = val;
+	}
+
+
+	/**
+	 * return a copy of the r-th row of this matrix; changes to the returned
+	 * vector are not reflected on this matrix.
+	 * @param r int row number starting from zero.
+	 * @return DblArray1Vector
+	 * @throws IndexOutOfBoundsException if r is out of range
+	 */
+	public DblArray1Vector getIthRow(int r) {
+		if (r<0 || r>=_r)
+			throw new IndexOutOfBoundsException("row "+r+" out of range");
+		DblArray1Vector v = new DblArray1Vector(_c);
+		System.arraycopy(_data, r*_c, v.get_x(), 0, _c);
+		return v;
+	}
+
+
+	/**
+	 * return a copy of the j-th column of this matrix.
+	 * @param j int column number starting from zero.
+	 * @return DblArray1Vector
+	 * @throws IndexOutOfBoundsException if j is out of range
+	 */
+	public DblArray1Vector getIthCol(int j) {
+		if (j<0 || j>=_c)
+			throw new IndexOutOfBoundsException("column "+j+" out of range");
+		DblArray1Vector v = new DblArray1Vector(_r);
+		final double[] x = v.get_x();
+		for (int i=0; i<_r; i++) x[i] = _data[i*_c+j];
+		return v;
+	}
+
+
+	/**
+	 * computes the product C = this*B in parallel using the common fork/join
+	 * pool.
+	 * @param B DblArray2DenseMatrix must have getNumCols() rows
+	 * @return DblArray2DenseMatrix
+	 * @throws IllegalArgumentException if B is null or dimensions don't match
+	 */
+	public DblArray2DenseMatrix multiply(DblArray2DenseMatrix B) {
+		return multiply(B, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * computes the product C = this*B in parallel using the given fork/join
+	 * pool. C is computed tile by tile, each tile C(I,J) being the sum over
+	 * the tiles K of A(I,K)*B(K,J) in i-k-j loop order, so that the innermost
+	 * loop streams over rows of B(K,J) and C(I,J). Different tiles of C are
+	 * computed in parallel, without any synchronization.
+	 * @param B DblArray2DenseMatrix must have getNumCols() rows
+	 * @param pool ForkJoinPool
+	 * @return DblArray2DenseMatrix
+	 * @throws IllegalArgumentException if any argument is null or dimensions
+	 * don't match
+	 */
+	public DblArray2DenseMatrix multiply(final DblArray2DenseMatrix B,
+		                                   ForkJoinPool pool) {
+		if (B==null || pool==null || B._r!=_c)
+			throw new IllegalArgumentException("null args or dimensions mismatch");
+		final DblArray2DenseMatrix C = new DblArray2DenseMatrix(_r, B._c);
+		final int nti = tiles(_r);
+		final int ntj = tiles(B._c);
+		final long flops = (long) _TILE*_TILE*_c;  // per tile of C
+		invoke(pool, nti*ntj, flops, new TileBody() {
+			public void run(int t) {
+				multiplyTile(B, C, (t/ntj)*_TILE, (t%ntj)*_TILE);
+			}
+		});
+		return C;
+	}
+
+
+	/**
+	 * return the transpose of this matrix, computed in parallel using the
+	 * common fork/join pool.
+	 * @return DblArray2DenseMatrix
+	 */
+	public DblArray2DenseMatrix transpose() {
+		return transpose(ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * return the transpose of this matrix, computed in parallel using the
+	 * given fork/join pool. The elements are copied tile by tile, so that both
+	 * the reads and the writes of a tile stay within a few cache lines per row.
+	 * @param pool ForkJoinPool
+	 * @return DblArray2DenseMatrix
+	 * @throws IllegalArgumentException if pool is null
+	 */
+	public DblArray2DenseMatrix transpose(ForkJoinPool pool) {
+		if (pool==null) throw new IllegalArgumentException("null pool");
+		final DblArray2DenseMatrix T = new DblArray2DenseMatrix(_c, _r);
+		final int ntj = tiles(_c);
+		invoke(pool, tiles(_r)*ntj, (long) _TILE*_TILE, new TileBody() {
+			public void run(int t) {
+				final int i0 = (t/ntj)*_TILE;
+				final int j0 = (t%ntj)*_TILE;
+				final int i1 = Math.min(i0+_TILE, _r);
+				final int j1 = Math.min(j0+_TILE, _c);
+				final double[] out = T._data;
+				for (int i=i0; i<i1; i++) {
+					final int off = i*_c;
+					for (int j=j0; j<j1; j++) out[j*_r+i] = _data[off+j];
+				}
+			}
+		});
+		return T;
+	}
+
+
+	/**
+	 * computes y = this*x in parallel. Each task computes a strip of
+	 * <CODE>_TILE</CODE> rows, walking the columns in tiles so that the part of
+	 * x in use stays in cache while the rows of the strip are swept.
+	 * @param x double[] of length getNumCols()
+	 * @param y double[] of length getNumRows(), overwritten
+	 * @param pool ForkJoinPool
+	 */
+	void multiply(final double[] x, final double[] y, ForkJoinPool pool) {
+		final int chunk = 64*_TILE;  // 32KB of x
+		invoke(pool, tiles(_r), (long) _TILE*_c, new TileBody() {
+			public void run(int t) {
+				final int i0 = t*_TILE;
+				final int i1 = Math.min(i0+_TILE, _r);
+				for (int i=i0; i<i1; i++) y[i] = 0.0;
+				for (int j0=0; j0<_c; j0+=chunk) {
+					final int j1 = Math.min(j0+chunk, _c);
+					for (int i=i0; i<i1; i++) {
+						y[i] += DenseKernels.dot(_data, i*_c+j0, x, j0, j1-j0);
+					}
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * computes y = this'*x in parallel. Each task owns a strip of columns,
+	 * i.e. a range of y, and sweeps all rows over it, so no partial results
+	 * need to be reduced.
+	 * @param x double[] of length getNumRows()
+	 * @param y double[] of length getNumCols(), overwritten
+	 * @param pool ForkJoinPool
+	 */
+	void multiplyTransposed(final double[] x, final double[] y,
+		                      ForkJoinPool pool) {
+		final int width = 8*_TILE;
+		invoke(pool, (_c+width-1)/width, (long) width*_r, new TileBody() {
+			public void run(int t) {
+				final int j0 = t*width;
+				final int j1 = Math.min(j0+width, _c);
+				for (int j=j0; j<j1; j++) y[j] = 0.0;
+				for (int i=0; i<_r; i++) {
+					final double xi = x[i];
+					if (xi!=0.0) DenseKernels.axpy(xi, _data, i*_c+j0, y, j0, j1-j0);
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * package-private accessor to the underlying row-major array.
+	 * @return double[]
+	 */
+	double[] getData() { return _data; }
+
+
+	public String toString() {
+		StringBuilder res = new StringBuilder();
+		for (int row=0; row<_r; row++) {
+			res.append("| ");
+			for (int col=0; col<_c; col++) {
+				res.append(_data[row*_c+col]);
+				if (col<_c-1) res.append(" ");
+				else res.append(" |\n");
+			}
+		}
+		return res.toString();
+	}
+
+
+	/**
+	 * adds to the tile of C starting at (i0,j0) the products of the tiles of
+	 * this matrix and B.
+	 * @param B DblArray2DenseMatrix
+	 * @param C DblArray2DenseMatrix
+	 * @param i0 int
+	 * @param j0 int
+	 */
+	private void multiplyTile(DblArray2DenseMatrix B, DblArray2DenseMatrix C,
+		                        int i0, int j0) {
+		final int n = B._c;
+		final int i1 = Math.min(i0+_TILE, _r);
+		final int j1 = Math.min(j0+_TILE, n);
+		final double[] b = B._data;
+		final double[] c = C._data;
+		for (int k0=0; k0<_c; k0+=_TILE) {
+			final int k1 = Math.min(k0+_TILE, _c);
+			for (int i=i0; i<i1; i++) {
+				final int ai = i*_c;
+				final int ci = i*n;
+				for (int k=k0; k<k1; k++) {
+					final double a = _data[ai+k];
+					if (a!=0.0) DenseKernels.axpy(a, b, k*n+j0, c, ci+j0, j1-j0);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * return the number of tiles needed to cover n rows or columns.
+	 * @param n int
+	 * @return int
+	 */
+	private static int tiles(int n) {
+		return (n+_TILE-1)/_TILE;
+	}
+
+
+	/**
+	 * runs the body for all tiles in [0,ntiles), in the calling thread if the
+	 * total work is small, else in parallel in the given pool.
+	 * @param pool ForkJoinPool
+	 * @param ntiles int
+	 * @param workPerTile long
+	 * @param body TileBody
+	 */
+	private static void invoke(ForkJoinPool pool, int ntiles, long workPerTile,
+		                         TileBody body) {
+		final int grain = (int) Math.max(1, Math.min(ntiles,
+			                               _MIN_FLOPS_PER_TASK/workPerTile));
+		TileTask root = new TileTask(body, 0, ntiles, grain);
+		if (ntiles<=grain) root.compute();
+		else pool.invoke(root);
+	}
+
+
+	/**
+	 * the work done for one tile.
+	 */
+	private interface TileBody {
+		void run(int t);
+	}
+
+
+	/**
+	 * fork/join task running the body for the tiles [lo,hi), splitting the
+	 * range in halves as long as it holds more than grain tiles.
+	 */
+	private static final class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final TileBody _body;
+		private final int _lo;
+		private final int _hi;
+		private final int _grain;
+
+		TileTask(TileBody body, int lo, int hi, int grain) {
+			_body = body;
+			_lo = lo;
+			_hi = hi;
+			_grain = grain;
+		}
+
+		protected void compute() {
+			if (_hi-_lo<=_grain) {
+				for (int t=_lo; t<_hi; t++) _body.run(t);
+				return;
+			}
+			final int mid = (_lo+_hi) >>> 1;
+			invokeAll(new TileTask(_body, _lo, mid, _grain),
+				        new TileTask(_body, mid, _hi, _grain));
+		}
+	}
+}
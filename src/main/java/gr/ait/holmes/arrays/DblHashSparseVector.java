@@ -0,0 +1,717 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+
+
+/**
+ * sparse implementation of VectorIntf for workloads dominated by updates at
+ * random positions, such as the accumulation of sparse gradients. The
+ * non-zeros are kept in an open-addressing hash table (linear probing over
+ * parallel int[] keys and double[] values arrays, with no per-entry objects),
+ * so that <CODE>getCoord()</CODE>, <CODE>setCoord()</CODE> and
+ * <CODE>addToCoord()</CODE> take O(1) amortized time, whereas inserting a new
+ * non-zero in a <CODE>DblArray1SparseVector</CODE> costs O(nnz) because of
+ * the array shift.
+ * <p>Iterating over the non-zeros in index order (<CODE>getIthNonZeroPos()
+ * </CODE>, <CODE>getIthNonZeroVal()</CODE>) needs the sorted-array form of the
+ * vector, which is built on demand (in O(nnz) time with a radix-sort) and kept
+ * until the next modification, so that alternating a phase of updates with a
+ * phase of iterations or merge-based kernels pays for one sort per phase.
+ * <CODE>toDblArray1SparseVector()</CODE> returns the sorted form as a regular
+ * sparse vector. Inner products and <CODE>addMul()</CODE> with other vectors
+ * do not need the sorted form: they probe the table directly.</p>
+ * <p>Like <CODE>FltArray1SparseVector</CODE>, the class only supports zero as
+ * the default value of components, and is not thread-safe.</p>
+ * @author itc
+ */
+public class DblHashSparseVector implements SparseVectorIntf {
+  private static final long serialVersionUID = -6522155663543976818L;
+  private final static int _FREE = -1;  // marks empty slots of _keys
+  private final static int _MIN_CAPACITY = 8;
+  private final static int _PHI = 0x9E3779B9;  // multiplier of Fibonacci hash
+
+  private int[] _keys;  // capacity is a power of 2
+  private double[] _vals;
+  private int _shift;  // 32-log2(capacity)
+  private int _size;  // number of non-zeros
+  private final int _n;
+
+  // sorted-array form, valid iff _sortedInds!=null
+  private int[] _sortedInds;
+  private double[] _sortedVals;
+
+
+  /**
+   * constructs the zero sparse vector in n-dimensional space.
+   * @param n int the number of dimensions
+   * @throws IllegalArgumentException if n &le; 0
+   */
+  public DblHashSparseVector(int n) {
+    this(n, 0);
+  }
+
+
+  /**
+   * constructs the zero sparse vector in n-dimensional space, with room for
+   * the given number of non-zeros before the table needs to grow.
+   * @param n int the number of dimensions
+   * @param expectedNnz int
+   * @throws IllegalArgumentException if n &le; 0 or expectedNnz &lt; 0
+   */
+  public DblHashSparseVector(int n, int expectedNnz) {
+    if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+    if (expectedNnz<0)
+      throw new IllegalArgumentException("expectedNnz must be >= 0");
+    _n = n;
+    allocate(capacityFor(Math.min(expectedNnz, n)));
+  }
+
+
+  /**
+   * constructs a copy of the given sparse vector.
+   * @param v SparseVectorIntf must have zero default value
+   * @throws IllegalArgumentException if v is null or has non-zero default
+   * value
+   */
+  public DblHashSparseVector(SparseVectorIntf v) {
+    if (v==null || Double.compare(v.getDefaultValue(), 0.0)!=0)
+      throw new IllegalArgumentException("null vector or non-zero default");
+    _n = v.getNumCoords();
+    final int nnz = v.getNumNonZeros();
+    allocate(capacityFor(nnz));
+    for (int k=0; k<nnz; k++) {
+      final double val = v.getIthNonZeroVal(k);
+      if (val!=0.0) put(v.getIthNonZeroPos(k), val);
+    }
+  }
+
+
+  /**
+   * return a new VectorIntf object containing a copy of the data of this
+   * object.
+   * @return VectorIntf
+   */
+  public VectorIntf newCopy() {
+    DblHashSparseVector v = new DblHashSparseVector(_n, 0);
+    v._keys = _keys.clone();
+    v._vals = _vals.clone();
+    v._shift = _shift;
+    v._size = _size;
+    return v;
+  }
+
+
+  /**
+   * return a new copy of this vector, with each component multiplied by the
+   * argument.
+   * @param multFactor double
+   * @return VectorIntf
+   */
+  public VectorIntf newCopyMultBy(double multFactor) {
+    DblHashSparseVector v = (DblHashSparseVector) newCopy();
+    v.scaleValues(multFactor);
+    return v;
+  }
+
+
+  /**
+   * return a new un-managed copy of this object.
+   * @return VectorIntf
+   */
+  public VectorIntf newInstance() {
+    return newCopy();
+  }
+
+
+  /**
+   * return a new <CODE>DblHashSparseVector</CODE> holding the non-zeros of the
+   * argument.
+   * @param arg double[]
+   * @return VectorIntf
+   * @throws IllegalArgumentException if arg is null or empty
+   */
+  public VectorIntf newInstance(double[] arg) {
+    if (arg==null || arg.length==0)
+      throw new IllegalArgumentException("null or empty arg");
+    int nnz = 0;
+    for (int i=0; i<arg.length; i++) if (arg[i]!=0.0) ++nnz;
+    DblHashSparseVector v = new DblHashSparseVector(arg.length, nnz);
+    for (int i=0; i<arg.length; i++) if (arg[i]!=0.0) v.put(i, arg[i]);
+    return v;
+  }
+
+
+  /**
+   * return the number of coordinates of this vector.
+   * @return int
+   */
+  public int getNumCoords() {
+    return _n;
+  }
+
+
+  /**
+   * return a double[] representation of this vector.
+   * @return double[]
+   */
+  public double[] getDblArray1() {
+    double[] x = new double[_n];
+    for (int s=0; s<_keys.length; s++) {
+      if (_keys[s]!=_FREE) x[_keys[s]] = _vals[s];
+    }
+    return x;
+  }
+
+
+  /**
+   * return the i-th coordinate of this vector, in O(1) expected time.
+   * @param i int
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getCoord(int i) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    final int s = find(i);
+    return s>=0 ? _vals[s] : 0.0;
+  }
+
+
+  /**
+   * set the i-th coordinate of this vector to the value given, in O(1)
+   * amortized time. Setting a component to zero removes it from the table.
+   * @param i int
+   * @param val double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public void setCoord(int i, double val) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    if (val==0.0) {
+      final int s = find(i);
+      if (s>=0) remove(s);
+    }
+    else put(i, val);
+  }
+
+
+  /**
+   * add the given quantity to the i-th coordinate of this vector with a
+   * single probe of the table, in O(1) amortized time. A component whose sum
+   * becomes zero is removed.
+   * @param i int
+   * @param delta double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public void addToCoord(int i, double delta) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    if (delta!=0.0) add(i, delta);
+  }
+
+
+  /**
+   * get the number of non-zeros of this vector.
+   * @return int
+   */
+  public int getNumNonZeros() {
+    return _size;
+  }
+
+
+  /**
+   * get the index of the i-th non-zero of this vector in ascending index
+   * order. The first call after a modification sorts the non-zeros.
+   * @param i int
+   * @return int
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public int getIthNonZeroPos(int i) {
+    if (i<0 || i>=_size)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _size+"]");
+    ensureSorted();
+    return _sortedInds[i];
+  }
+
+
+  /**
+   * get the value of the i-th non-zero of this vector in ascending index
+   * order. The first call after a modification sorts the non-zeros.
+   * @param i int
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getIthNonZeroVal(int i) {
+    if (i<0 || i>=_size)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _size+"]");
+    ensureSorted();
+    return _sortedVals[i];
+  }
+
+
+  /**
+   * return the sorted-array form of this vector as a new
+   * <CODE>DblArray1SparseVector</CODE> with zero default value.
+   * @return DblArray1SparseVector
+   */
+  public DblArray1SparseVector toDblArray1SparseVector() {
+    ensureSorted();
+    return new DblArray1SparseVector(0.0, _sortedInds, _sortedVals, _n, _size);
+  }
+
+
+  /**
+   * modifies this vector by adding the quantity m*other to it, in time
+   * linear in the non-zeros of other for sparse arguments with zero default
+   * value (and in n for all other arguments), each non-zero costing one probe
+   * of the table.
+   * @param m double
+   * @param other VectorIntf
+   * @throws IllegalArgumentException if other is null or does not have the
+   * same dimensions as this vector
+   */
+  public void addMul(double m, VectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("cannot call addMul(m,v) with v "+
+                                         "having different dimensions than "+
+                                         "this vector");
+    if (m==0.0) return;
+    if (other==this) {
+      scaleValues(1.0+m);
+      return;
+    }
+    if (other instanceof DblHashSparseVector) {
+      DblHashSparseVector o = (DblHashSparseVector) other;
+      for (int s=0; s<o._keys.length; s++) {
+        if (o._keys[s]!=_FREE) add(o._keys[s], m*o._vals[s]);
+      }
+    }
+    else if (other instanceof DblArray1Vector) {
+      final double[] x = ((DblArray1Vector) other).get_x();
+      for (int i=0; i<_n; i++) {
+        if (x[i]!=0.0) add(i, m*x[i]);
+      }
+    }
+    else if (SparseKernels.isZeroDefaultSparse(other)) {
+      SparseVectorIntf o = (SparseVectorIntf) other;
+      final int nnz = o.getNumNonZeros();
+      for (int k=0; k<nnz; k++) {
+        final double val = m*o.getIthNonZeroVal(k);
+        if (val!=0.0) add(o.getIthNonZeroPos(k), val);
+      }
+    }
+    else {
+      for (int i=0; i<_n; i++) {
+        final double val = m*other.getCoord(i);
+        if (val!=0.0) add(i, val);
+      }
+    }
+  }
+
+
+  /**
+   * divide the components of this vector by the argument h.
+   * @param h double
+   * @throws IllegalArgumentException if h is (almost) zero or NaN
+   */
+  public void div(double h) {
+    if (Double.isNaN(h) || Math.abs(h)<1.e-120)
+      throw new IllegalArgumentException("division by (almost) zero or NaN");
+    scaleValues(1.0/h);
+  }
+
+
+  /**
+   * return true iff all components are zero.
+   * @return boolean
+   */
+  public boolean isAtOrigin() {
+    return _size==0;
+  }
+
+
+  /**
+   * compute the inner product of this vector with the argument. Against
+   * other <CODE>DblHashSparseVector</CODE> objects the smaller table is
+   * scanned and the larger one probed; against sparse vectors with zero
+   * default value their non-zeros are probed in the table; against
+   * <CODE>DblArray1Vector</CODE> objects the values are gathered from the
+   * dense array. None of these needs the sorted form.
+   * @param other VectorIntf
+   * @return double
+   * @throws IllegalArgumentException if other is null or its dimension
+   * doesn't match this vector's dimension
+   */
+  public double innerProduct(VectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("dimensions don't match or null "+
+                                         "argument passed in");
+    double sum = 0.0;
+    if (other instanceof DblHashSparseVector) {
+      DblHashSparseVector a = this;
+      DblHashSparseVector b = (DblHashSparseVector) other;
+      if (b._keys.length<a._keys.length) {
+        a = b;
+        b = this;
+      }
+      for (int s=0; s<a._keys.length; s++) {
+        if (a._keys[s]==_FREE) continue;
+        final int t = b.find(a._keys[s]);
+        if (t>=0) sum += a._vals[s]*b._vals[t];
+      }
+      return sum;
+    }
+    if (other instanceof DblArray1Vector) {
+      final double[] x = ((DblArray1Vector) other).get_x();
+      for (int s=0; s<_keys.length; s++) {
+        if (_keys[s]!=_FREE) sum += _vals[s]*x[_keys[s]];
+      }
+      return sum;
+    }
+    if (SparseKernels.isZeroDefaultSparse(other)) {
+      SparseVectorIntf o = (SparseVectorIntf) other;
+      final int nnz = o.getNumNonZeros();
+      for (int k=0; k<nnz; k++) {
+        final int s = find(o.getIthNonZeroPos(k));
+        if (s>=0) sum += _vals[s]*o.getIthNonZeroVal(k);
+      }
+      return sum;
+    }
+    for (int s=0; s<_keys.length; s++) {
+      if (_keys[s]!=_FREE) sum += _vals[s]*other.getCoord(_keys[s]);
+    }
+    return sum;
+  }
+
+
+  /**
+   * return the k-th norm of this vector.
+   * @param k int
+   * @return double
+   * @throws IllegalArgumentException if k &le; 0
+   */
+  public double norm(int k) {
+    if (k<=0) throw new IllegalArgumentException("k<=0");
+    if (k==2) return norm2();
+    double res = 0.0;
+    for (int s=0; s<_keys.length; s++) {
+      if (_keys[s]!=_FREE) res += Math.pow(Math.abs(_vals[s]), k);
+    }
+    return Math.pow(res, 1.0/k);
+  }
+
+
+  /**
+   * short-cut for norm(2).
+   * @return double
+   */
+  public double norm2() {
+    double res2 = 0.0;
+    for (int s=0; s<_keys.length; s++) {
+      if (_keys[s]!=_FREE) res2 += _vals[s]*_vals[s];
+    }
+    return Math.sqrt(res2);
+  }
+
+
+  /**
+   * computes the infinity norm of this vector.
+   * @return double
+   */
+  public double normInfinity() {
+    double res = 0.0;
+    for (int s=0; s<_keys.length; s++) {
+      if (_keys[s]==_FREE) continue;
+      final double absxi = Math.abs(_vals[s]);
+      if (absxi>res) res = absxi;
+    }
+    return res;
+  }
+
+
+  /**
+   * return true iff the other vector is exactly equal to this one
+   * component-wise, regardless of its representation.
+   * @param other Object
+   * @return boolean
+   */
+  public boolean equals(Object other) {
+    if (other==null || other instanceof VectorIntf == false) return false;
+    VectorIntf o = (VectorIntf) other;
+    if (o.getNumCoords()!=_n) return false;
+    if (other instanceof SparseVectorIntf) {
+      return SparseKernels.equals(this, (SparseVectorIntf) other);
+    }
+    if (other instanceof DblArray1Vector) {
+      return SparseKernels.equals(this, ((DblArray1Vector) other).get_x());
+    }
+    for (int i=0; i<_n; i++) {
+      if (Double.compare(getCoord(i), o.getCoord(i))!=0) return false;
+    }
+    return true;
+  }
+
+
+  /**
+   * return the integer part of the first component of this vector, as the
+   * other vector classes of this package do.
+   * @return int
+   */
+  public int hashCode() {
+    return (int) getCoord(0);
+  }
+
+
+  /**
+   * return a String representation of this vector, listing its non-zeros in
+   * ascending index order.
+   * @return String
+   */
+  public String toString() {
+    ensureSorted();
+    StringBuilder x = new StringBuilder("[");
+    for (int i=0; i<_size; i++) {
+      if (i>0) x.append(", ");
+      x.append("(").append(_sortedInds[i]).append(",").append(_sortedVals[i]).
+        append(")");
+    }
+    x.append("](_n=").append(_n).append("/ _size=").append(_size).append(")");
+    return x.toString();
+  }
+
+
+  /**
+   * return the slot of the table holding index i, or -1 if i is zero.
+   * @param i int
+   * @return int
+   */
+  private int find(int i) {
+    final int mask = _keys.length-1;
+    for (int s=slot(i); ; s=(s+1)&mask) {
+      final int key = _keys[s];
+      if (key==i) return s;
+      if (key==_FREE) return -1;
+    }
+  }
+
+
+  /**
+   * sets the non-zero value of index i, inserting it if needed.
+   * @param i int
+   * @param val double non-zero
+   */
+  private void put(int i, double val) {
+    final int s = probe(i);
+    _vals[s] = val;
+  }
+
+
+  /**
+   * adds delta to the value of index i, inserting it if needed and removing
+   * it if the sum becomes zero.
+   * @param i int
+   * @param delta double non-zero
+   */
+  private void add(int i, double delta) {
+    final int s = probe(i);
+    final double val = _vals[s]+delta;
+    if (val!=0.0) _vals[s] = val;
+    else remove(s);
+  }
+
+
+  /**
+   * return the slot of index i, claiming a free slot (with value zero) for it
+   * if it is not in the table; invalidates the sorted form.
+   * @param i int
+   * @return int
+   */
+  private int probe(int i) {
+    _sortedInds = null;
+    int mask = _keys.length-1;
+    int s = slot(i);
+    while (true) {
+      final int key = _keys[s];
+      if (key==i) return s;
+      if (key==_FREE) break;
+      s = (s+1)&mask;
+    }
+    if (3*(_size+1) > 2*_keys.length) {  // keep the load factor below 2/3
+      rehash(2*_keys.length);
+      mask = _keys.length-1;
+      s = slot(i);
+      while (_keys[s]!=_FREE) s = (s+1)&mask;
+    }
+    _keys[s] = i;
+    _vals[s] = 0.0;
+    ++_size;
+    return s;
+  }
+
+
+  /**
+   * empties slot s, moving back the entries of its probe sequence that
+   * follow it so that no tombstones are needed.
+   * @param s int
+   */
+  private void remove(int s) {
+    _sortedInds = null;
+    final int mask = _keys.length-1;
+    int hole = s;
+    for (int t=(s+1)&mask; _keys[t]!=_FREE; t=(t+1)&mask) {
+      final int home = slot(_keys[t]);
+      // move t into the hole unless its home lies cyclically in (hole,t]
+      if (((t-home)&mask) >= ((t-hole)&mask)) {
+        _keys[hole] = _keys[t];
+        _vals[hole] = _vals[t];
+        hole = t;
+      }
+    }
+    _keys[hole] = _FREE;
+    --_size;
+  }
+
+
+  /**
+   * multiplies the components of this vector by a, in place, removing those
+   * that become zero.
+   * @param a double
+   * @throws IllegalArgumentException if a is NaN
+   */
+  public void scale(double a) throws IllegalArgumentException {
+    if (Double.isNaN(a)) throw new IllegalArgumentException("a is NaN");
+    scaleValues(a);
+  }
+
+
+  /**
+   * sets this vector to a*x + b*this, in place: a pass over the table (none
+   * if b is 1) followed by <CODE>addMul(a,x)</CODE>. When b is zero the old
+   * components of this vector are not read, and the table keeps its
+   * capacity.
+   * @param a double
+   * @param x VectorIntf
+   * @param b double
+   * @throws IllegalArgumentException if x is null or does not have the same
+   * dimensions as this vector, or if a or b is NaN
+   */
+  public void axpby(double a, VectorIntf x, double b) 
+    throws IllegalArgumentException {
+    if (x==null || x.getNumCoords()!=_n || Double.isNaN(a) || Double.isNaN(b))
+      throw new IllegalArgumentException("cannot call axpby(a,x,b) with x "+
+                                         "having different dimensions than "+
+                                         "this vector or with a or b being "+
+                                         "NaN.");
+    if (x==this) {
+      scale(a+b);
+      return;
+    }
+    if (b==0.0) {
+      Arrays.fill(_keys, _FREE);
+      _size = 0;
+      _sortedInds = null;
+    }
+    else if (b!=1.0) scale(b);
+    addMul(a, x);
+  }
+
+
+  /**
+   * multiplies all components by the argument, removing those that become
+   * zero.
+   * @param m double
+   */
+  private void scaleValues(double m) {
+    _sortedInds = null;
+    boolean zeros = false;
+    for (int s=0; s<_keys.length; s++) {
+      if (_keys[s]==_FREE) continue;
+      _vals[s] *= m;
+      if (_vals[s]==0.0) zeros = true;
+    }
+    if (zeros) rehash(capacityFor(_size));
+  }
+
+
+  /**
+   * moves the non-zeros into a new table of the given capacity.
+   * @param capacity int power of 2
+   */
+  private void rehash(int capacity) {
+    final int[] keys = _keys;
+    final double[] vals = _vals;
+    allocate(capacity);
+    final int mask = capacity-1;
+    for (int s=0; s<keys.length; s++) {
+      if (keys[s]==_FREE || vals[s]==0.0) continue;
+      int t = slot(keys[s]);
+      while (_keys[t]!=_FREE) t = (t+1)&mask;
+      _keys[t] = keys[s];
+      _vals[t] = vals[s];
+      ++_size;
+    }
+  }
+
+
+  /**
+   * replaces the table with an empty one of the given capacity.
+   * @param capacity int power of 2
+   */
+  private void allocate(int capacity) {
+    _keys = new int[capacity];
+    Arrays.fill(_keys, _FREE);
+    _vals = new double[capacity];
+    _shift = Integer.numberOfLeadingZeros(capacity)+1;
+    _size = 0;
+    _sortedInds = null;
+  }
+
+
+  /**
+   * return the home slot of index i: the top bits of its Fibonacci hash.
+   * @param i int
+   * @return int
+   */
+  private int slot(int i) {
+    return (i*_PHI) >>> _shift;
+  }
+
+
+  /**
+   * builds the sorted-array form of this vector, if not valid.
+   */
+  private void ensureSorted() {
+    if (_sortedInds!=null) return;
+    int[] inds = new int[_size];
+    double[] vals = new double[_size];
+    int k = 0;
+    for (int s=0; s<_keys.length; s++) {
+      if (_keys[s]==_FREE) continue;
+      inds[k] = _keys[s];
+      vals[k++] = _vals[s];
+    }
+    IntDblPairSort.radixSort(inds, vals, _size, new int[_size],
+                             new double[_size], new int[2048]);
+    _sortedVals = vals;
+    _sortedInds = inds;
+  }
+
+
+  /**
+   * return the smallest table capacity that holds nnz entries with a load
+   * factor of at most 2/3.
+   * @param nnz int
+   * @return int power of 2
+   */
+  private static int capacityFor(int nnz) {
+    int capacity = _MIN_CAPACITY;
+    while (3L*nnz > 2L*capacity) capacity <<= 1;
+    return capacity;
+  }
+}
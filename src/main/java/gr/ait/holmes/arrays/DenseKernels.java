@@ -0,0 +1,221 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+
+/**
+ * package-private utility class holding the tight loops over dense
+ * <CODE>double[]</CODE> arrays used by <CODE>DblArray1Vector</CODE> and
+ * <CODE>DblArray2DenseMatrix</CODE>. The loops are written so that the JIT
+ * compiler can use the SIMD units of the CPU:
+ * <ul>
+ * <li>element-wise loops over whole arrays (<CODE>axpy(a,x,y), div()</CODE>)
+ * are kept in the simple form that HotSpot's C2 compiler auto-vectorizes.
+ * Over slices at arbitrary offsets the JIT cannot rule out that the two
+ * slices overlap, and does not vectorize, so <CODE>axpy()</CODE> on slices
+ * is unrolled by four instead. Loops over the same range [lo,hi) of
+ * positions of all arrays (<CODE>axpby(), mul()</CODE>) index every array by
+ * the loop variable alone, and are vectorized like whole-array loops
+ * (<CODE>scale()</CODE> as well).
+ * <li>reductions (<CODE>dot(), sumSquares(), dotAndSumSquares()</CODE>) are
+ * not auto-vectorized,
+ * as the JIT must keep the order of floating-point additions; they are
+ * unrolled by four into independent accumulators, which breaks the chain of
+ * dependent additions and lets consecutive iterations overlap in the FP
+ * pipelines. The result may differ from the left-to-right sum in the last
+ * bits.
+ * <li><CODE>isZero()</CODE> ORs the bit patterns of blocks of elements and
+ * tests once per block, instead of branching on every element.
+ * </ul>
+ * Slices are given as (array, offset, length) so that rows of dense matrices
+ * can be passed in without copies.
+ * @author itc
+ */
+final class DenseKernels {
+	private final static int _ZERO_TEST_BLOCK = 64;
+
+
+	/**
+	 * no instances allowed.
+	 */
+	private DenseKernels() {
+		// no-op
+	}
+
+
+	/**
+	 * performs y[i] += a*x[i] for all i.
+	 * @param a double
+	 * @param x double[]
+	 * @param y double[] of the same length as x
+	 */
+	static void axpy(double a, double[] x, double[] y) {
+		for (int i=0; i<y.length; i++) y[i] += a*x[i];
+	}
+
+
+	/**
+	 * performs y[yoff+i] += a*x[xoff+i] for i in [0,len).
+	 * @param a double
+	 * @param x double[]
+	 * @param xoff int
+	 * @param y double[]
+	 * @param yoff int
+	 * @param len int
+	 */
+	static void axpy(double a, double[] x, int xoff, double[] y, int yoff,
+		               int len) {
+		final int n4 = len & ~3;
+		int i = 0;
+		for (; i<n4; i+=4) {
+			final double x0 = x[xoff+i];
+			final double x1 = x[xoff+i+1];
+			final double x2 = x[xoff+i+2];
+			final double x3 = x[xoff+i+3];
+			y[yoff+i] += a*x0;
+			y[yoff+i+1] += a*x1;
+			y[yoff+i+2] += a*x2;
+			y[yoff+i+3] += a*x3;
+		}
+		for (; i<len; i++) y[yoff+i] += a*x[xoff+i];
+	}
+
+
+	/**
+	 * performs y[i] = a*x[i] + b*y[i] for i in [lo,hi).
+	 * @param a double
+	 * @param x double[]
+	 * @param b double
+	 * @param y double[]
+	 * @param lo int
+	 * @param hi int
+	 */
+	static void axpby(double a, double[] x, double b, double[] y, int lo,
+		                int hi) {
+		for (int i=lo; i<hi; i++) y[i] = a*x[i] + b*y[i];
+	}
+
+
+	/**
+	 * performs z[i] = d[i]*x[i] for i in [lo,hi).
+	 * @param d double[]
+	 * @param x double[]
+	 * @param z double[] may be the same array as d or x
+	 * @param lo int
+	 * @param hi int
+	 */
+	static void mul(double[] d, double[] x, double[] z, int lo, int hi) {
+		for (int i=lo; i<hi; i++) z[i] = d[i]*x[i];
+	}
+
+
+	/**
+	 * performs y[i] = a*x[i] for i in [lo,hi).
+	 * @param a double
+	 * @param x double[]
+	 * @param y double[] may be x itself
+	 * @param lo int
+	 * @param hi int
+	 */
+	static void scale(double a, double[] x, double[] y, int lo, int hi) {
+		for (int i=lo; i<hi; i++) y[i] = a*x[i];
+	}
+
+
+	/**
+	 * performs x[i] /= h for all i.
+	 * @param x double[]
+	 * @param h double
+	 */
+	static void div(double[] x, double h) {
+		for (int i=0; i<x.length; i++) x[i] /= h;
+	}
+
+
+	/**
+	 * return sum(x[xoff+i]*y[yoff+i]) for i in [0,len).
+	 * @param x double[]
+	 * @param xoff int
+	 * @param y double[]
+	 * @param yoff int
+	 * @param len int
+	 * @return double
+	 */
+	static double dot(double[] x, int xoff, double[] y, int yoff, int len) {
+		double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+		final int n4 = len & ~3;
+		int i = 0;
+		for (; i<n4; i+=4) {
+			s0 += x[xoff+i]*y[yoff+i];
+			s1 += x[xoff+i+1]*y[yoff+i+1];
+			s2 += x[xoff+i+2]*y[yoff+i+2];
+			s3 += x[xoff+i+3]*y[yoff+i+3];
+		}
+		for (; i<len; i++) s0 += x[xoff+i]*y[yoff+i];
+		return (s0+s1)+(s2+s3);
+	}
+
+
+	/**
+	 * return sum(x[i]*y[i]) for all i, and stores sum(x[i]*x[i]) and
+	 * sum(y[i]*y[i]) in ss[0] and ss[1], in a single pass over both arrays.
+	 * @param x double[]
+	 * @param y double[] of the same length as x
+	 * @param ss double[] of length at least 2
+	 * @return double
+	 */
+	static double dotAndSumSquares(double[] x, double[] y, double[] ss) {
+		double d0 = 0.0, d1 = 0.0, x0 = 0.0, x1 = 0.0, y0 = 0.0, y1 = 0.0;
+		final int n2 = x.length & ~1;
+		int i = 0;
+		for (; i<n2; i+=2) {
+			final double a0 = x[i], a1 = x[i+1];
+			final double b0 = y[i], b1 = y[i+1];
+			d0 += a0*b0;
+			d1 += a1*b1;
+			x0 += a0*a0;
+			x1 += a1*a1;
+			y0 += b0*b0;
+			y1 += b1*b1;
+		}
+		if (i<x.length) {
+			d0 += x[i]*y[i];
+			x0 += x[i]*x[i];
+			y0 += y[i]*y[i];
+		}
+		ss[0] = x0+x1;
+		ss[1] = y0+y1;
+		return d0+d1;
+	}
+
+
+	/**
+	 * return sum(x[i]*x[i]) for all i.
+	 * @param x double[]
+	 * @return double
+	 */
+	static double sumSquares(double[] x) {
+		return dot(x, 0, x, 0, x.length);
+	}
+
+
+	/**
+	 * return true iff all elements of x are (positive) zero, in the sense of
+	 * <CODE>Double.compare(x[i],0.0)==0</CODE>: negative zeros and NaNs count
+	 * as non-zeros.
+	 * @param x double[]
+	 * @return boolean
+	 */
+	static boolean isZero(double[] x) {
+		final int n = x.length;
+		for (int b=0; b<n; b+=_ZERO_TEST_BLOCK) {
+			final int e = Math.min(b+_ZERO_TEST_BLOCK, n);
+			long bits = 0L;
+			for (int i=b; i<e; i++) bits |= Double.doubleToRawLongBits(x[i]);
+			if (bits!=0L) return false;
+		}
+		return true;
+	}
+}
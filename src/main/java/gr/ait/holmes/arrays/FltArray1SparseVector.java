@@ -0,0 +1,584 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+
+
+/**
+ * sparse implementation of VectorIntf storing its non-zero values in single
+ * precision: an index array and a float[] values array, so that its non-zeros
+ * take 8 bytes each instead of the 12 bytes of <CODE>DblArray1SparseVector
+ * </CODE>. Values set are rounded to the nearest float (and values that round
+ * to zero are not stored), but all arithmetic (inner products, norms,
+ * <CODE>addMul()</CODE>) is carried out in double precision, so that the only
+ * error introduced is the rounding of the stored values. Vectors of this class
+ * are what <CODE>SparseMatrixBinaryFile.getIthRowCompact()</CODE> returns for
+ * files storing float values. Like <CODE>IntArray1SparseVector</CODE>, the
+ * class only supports zero as the default value of components, and is not
+ * thread-safe.
+ * @author itc
+ */
+public class FltArray1SparseVector implements SparseVectorIntf {
+  private static final long serialVersionUID = 2434410467690162271L;
+  private int[] _indices;  // ascending, only the first _ilen are valid
+  private float[] _values;  // no zeros among the first _ilen
+  private int _ilen;
+  private final int _n;
+
+
+  /**
+   * constructs the zero sparse vector in n-dimensional space.
+   * @param n int the number of dimensions
+   * @throws IllegalArgumentException if n &le; 0
+   */
+  public FltArray1SparseVector(int n) {
+    if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+    _n = n;
+    _indices = new int[0];
+    _values = new float[0];
+  }
+
+
+  /**
+   * public constructor, copying the arrays passed in.
+   * @param indices int[] must be in strictly ascending order
+   * @param values float[] must not contain zeros
+   * @param n int total length of the vector
+   * @throws IllegalArgumentException if the arrays are null or their lengths
+   * don't match, if indices don't ascend or are out of range, or if some value
+   * is zero
+   */
+  public FltArray1SparseVector(int[] indices, float[] values, int n) {
+    if (indices==null || values==null || indices.length!=values.length)
+      throw new IllegalArgumentException("Arguments null or dimensions "+
+                                         "don't match");
+    if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+    final int ilen = indices.length;
+    for (int i=0; i<ilen; i++) {
+      if (indices[i]<0 || indices[i]>=n || (i>0 && indices[i]<=indices[i-1]))
+        throw new IllegalArgumentException("indices not in ascending order "+
+                                           "or out of range");
+      if (values[i]==0.0f)
+        throw new IllegalArgumentException("zero component "+i);
+    }
+    _indices = Arrays.copyOf(indices, ilen);
+    _values = Arrays.copyOf(values, ilen);
+    _ilen = ilen;
+    _n = n;
+  }
+
+
+  /**
+   * constructs the single-precision copy of the given sparse vector.
+   * @param v SparseVectorIntf must have zero default value
+   * @throws IllegalArgumentException if v is null or has non-zero default
+   * value
+   */
+  public FltArray1SparseVector(SparseVectorIntf v) {
+    if (v==null || Double.compare(v.getDefaultValue(), 0.0)!=0)
+      throw new IllegalArgumentException("null vector or non-zero default");
+    _n = v.getNumCoords();
+    final int nnz = v.getNumNonZeros();
+    _indices = new int[nnz];
+    _values = new float[nnz];
+    for (int k=0; k<nnz; k++) {
+      final float f = (float) v.getIthNonZeroVal(k);
+      if (f==0.0f) continue;
+      _indices[_ilen] = v.getIthNonZeroPos(k);
+      _values[_ilen++] = f;
+    }
+  }
+
+
+  /**
+   * package-private constructor using (not copying) the arrays passed in,
+   * which must satisfy the invariants of this class (not checked).
+   * @param n int
+   * @param indices int[]
+   * @param values float[]
+   * @param ilen int
+   */
+  FltArray1SparseVector(int n, int[] indices, float[] values, int ilen) {
+    _n = n;
+    _indices = indices;
+    _values = values;
+    _ilen = ilen;
+  }
+
+
+  /**
+   * return a new VectorIntf object containing a copy of the data of this
+   * object.
+   * @return VectorIntf
+   */
+  public VectorIntf newCopy() {
+    return new FltArray1SparseVector(_n, Arrays.copyOf(_indices, _ilen),
+                                     Arrays.copyOf(_values, _ilen), _ilen);
+  }
+
+
+  /**
+   * return a new copy of this vector, with each component multiplied by the
+   * argument (the products are rounded to float).
+   * @param multFactor double
+   * @return VectorIntf
+   */
+  public VectorIntf newCopyMultBy(double multFactor) {
+    FltArray1SparseVector v = (FltArray1SparseVector) newCopy();
+    v.scaleValues(multFactor);
+    return v;
+  }
+
+
+  /**
+   * return a new un-managed copy of this object.
+   * @return VectorIntf
+   */
+  public VectorIntf newInstance() {
+    return newCopy();
+  }
+
+
+  /**
+   * return a new <CODE>FltArray1SparseVector</CODE> holding the non-zeros of
+   * the argument rounded to float.
+   * @param arg double[]
+   * @return VectorIntf
+   * @throws IllegalArgumentException if arg is null or empty
+   */
+  public VectorIntf newInstance(double[] arg) {
+    if (arg==null || arg.length==0)
+      throw new IllegalArgumentException("null or empty arg");
+    int nnz = 0;
+    for (int i=0; i<arg.length; i++) if ((float) arg[i]!=0.0f) ++nnz;
+    int[] indices = new int[nnz];
+    float[] values = new float[nnz];
+    int k = 0;
+    for (int i=0; i<arg.length; i++) {
+      final float f = (float) arg[i];
+      if (f!=0.0f) {
+        indices[k] = i;
+        values[k++] = f;
+      }
+    }
+    return new FltArray1SparseVector(arg.length, indices, values, nnz);
+  }
+
+
+  /**
+   * return the number of coordinates of this vector.
+   * @return int
+   */
+  public int getNumCoords() {
+    return _n;
+  }
+
+
+  /**
+   * return a double[] representation of this vector.
+   * @return double[]
+   */
+  public double[] getDblArray1() {
+    double[] x = new double[_n];
+    for (int i=0; i<_ilen; i++) x[_indices[i]] = _values[i];
+    return x;
+  }
+
+
+  /**
+   * return the i-th coordinate of this vector, in O(log(nnz)) time.
+   * @param i int
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getCoord(int i) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    final int p = Arrays.binarySearch(_indices, 0, _ilen, i);
+    return p>=0 ? _values[p] : 0.0;
+  }
+
+
+  /**
+   * set the i-th coordinate of this vector to the value given rounded to
+   * float. Costs O(log(nnz)) if the component is already non-zero, O(nnz)
+   * otherwise.
+   * @param i int
+   * @param val double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public void setCoord(int i, double val) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    final float f = (float) val;
+    final int p = Arrays.binarySearch(_indices, 0, _ilen, i);
+    if (p>=0) {
+      if (f!=0.0f) _values[p] = f;
+      else {
+        System.arraycopy(_indices, p+1, _indices, p, _ilen-p-1);
+        System.arraycopy(_values, p+1, _values, p, _ilen-p-1);
+        --_ilen;
+      }
+      return;
+    }
+    if (f==0.0f) return;
+    final int q = -p-1;
+    if (_ilen==_indices.length) {  // increase capacity 20%
+      _indices = Arrays.copyOf(_indices, _ilen+_ilen/5+1);
+      _values = Arrays.copyOf(_values, _ilen+_ilen/5+1);
+    }
+    System.arraycopy(_indices, q, _indices, q+1, _ilen-q);
+    System.arraycopy(_values, q, _values, q+1, _ilen-q);
+    _indices[q] = i;
+    _values[q] = f;
+    ++_ilen;
+  }
+
+
+  /**
+   * get the number of non-zeros of this vector.
+   * @return int
+   */
+  public int getNumNonZeros() {
+    return _ilen;
+  }
+
+
+  /**
+   * get the index of the i-th non-zero of this vector.
+   * @param i int
+   * @return int
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public int getIthNonZeroPos(int i) {
+    if (i<0 || i>=_ilen)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _ilen+"]");
+    return _indices[i];
+  }
+
+
+  /**
+   * get the value of the i-th non-zero of this vector.
+   * @param i int
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getIthNonZeroVal(int i) {
+    if (i<0 || i>=_ilen)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _ilen+"]");
+    return _values[i];
+  }
+
+
+  /**
+   * modifies this vector by adding the quantity m*other to it. The sums are
+   * computed in double and rounded to float once. Fast (linear in the
+   * non-zeros involved, or in n for dense arguments) for
+   * <CODE>DblArray1Vector</CODE> arguments and sparse arguments with zero
+   * default; O(n*log(nnz)) otherwise.
+   * @param m double
+   * @param other VectorIntf
+   * @throws IllegalArgumentException if other is null or does not have the
+   * same dimensions as this vector
+   */
+  public void addMul(double m, VectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("cannot call addMul(m,v) with v "+
+                                         "having different dimensions than "+
+                                         "this vector");
+    DblArray1SparseVector r =
+      SparseKernels.addMul(_indices, getDblValues(), _ilen, m, other);
+    if (r!=null) {
+      setFloats(r.getIndices(), r.getValues(), r.getILen());
+      return;
+    }
+    for (int i=0; i<_n; i++) {
+      setCoord(i, getCoord(i)+m*other.getCoord(i));
+    }
+  }
+
+
+  /**
+   * divide the components of this vector by the argument h.
+   * @param h double
+   * @throws IllegalArgumentException if h is (almost) zero or NaN
+   */
+  public void div(double h) {
+    if (Double.isNaN(h) || Math.abs(h)<1.e-120)
+      throw new IllegalArgumentException("division by (almost) zero or NaN");
+    scaleValues(1.0/h);
+  }
+
+
+  /**
+   * return true iff all components are zero.
+   * @return boolean
+   */
+  public boolean isAtOrigin() {
+    return _ilen==0;
+  }
+
+
+  /**
+   * compute the inner product of this vector with the argument, accumulating
+   * in double. Against <CODE>DblArray1Vector</CODE> objects the values are
+   * gathered from the dense array, and against sparse vectors with zero
+   * default the product is a linear merge of the two index sequences.
+   * @param other VectorIntf
+   * @return double
+   * @throws IllegalArgumentException if other is null or its dimension
+   * doesn't match this vector's dimension
+   */
+  public double innerProduct(VectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("dimensions don't match or null "+
+                                         "argument passed in");
+    if (other instanceof DblArray1Vector) {
+      return SparseKernels.gather(_indices, _values, 0, _ilen,
+                                  ((DblArray1Vector) other).get_x());
+    }
+    if (other instanceof FltArray1SparseVector) {
+      FltArray1SparseVector o = (FltArray1SparseVector) other;
+      return SparseKernels.dot(_indices, _values, 0, _ilen,
+                               o._indices, o._values, 0, o._ilen);
+    }
+    if (other instanceof DblArray1SparseVector &&
+        Double.compare(((DblArray1SparseVector) other).getDefaultValue(),
+                       0.0)==0) {
+      DblArray1SparseVector o = (DblArray1SparseVector) other;
+      return SparseKernels.dot(_indices, _values, 0, _ilen,
+                               o.getIndices(), o.getValues(), 0, o.getILen());
+    }
+    if (other instanceof DblArray1CSRRowView) {
+      DblArray1CSRRowView o = (DblArray1CSRRowView) other;
+      return SparseKernels.dot(_indices, _values, 0, _ilen,
+                               o.getColInds(), o.getVals(),
+                               o.getFrom(), o.getTo());
+    }
+    if (SparseKernels.isZeroDefaultSparse(other)) {
+      return SparseKernels.dot(this, (SparseVectorIntf) other);
+    }
+    double sum = 0.0;
+    for (int i=0; i<_ilen; i++) {
+      sum += _values[i]*other.getCoord(_indices[i]);
+    }
+    return sum;
+  }
+
+
+  /**
+   * return the k-th norm of this vector.
+   * @param k int
+   * @return double
+   * @throws IllegalArgumentException if k &le; 0
+   */
+  public double norm(int k) {
+    if (k<=0) throw new IllegalArgumentException("k<=0");
+    if (k==2) return norm2();
+    double res = 0.0;
+    for (int i=0; i<_ilen; i++) res += Math.pow(Math.abs(_values[i]), k);
+    return Math.pow(res, 1.0/k);
+  }
+
+
+  /**
+   * short-cut for norm(2).
+   * @return double
+   */
+  public double norm2() {
+    double res2 = 0.0;
+    for (int i=0; i<_ilen; i++) {
+      final double xi = _values[i];
+      res2 += xi*xi;
+    }
+    return Math.sqrt(res2);
+  }
+
+
+  /**
+   * computes the infinity norm of this vector.
+   * @return double
+   */
+  public double normInfinity() {
+    double res = 0.0;
+    for (int i=0; i<_ilen; i++) {
+      final double absxi = Math.abs(_values[i]);
+      if (absxi>res) res = absxi;
+    }
+    return res;
+  }
+
+
+  /**
+   * return true iff the other vector is exactly equal to this one
+   * component-wise, regardless of its representation.
+   * @param other Object
+   * @return boolean
+   */
+  public boolean equals(Object other) {
+    if (other==null || other instanceof VectorIntf == false) return false;
+    VectorIntf o = (VectorIntf) other;
+    if (o.getNumCoords()!=_n) return false;
+    if (other instanceof SparseVectorIntf) {
+      return SparseKernels.equals(this, (SparseVectorIntf) other);
+    }
+    if (other instanceof DblArray1Vector) {
+      return SparseKernels.equals(this, ((DblArray1Vector) other).get_x());
+    }
+    for (int i=0; i<_n; i++) {
+      if (Double.compare(getCoord(i), o.getCoord(i))!=0) return false;
+    }
+    return true;
+  }
+
+
+  /**
+   * return the integer part of the first component of this vector, as the
+   * other vector classes of this package do.
+   * @return int
+   */
+  public int hashCode() {
+    return (int) getCoord(0);
+  }
+
+
+  /**
+   * return a String representation of this vector.
+   * @return String
+   */
+  public String toString() {
+    StringBuilder x = new StringBuilder("[");
+    for (int i=0; i<_ilen; i++) {
+      if (i>0) x.append(", ");
+      x.append("(").append(_indices[i]).append(",").append(_values[i]).
+        append(")");
+    }
+    x.append("](_n=").append(_n).append("/ _ilen=").append(_ilen).append(")");
+    return x.toString();
+  }
+
+
+  /**
+   * package-private accessor to the indices array. Only the first
+   * <CODE>getILen()</CODE> positions are valid.
+   * @return int[]
+   */
+  int[] getIndices() {
+    return _indices;
+  }
+
+
+  /**
+   * package-private accessor to the values array. Only the first
+   * <CODE>getILen()</CODE> positions are valid.
+   * @return float[]
+   */
+  float[] getValues() {
+    return _values;
+  }
+
+
+  /**
+   * package-private accessor to the number of non-zeros.
+   * @return int
+   */
+  int getILen() {
+    return _ilen;
+  }
+
+
+  /**
+   * multiplies the components of this vector by a, in place, dropping those
+   * that become zero (rounded to float).
+   * @param a double
+   * @throws IllegalArgumentException if a is NaN
+   */
+  public void scale(double a) throws IllegalArgumentException {
+    if (Double.isNaN(a)) throw new IllegalArgumentException("a is NaN");
+    scaleValues(a);
+  }
+
+
+  /**
+   * sets this vector to a*x + b*this, in place: a pass over the non-zeros of
+   * this vector (none if b is 1) followed by <CODE>addMul(a,x)</CODE>. When b
+   * is zero the old components of this vector are not read.
+   * @param a double
+   * @param x VectorIntf
+   * @param b double
+   * @throws IllegalArgumentException if x is null or does not have the same
+   * dimensions as this vector, or if a or b is NaN
+   */
+  public void axpby(double a, VectorIntf x, double b) 
+    throws IllegalArgumentException {
+    if (x==null || x.getNumCoords()!=_n || Double.isNaN(a) || Double.isNaN(b))
+      throw new IllegalArgumentException("cannot call axpby(a,x,b) with x "+
+                                         "having different dimensions than "+
+                                         "this vector or with a or b being "+
+                                         "NaN.");
+    if (x==this) {
+      scale(a+b);
+      return;
+    }
+    if (b==0.0) _ilen = 0;
+    else if (b!=1.0) scale(b);
+    addMul(a, x);
+  }
+
+
+  /**
+   * multiplies all components by the argument, dropping those that become
+   * zero.
+   * @param m double
+   */
+  private void scaleValues(double m) {
+    int k = 0;
+    for (int i=0; i<_ilen; i++) {
+      final float f = (float) (_values[i]*m);
+      if (f==0.0f) continue;
+      _indices[k] = _indices[i];
+      _values[k++] = f;
+    }
+    _ilen = k;
+  }
+
+
+  /**
+   * return the non-zero values of this vector as a new double[].
+   * @return double[]
+   */
+  private double[] getDblValues() {
+    double[] va = new double[_ilen];
+    for (int i=0; i<_ilen; i++) va[i] = _values[i];
+    return va;
+  }
+
+
+  /**
+   * replaces the contents of this vector with the first ilen (index, value)
+   * pairs of the arrays passed in rounded to float, dropping values that round
+   * to zero.
+   * @param indices int[] in ascending order
+   * @param values double[]
+   * @param ilen int
+   */
+  private void setFloats(int[] indices, double[] values, int ilen) {
+    int[] inds = new int[ilen];
+    float[] vals = new float[ilen];
+    int k = 0;
+    for (int i=0; i<ilen; i++) {
+      final float f = (float) values[i];
+      if (f==0.0f) continue;
+      inds[k] = indices[i];
+      vals[k++] = f;
+    }
+    _indices = inds;
+    _values = vals;
+    _ilen = k;
+  }
+}
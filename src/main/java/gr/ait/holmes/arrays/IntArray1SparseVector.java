@@ -4,7 +4,12 @@
 
 package gr.ait.holmes.arrays;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 
 /**
@@ -24,12 +29,14 @@ import java.util.ArrayList;
  * made for speed considerations. Clients must therefore ensure on their own
  * that the application is race-condition free when using this class. Notice 
  * also that this class only supports zero as the default value of components.
+ * Serialization writes only the non-zero components, in the encoding of
+ * <CODE>SparseVectorCodec</CODE>.
  * @author itc
  */
 public class IntArray1SparseVector implements SparseVectorIntf {
   //private static final long serialVersionUID = ;
-  private int[] _indices=null;  // _indices[0] indicates the first non-zero element
-  private int[] _values=null;  // _values[0] is the value of the _indices[0]-th element of the array
+  private transient int[] _indices=null;  // _indices[0] indicates the first non-zero element
+  private transient int[] _values=null;  // _values[0] is the value of the _indices[0]-th element of the array
   private int _ilen;  // value of last non-zero element in _indices & _values arrays
   private int _n;  // vector dimension
 
@@ -485,6 +492,54 @@ public class IntArray1SparseVector implements SparseVectorIntf {
       throw new IllegalArgumentException("cannot call addMul(m,v) with v "+
                                          "having different dimensions than "+
                                          "this vector");
+		if (other instanceof IntArray1SparseVector) {
+			IntArray1SparseVector o = (IntArray1SparseVector) other;
+			if (o._ilen==0) return;
+			int[] indices = new int[_ilen+o._ilen];
+			double[] values = new double[_ilen+o._ilen];
+			final int ilen =
+				SparseKernels.mergeAddMul(_indices, getDblValues(), _ilen, 0.0, m,
+					                        o._indices, o._values, 0, o._ilen,
+					                        indices, values);
+			setInts(indices, values, ilen);
+			return;
+		}
+		int[] ib = null;
+		double[] vb = null;
+		int fb = 0;
+		int tb = 0;
+		if (other instanceof DblArray1SparseVector &&
+			  Double.compare(((DblArray1SparseVector) other).getDefaultValue(),
+				             0.0)==0) {
+			DblArray1SparseVector o = (DblArray1SparseVector) other;
+			ib = o.getIndices(); vb = o.getValues(); tb = o.getILen();
+		}
+		else if (other instanceof DblArray1CSRRowView) {
+			DblArray1CSRRowView o = (DblArray1CSRRowView) other;
+			ib = o.getColInds(); vb = o.getVals(); fb = o.getFrom(); tb = o.getTo();
+		}
+		if (ib!=null) {
+			if (tb==fb) return;
+			int[] indices = new int[_ilen+tb-fb];
+			double[] values = new double[_ilen+tb-fb];
+			final int ilen =
+				SparseKernels.mergeAddMul(_indices, getDblValues(), _ilen, 0.0, m,
+					                        ib, vb, fb, tb, indices, values);
+			setInts(indices, values, ilen);
+			return;
+		}
+		if (other instanceof DblArray1Vector) {
+			final double[] x = ((DblArray1Vector) other).get_x();
+			final double[] va = getDblValues();
+			final int ilen =
+				SparseKernels.addMulDense(_indices, va, _ilen, 0.0, m, x, null, null);
+			int[] indices = new int[ilen];
+			double[] values = new double[ilen];
+			SparseKernels.addMulDense(_indices, va, _ilen, 0.0, m, x,
+				                        indices, values);
+			setInts(indices, values, ilen);
+			return;
+		}
     for (int i=0; i<_n; i++) {
       setCoord(i, getCoord(i)+m*other.getCoord(i));
     }
@@ -506,6 +561,61 @@ public class IntArray1SparseVector implements SparseVectorIntf {
   }
 
 
+  /**
+   * multiplies the components of this vector by a, in place and without
+   * allocating: a pass over the non-zeros checks the products, and a second
+   * one stores them, dropping those that become zero.
+   * @param a double
+   * @throws IllegalArgumentException if a is NaN, or if some product does not
+   * represent an int (in which case this vector is not modified)
+   */
+  public void scale(double a) throws IllegalArgumentException {
+    if (Double.isNaN(a)) throw new IllegalArgumentException("a is NaN");
+		for (int i=0; i<_ilen; i++) {
+			final double v = a*_values[i];
+			if (v!=0.0) toInt(_indices[i], v);
+		}
+		int k = 0;
+		for (int i=0; i<_ilen; i++) {
+			final double v = a*_values[i];
+			if (v==0.0) continue;  // also drops -0.0
+			_indices[k] = _indices[i];
+			_values[k++] = (int) v;
+		}
+		_ilen = k;
+  }
+
+
+  /**
+   * sets this vector to a*x + b*this, in place: a pass over the non-zeros of
+   * this vector (none if b is 1) followed by <CODE>addMul(a,x)</CODE>, which
+   * merges the index arrays when x is a sparse vector of this package. When b
+   * is zero the old components of this vector are not read.
+   * @param a double must hold an int value
+   * @param x VectorIntf must hold only int values
+   * @param b double
+   * @throws IllegalArgumentException if x is null or does not have the same
+   * dimensions as this vector, if a or b is NaN, or if some component of the
+   * result does not represent an int (in which case this vector may already
+   * have been scaled by b)
+   */
+  public void axpby(double a, VectorIntf x, double b) 
+    throws IllegalArgumentException {
+    if (x==null || x.getNumCoords()!=_n || Double.isNaN(a) || Double.isNaN(b))
+      throw new IllegalArgumentException("cannot call axpby(a,x,b) with x "+
+                                         "having different dimensions than "+
+                                         "this vector or with a or b being "+
+                                         "NaN.");
+		if (x==this) {
+			scale(a+b);
+			return;
+		}
+		if (b==0.0) _ilen = 0;
+		else if (b!=1.0) scale(b);
+		addMul(a, x);
+  }
+
+
   /**
    * return true iff all components are zero.
    * @return boolean
@@ -561,6 +671,28 @@ public class IntArray1SparseVector implements SparseVectorIntf {
   public double innerProduct(VectorIntf other) throws IllegalArgumentException {
     if (other==null || other.getNumCoords()!=_n)
       throw new IllegalArgumentException("dimensions don't match or null argument passed in");
+		if (other instanceof DblArray1Vector) {
+			return SparseKernels.gather(_indices, _values, 0, _ilen,
+				                          ((DblArray1Vector) other).get_x());
+		}
+		if (other instanceof IntArray1SparseVector) {
+			IntArray1SparseVector o = (IntArray1SparseVector) other;
+			return SparseKernels.dot(_indices, _values, 0, _ilen,
+				                       o._indices, o._values, 0, o._ilen);
+		}
+		if (other instanceof DblArray1SparseVector &&
+			  Double.compare(((DblArray1SparseVector) other).getDefaultValue(),
+				             0.0)==0) {
+			DblArray1SparseVector o = (DblArray1SparseVector) other;
+			return SparseKernels.dot(o.getIndices(), o.getValues(), 0, o.getILen(),
+				                       _indices, _values, 0, _ilen);
+		}
+		if (other instanceof DblArray1CSRRowView) {
+			DblArray1CSRRowView o = (DblArray1CSRRowView) other;
+			return SparseKernels.dot(o.getColInds(), o.getVals(),
+				                       o.getFrom(), o.getTo(),
+				                       _indices, _values, 0, _ilen);
+		}
     double sum=0.0;
     for (int i=0; i<_ilen; i++) {
       sum += _values[i]*other.getCoord(_indices[i]);
@@ -617,7 +749,10 @@ public class IntArray1SparseVector implements SparseVectorIntf {
 
 
   /**
-   * return true iff the other vector is exactly equal to this.
+   * return true iff the other vector is exactly equal to this. Against other
+	 * sparse vectors the test is a linear merge of the two index sequences, and
+	 * against <CODE>DblArray1Vector</CODE> objects a single pass over the dense
+	 * array.
    * @param other Object
    * @return boolean
    */
@@ -626,28 +761,149 @@ public class IntArray1SparseVector implements SparseVectorIntf {
     VectorIntf o = (VectorIntf) other;
     if (o.getNumCoords()!=_n) return false;
     if (other instanceof SparseVectorIntf) {  // short-cut
-      SparseVectorIntf osv = (SparseVectorIntf) other;
-      for (int i = 0; i < _ilen; i++)
-        if (Double.compare(_values[i], osv.getCoord(_indices[i])) != 0)
-          return false;
-      for (int i = 0; i < osv.getNumNonZeros(); i++) {
-        int pi = osv.getIthNonZeroPos(i);
-        if (Double.compare(osv.getCoord(pi), getCoord(pi)) != 0)
-          return false;
-      }
-      return true;
+			return SparseKernels.equals(this, (SparseVectorIntf) other);
     }
-    else return o.equals(this);  // no short-cut
+		if (other instanceof DblArray1Vector) {
+			return SparseKernels.equals(this, ((DblArray1Vector) other).get_x());
+		}
+		for (int i=0; i<_n; i++) {  // no short-cut
+			if (Double.compare(getCoord(i), o.getCoord(i))!=0) return false;
+		}
+		return true;
   }
 	
 	
 	/**
-	 * return the first value of the first non-zero element of this vector, if it
-	 * exists, else return zero.
+	 * return the integer part of the first component of this vector, so that
+	 * vectors that are equal component-wise have equal hash codes regardless of
+	 * their representation.
 	 * @return int
 	 */
 	public int hashCode() {
-		return _ilen > 0 ? _values[0] : 0;
+		return (int) getCoord(0);
+	}
+
+
+	/**
+	 * package-private accessor to the indices array, for the kernels of this
+	 * package. Only the first <CODE>getILen()</CODE> positions are valid.
+	 * @return int[] may be null
+	 */
+	int[] getIndices() {
+		return _indices;
+	}
+
+
+	/**
+	 * package-private accessor to the values array, for the kernels of this
+	 * package. Only the first <CODE>getILen()</CODE> positions are valid.
+	 * @return int[] may be null
+	 */
+	int[] getValues() {
+		return _values;
+	}
+
+
+	/**
+	 * package-private accessor to the number of non-zeros.
+	 * @return int
+	 */
+	int getILen() {
+		return _ilen;
+	}
+
+
+	/**
+	 * package-private setter of the contents of this vector, for
+	 * <CODE>SparseVectorCodec</CODE>: uses (not copies) the arrays passed in,
+	 * which must satisfy the invariants of this class (not checked).
+	 * @param indices int[]
+	 * @param values int[]
+	 * @param ilen int
+	 */
+	void setData(int[] indices, int[] values, int ilen) {
+		_indices = indices;
+		_values = values;
+		_ilen = ilen;
+	}
+
+
+	/**
+	 * writes the dimension and number of non-zeros of this vector, then the
+	 * first _ilen indices and values of the arrays in the encoding of
+	 * <CODE>SparseVectorCodec</CODE>.
+	 * @param out ObjectOutputStream
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		SparseVectorCodec.writeIndices(_indices, _ilen, out);
+		SparseVectorCodec.writeInts(_values, _ilen, out);
+	}
+
+
+	/**
+	 * reads a vector written by <CODE>writeObject()</CODE>, with arrays of
+	 * exactly _ilen elements.
+	 * @param in ObjectInputStream
+	 * @throws IOException if reading fails, or the data read are not a valid
+	 * vector
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject(ObjectInputStream in)
+		throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (_n<=0 || _ilen<0 || _ilen>_n)
+			throw new InvalidObjectException("invalid dimension or non-zeros");
+		if (_ilen==0) return;  // null arrays, as for a new vector
+		_indices = SparseVectorCodec.readIndices(in, _ilen, _n);
+		_values = SparseVectorCodec.readInts(in, _ilen);
+	}
+
+
+	/**
+	 * return the non-zero values of this vector as a new double[] of length
+	 * <CODE>_ilen</CODE>, as required by the merge kernels.
+	 * @return double[]
+	 */
+	private double[] getDblValues() {
+		double[] va = new double[_ilen];
+		for (int i=0; i<_ilen; i++) va[i] = _values[i];
+		return va;
+	}
+
+
+	/**
+	 * replaces the contents of this vector with the first ilen (index, value)
+	 * pairs of the arrays passed in, which must be in ascending index order and
+	 * hold no zeros. The values are all checked before this vector is modified.
+	 * @param indices int[]
+	 * @param values double[]
+	 * @param ilen int
+	 * @throws IllegalArgumentException if some value does not represent an int
+	 */
+	private void setInts(int[] indices, double[] values, int ilen) {
+		int[] ivals = new int[ilen];
+		for (int i=0; i<ilen; i++) ivals[i] = toInt(indices[i], values[i]);
+		_indices = ilen==indices.length ? indices : Arrays.copyOf(indices, ilen);
+		_values = ivals;
+		_ilen = ilen;
+	}
+
+
+	/**
+	 * return the int value of the i-th component of a result.
+	 * @param i int the index of the component, for the error message
+	 * @param v double non-zero
+	 * @return int
+	 * @throws IllegalArgumentException if v does not represent an int
+	 */
+	private static int toInt(int i, double v) {
+		if (Double.compare(v, Math.round(v))!=0 ||
+			  v>Integer.MAX_VALUE || v<Integer.MIN_VALUE)
+			throw new IllegalArgumentException("result component "+i+"="+v+
+				                                 " does not represent int");
+		return (int) v;
 	}
 
 
@@ -0,0 +1,166 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+
+/**
+ * package-private utility class that sorts pairs of (int key, double value)
+ * held in two parallel primitive arrays by ascending key, without boxing and
+ * without allocating any objects.
+ * @author itc
+ */
+final class IntDblPairSort {
+	private final static int _INSERTION_SORT_THRESHOLD = 24;
+
+
+	/**
+	 * no instances allowed.
+	 */
+	private IntDblPairSort() {
+		// no-op
+	}
+
+
+	/**
+	 * check whether the keys in [from,to) are in (non-strictly) ascending order.
+	 * @param keys int[]
+	 * @param from int inclusive
+	 * @param to int exclusive
+	 * @return boolean
+	 */
+	static boolean isSorted(int[] keys, int from, int to) {
+		for (int i=from+1; i<to; i++) {
+			if (keys[i]<keys[i-1]) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * sorts the pairs in positions [from,to) of the two arrays by ascending key.
+	 * The sort is an in-place quick-sort that switches to insertion-sort for
+	 * small sub-arrays; it is not stable.
+	 * @param keys int[]
+	 * @param vals double[]
+	 * @param from int inclusive
+	 * @param to int exclusive
+	 */
+	static void sort(int[] keys, double[] vals, int from, int to) {
+		while (to-from > _INSERTION_SORT_THRESHOLD) {
+			// median of three pivot
+			int mid = (from+to) >>> 1;
+			int a = keys[from], b = keys[mid], c = keys[to-1];
+			int pivot = a<b ? (b<c ? b : (a<c ? c : a)) : (a<c ? a : (b<c ? c : b));
+			int i = from;
+			int j = to-1;
+			while (i<=j) {
+				while (keys[i]<pivot) i++;
+				while (keys[j]>pivot) j--;
+				if (i<=j) {
+					swap(keys, vals, i++, j--);
+				}
+			}
+			// recurse on the smaller part, iterate on the larger
+			if (j-from < to-i) {
+				sort(keys, vals, from, j+1);
+				from = i;
+			}
+			else {
+				sort(keys, vals, i, to);
+				to = j+1;
+			}
+		}
+		insertionSort(keys, vals, from, to);
+	}
+
+
+	/**
+	 * stable insertion-sort of the pairs in positions [from,to).
+	 * @param keys int[]
+	 * @param vals double[]
+	 * @param from int inclusive
+	 * @param to int exclusive
+	 */
+	static void insertionSort(int[] keys, double[] vals, int from, int to) {
+		for (int i=from+1; i<to; i++) {
+			final int ki = keys[i];
+			final double vi = vals[i];
+			int j = i-1;
+			while (j>=from && keys[j]>ki) {
+				keys[j+1] = keys[j];
+				vals[j+1] = vals[j];
+				--j;
+			}
+			keys[j+1] = ki;
+			vals[j+1] = vi;
+		}
+	}
+
+
+	/**
+	 * stable LSD radix-sort of the pairs in positions [0,len) of the two arrays
+	 * by ascending key, using 11-bit digits; passes for digits in which all keys
+	 * agree are skipped, so for keys less than 2^22 at most two passes are
+	 * made. The keys must be non-negative. The method allocates nothing: the
+	 * caller provides the scratch arrays, and the sorted pairs are always left
+	 * in the first two arrays.
+	 * @param keys int[]
+	 * @param vals double[]
+	 * @param len int
+	 * @param tmpKeys int[] scratch array of length at least len
+	 * @param tmpVals double[] scratch array of length at least len
+	 * @param counts int[] scratch array of length at least 2048
+	 */
+	static void radixSort(int[] keys, double[] vals, int len,
+		                    int[] tmpKeys, double[] tmpVals, int[] counts) {
+		if (len<=_INSERTION_SORT_THRESHOLD) {
+			insertionSort(keys, vals, 0, len);
+			return;
+		}
+		int or = 0;
+		int and = -1;
+		for (int i=0; i<len; i++) {
+			or |= keys[i];
+			and &= keys[i];
+		}
+		final int diff = or ^ and;  // bits in which the keys differ
+		int[] src_k = keys;
+		double[] src_v = vals;
+		int[] dst_k = tmpKeys;
+		double[] dst_v = tmpVals;
+		for (int shift=0; shift<31; shift+=11) {
+			if (((diff >>> shift) & 0x7ff)==0) continue;  // nothing to do
+			for (int d=0; d<2048; d++) counts[d] = 0;
+			for (int i=0; i<len; i++) counts[(src_k[i] >>> shift) & 0x7ff]++;
+			int sum = 0;
+			for (int d=0; d<2048; d++) {
+				final int c = counts[d];
+				counts[d] = sum;
+				sum += c;
+			}
+			for (int i=0; i<len; i++) {
+				final int p = counts[(src_k[i] >>> shift) & 0x7ff]++;
+				dst_k[p] = src_k[i];
+				dst_v[p] = src_v[i];
+			}
+			int[] tk = src_k; src_k = dst_k; dst_k = tk;
+			double[] tv = src_v; src_v = dst_v; dst_v = tv;
+		}
+		if (src_k!=keys) {
+			System.arraycopy(src_k, 0, keys, 0, len);
+			System.arraycopy(src_v, 0, vals, 0, len);
+		}
+	}
+
+
+	private static void swap(int[] keys, double[] vals, int i, int j) {
+		final int k = keys[i];
+		keys[i] = keys[j];
+		keys[j] = k;
+		final double v = vals[i];
+		vals[i] = vals[j];
+		vals[j] = v;
+	}
+}
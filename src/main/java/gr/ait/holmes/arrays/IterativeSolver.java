@@ -0,0 +1,430 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * iterative solvers of linear systems A*x = b, for large sparse matrices held
+ * in memory or on disk: the conjugate gradient method (CG) for symmetric
+ * positive definite A, and the stabilized bi-conjugate gradient method
+ * (BiCGSTAB) for general square A, both optionally with the Jacobi (diagonal)
+ * preconditioner. The matrix-vector products run in parallel through
+ * <CODE>MatrixOps</CODE>. The vectors of the method are <CODE>double[]</CODE>
+ * arrays allocated once per solve (x itself, if it is a
+ * <CODE>DblArray1Vector</CODE>), and are updated in place, in parallel over
+ * blocks of coordinates: an iteration allocates no vectors. The updates
+ * following a product are fused into a single sweep over the coordinates,
+ * which visits them in tiles small enough to stay in the L1 cache and also
+ * computes the inner products the next step needs; so a CG iteration costs a
+ * product and three sweeps, and a BiCGSTAB iteration two products and five
+ * sweeps.
+ * <p>The iteration stops when the norm of the residual b-A*x drops to at most
+ * tol*||b||, after maxIters iterations, or on a breakdown of the method (a
+ * zero denominator, e.g. for CG when A is not positive definite). The
+ * residual is the recursively updated one, which after many iterations may
+ * drift from the true residual by roundoff. Objects of this class are
+ * immutable and thread-safe.</p>
+ * @author itc
+ */
+public final class IterativeSolver {
+	private final static int _TILE = 1 << 10;
+	private final static int _MIN_ELEMS_PER_TASK = 1 << 15;
+	private final double _tol;
+	private final int _maxIters;
+	private final boolean _jacobi;
+	private final ForkJoinPool _pool;
+
+
+	/**
+	 * constructs a Jacobi-preconditioned solver running in the common
+	 * fork/join pool.
+	 * @param tol double the relative residual norm to reach
+	 * @param maxIters int the max. number of iterations
+	 * @throws IllegalArgumentException if tol&le;0 or maxIters&lt;0
+	 */
+	public IterativeSolver(double tol, int maxIters) {
+		this(tol, maxIters, true, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * constructs a solver with the given parameters.
+	 * @param tol double the relative residual norm to reach
+	 * @param maxIters int the max. number of iterations
+	 * @param jacobi boolean whether to use the Jacobi preconditioner
+	 * @param pool ForkJoinPool
+	 * @throws IllegalArgumentException if tol&le;0, maxIters&lt;0 or pool is
+	 * null
+	 */
+	public IterativeSolver(double tol, int maxIters, boolean jacobi,
+		                     ForkJoinPool pool) {
+		if (!(tol>0) || maxIters<0 || pool==null)
+			throw new IllegalArgumentException("tol<=0, maxIters<0 or null pool");
+		_tol = tol;
+		_maxIters = maxIters;
+		_jacobi = jacobi;
+		_pool = pool;
+	}
+
+
+	/**
+	 * solves A*x = b by the (preconditioned) conjugate gradient method, for
+	 * symmetric positive definite A.
+	 * @param A MatrixIntf square
+	 * @param b VectorIntf
+	 * @param x VectorIntf the initial guess, overwritten by the solution
+	 * @return Result
+	 * @throws IllegalArgumentException if any argument is null, dimensions
+	 * don't match, x and b are the same object, or the preconditioner is used
+	 * and the diagonal of A has a zero
+	 */
+	public Result solveCG(MatrixIntf A, VectorIntf b, VectorIntf x) {
+		final int n = checkArgs(A, b, x);
+		final double[] ba = MatrixOps.getArray(b);
+		final double[] xa = MatrixOps.getArray(x);
+		final int[] work = MatrixOps.getRowWork(A);
+		final double[] dinv = _jacobi ? getInverseDiagonal(A) : null;
+		final double[] r = new double[n];
+		final double[] z = dinv!=null ? new double[n] : r;
+		final double[] p = new double[n];
+		final double[] q = new double[n];
+		final Sweeper sw = new Sweeper(n);
+		// r = b-A*x, z = M^-1*r, p = z
+		MatrixOps.multiply(A, xa, q, work, _pool);
+		double[] sums = sw.run((lo, hi, acc) -> {
+			System.arraycopy(ba, lo, r, lo, hi-lo);
+			DenseKernels.axpy(-1.0, q, lo, r, lo, hi-lo);
+			if (dinv!=null) DenseKernels.mul(dinv, r, z, lo, hi);
+			System.arraycopy(z, lo, p, lo, hi-lo);
+			acc[0] += DenseKernels.dot(ba, lo, ba, lo, hi-lo);
+			acc[1] += DenseKernels.dot(r, lo, z, lo, hi-lo);
+		});
+		final double bnorm = Math.sqrt(sums[0]);
+		if (bnorm==0.0) return setZero(x, xa);
+		final double stop = _tol*bnorm;
+		double rz = sums[1];
+		double rnorm = dinv!=null ? norm2(r, sw) : Math.sqrt(rz);
+		int k = 0;
+		boolean converged = rnorm<=stop;
+		while (!converged && k<_maxIters) {
+			MatrixOps.multiply(A, p, q, work, _pool);
+			final double pq = sw.run((lo, hi, acc) ->
+				acc[0] += DenseKernels.dot(p, lo, q, lo, hi-lo))[0];
+			if (!(pq>0.0)) break;  // breakdown: A is not positive definite
+			final double alpha = rz/pq;
+			// x += alpha*p, r -= alpha*q, z = M^-1*r
+			sums = sw.run((lo, hi, acc) -> {
+				DenseKernels.axpy(alpha, p, lo, xa, lo, hi-lo);
+				DenseKernels.axpy(-alpha, q, lo, r, lo, hi-lo);
+				acc[0] += DenseKernels.dot(r, lo, r, lo, hi-lo);
+				if (dinv!=null) {
+					DenseKernels.mul(dinv, r, z, lo, hi);
+					acc[1] += DenseKernels.dot(r, lo, z, lo, hi-lo);
+				}
+			});
+			++k;
+			rnorm = Math.sqrt(sums[0]);
+			if (rnorm<=stop) converged = true;
+			else {
+				final double rz_new = dinv!=null ? sums[1] : sums[0];
+				final double beta = rz_new/rz;
+				rz = rz_new;
+				sw.run((lo, hi, acc) -> DenseKernels.axpby(1.0, z, beta, p, lo, hi));
+			}
+		}
+		store(x, xa);
+		return new Result(k, rnorm/bnorm, converged);
+	}
+
+
+	/**
+	 * solves A*x = b by the (right-preconditioned) BiCGSTAB method.
+	 * @param A MatrixIntf square
+	 * @param b VectorIntf
+	 * @param x VectorIntf the initial guess, overwritten by the solution
+	 * @return Result
+	 * @throws IllegalArgumentException if any argument is null, dimensions
+	 * don't match, x and b are the same object, or the preconditioner is used
+	 * and the diagonal of A has a zero
+	 */
+	public Result solveBiCGSTAB(MatrixIntf A, VectorIntf b, VectorIntf x) {
+		final int n = checkArgs(A, b, x);
+		final double[] ba = MatrixOps.getArray(b);
+		final double[] xa = MatrixOps.getArray(x);
+		final int[] work = MatrixOps.getRowWork(A);
+		final double[] dinv = _jacobi ? getInverseDiagonal(A) : null;
+		final double[] r = new double[n];  // also holds s = r-alpha*v
+		final double[] rhat = new double[n];
+		final double[] p = new double[n];
+		final double[] v = new double[n];
+		final double[] t = new double[n];
+		final double[] phat = dinv!=null ? new double[n] : p;
+		final double[] shat = dinv!=null ? new double[n] : r;
+		final Sweeper sw = new Sweeper(n);
+		// r = rhat = b-A*x
+		MatrixOps.multiply(A, xa, t, work, _pool);
+		double[] sums = sw.run((lo, hi, acc) -> {
+			System.arraycopy(ba, lo, r, lo, hi-lo);
+			DenseKernels.axpy(-1.0, t, lo, r, lo, hi-lo);
+			System.arraycopy(r, lo, rhat, lo, hi-lo);
+			acc[0] += DenseKernels.dot(ba, lo, ba, lo, hi-lo);
+			acc[1] += DenseKernels.dot(r, lo, r, lo, hi-lo);
+		});
+		final double bnorm = Math.sqrt(sums[0]);
+		if (bnorm==0.0) return setZero(x, xa);
+		final double stop = _tol*bnorm;
+		double rnorm = Math.sqrt(sums[1]);
+		double rho = sums[1];
+		double rho_old = 1.0;
+		double alpha = 1.0;
+		double omega = 1.0;
+		int k = 0;
+		boolean converged = rnorm<=stop;
+		while (!converged && k<_maxIters && rho!=0.0 && omega!=0.0) {
+			// p = r + beta*(p-omega*v), phat = M^-1*p
+			final double beta = (rho/rho_old)*(alpha/omega);
+			final double om = omega;
+			sw.run((lo, hi, acc) -> {
+				DenseKernels.axpy(-om, v, lo, p, lo, hi-lo);
+				DenseKernels.axpby(1.0, r, beta, p, lo, hi);
+				if (dinv!=null) DenseKernels.mul(dinv, p, phat, lo, hi);
+			});
+			MatrixOps.multiply(A, phat, v, work, _pool);
+			final double rv = sw.run((lo, hi, acc) ->
+				acc[0] += DenseKernels.dot(rhat, lo, v, lo, hi-lo))[0];
+			if (rv==0.0) break;  // breakdown
+			alpha = rho/rv;
+			final double al = alpha;
+			// s = r-alpha*v (in r), shat = M^-1*s
+			final double snorm = Math.sqrt(sw.run((lo, hi, acc) -> {
+				DenseKernels.axpy(-al, v, lo, r, lo, hi-lo);
+				if (dinv!=null) DenseKernels.mul(dinv, r, shat, lo, hi);
+				acc[0] += DenseKernels.dot(r, lo, r, lo, hi-lo);
+			})[0]);
+			++k;
+			if (snorm<=stop) {
+				sw.run((lo, hi, acc) -> DenseKernels.axpy(al, phat, lo, xa, lo, hi-lo));
+				rnorm = snorm;
+				converged = true;
+				break;
+			}
+			MatrixOps.multiply(A, shat, t, work, _pool);
+			sums = sw.run((lo, hi, acc) -> {
+				acc[0] += DenseKernels.dot(t, lo, r, lo, hi-lo);
+				acc[1] += DenseKernels.dot(t, lo, t, lo, hi-lo);
+			});
+			if (sums[1]==0.0) break;  // breakdown
+			omega = sums[0]/sums[1];
+			final double om2 = omega;
+			// x += alpha*phat + omega*shat, r = s-omega*t
+			sums = sw.run((lo, hi, acc) -> {
+				DenseKernels.axpy(al, phat, lo, xa, lo, hi-lo);
+				DenseKernels.axpy(om2, shat, lo, xa, lo, hi-lo);
+				DenseKernels.axpy(-om2, t, lo, r, lo, hi-lo);
+				acc[0] += DenseKernels.dot(r, lo, r, lo, hi-lo);
+				acc[1] += DenseKernels.dot(rhat, lo, r, lo, hi-lo);
+			});
+			rnorm = Math.sqrt(sums[0]);
+			rho_old = rho;
+			rho = sums[1];
+			converged = rnorm<=stop;
+		}
+		store(x, xa);
+		return new Result(k, rnorm/bnorm, converged);
+	}
+
+
+	/**
+	 * checks the arguments of a solve.
+	 * @param A MatrixIntf
+	 * @param b VectorIntf
+	 * @param x VectorIntf
+	 * @return int the dimension of the system
+	 * @throws IllegalArgumentException if the arguments are not valid
+	 */
+	private static int checkArgs(MatrixIntf A, VectorIntf b, VectorIntf x) {
+		if (A==null || b==null || x==null || b==x ||
+			  A.getNumRows()!=A.getNumCols() ||
+			  b.getNumCoords()!=A.getNumRows() || x.getNumCoords()!=A.getNumRows())
+			throw new IllegalArgumentException("null args, b==x or dimensions "+
+				                                 "mismatch");
+		return A.getNumRows();
+	}
+
+
+	/**
+	 * return the inverses of the diagonal elements of A, read in one parallel
+	 * pass over its rows.
+	 * @param A MatrixIntf
+	 * @return double[]
+	 * @throws IllegalArgumentException if a diagonal element is zero or NaN
+	 */
+	private double[] getInverseDiagonal(MatrixIntf A) {
+		final double[] d = new double[A.getNumRows()];
+		MatrixOps.forEachRow(A, 0, d.length, (i, row) -> d[i] = row.getCoord(i),
+			                   _pool);
+		for (int i=0; i<d.length; i++) {
+			if (d[i]==0.0 || Double.isNaN(d[i]))
+				throw new IllegalArgumentException("diagonal element ("+i+","+i+
+					                                 ") is "+d[i]);
+			d[i] = 1.0/d[i];
+		}
+		return d;
+	}
+
+
+	/**
+	 * return the euclidean norm of the array.
+	 * @param y double[]
+	 * @param sw Sweeper
+	 * @return double
+	 */
+	private static double norm2(double[] y, Sweeper sw) {
+		return Math.sqrt(sw.run((lo, hi, acc) ->
+			acc[0] += DenseKernels.dot(y, lo, y, lo, hi-lo))[0]);
+	}
+
+
+	/**
+	 * sets x to zero, the solution for b=0.
+	 * @param x VectorIntf
+	 * @param xa double[] the array of x
+	 * @return Result
+	 */
+	private static Result setZero(VectorIntf x, double[] xa) {
+		Arrays.fill(xa, 0.0);
+		store(x, xa);
+		return new Result(0, 0.0, true);
+	}
+
+
+	/**
+	 * copies xa into x, unless it is the array of x.
+	 * @param x VectorIntf
+	 * @param xa double[]
+	 */
+	private static void store(VectorIntf x, double[] xa) {
+		if (xa==MatrixOps.getArrayIfDense(x)) return;
+		for (int i=0; i<xa.length; i++) x.setCoord(i, xa[i]);
+	}
+
+
+	/**
+	 * the outcome of a solve.
+	 */
+	public static final class Result {
+		private final int _iters;
+		private final double _relResidual;
+		private final boolean _converged;
+
+		Result(int iters, double relResidual, boolean converged) {
+			_iters = iters;
+			_relResidual = relResidual;
+			_converged = converged;
+		}
+
+		/**
+		 * return the number of iterations made.
+		 * @return int
+		 */
+		public int getIterations() {
+			return _iters;
+		}
+
+		/**
+		 * return the final residual norm divided by the norm of b.
+		 * @return double
+		 */
+		public double getRelativeResidual() {
+			return _relResidual;
+		}
+
+		/**
+		 * return true iff the tolerance was reached.
+		 * @return boolean
+		 */
+		public boolean isConverged() {
+			return _converged;
+		}
+
+		public String toString() {
+			return "iterations="+_iters+" residual="+_relResidual+
+				     (_converged ? "" : " (not converged)");
+		}
+	}
+
+
+	/**
+	 * the body of a sweep over the coordinates [lo,hi), which adds the 
+	 * inner products it computes to acc.
+	 */
+	private interface SweepOp {
+		public void apply(int lo, int hi, double[] acc);
+	}
+
+
+	/**
+	 * runs sweeps over the coordinates [0,n) of the vectors of a solve: in
+	 * parallel over as many blocks as the pool has workers (a single block for
+	 * small n), each block visited in tiles of <CODE>_TILE</CODE> coordinates.
+	 * The inner products the sweep computes are summed over the blocks.
+	 */
+	private final class Sweeper {
+		private final int[] _bounds;
+		private final double[][] _partial;
+		private final double[] _sums = new double[2];
+
+		Sweeper(int n) {
+			final int nb = Math.max(1, Math.min(_pool.getParallelism(),
+				                                  n/_MIN_ELEMS_PER_TASK));
+			_bounds = MatrixOps.split(null, n, nb);
+			_partial = new double[nb][2];
+		}
+
+		/**
+		 * runs the sweep and return the sums of its inner products; the array
+		 * is overwritten by the next sweep.
+		 */
+		double[] run(SweepOp op) {
+			final int nb = _partial.length;
+			if (nb==1) sweep(op, 0);
+			else {
+				RecursiveAction[] tasks = new RecursiveAction[nb];
+				for (int b=0; b<nb; b++) {
+					final int bb = b;
+					tasks[b] = new RecursiveAction() {
+						protected void compute() {
+							sweep(op, bb);
+						}
+					};
+				}
+				_pool.invoke(new RecursiveAction() {
+					protected void compute() {
+						invokeAll(tasks);
+					}
+				});
+			}
+			_sums[0] = _sums[1] = 0.0;
+			for (int b=0; b<nb; b++) {
+				_sums[0] += _partial[b][0];
+				_sums[1] += _partial[b][1];
+			}
+			return _sums;
+		}
+
+		private void sweep(SweepOp op, int b) {
+			final double[] acc = _partial[b];
+			acc[0] = acc[1] = 0.0;
+			final int hi = _bounds[b+1];
+			for (int lo=_bounds[b]; lo<hi; lo+=_TILE) {
+				op.apply(lo, Math.min(lo+_TILE, hi), acc);
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * chunk cache that evicts the least-recently used chunks first. Good for
+ * workloads with strong recency, but a single scan over more chunks than fit
+ * in the budget flushes the whole cache.
+ * @author itc
+ */
+public class LRUChunkCache extends AbstractChunkCache {
+  // in recency order: lookups that are accesses move the entry to the end,
+  // peeks leave it in place
+  private final LinkedHashMap<Integer, Entry> _map = new LinkedHashMap<>();
+
+
+  /**
+   * sole constructor.
+   * @param maxWeight long the budget of the cache
+   * @throws IllegalArgumentException if maxWeight&le;0
+   */
+  public LRUChunkCache(long maxWeight) {
+    super(maxWeight);
+  }
+
+
+  protected DblArray1SparseVector[] lookup(int chunk, boolean access) {
+    Entry e = access ? _map.remove(chunk) : _map.get(chunk);
+    if (e==null) return null;
+    if (access) _map.put(chunk, e);
+    return e._rows;
+  }
+
+
+  protected void insert(int chunk, DblArray1SparseVector[] rows, long weight) {
+    _map.put(chunk, new Entry(rows, weight));
+  }
+
+
+  protected void evict() {
+    Iterator<Map.Entry<Integer, Entry>> it = _map.entrySet().iterator();
+    while (isOverweight() && it.hasNext()) {
+      Map.Entry<Integer, Entry> me = it.next();
+      it.remove();
+      Entry e = me.getValue();
+      removed(me.getKey(), e._rows, e._weight, true);
+    }
+  }
+
+
+  protected void removeAll() {
+    for (Map.Entry<Integer, Entry> me : _map.entrySet()) {
+      Entry e = me.getValue();
+      removed(me.getKey(), e._rows, e._weight, false);
+    }
+    _map.clear();
+  }
+
+
+  /**
+   * auxiliary class holding a chunk and its weight.
+   */
+  private static final class Entry {
+    private final DblArray1SparseVector[] _rows;
+    private final long _weight;
+
+    private Entry(DblArray1SparseVector[] rows, long weight) {
+      _rows = rows;
+      _weight = weight;
+    }
+  }
+}
@@ -0,0 +1,350 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+
+
+/**
+ * sparse implementation of <CODE>LongVectorIntf</CODE>: the counterpart of
+ * <CODE>DblArray1SparseVector</CODE> (with zero default value) for
+ * dimensions beyond 2^31. The non-zeros are kept in a long[] array of
+ * ascending indices and a parallel double[] array of values, so the number of
+ * non-zeros must fit in an int although the dimension need not. Typical use is
+ * as the feature or gradient vector applied to a large dense model stored in
+ * an <CODE>OffHeapDblVector</CODE>. The class is not thread-safe.
+ * @author itc
+ */
+public class LongDblArray1SparseVector implements LongVectorIntf {
+  private long[] _indices;  // ascending, only the first _ilen are valid
+  private double[] _values;  // no zeros among the first _ilen
+  private int _ilen;
+  private final long _n;
+
+
+  /**
+   * constructs the zero sparse vector in n-dimensional space.
+   * @param n long the number of dimensions
+   * @throws IllegalArgumentException if n &le; 0
+   */
+  public LongDblArray1SparseVector(long n) {
+    if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+    _n = n;
+    _indices = new long[0];
+    _values = new double[0];
+  }
+
+
+  /**
+   * public constructor, copying the arrays passed in.
+   * @param indices long[] must be in strictly ascending order
+   * @param values double[] must not contain zeros
+   * @param n long total length of the vector
+   * @throws IllegalArgumentException if the arrays are null or their lengths
+   * don't match, if indices don't ascend or are out of range, or if some value
+   * is zero
+   */
+  public LongDblArray1SparseVector(long[] indices, double[] values, long n) {
+    if (indices==null || values==null || indices.length!=values.length)
+      throw new IllegalArgumentException("Arguments null or dimensions "+
+                                         "don't match");
+    if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+    final int ilen = indices.length;
+    for (int i=0; i<ilen; i++) {
+      if (indices[i]<0 || indices[i]>=n || (i>0 && indices[i]<=indices[i-1]))
+        throw new IllegalArgumentException("indices not in ascending order "+
+                                           "or out of range");
+      if (values[i]==0.0)
+        throw new IllegalArgumentException("zero component "+i);
+    }
+    _indices = Arrays.copyOf(indices, ilen);
+    _values = Arrays.copyOf(values, ilen);
+    _ilen = ilen;
+    _n = n;
+  }
+
+
+  /**
+   * return the number of coordinates of this vector.
+   * @return long
+   */
+  public long getNumCoords() {
+    return _n;
+  }
+
+
+  /**
+   * return the i-th coordinate of this vector, in O(log(nnz)) time.
+   * @param i long
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getCoord(long i) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    final int p = Arrays.binarySearch(_indices, 0, _ilen, i);
+    return p>=0 ? _values[p] : 0.0;
+  }
+
+
+  /**
+   * set the i-th coordinate of this vector. Costs O(log(nnz)) if the
+   * component is already non-zero, O(nnz) otherwise.
+   * @param i long
+   * @param val double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public void setCoord(long i, double val) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    final int p = Arrays.binarySearch(_indices, 0, _ilen, i);
+    if (p>=0) {
+      if (val!=0.0) _values[p] = val;
+      else {
+        System.arraycopy(_indices, p+1, _indices, p, _ilen-p-1);
+        System.arraycopy(_values, p+1, _values, p, _ilen-p-1);
+        --_ilen;
+      }
+      return;
+    }
+    if (val==0.0) return;
+    final int q = -p-1;
+    if (_ilen==_indices.length) {  // increase capacity 20%
+      _indices = Arrays.copyOf(_indices, _ilen+_ilen/5+1);
+      _values = Arrays.copyOf(_values, _ilen+_ilen/5+1);
+    }
+    System.arraycopy(_indices, q, _indices, q+1, _ilen-q);
+    System.arraycopy(_values, q, _values, q+1, _ilen-q);
+    _indices[q] = i;
+    _values[q] = val;
+    ++_ilen;
+  }
+
+
+  /**
+   * get the number of non-zeros of this vector.
+   * @return int
+   */
+  public int getNumNonZeros() {
+    return _ilen;
+  }
+
+
+  /**
+   * get the index of the i-th non-zero of this vector.
+   * @param i int
+   * @return long
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public long getIthNonZeroPos(int i) {
+    if (i<0 || i>=_ilen)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _ilen+"]");
+    return _indices[i];
+  }
+
+
+  /**
+   * get the value of the i-th non-zero of this vector.
+   * @param i int
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getIthNonZeroVal(int i) {
+    if (i<0 || i>=_ilen)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _ilen+"]");
+    return _values[i];
+  }
+
+
+  /**
+   * modifies this vector by adding the quantity m*other to it: a linear merge
+   * of the two index arrays if other is a
+   * <CODE>LongDblArray1SparseVector</CODE>, and a sweep over all n components
+   * of other otherwise.
+   * @param m double
+   * @param other LongVectorIntf
+   * @throws IllegalArgumentException if other is null or does not have the
+   * same dimensions as this vector
+   */
+  public void addMul(double m, LongVectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("cannot call addMul(m,v) with v "+
+                                         "having different dimensions than "+
+                                         "this vector");
+    if (other instanceof LongDblArray1SparseVector) {
+      LongDblArray1SparseVector o = (LongDblArray1SparseVector) other;
+      final int lb = o._ilen;  // o may be this
+      long[] inds = new long[_ilen+lb];
+      double[] vals = new double[_ilen+lb];
+      int a = 0, b = 0, k = 0;
+      while (a<_ilen || b<lb) {
+        long i;
+        double v;
+        if (b==lb || (a<_ilen && _indices[a]<o._indices[b])) {
+          i = _indices[a];
+          v = _values[a++];
+        }
+        else if (a==_ilen || o._indices[b]<_indices[a]) {
+          i = o._indices[b];
+          v = m*o._values[b++];
+        }
+        else {
+          i = _indices[a];
+          v = _values[a++]+m*o._values[b++];
+        }
+        if (v!=0.0) {
+          inds[k] = i;
+          vals[k++] = v;
+        }
+      }
+      _indices = inds;
+      _values = vals;
+      _ilen = k;
+      return;
+    }
+    for (long i=0; i<_n; i++) {
+      final double v = other.getCoord(i);
+      if (v!=0.0) setCoord(i, getCoord(i)+m*v);
+    }
+  }
+
+
+  /**
+   * divide the components of this vector by the argument h.
+   * @param h double
+   * @throws IllegalArgumentException if h is (almost) zero or NaN
+   */
+  public void div(double h) {
+    if (Double.isNaN(h) || Math.abs(h)<1.e-120)
+      throw new IllegalArgumentException("division by (almost) zero or NaN");
+    int k = 0;
+    for (int i=0; i<_ilen; i++) {
+      final double v = _values[i]/h;
+      if (v==0.0) continue;
+      _indices[k] = _indices[i];
+      _values[k++] = v;
+    }
+    _ilen = k;
+  }
+
+
+  /**
+   * return true iff all components are zero.
+   * @return boolean
+   */
+  public boolean isAtOrigin() {
+    return _ilen==0;
+  }
+
+
+  /**
+   * compute the inner product of this vector with the argument, in time
+   * linear in the non-zeros of this vector: against an
+   * <CODE>OffHeapDblVector</CODE> the values are gathered from its segments,
+   * and against another sparse vector the index arrays are merged.
+   * @param other LongVectorIntf
+   * @return double
+   * @throws IllegalArgumentException if other is null or its dimension
+   * doesn't match this vector's dimension
+   */
+  public double innerProduct(LongVectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("dimensions don't match or null "+
+                                         "argument passed in");
+    double sum = 0.0;
+    if (other instanceof LongDblArray1SparseVector) {
+      LongDblArray1SparseVector o = (LongDblArray1SparseVector) other;
+      int a = 0, b = 0;
+      while (a<_ilen && b<o._ilen) {
+        final long xa = _indices[a];
+        final long xb = o._indices[b];
+        if (xa==xb) sum += _values[a++]*o._values[b++];
+        else if (xa<xb) a++;
+        else b++;
+      }
+      return sum;
+    }
+    for (int k=0; k<_ilen; k++) sum += _values[k]*other.getCoord(_indices[k]);
+    return sum;
+  }
+
+
+  /**
+   * return the k-th norm of this vector.
+   * @param k int
+   * @return double
+   * @throws IllegalArgumentException if k &le; 0
+   */
+  public double norm(int k) {
+    if (k<=0) throw new IllegalArgumentException("k<=0");
+    if (k==2) return norm2();
+    double res = 0.0;
+    for (int i=0; i<_ilen; i++) res += Math.pow(Math.abs(_values[i]), k);
+    return Math.pow(res, 1.0/k);
+  }
+
+
+  /**
+   * short-cut for norm(2).
+   * @return double
+   */
+  public double norm2() {
+    double res2 = 0.0;
+    for (int i=0; i<_ilen; i++) res2 += _values[i]*_values[i];
+    return Math.sqrt(res2);
+  }
+
+
+  /**
+   * computes the infinity norm of this vector.
+   * @return double
+   */
+  public double normInfinity() {
+    double res = 0.0;
+    for (int i=0; i<_ilen; i++) {
+      final double absxi = Math.abs(_values[i]);
+      if (absxi>res) res = absxi;
+    }
+    return res;
+  }
+
+
+  /**
+   * return a String representation of this vector.
+   * @return String
+   */
+  public String toString() {
+    StringBuilder x = new StringBuilder("[");
+    for (int i=0; i<_ilen; i++) {
+      if (i>0) x.append(", ");
+      x.append("(").append(_indices[i]).append(",").append(_values[i]).
+        append(")");
+    }
+    x.append("](_n=").append(_n).append("/ _ilen=").append(_ilen).append(")");
+    return x.toString();
+  }
+
+
+  /**
+   * package-private accessor to the indices array. Only the first
+   * <CODE>getNumNonZeros()</CODE> positions are valid.
+   * @return long[]
+   */
+  long[] getIndices() {
+    return _indices;
+  }
+
+
+  /**
+   * package-private accessor to the values array. Only the first
+   * <CODE>getNumNonZeros()</CODE> positions are valid.
+   * @return double[]
+   */
+  double[] getValues() {
+    return _values;
+  }
+}
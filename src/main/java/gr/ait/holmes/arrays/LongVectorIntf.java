@@ -0,0 +1,100 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+/**
+ * interface of vectors whose dimension may exceed 2^31, i.e. the long-indexed
+ * counterpart of <CODE>VectorIntf</CODE>, for spaces such as hashed feature
+ * spaces or very large embedding tables. The operations mirror those of
+ * <CODE>VectorIntf</CODE> and of the sparse vector classes of this package.
+ * @author itc
+ */
+public interface LongVectorIntf {
+
+  /**
+   * return the number of coordinates of this vector.
+   * @return long
+   */
+  public long getNumCoords();
+
+
+  /**
+   * return the i-th coordinate of this vector.
+   * @param i long
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getCoord(long i) throws IndexOutOfBoundsException;
+
+
+  /**
+   * set the i-th coordinate of this vector.
+   * @param i long
+   * @param val double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public void setCoord(long i, double val) throws IndexOutOfBoundsException;
+
+
+  /**
+   * modifies this vector by adding the quantity m*other to it.
+   * @param m double
+   * @param other LongVectorIntf
+   * @throws IllegalArgumentException if other is null or does not have the
+   * same dimensions as this vector
+   */
+  public void addMul(double m, LongVectorIntf other)
+    throws IllegalArgumentException;
+
+
+  /**
+   * divide the components of this vector by the argument h.
+   * @param h double
+   * @throws IllegalArgumentException if h is (almost) zero or NaN
+   */
+  public void div(double h) throws IllegalArgumentException;
+
+
+  /**
+   * return true iff all components are zero.
+   * @return boolean
+   */
+  public boolean isAtOrigin();
+
+
+  /**
+   * compute the inner product of this vector with the argument.
+   * @param other LongVectorIntf
+   * @return double
+   * @throws IllegalArgumentException if other is null or its dimension
+   * doesn't match this vector's dimension
+   */
+  public double innerProduct(LongVectorIntf other)
+    throws IllegalArgumentException;
+
+
+  /**
+   * return the k-th norm of this vector.
+   * @param k int
+   * @return double
+   * @throws IllegalArgumentException if k &le; 0
+   */
+  public double norm(int k) throws IllegalArgumentException;
+
+
+  /**
+   * short-cut for norm(2).
+   * @return double
+   */
+  public double norm2();
+
+
+  /**
+   * computes the infinity norm of this vector.
+   * @return double
+   */
+  public double normInfinity();
+
+}
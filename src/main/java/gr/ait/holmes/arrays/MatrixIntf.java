@@ -17,6 +17,60 @@ public interface MatrixIntf {
    */
   public VectorIntf getIthRow(int r);
 
+
+  /**
+   * return the entire j-th column of this matrix as a vector object. This 
+   * default implementation calls <CODE>getCoord(i,j)</CODE> for every row i;
+   * matrices that can do better (e.g. keep a column index) override it.
+   * @param j int
+   * @return VectorIntf a sparse vector of dimension <CODE>getNumRows()</CODE>
+   * @throws IndexOutOfBoundsException if j is out of range (unchecked)
+   */
+  public default VectorIntf getIthCol(int j) {
+    final int r = getNumRows();
+    DblArray1SparseVectorBuilder vb = new DblArray1SparseVectorBuilder(r);
+    for (int i=0; i<r; i++) vb.add(i, getCoord(i, j));
+    return vb.build();
+  }
+
+
+  /**
+   * return the rows from...to-1 of this matrix. This default implementation
+   * calls <CODE>getIthRow(i)</CODE> for every row; matrices whose rows are
+   * costly to get one at a time (e.g. live on disk) override it.
+   * @param from int
+   * @param to int
+   * @return VectorIntf[] of length to-from, whose i-th element is the row
+   * from+i
+   * @throws IndexOutOfBoundsException if from&lt;0, to&gt;getNumRows() or
+   * from&gt;to (unchecked)
+   */
+  public default VectorIntf[] getRows(int from, int to) {
+    MatrixOps.checkRowRange(this, from, to);
+    VectorIntf[] rows = new VectorIntf[to-from];
+    for (int i=from; i<to; i++) rows[i-from] = getIthRow(i);
+    return rows;
+  }
+
+
+  /**
+   * passes the rows from...to-1 of this matrix, in order, to the given 
+   * consumer. This default implementation calls <CODE>getIthRow(i)</CODE> for
+   * every row; matrices whose rows are costly to get one at a time override
+   * it. See <CODE>MatrixOps.forEachRow()</CODE> for the parallel version.
+   * @param from int
+   * @param to int
+   * @param consumer RowConsumerIntf
+   * @throws IndexOutOfBoundsException if from&lt;0, to&gt;getNumRows() or
+   * from&gt;to (unchecked)
+   * @throws IllegalArgumentException if consumer is null (unchecked)
+   */
+  public default void forEachRow(int from, int to, RowConsumerIntf consumer) {
+    MatrixOps.checkRowRange(this, from, to);
+    if (consumer==null) throw new IllegalArgumentException("null consumer");
+    for (int i=from; i<to; i++) consumer.accept(i, getIthRow(i));
+  }
+
   
   /**
    * get the (i,j) cell of this matrix.
@@ -0,0 +1,814 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * parallel linear-algebra operations on <CODE>MatrixIntf</CODE> objects. The
+ * operations split the rows of the matrix into blocks of (roughly) equal
+ * number of non-zeros and process the blocks in parallel in a fork/join pool.
+ * Rows coming as <CODE>DblArray1SparseVector</CODE> objects (as is the case
+ * for <CODE>DblArray2SparseMatrix</CODE> and
+ * <CODE>BigDiskSupportedDblArray2SparseMatrix</CODE>) or as rows of a
+ * <CODE>DblArray2CSRMatrix</CODE> are processed by tight loops directly over
+ * their index and value arrays, and rows coming as
+ * <CODE>CompressedDblArray1SparseVector</CODE> objects by loops decoding their
+ * indices on the fly; any other row type goes through the
+ * <CODE>VectorIntf</CODE> interface methods. The matrix-vector products of a
+ * <CODE>DblArray2DenseMatrix</CODE> are delegated to its cache-tiled kernels.
+ * Each block of rows is fetched through <CODE>MatrixIntf.forEachRow()</CODE>,
+ * so that disk-backed matrices load each of its chunks once per block.
+ * Vectors that are <CODE>DblArray1Vector</CODE> objects are read and written
+ * in place; other vector types are first copied into (or from) a
+ * <CODE>double[]</CODE>.
+ * <p>The sparse matrix-matrix product C = A*B is computed row by row
+ * (Gustavson's algorithm): row i of C is the sum of the rows k of B scaled by
+ * A(i,k). The rows of A are processed in blocks, each block split among the
+ * workers, each of which owns a sparse accumulator of B.getNumCols() doubles
+ * reused across rows and blocks. The rows of C computed in a block are
+ * appended to the CSR result before the next block starts, so besides the
+ * result and the accumulators, memory holds only one block's worth of rows.
+ * Either operand may be disk-backed; e.g. A'*A for a
+ * <CODE>BigDiskSupportedDblArray2SparseMatrix</CODE> A is the product of the
+ * matrix of its CSC file (see <CODE>SparseMatrixTransposer</CODE>) with A.</p>
+ * @author itc
+ */
+public final class MatrixOps {
+	private final static int _MIN_NNZ_PER_TASK = 1 << 15;
+	private final static int _MIN_ROWS_PER_TASK = 1 << 10;
+	private final static int _DEFAULT_BLOCK_ROWS = 1 << 14;
+
+
+	/**
+	 * no instances allowed.
+	 */
+	private MatrixOps() {
+		// no-op
+	}
+
+
+	/**
+	 * computes y = A*x in parallel using the common fork/join pool.
+	 * @param A MatrixIntf
+	 * @param x VectorIntf must have A.getNumCols() coordinates
+	 * @param y VectorIntf must have A.getNumRows() coordinates, and must not be
+	 * the same object as x. Its contents are overwritten
+	 * @throws IllegalArgumentException if any argument is null, or dimensions
+	 * don't match or x and y are the same object
+	 */
+	public static void multiply(MatrixIntf A, VectorIntf x, VectorIntf y) {
+		multiply(A, x, y, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * computes y = A*x in parallel using the given fork/join pool.
+	 * @param A MatrixIntf
+	 * @param x VectorIntf must have A.getNumCols() coordinates
+	 * @param y VectorIntf must have A.getNumRows() coordinates, and must not be
+	 * the same object as x. Its contents are overwritten
+	 * @param pool ForkJoinPool
+	 * @throws IllegalArgumentException if any argument is null, or dimensions
+	 * don't match or x and y are the same object
+	 */
+	public static void multiply(MatrixIntf A, VectorIntf x, VectorIntf y,
+		                          ForkJoinPool pool) {
+		if (A==null || x==null || y==null || pool==null || x==y ||
+			  x.getNumCoords()!=A.getNumCols() || y.getNumCoords()!=A.getNumRows())
+			throw new IllegalArgumentException("null args, x==y or dimensions "+
+				                                 "mismatch");
+		final double[] xa = getArray(x);
+		final double[] ya = y instanceof DblArray1Vector ?
+			                    ((DblArray1Vector) y).get_x() :
+			                    new double[A.getNumRows()];
+		multiply(A, xa, ya, getRowWork(A), pool);
+		if (ya!=getArrayIfDense(y)) {
+			for (int i=0; i<ya.length; i++) y.setCoord(i, ya[i]);
+		}
+	}
+
+
+	/**
+	 * computes y = A*x in parallel using the given fork/join pool, on arrays
+	 * whose dimensions are not checked. Callers multiplying by the same matrix
+	 * repeatedly compute its row work once.
+	 * @param A MatrixIntf
+	 * @param x double[] of length A.getNumCols()
+	 * @param y double[] of length A.getNumRows(), not the same array as x
+	 * @param work int[] the result of <CODE>getRowWork(A)</CODE>
+	 * @param pool ForkJoinPool
+	 */
+	static void multiply(MatrixIntf A, double[] x, double[] y, int[] work,
+		                   ForkJoinPool pool) {
+		if (A instanceof DblArray2DenseMatrix) {
+			((DblArray2DenseMatrix) A).multiply(x, y, pool);
+			return;
+		}
+		MultTask root = new MultTask(A, x, y, work, 0, A.getNumRows());
+		if (isSmall(work, 0, A.getNumRows())) root.compute();
+		else pool.invoke(root);
+	}
+
+
+	/**
+	 * computes y = A'*x (the product of the transpose of A with x) in parallel
+	 * using the common fork/join pool.
+	 * @param A MatrixIntf
+	 * @param x VectorIntf must have A.getNumRows() coordinates
+	 * @param y VectorIntf must have A.getNumCols() coordinates, and must not be
+	 * the same object as x. Its contents are overwritten
+	 * @throws IllegalArgumentException if any argument is null, or dimensions
+	 * don't match or x and y are the same object
+	 */
+	public static void multiplyTransposed(MatrixIntf A, VectorIntf x,
+		                                    VectorIntf y) {
+		multiplyTransposed(A, x, y, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * computes y = A'*x (the product of the transpose of A with x) in parallel
+	 * using the given fork/join pool. Each worker accumulates the contributions
+	 * of its block of rows into a private array of A.getNumCols() doubles, and
+	 * the partial results are then summed up, also in parallel. Rows for which
+	 * x is zero are skipped.
+	 * @param A MatrixIntf
+	 * @param x VectorIntf must have A.getNumRows() coordinates
+	 * @param y VectorIntf must have A.getNumCols() coordinates, and must not be
+	 * the same object as x. Its contents are overwritten
+	 * @param pool ForkJoinPool
+	 * @throws IllegalArgumentException if any argument is null, or dimensions
+	 * don't match or x and y are the same object
+	 */
+	public static void multiplyTransposed(MatrixIntf A, VectorIntf x,
+		                                    VectorIntf y, ForkJoinPool pool) {
+		if (A==null || x==null || y==null || pool==null || x==y ||
+			  x.getNumCoords()!=A.getNumRows() || y.getNumCoords()!=A.getNumCols())
+			throw new IllegalArgumentException("null args, x==y or dimensions "+
+				                                 "mismatch");
+		final int rows = A.getNumRows();
+		final int cols = A.getNumCols();
+		final double[] xa = getArray(x);
+		if (A instanceof DblArray2DenseMatrix) {
+			final double[] ya = getArrayIfDense(y);
+			final double[] res = ya!=null ? ya : new double[cols];
+			((DblArray2DenseMatrix) A).multiplyTransposed(xa, res, pool);
+			if (ya==null) {
+				for (int j=0; j<cols; j++) y.setCoord(j, res[j]);
+			}
+			return;
+		}
+		final int[] work = getRowWork(A);
+		int nblocks = isSmall(work, 0, rows) ? 1 : pool.getParallelism();
+		nblocks = Math.max(1, Math.min(nblocks, rows));
+		final int[] bounds = split(work, rows, nblocks);
+		final double[][] partial = new double[nblocks][];
+		RecursiveAction[] tasks = new RecursiveAction[nblocks];
+		for (int b=0; b<nblocks; b++) {
+			final int bb = b;
+			tasks[b] = new RecursiveAction() {
+				protected void compute() {
+					final double[] acc = new double[cols];
+					A.forEachRow(bounds[bb], bounds[bb+1], (i, row) -> {
+						final double xi = xa[i];
+						if (Double.compare(xi, 0.0)!=0) axpyRow(row, xi, acc);
+					});
+					partial[bb] = acc;
+				}
+			};
+		}
+		if (nblocks==1) tasks[0].invoke();
+		else pool.invoke(new RecursiveAction() {
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		// reduction of the partial results into partial[0], in parallel over
+		// column blocks
+		if (nblocks>1) {
+			final int ncb = Math.min(nblocks, Math.max(1, cols/_MIN_ROWS_PER_TASK));
+			RecursiveAction[] red = new RecursiveAction[ncb];
+			for (int cb=0; cb<ncb; cb++) {
+				final int from = (int) ((long) cols*cb/ncb);
+				final int to = (int) ((long) cols*(cb+1)/ncb);
+				red[cb] = new RecursiveAction() {
+					protected void compute() {
+						final double[] res = partial[0];
+						for (int b=1; b<partial.length; b++) {
+							final double[] pb = partial[b];
+							for (int j=from; j<to; j++) res[j] += pb[j];
+						}
+					}
+				};
+			}
+			pool.invoke(new RecursiveAction() {
+				protected void compute() {
+					invokeAll(red);
+				}
+			});
+		}
+		final double[] res = partial[0];
+		final double[] ya = getArrayIfDense(y);
+		if (ya!=null) System.arraycopy(res, 0, ya, 0, cols);
+		else {
+			for (int j=0; j<cols; j++) y.setCoord(j, res[j]);
+		}
+	}
+
+
+	/**
+	 * computes the sparse product C = A*B in parallel using the common
+	 * fork/join pool.
+	 * @param A MatrixIntf
+	 * @param B MatrixIntf must have A.getNumCols() rows
+	 * @return DblArray2CSRMatrix of dimensions A.getNumRows() x B.getNumCols()
+	 * @throws IllegalArgumentException if any argument is null or dimensions
+	 * don't match
+	 * @throws IllegalStateException if C has more non-zeros than a CSR matrix
+	 * can hold
+	 */
+	public static DblArray2CSRMatrix multiply(MatrixIntf A, MatrixIntf B) {
+		return multiply(A, B, ForkJoinPool.commonPool(), _DEFAULT_BLOCK_ROWS);
+	}
+
+
+	/**
+	 * computes the sparse product C = A*B in parallel using the given fork/join
+	 * pool, processing the rows of A in blocks of the given size (see the class
+	 * documentation). Explicit zeros resulting from cancellation are not stored
+	 * in C.
+	 * @param A MatrixIntf
+	 * @param B MatrixIntf must have A.getNumCols() rows
+	 * @param pool ForkJoinPool
+	 * @param blockRows int the max. number of rows of C computed at once
+	 * @return DblArray2CSRMatrix of dimensions A.getNumRows() x B.getNumCols()
+	 * @throws IllegalArgumentException if any argument is null, dimensions
+	 * don't match or blockRows&le;0
+	 * @throws IllegalStateException if C has more non-zeros than a CSR matrix
+	 * can hold
+	 */
+	public static DblArray2CSRMatrix multiply(MatrixIntf A, MatrixIntf B,
+		                                        ForkJoinPool pool, int blockRows) {
+		if (A==null || B==null || pool==null || blockRows<=0 ||
+			  A.getNumCols()!=B.getNumRows())
+			throw new IllegalArgumentException("null args, blockRows<=0 or "+
+				                                 "dimensions mismatch");
+		final int rows = A.getNumRows();
+		final int cols = B.getNumCols();
+		final int[] work = getRowWork(A);
+		final int nparts = Math.max(1, pool.getParallelism());
+		final RowAccumulator[] accs = new RowAccumulator[nparts];
+		final int[] row_ptr = new int[rows+1];
+		int[] col_inds = new int[16];
+		double[] vals = new double[16];
+		for (int lo=0; lo<rows; lo+=blockRows) {
+			final int hi = (int) Math.min((long) lo+blockRows, rows);
+			final int n = isSmall(work, lo, hi) ? 1 : Math.min(nparts, hi-lo);
+			final int[] bounds = split(work, lo, hi, n);
+			RecursiveAction[] tasks = new RecursiveAction[n];
+			for (int b=0; b<n; b++) {
+				if (accs[b]==null) accs[b] = new RowAccumulator(cols);
+				final RowAccumulator acc = accs[b];
+				final int from = bounds[b];
+				final int to = bounds[b+1];
+				tasks[b] = new RecursiveAction() {
+					protected void compute() {
+						acc.clearOutput();
+						for (int i=from; i<to; i++) {
+							acc.addRowProduct(A, i, B);
+							row_ptr[i+1] = acc.flushRow();
+						}
+					}
+				};
+			}
+			if (n==1) tasks[0].invoke();
+			else pool.invoke(new RecursiveAction() {
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+			// append the rows of the block to the result, in order
+			long nnz = row_ptr[lo];
+			for (int b=0; b<n; b++) nnz += accs[b]._outLen;
+			if (nnz>Integer.MAX_VALUE-8)
+				throw new IllegalStateException("too many non-zeros for a CSR matrix");
+			if (nnz>col_inds.length) {
+				final int cap = (int) Math.min(Math.max(nnz, 2L*col_inds.length),
+					                             Integer.MAX_VALUE-8);
+				col_inds = Arrays.copyOf(col_inds, cap);
+				vals = Arrays.copyOf(vals, cap);
+			}
+			int pos = row_ptr[lo];
+			for (int b=0; b<n; b++) {
+				final RowAccumulator acc = accs[b];
+				System.arraycopy(acc._outCols, 0, col_inds, pos, acc._outLen);
+				System.arraycopy(acc._outVals, 0, vals, pos, acc._outLen);
+				pos += acc._outLen;
+			}
+			for (int i=lo; i<hi; i++) row_ptr[i+1] += row_ptr[i];
+		}
+		final int nnz = row_ptr[rows];
+		return new DblArray2CSRMatrix(cols, row_ptr, Arrays.copyOf(col_inds, nnz),
+			                            Arrays.copyOf(vals, nnz), true);
+	}
+
+
+	/**
+	 * passes the rows from...to-1 of A to the given consumer in parallel, using
+	 * the common fork/join pool.
+	 * @param A MatrixIntf
+	 * @param from int
+	 * @param to int
+	 * @param consumer RowConsumerIntf must be thread-safe
+	 * @throws IllegalArgumentException if any argument is null
+	 * @throws IndexOutOfBoundsException if [from,to) is not a range of rows of A
+	 */
+	public static void forEachRow(MatrixIntf A, int from, int to,
+		                            RowConsumerIntf consumer) {
+		forEachRow(A, from, to, consumer, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * passes the rows from...to-1 of A to the given consumer in parallel, using
+	 * the given fork/join pool. The range is split into blocks of near-equal
+	 * work, one per worker, and each block is passed to
+	 * <CODE>A.forEachRow()</CODE>, so that matrices with bulk row access get
+	 * whole blocks at once; for a <CODE>BigDiskSupportedDblArray2SparseMatrix
+	 * </CODE> the blocks are aligned to its chunks, so that no chunk is shared
+	 * by two workers. Each row is passed exactly once, but rows of different
+	 * blocks are passed concurrently and in no particular order.
+	 * @param A MatrixIntf
+	 * @param from int
+	 * @param to int
+	 * @param consumer RowConsumerIntf must be thread-safe
+	 * @param pool ForkJoinPool
+	 * @throws IllegalArgumentException if any argument is null
+	 * @throws IndexOutOfBoundsException if [from,to) is not a range of rows of A
+	 */
+	public static void forEachRow(MatrixIntf A, int from, int to,
+		                            RowConsumerIntf consumer, ForkJoinPool pool) {
+		if (A==null || consumer==null || pool==null)
+			throw new IllegalArgumentException("null args");
+		checkRowRange(A, from, to);
+		final int[] work = getRowWork(A);
+		final int n = isSmall(work, from, to) ? 
+			              1 : Math.max(1, Math.min(pool.getParallelism(), to-from));
+		final int[] bounds = split(work, from, to, n);
+		if (A instanceof BigDiskSupportedDblArray2SparseMatrix) {
+			final int rpc = ((BigDiskSupportedDblArray2SparseMatrix) A).
+				                getRowsPerChunk();
+			for (int b=1; b<n; b++) {
+				final int aligned = (int) ((bounds[b]+(long) rpc/2)/rpc*rpc);
+				bounds[b] = Math.min(to, Math.max(bounds[b-1], aligned));
+			}
+		}
+		RecursiveAction[] tasks = new RecursiveAction[n];
+		for (int b=0; b<n; b++) {
+			final int lo = bounds[b];
+			final int hi = bounds[b+1];
+			tasks[b] = new RecursiveAction() {
+				protected void compute() {
+					A.forEachRow(lo, hi, consumer);
+				}
+			};
+		}
+		if (n==1) tasks[0].invoke();
+		else pool.invoke(new RecursiveAction() {
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+
+	/**
+	 * checks that [from,to) is a valid range of rows of A.
+	 * @param A MatrixIntf
+	 * @param from int
+	 * @param to int
+	 * @throws IndexOutOfBoundsException if from&lt;0, to&gt;A.getNumRows() or
+	 * from&gt;to
+	 */
+	static void checkRowRange(MatrixIntf A, int from, int to) {
+		if (from<0 || to>A.getNumRows() || from>to)
+			throw new IndexOutOfBoundsException("Rows ["+from+","+to+") out of range");
+	}
+
+
+	/**
+	 * return the inner product of the given matrix row with the array x.
+	 * @param row VectorIntf
+	 * @param x double[]
+	 * @return double
+	 */
+	static double dotRow(VectorIntf row, double[] x) {
+		if (row instanceof DblArray1SparseVector) {
+			DblArray1SparseVector r = (DblArray1SparseVector) row;
+			final int ilen = r.getILen();
+			final int[] inds = r.getIndices();
+			final double[] vals = r.getValues();
+			final double def = r.getDefaultValue();
+			double sum = 0.0;
+			if (Double.compare(def, 0.0)==0) {
+				for (int k=0; k<ilen; k++) sum += vals[k]*x[inds[k]];
+			}
+			else {
+				for (int j=0; j<x.length; j++) sum += x[j];
+				sum *= def;
+				for (int k=0; k<ilen; k++) sum += (vals[k]-def)*x[inds[k]];
+			}
+			return sum;
+		}
+		if (row instanceof DblArray1CSRRowView) {
+			DblArray1CSRRowView r = (DblArray1CSRRowView) row;
+			final int to = r.getTo();
+			final int[] inds = r.getColInds();
+			final double[] vals = r.getVals();
+			double sum = 0.0;
+			for (int k=r.getFrom(); k<to; k++) sum += vals[k]*x[inds[k]];
+			return sum;
+		}
+		if (row instanceof CompressedDblArray1SparseVector) {
+			return ((CompressedDblArray1SparseVector) row).gather(x);
+		}
+		if (row instanceof DblArray1Vector) {
+			final double[] vals = ((DblArray1Vector) row).get_x();
+			double sum = 0.0;
+			for (int j=0; j<vals.length; j++) sum += vals[j]*x[j];
+			return sum;
+		}
+		if (row instanceof SparseVectorIntf &&
+			  Double.compare(((SparseVectorIntf) row).getDefaultValue(), 0.0)==0) {
+			SparseVectorIntf r = (SparseVectorIntf) row;
+			final int nz = r.getNumNonZeros();
+			double sum = 0.0;
+			for (int k=0; k<nz; k++) sum += r.getIthNonZeroVal(k)*x[r.getIthNonZeroPos(k)];
+			return sum;
+		}
+		double sum = 0.0;
+		for (int j=0; j<x.length; j++) sum += row.getCoord(j)*x[j];
+		return sum;
+	}
+
+
+	/**
+	 * adds a*row to the array acc.
+	 * @param row VectorIntf
+	 * @param a double
+	 * @param acc double[]
+	 */
+	static void axpyRow(VectorIntf row, double a, double[] acc) {
+		if (row instanceof DblArray1SparseVector) {
+			DblArray1SparseVector r = (DblArray1SparseVector) row;
+			final int ilen = r.getILen();
+			final int[] inds = r.getIndices();
+			final double[] vals = r.getValues();
+			final double def = r.getDefaultValue();
+			if (Double.compare(def, 0.0)==0) {
+				for (int k=0; k<ilen; k++) acc[inds[k]] += a*vals[k];
+			}
+			else {
+				final double adef = a*def;
+				for (int j=0; j<acc.length; j++) acc[j] += adef;
+				for (int k=0; k<ilen; k++) acc[inds[k]] += a*(vals[k]-def);
+			}
+			return;
+		}
+		if (row instanceof DblArray1CSRRowView) {
+			DblArray1CSRRowView r = (DblArray1CSRRowView) row;
+			final int to = r.getTo();
+			final int[] inds = r.getColInds();
+			final double[] vals = r.getVals();
+			for (int k=r.getFrom(); k<to; k++) acc[inds[k]] += a*vals[k];
+			return;
+		}
+		if (row instanceof CompressedDblArray1SparseVector) {
+			((CompressedDblArray1SparseVector) row).scatter(a, acc);
+			return;
+		}
+		if (row instanceof DblArray1Vector) {
+			final double[] vals = ((DblArray1Vector) row).get_x();
+			for (int j=0; j<vals.length; j++) acc[j] += a*vals[j];
+			return;
+		}
+		if (row instanceof SparseVectorIntf &&
+			  Double.compare(((SparseVectorIntf) row).getDefaultValue(), 0.0)==0) {
+			SparseVectorIntf r = (SparseVectorIntf) row;
+			final int nz = r.getNumNonZeros();
+			for (int k=0; k<nz; k++) acc[r.getIthNonZeroPos(k)] += a*r.getIthNonZeroVal(k);
+			return;
+		}
+		for (int j=0; j<acc.length; j++) acc[j] += a*row.getCoord(j);
+	}
+
+
+	/**
+	 * return the cumulative work (number of non-zeros) of the rows of A, so
+	 * that element i of the result is the work of rows 0...i-1, or null if the
+	 * non-zeros of the rows cannot be counted cheaply (eg the rows of the matrix
+	 * live on disk). The counts saturate at Integer.MAX_VALUE.
+	 * @param A MatrixIntf
+	 * @return int[] of length A.getNumRows()+1, or null
+	 */
+	static int[] getRowWork(MatrixIntf A) {
+		if (A instanceof DblArray2CSRMatrix) return ((DblArray2CSRMatrix) A).getRowPtr();
+		if (A instanceof DblArray2SparseMatrix) {
+			final int rows = A.getNumRows();
+			int[] work = new int[rows+1];
+			long sum = 0;
+			for (int i=0; i<rows; i++) {
+				DblArray1SparseVector ri = ((DblArray2SparseMatrix) A).getIthRow(i);
+				sum += Double.compare(ri.getDefaultValue(), 0.0)==0 ?
+					       ri.getNumNonZeros() : ri.getNumCoords();
+				work[i+1] = (int) Math.min(sum, Integer.MAX_VALUE);
+			}
+			return work;
+		}
+		return null;
+	}
+
+
+	/**
+	 * splits the rows [0,rows) into n consecutive blocks of near-equal work,
+	 * and returns the n+1 block boundaries.
+	 * @param work int[] cumulative row work, may be null (then all rows are
+	 * considered equally costly)
+	 * @param rows int
+	 * @param n int
+	 * @return int[]
+	 */
+	static int[] split(int[] work, int rows, int n) {
+		return split(work, 0, rows, n);
+	}
+
+
+	/**
+	 * splits the rows [lo,hi) into n consecutive blocks of near-equal work,
+	 * and returns the n+1 block boundaries.
+	 * @param work int[] cumulative row work, may be null
+	 * @param lo int
+	 * @param hi int
+	 * @param n int
+	 * @return int[]
+	 */
+	static int[] split(int[] work, int lo, int hi, int n) {
+		int[] bounds = new int[n+1];
+		bounds[0] = lo;
+		bounds[n] = hi;
+		for (int b=1; b<n; b++) {
+			if (work==null) bounds[b] = lo+(int) ((long) (hi-lo)*b/n);
+			else {
+				final long goal = work[lo]+(long) (work[hi]-work[lo])*b/n;
+				bounds[b] = Math.max(bounds[b-1], balancedMid(work, bounds[b-1], hi, goal));
+			}
+		}
+		return bounds;
+	}
+
+
+	/**
+	 * return the smallest row m in [lo,hi] such that the cumulative work up to
+	 * m is at least goal.
+	 * @param work int[]
+	 * @param lo int
+	 * @param hi int
+	 * @param goal long
+	 * @return int
+	 */
+	private static int balancedMid(int[] work, int lo, int hi, long goal) {
+		while (lo<hi) {
+			final int mid = (lo+hi) >>> 1;
+			if (work[mid]>=goal) hi = mid;
+			else lo = mid+1;
+		}
+		return lo;
+	}
+
+
+	/**
+	 * return true iff the block of rows [lo,hi) is too small to be split.
+	 * @param work int[] may be null
+	 * @param lo int
+	 * @param hi int
+	 * @return boolean
+	 */
+	private static boolean isSmall(int[] work, int lo, int hi) {
+		if (hi-lo<=1) return true;
+		if (work==null) return hi-lo<=_MIN_ROWS_PER_TASK;
+		return work[hi]-work[lo]<=_MIN_NNZ_PER_TASK;
+	}
+
+
+	/**
+	 * return the data of x as a double[], without copying if x is dense.
+	 * @param x VectorIntf
+	 * @return double[]
+	 */
+	static double[] getArray(VectorIntf x) {
+		final double[] xa = getArrayIfDense(x);
+		return xa!=null ? xa : x.getDblArray1();
+	}
+
+
+	/**
+	 * return the underlying array of x if x is a <CODE>DblArray1Vector</CODE>,
+	 * else null.
+	 * @param x VectorIntf
+	 * @return double[]
+	 */
+	static double[] getArrayIfDense(VectorIntf x) {
+		return x instanceof DblArray1Vector ? ((DblArray1Vector) x).get_x() : null;
+	}
+
+
+	/**
+	 * fork/join task computing y[lo...hi-1] = A[lo...hi-1]*x, splitting the row
+	 * block in two halves of equal work as long as it is big enough.
+	 */
+	private static final class MultTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final MatrixIntf _A;
+		private final double[] _x;
+		private final double[] _y;
+		private final int[] _work;
+		private final int _lo;
+		private final int _hi;
+
+		MultTask(MatrixIntf A, double[] x, double[] y, int[] work, int lo, int hi) {
+			_A = A;
+			_x = x;
+			_y = y;
+			_work = work;
+			_lo = lo;
+			_hi = hi;
+		}
+
+		protected void compute() {
+			if (isSmall(_work, _lo, _hi)) {
+				_A.forEachRow(_lo, _hi, (i, row) -> _y[i] = dotRow(row, _x));
+				return;
+			}
+			int mid;
+			if (_work==null) mid = (_lo+_hi) >>> 1;
+			else {
+				final long goal = ((long) _work[_lo]+_work[_hi]) / 2;
+				mid = balancedMid(_work, _lo+1, _hi-1, goal);
+			}
+			invokeAll(new MultTask(_A, _x, _y, _work, _lo, mid),
+				        new MultTask(_A, _x, _y, _work, mid, _hi));
+		}
+	}
+
+
+	/**
+	 * sparse accumulator (SPA) of one worker of the sparse matrix-matrix
+	 * product: a dense array of values, a marker array telling which of them
+	 * are in use by the current row, and the list of the columns in use, so
+	 * that a row of the product costs time proportional to the work it needs
+	 * rather than to the number of columns. The finished rows are appended to
+	 * the output arrays, sorted by column.
+	 */
+	private static final class RowAccumulator {
+		private final double[] _acc;
+		private final int[] _mark;  // _mark[j]==_stamp iff column j is in use
+		private int _stamp;
+		private int[] _cols = new int[16];  // the columns in use
+		private int _len;
+		private int[] _outCols = new int[16];
+		private double[] _outVals = new double[16];
+		private int _outLen;
+
+		RowAccumulator(int cols) {
+			_acc = new double[cols];
+			_mark = new int[cols];
+		}
+
+		void clearOutput() {
+			_outLen = 0;
+		}
+
+		/**
+		 * accumulates row i of A*B.
+		 */
+		void addRowProduct(MatrixIntf A, int i, MatrixIntf B) {
+			if (++_stamp==0) {  // wrapped around, reset the marks
+				Arrays.fill(_mark, 0);
+				_stamp = 1;
+			}
+			if (A instanceof DblArray2CSRMatrix) {
+				final DblArray2CSRMatrix a = (DblArray2CSRMatrix) A;
+				final int[] ci = a.getColInds();
+				final double[] va = a.getVals();
+				final int to = a.getRowPtr()[i+1];
+				for (int p=a.getRowPtr()[i]; p<to; p++) addRow(B, ci[p], va[p]);
+				return;
+			}
+			final VectorIntf row = A.getIthRow(i);
+			if (row instanceof DblArray1SparseVector &&
+				  Double.compare(((DblArray1SparseVector) row).getDefaultValue(),
+					               0.0)==0) {
+				final DblArray1SparseVector r = (DblArray1SparseVector) row;
+				final int ilen = r.getILen();
+				final int[] inds = r.getIndices();
+				final double[] va = r.getValues();
+				for (int p=0; p<ilen; p++) addRow(B, inds[p], va[p]);
+			}
+			else if (row instanceof SparseVectorIntf &&
+				       Double.compare(((SparseVectorIntf) row).getDefaultValue(),
+					                    0.0)==0) {
+				final SparseVectorIntf r = (SparseVectorIntf) row;
+				final int nz = r.getNumNonZeros();
+				for (int p=0; p<nz; p++) {
+					addRow(B, r.getIthNonZeroPos(p), r.getIthNonZeroVal(p));
+				}
+			}
+			else {
+				final int n = row.getNumCoords();
+				for (int k=0; k<n; k++) addRow(B, k, row.getCoord(k));
+			}
+		}
+
+		/**
+		 * adds a times row k of B to the accumulator.
+		 */
+		private void addRow(MatrixIntf B, int k, double a) {
+			if (Double.compare(a, 0.0)==0) return;
+			if (B instanceof DblArray2CSRMatrix) {
+				final DblArray2CSRMatrix b = (DblArray2CSRMatrix) B;
+				final int[] cb = b.getColInds();
+				final double[] vb = b.getVals();
+				final int to = b.getRowPtr()[k+1];
+				for (int p=b.getRowPtr()[k]; p<to; p++) add(cb[p], a*vb[p]);
+				return;
+			}
+			final VectorIntf row = B.getIthRow(k);
+			if (row instanceof DblArray1SparseVector &&
+				  Double.compare(((DblArray1SparseVector) row).getDefaultValue(),
+					               0.0)==0) {
+				final DblArray1SparseVector r = (DblArray1SparseVector) row;
+				final int ilen = r.getILen();
+				final int[] inds = r.getIndices();
+				final double[] vb = r.getValues();
+				for (int p=0; p<ilen; p++) add(inds[p], a*vb[p]);
+			}
+			else if (row instanceof SparseVectorIntf &&
+				       Double.compare(((SparseVectorIntf) row).getDefaultValue(),
+					                    0.0)==0) {
+				final SparseVectorIntf r = (SparseVectorIntf) row;
+				final int nz = r.getNumNonZeros();
+				for (int p=0; p<nz; p++) {
+					add(r.getIthNonZeroPos(p), a*r.getIthNonZeroVal(p));
+				}
+			}
+			else {
+				for (int j=0; j<_acc.length; j++) {
+					final double v = row.getCoord(j);
+					if (Double.compare(v, 0.0)!=0) add(j, a*v);
+				}
+			}
+		}
+
+		private void add(int j, double v) {
+			if (_mark[j]==_stamp) _acc[j] += v;
+			else {
+				_mark[j] = _stamp;
+				_acc[j] = v;
+				if (_len==_cols.length) _cols = Arrays.copyOf(_cols, 2*_len);
+				_cols[_len++] = j;
+			}
+		}
+
+		/**
+		 * appends the accumulated row, sorted by column and without zeros, to
+		 * the output, and returns its number of non-zeros.
+		 */
+		int flushRow() {
+			Arrays.sort(_cols, 0, _len);
+			if (_outLen+_len>_outCols.length) {
+				final int cap = (int) Math.min(Math.max(2L*_outCols.length,
+					                                      (long) _outLen+_len),
+					                             Integer.MAX_VALUE-8);
+				_outCols = Arrays.copyOf(_outCols, cap);
+				_outVals = Arrays.copyOf(_outVals, cap);
+			}
+			int nz = 0;
+			for (int p=0; p<_len; p++) {
+				final int j = _cols[p];
+				final double v = _acc[j];
+				if (Double.compare(v, 0.0)==0) continue;
+				_outCols[_outLen+nz] = j;
+				_outVals[_outLen+nz++] = v;
+			}
+			_outLen += nz;
+			_len = 0;
+			return nz;
+		}
+	}
+}
@@ -0,0 +1,536 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * dense implementation of <CODE>LongVectorIntf</CODE> holding its components
+ * outside the Java heap, so that its dimension is limited neither by the max.
+ * length of an array nor by the heap size. The components are split in
+ * segments of 2^27 doubles (1GB), each held in a direct buffer, or, for
+ * vectors backed by a file, in a memory-mapped region of the file; the OS then
+ * pages the vector in and out as needed, and the file is a durable store of
+ * the vector (e.g. the weights of a model) that <CODE>open()</CODE> maps back
+ * in a later run. Direct vectors count against the JVM's max. direct memory
+ * (<CODE>-XX:MaxDirectMemorySize</CODE>).
+ * <p>The file format is a 16-byte header (the magic number <CODE>_MAGIC</CODE>,
+ * the format version as ints, and the dimension as a long) followed by the
+ * components as little-endian doubles.</p>
+ * <p>Whole-vector operations (<CODE>addMul()</CODE> with another dense
+ * vector, <CODE>div()</CODE>, the norms and inner products) are split in
+ * chunks of 2^20 components, never crossing segment boundaries, which are
+ * processed in parallel in the common fork/join pool. Operations with a
+ * <CODE>LongDblArray1SparseVector</CODE> only visit its non-zeros.</p>
+ * Like <CODE>DblArray1Vector</CODE>, the class is not thread-safe when
+ * modified concurrently; concurrent reads are safe.
+ * @author itc
+ */
+public final class OffHeapDblVector implements LongVectorIntf, Closeable {
+  public final static int _MAGIC = 0x31564F48;
+  private final static int _VERSION = 1;
+  private final static int _HEADER_SIZE = 16;
+  private final static int _SEGMENT_SHIFT = 27;  // 2^27 doubles per segment
+  private final static int _CHUNK_SHIFT = 20;  // 2^20 doubles per task
+
+  private final long _n;
+  private final int _segShift;
+  private final DoubleBuffer[] _segs;
+  private final MappedByteBuffer[] _mapped;  // null for direct vectors
+  private final RandomAccessFile _raf;  // null for direct vectors
+
+
+  /**
+   * constructs the zero vector in n-dimensional space, in direct (off-heap)
+   * memory.
+   * @param n long the number of dimensions
+   * @throws IllegalArgumentException if n &le; 0
+   */
+  public OffHeapDblVector(long n) {
+    this(n, _SEGMENT_SHIFT);
+  }
+
+
+  /**
+   * package-private constructor of direct vectors with segments of
+   * 2^segShift doubles (segShift&ge;_CHUNK_SHIFT, or the whole vector in one
+   * chunk); allows testing multi-segment vectors in little memory.
+   * @param n long
+   * @param segShift int
+   */
+  OffHeapDblVector(long n, int segShift) {
+    if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+    _n = n;
+    _segShift = segShift;
+    final int nsegs = (int) ((n-1)>>>segShift)+1;
+    _segs = new DoubleBuffer[nsegs];
+    for (int s=0; s<nsegs; s++) {
+      _segs[s] = ByteBuffer.allocateDirect(segLength(s)*8).
+                   order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+    _mapped = null;
+    _raf = null;
+  }
+
+
+  /**
+   * maps the given file, whose header has already been checked or written.
+   * @param raf RandomAccessFile
+   * @param n long
+   * @param segShift int
+   * @param readOnly boolean
+   * @throws IOException
+   */
+  private OffHeapDblVector(RandomAccessFile raf, long n, int segShift,
+                           boolean readOnly) throws IOException {
+    _n = n;
+    _segShift = segShift;
+    _raf = raf;
+    final int nsegs = (int) ((n-1)>>>segShift)+1;
+    _segs = new DoubleBuffer[nsegs];
+    _mapped = new MappedByteBuffer[nsegs];
+    final FileChannel ch = raf.getChannel();
+    for (int s=0; s<nsegs; s++) {
+      _mapped[s] = ch.map(readOnly ? FileChannel.MapMode.READ_ONLY :
+                                     FileChannel.MapMode.READ_WRITE,
+                          _HEADER_SIZE+((long) s<<segShift)*8,
+                          segLength(s)*8L);
+      _segs[s] = _mapped[s].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+  }
+
+
+  /**
+   * creates (or truncates) the given file to hold the zero vector in
+   * n-dimensional space, and maps it.
+   * @param filename String
+   * @param n long the number of dimensions
+   * @return OffHeapDblVector
+   * @throws IOException if the file cannot be created or mapped
+   * @throws IllegalArgumentException if n &le; 0
+   */
+  public static OffHeapDblVector create(String filename, long n)
+    throws IOException {
+    return create(filename, n, _SEGMENT_SHIFT);
+  }
+
+
+  /**
+   * package-private version of <CODE>create()</CODE> with the given segment
+   * size.
+   * @param filename String
+   * @param n long
+   * @param segShift int
+   * @return OffHeapDblVector
+   * @throws IOException
+   */
+  static OffHeapDblVector create(String filename, long n, int segShift)
+    throws IOException {
+    if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+    RandomAccessFile raf = new RandomAccessFile(filename, "rw");
+    try {
+      raf.setLength(0);
+      raf.setLength(_HEADER_SIZE+8*n);  // sparse file of zeros
+      ByteBuffer hdr = ByteBuffer.allocate(_HEADER_SIZE).
+                         order(ByteOrder.LITTLE_ENDIAN);
+      hdr.putInt(_MAGIC).putInt(_VERSION).putLong(n).flip();
+      raf.getChannel().write(hdr, 0);
+      return new OffHeapDblVector(raf, n, segShift, false);
+    }
+    catch (IOException | RuntimeException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+
+  /**
+   * maps the vector stored in the given file, as written by a vector
+   * returned from <CODE>create()</CODE> (or <CODE>open()</CODE>) and
+   * <CODE>flush()</CODE>-ed or closed.
+   * @param filename String
+   * @param readOnly boolean if true, the vector cannot be modified
+   * @return OffHeapDblVector
+   * @throws IOException if the file cannot be read or is not a vector file
+   */
+  public static OffHeapDblVector open(String filename, boolean readOnly)
+    throws IOException {
+    return open(filename, readOnly, _SEGMENT_SHIFT);
+  }
+
+
+  /**
+   * package-private version of <CODE>open()</CODE> with the given segment
+   * size.
+   * @param filename String
+   * @param readOnly boolean
+   * @param segShift int
+   * @return OffHeapDblVector
+   * @throws IOException
+   */
+  static OffHeapDblVector open(String filename, boolean readOnly, int segShift)
+    throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(filename, readOnly ? "r" : "rw");
+    try {
+      ByteBuffer hdr = ByteBuffer.allocate(_HEADER_SIZE).
+                         order(ByteOrder.LITTLE_ENDIAN);
+      while (hdr.hasRemaining()) {
+        if (raf.getChannel().read(hdr, hdr.position())<0) break;
+      }
+      hdr.flip();
+      if (hdr.remaining()<_HEADER_SIZE || hdr.getInt()!=_MAGIC)
+        throw new IOException(filename+" is not a vector file");
+      final int version = hdr.getInt();
+      if (version!=_VERSION)
+        throw new IOException(filename+": unsupported version "+version);
+      final long n = hdr.getLong();
+      if (n<=0 || raf.length()<_HEADER_SIZE+8*n)
+        throw new IOException(filename+" has an invalid header");
+      return new OffHeapDblVector(raf, n, segShift, readOnly);
+    }
+    catch (IOException | RuntimeException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+
+  /**
+   * return the number of coordinates of this vector.
+   * @return long
+   */
+  public long getNumCoords() {
+    return _n;
+  }
+
+
+  /**
+   * return the i-th coordinate of this vector.
+   * @param i long
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getCoord(long i) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    return _segs[(int) (i>>>_segShift)].get(offset(i));
+  }
+
+
+  /**
+   * set the i-th coordinate of this vector.
+   * @param i long
+   * @param val double
+   * @throws IndexOutOfBoundsException if i is out of range
+   * @throws java.nio.ReadOnlyBufferException if the vector was opened
+   * read-only
+   */
+  public void setCoord(long i, double val) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    _segs[(int) (i>>>_segShift)].put(offset(i), val);
+  }
+
+
+  /**
+   * modifies this vector by adding the quantity m*other to it. Against a
+   * <CODE>LongDblArray1SparseVector</CODE> only its non-zeros are visited;
+   * against another <CODE>OffHeapDblVector</CODE> the vector is updated in
+   * parallel over chunks.
+   * @param m double
+   * @param other LongVectorIntf
+   * @throws IllegalArgumentException if other is null or does not have the
+   * same dimensions as this vector
+   */
+  public void addMul(final double m, final LongVectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("cannot call addMul(m,v) with v "+
+                                         "having different dimensions than "+
+                                         "this vector");
+    if (other instanceof LongDblArray1SparseVector) {
+      LongDblArray1SparseVector o = (LongDblArray1SparseVector) other;
+      final long[] inds = o.getIndices();
+      final double[] vals = o.getValues();
+      final int nnz = o.getNumNonZeros();
+      for (int k=0; k<nnz; k++) {
+        final DoubleBuffer seg = _segs[(int) (inds[k]>>>_segShift)];
+        final int p = offset(inds[k]);
+        seg.put(p, seg.get(p)+m*vals[k]);
+      }
+      return;
+    }
+    invoke(new RangeOp() {
+      public double run(long from, long to) {
+        final int s = (int) (from>>>_segShift);
+        final DoubleBuffer seg = _segs[s];
+        final int p0 = offset(from);
+        final int p1 = p0+(int) (to-from);
+        if (other instanceof OffHeapDblVector &&
+            ((OffHeapDblVector) other)._segShift==_segShift) {
+          final DoubleBuffer oseg = ((OffHeapDblVector) other)._segs[s];
+          for (int p=p0; p<p1; p++) seg.put(p, seg.get(p)+m*oseg.get(p));
+        }
+        else {
+          for (int p=p0; p<p1; p++) {
+            seg.put(p, seg.get(p)+m*other.getCoord(from+(p-p0)));
+          }
+        }
+        return 0.0;
+      }
+    }, false);
+  }
+
+
+  /**
+   * divide the components of this vector by the argument h, in parallel.
+   * @param h double
+   * @throws IllegalArgumentException if h is (almost) zero or NaN
+   */
+  public void div(final double h) {
+    if (Double.isNaN(h) || Math.abs(h)<1.e-120)
+      throw new IllegalArgumentException("division by (almost) zero or NaN");
+    invoke(new RangeOp() {
+      public double run(long from, long to) {
+        final DoubleBuffer seg = _segs[(int) (from>>>_segShift)];
+        final int p0 = offset(from);
+        final int p1 = p0+(int) (to-from);
+        for (int p=p0; p<p1; p++) seg.put(p, seg.get(p)/h);
+        return 0.0;
+      }
+    }, false);
+  }
+
+
+  /**
+   * return true iff all components are zero, checking in parallel.
+   * @return boolean
+   */
+  public boolean isAtOrigin() {
+    return invoke(new RangeOp() {
+      public double run(long from, long to) {
+        final DoubleBuffer seg = _segs[(int) (from>>>_segShift)];
+        final int p0 = offset(from);
+        final int p1 = p0+(int) (to-from);
+        for (int p=p0; p<p1; p++) {
+          if (Double.compare(seg.get(p), 0.0)!=0) return 1.0;
+        }
+        return 0.0;
+      }
+    }, true)==0.0;
+  }
+
+
+  /**
+   * compute the inner product of this vector with the argument: against a
+   * <CODE>LongDblArray1SparseVector</CODE> its non-zeros are gathered from
+   * this vector, otherwise the products are summed in parallel over chunks.
+   * @param other LongVectorIntf
+   * @return double
+   * @throws IllegalArgumentException if other is null or its dimension
+   * doesn't match this vector's dimension
+   */
+  public double innerProduct(final LongVectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("dimensions don't match or null "+
+                                         "argument passed in");
+    if (other instanceof LongDblArray1SparseVector) {
+      return other.innerProduct(this);
+    }
+    return invoke(new RangeOp() {
+      public double run(long from, long to) {
+        final int s = (int) (from>>>_segShift);
+        final DoubleBuffer seg = _segs[s];
+        final int p0 = offset(from);
+        final int p1 = p0+(int) (to-from);
+        double sum = 0.0;
+        if (other instanceof OffHeapDblVector &&
+            ((OffHeapDblVector) other)._segShift==_segShift) {
+          final DoubleBuffer oseg = ((OffHeapDblVector) other)._segs[s];
+          for (int p=p0; p<p1; p++) sum += seg.get(p)*oseg.get(p);
+        }
+        else {
+          for (int p=p0; p<p1; p++) {
+            sum += seg.get(p)*other.getCoord(from+(p-p0));
+          }
+        }
+        return sum;
+      }
+    }, false);
+  }
+
+
+  /**
+   * return the k-th norm of this vector, computed in parallel.
+   * @param k int
+   * @return double
+   * @throws IllegalArgumentException if k &le; 0
+   */
+  public double norm(final int k) {
+    if (k<=0) throw new IllegalArgumentException("k<=0");
+    if (k==2) return norm2();
+    final double res = invoke(new RangeOp() {
+      public double run(long from, long to) {
+        final DoubleBuffer seg = _segs[(int) (from>>>_segShift)];
+        final int p0 = offset(from);
+        final int p1 = p0+(int) (to-from);
+        double sum = 0.0;
+        for (int p=p0; p<p1; p++) sum += Math.pow(Math.abs(seg.get(p)), k);
+        return sum;
+      }
+    }, false);
+    return Math.pow(res, 1.0/k);
+  }
+
+
+  /**
+   * short-cut for norm(2).
+   * @return double
+   */
+  public double norm2() {
+    return Math.sqrt(innerProduct(this));
+  }
+
+
+  /**
+   * computes the infinity norm of this vector, in parallel.
+   * @return double
+   */
+  public double normInfinity() {
+    return invoke(new RangeOp() {
+      public double run(long from, long to) {
+        final DoubleBuffer seg = _segs[(int) (from>>>_segShift)];
+        final int p0 = offset(from);
+        final int p1 = p0+(int) (to-from);
+        double res = 0.0;
+        for (int p=p0; p<p1; p++) {
+          final double absxi = Math.abs(seg.get(p));
+          if (absxi>res) res = absxi;
+        }
+        return res;
+      }
+    }, true);
+  }
+
+
+  /**
+   * return true iff this vector is backed by a file.
+   * @return boolean
+   */
+  public boolean isMapped() {
+    return _mapped!=null;
+  }
+
+
+  /**
+   * forces the components of a file-backed vector to the storage device;
+   * no-op for direct vectors.
+   */
+  public void flush() {
+    if (_mapped==null) return;
+    for (int s=0; s<_mapped.length; s++) {
+      if (!_mapped[s].isReadOnly()) _mapped[s].force();
+    }
+  }
+
+
+  /**
+   * flushes a file-backed vector and closes its file. The mappings remain
+   * valid until the vector is garbage collected, but the vector must not be
+   * used after it is closed.
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    if (_raf==null) return;
+    flush();
+    _raf.close();
+  }
+
+
+  /**
+   * return the number of components of the s-th segment.
+   * @param s int
+   * @return int
+   */
+  private int segLength(int s) {
+    return (int) Math.min(1L<<_segShift, _n-((long) s<<_segShift));
+  }
+
+
+  /**
+   * return the position of the i-th component within its segment.
+   * @param i long
+   * @return int
+   */
+  private int offset(long i) {
+    return (int) (i & ((1L<<_segShift)-1));
+  }
+
+
+  /**
+   * runs the operation over all chunks of the vector, in parallel if there is
+   * more than one chunk, and returns the sum (or the max.) of the results.
+   * @param op RangeOp
+   * @param max boolean
+   * @return double
+   */
+  private double invoke(RangeOp op, boolean max) {
+    final int chunkShift = Math.min(_CHUNK_SHIFT, _segShift);
+    RangeTask root = new RangeTask(op, max, chunkShift, 0, _n);
+    if (_n<=(1L<<chunkShift)) return root.compute();
+    return ForkJoinPool.commonPool().invoke(root);
+  }
+
+
+  /**
+   * the work done for a range of components within one segment.
+   */
+  private interface RangeOp {
+    double run(long from, long to);
+  }
+
+
+  /**
+   * fork/join task running an operation over the range [lo,hi) of
+   * components, split at chunk boundaries.
+   */
+  private static final class RangeTask extends RecursiveTask<Double> {
+    private static final long serialVersionUID = 1L;
+    private final RangeOp _op;
+    private final boolean _max;
+    private final int _chunkShift;
+    private final long _lo;
+    private final long _hi;
+
+    RangeTask(RangeOp op, boolean max, int chunkShift, long lo, long hi) {
+      _op = op;
+      _max = max;
+      _chunkShift = chunkShift;
+      _lo = lo;
+      _hi = hi;
+    }
+
+    protected Double compute() {
+      final long chunks = ((_hi-1)>>>_chunkShift)-(_lo>>>_chunkShift)+1;
+      if (chunks<=1) return _op.run(_lo, _hi);
+      final long mid = ((_lo>>>_chunkShift)+chunks/2)<<_chunkShift;
+      RangeTask left = new RangeTask(_op, _max, _chunkShift, _lo, mid);
+      left.fork();
+      final double r = new RangeTask(_op, _max, _chunkShift, mid, _hi).
+                         compute();
+      final double l = left.join();
+      return _max ? Math.max(l, r) : l+r;
+    }
+  }
+}
@@ -0,0 +1,709 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+
+
+/**
+ * sparse implementation of VectorIntf storing its non-zero values as 8-bit or
+ * 16-bit integer codes with a single scale per vector: the value of the k-th
+ * non-zero is <CODE>code[k]*scale</CODE>, where the scale is chosen so that
+ * the largest absolute value of the vector maps to the largest code (127 or
+ * 32767). Non-zeros thus take 5 or 6 bytes each, instead of the 12 bytes of
+ * <CODE>DblArray1SparseVector</CODE>, at the cost of an absolute error of up
+ * to half the scale per component (values smaller than that are not stored).
+ * This suits feature vectors, whose components matter relative to the
+ * largest one. All arithmetic is carried out in double precision on the
+ * decoded values: kernels accumulate the codes times the other vector's
+ * values, and multiply by the scale once; <CODE>div()</CODE> and
+ * <CODE>newCopyMultBy()</CODE> only change the scale, while
+ * <CODE>addMul()</CODE> re-quantizes the result, as does
+ * <CODE>setCoord()</CODE> when the value set exceeds the range of the codes.
+ * Vectors of this class are what <CODE>SparseMatrixBinaryFile
+ * .getIthRowCompact()</CODE> returns for files storing quantized values. The
+ * class only supports zero as the default value of components, and is not
+ * thread-safe.
+ * @author itc
+ */
+public class QuantizedArray1SparseVector implements SparseVectorIntf {
+  private static final long serialVersionUID = -3953552599091567130L;
+  private int[] _indices;  // ascending, only the first _ilen are valid
+  private byte[] _codes8;  // non-null iff _bits==8
+  private short[] _codes16;  // non-null iff _bits==16
+  private int _ilen;
+  private double _scale;
+  private final int _bits;
+  private final int _n;
+
+
+  /**
+   * constructs the zero sparse vector in n-dimensional space.
+   * @param n int the number of dimensions
+   * @param bits int the width of the codes, 8 or 16
+   * @throws IllegalArgumentException if n &le; 0 or bits is not 8 or 16
+   */
+  public QuantizedArray1SparseVector(int n, int bits) {
+    if (n<=0) throw new IllegalArgumentException("dimensions must be >= 1");
+    checkBits(bits);
+    _n = n;
+    _bits = bits;
+    setValues(new int[0], new double[0], 0);
+  }
+
+
+  /**
+   * constructs the quantized copy of the given sparse vector.
+   * @param v SparseVectorIntf must have zero default value and finite values
+   * @param bits int the width of the codes, 8 or 16
+   * @throws IllegalArgumentException if v is null, has non-zero default value
+   * or non-finite values, or if bits is not 8 or 16
+   */
+  public QuantizedArray1SparseVector(SparseVectorIntf v, int bits) {
+    if (v==null || Double.compare(v.getDefaultValue(), 0.0)!=0)
+      throw new IllegalArgumentException("null vector or non-zero default");
+    checkBits(bits);
+    _n = v.getNumCoords();
+    _bits = bits;
+    final int nnz = v.getNumNonZeros();
+    int[] inds = new int[nnz];
+    double[] vals = new double[nnz];
+    for (int k=0; k<nnz; k++) {
+      inds[k] = v.getIthNonZeroPos(k);
+      vals[k] = v.getIthNonZeroVal(k);
+    }
+    setValues(inds, vals, nnz);
+  }
+
+
+  /**
+   * package-private constructor using (not copying) the arrays passed in,
+   * exactly one of which must be non-null, and which must satisfy the
+   * invariants of this class (not checked).
+   * @param n int
+   * @param indices int[]
+   * @param codes8 byte[]
+   * @param codes16 short[]
+   * @param ilen int
+   * @param scale double
+   */
+  QuantizedArray1SparseVector(int n, int[] indices, byte[] codes8,
+                              short[] codes16, int ilen, double scale) {
+    _n = n;
+    _bits = codes8!=null ? 8 : 16;
+    _indices = indices;
+    _codes8 = codes8;
+    _codes16 = codes16;
+    _ilen = ilen;
+    _scale = scale;
+  }
+
+
+  /**
+   * return the width of the codes of this vector.
+   * @return int 8 or 16
+   */
+  public int getBits() {
+    return _bits;
+  }
+
+
+  /**
+   * return the scale of this vector, i.e. the value of code 1.
+   * @return double
+   */
+  public double getScale() {
+    return _scale;
+  }
+
+
+  /**
+   * return a new VectorIntf object containing a copy of the data of this
+   * object.
+   * @return VectorIntf
+   */
+  public VectorIntf newCopy() {
+    return new QuantizedArray1SparseVector(_n, Arrays.copyOf(_indices, _ilen),
+                                           _codes8!=null ?
+                                             Arrays.copyOf(_codes8, _ilen) :
+                                             null,
+                                           _codes16!=null ?
+                                             Arrays.copyOf(_codes16, _ilen) :
+                                             null,
+                                           _ilen, _scale);
+  }
+
+
+  /**
+   * return a new copy of this vector, with each component multiplied by the
+   * argument. Only the scale of the copy differs, so the operation is exact
+   * (up to the rounding of the scale).
+   * @param multFactor double
+   * @return VectorIntf
+   */
+  public VectorIntf newCopyMultBy(double multFactor) {
+    if (Double.compare(multFactor, 0.0)==0)
+      return new QuantizedArray1SparseVector(_n, _bits);
+    QuantizedArray1SparseVector v = (QuantizedArray1SparseVector) newCopy();
+    v._scale *= multFactor;
+    return v;
+  }
+
+
+  /**
+   * return a new un-managed copy of this object.
+   * @return VectorIntf
+   */
+  public VectorIntf newInstance() {
+    return newCopy();
+  }
+
+
+  /**
+   * return a new <CODE>QuantizedArray1SparseVector</CODE> with the same code
+   * width as this one, holding the quantized non-zeros of the argument.
+   * @param arg double[]
+   * @return VectorIntf
+   * @throws IllegalArgumentException if arg is null or empty or has
+   * non-finite values
+   */
+  public VectorIntf newInstance(double[] arg) {
+    if (arg==null || arg.length==0)
+      throw new IllegalArgumentException("null or empty arg");
+    QuantizedArray1SparseVector v =
+      new QuantizedArray1SparseVector(arg.length, _bits);
+    int nnz = 0;
+    for (int i=0; i<arg.length; i++) if (arg[i]!=0.0) ++nnz;
+    int[] inds = new int[nnz];
+    double[] vals = new double[nnz];
+    int k = 0;
+    for (int i=0; i<arg.length; i++) {
+      if (arg[i]!=0.0) {
+        inds[k] = i;
+        vals[k++] = arg[i];
+      }
+    }
+    v.setValues(inds, vals, nnz);
+    return v;
+  }
+
+
+  /**
+   * return the number of coordinates of this vector.
+   * @return int
+   */
+  public int getNumCoords() {
+    return _n;
+  }
+
+
+  /**
+   * return a double[] representation of this vector.
+   * @return double[]
+   */
+  public double[] getDblArray1() {
+    double[] x = new double[_n];
+    for (int i=0; i<_ilen; i++) x[_indices[i]] = code(i)*_scale;
+    return x;
+  }
+
+
+  /**
+   * return the i-th coordinate of this vector, in O(log(nnz)) time.
+   * @param i int
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getCoord(int i) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    final int p = Arrays.binarySearch(_indices, 0, _ilen, i);
+    return p>=0 ? code(p)*_scale : 0.0;
+  }
+
+
+  /**
+   * set the i-th coordinate of this vector to the quantized value given. If
+   * the value is within the range of the current codes, only the component's
+   * code changes (O(log(nnz)) if the component is already non-zero, O(nnz)
+   * otherwise); otherwise the whole vector is re-quantized with a larger
+   * scale, in O(nnz) time.
+   * @param i int
+   * @param val double must be finite
+   * @throws IndexOutOfBoundsException if i is out of range
+   * @throws IllegalArgumentException if val is not finite
+   */
+  public void setCoord(int i, double val) {
+    if (i<0 || i>=_n)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds");
+    if (Double.isNaN(val) || Double.isInfinite(val))
+      throw new IllegalArgumentException("non-finite value "+val);
+    final int p = Arrays.binarySearch(_indices, 0, _ilen, i);
+    final int max_code = maxCode(_bits);
+    final long c = _scale!=0.0 ? Math.round(val/_scale) : Long.MAX_VALUE;
+    if (c>max_code || c<-max_code) {  // re-quantize
+      if (val==0.0) return;
+      final int len = p>=0 ? _ilen : _ilen+1;
+      int[] inds = new int[len];
+      double[] vals = new double[len];
+      boolean placed = p>=0;
+      int k = 0;
+      for (int j=0; j<_ilen; j++) {
+        if (!placed && _indices[j]>i) {
+          inds[k] = i;
+          vals[k++] = val;
+          placed = true;
+        }
+        inds[k] = _indices[j];
+        vals[k++] = _indices[j]==i ? val : code(j)*_scale;
+      }
+      if (!placed) {
+        inds[k] = i;
+        vals[k] = val;
+      }
+      setValues(inds, vals, len);
+      return;
+    }
+    final int code = (int) c;
+    if (p>=0) {
+      if (code!=0) setCode(p, code);
+      else {
+        System.arraycopy(_indices, p+1, _indices, p, _ilen-p-1);
+        if (_codes8!=null) System.arraycopy(_codes8, p+1, _codes8, p, _ilen-p-1);
+        else System.arraycopy(_codes16, p+1, _codes16, p, _ilen-p-1);
+        --_ilen;
+      }
+      return;
+    }
+    if (code==0) return;
+    final int q = -p-1;
+    if (_ilen==_indices.length) {  // increase capacity 20%
+      final int cap = _ilen+_ilen/5+1;
+      _indices = Arrays.copyOf(_indices, cap);
+      if (_codes8!=null) _codes8 = Arrays.copyOf(_codes8, cap);
+      else _codes16 = Arrays.copyOf(_codes16, cap);
+    }
+    System.arraycopy(_indices, q, _indices, q+1, _ilen-q);
+    if (_codes8!=null) System.arraycopy(_codes8, q, _codes8, q+1, _ilen-q);
+    else System.arraycopy(_codes16, q, _codes16, q+1, _ilen-q);
+    _indices[q] = i;
+    setCode(q, code);
+    ++_ilen;
+  }
+
+
+  /**
+   * get the number of non-zeros of this vector.
+   * @return int
+   */
+  public int getNumNonZeros() {
+    return _ilen;
+  }
+
+
+  /**
+   * get the index of the i-th non-zero of this vector.
+   * @param i int
+   * @return int
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public int getIthNonZeroPos(int i) {
+    if (i<0 || i>=_ilen)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _ilen+"]");
+    return _indices[i];
+  }
+
+
+  /**
+   * get the value of the i-th non-zero of this vector.
+   * @param i int
+   * @return double
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public double getIthNonZeroVal(int i) {
+    if (i<0 || i>=_ilen)
+      throw new IndexOutOfBoundsException("index "+i+" out of bounds[0,"+
+                                          _ilen+"]");
+    return code(i)*_scale;
+  }
+
+
+  /**
+   * modifies this vector by adding the quantity m*other to it. The result is
+   * computed in double and re-quantized once. Fast (linear in the non-zeros
+   * involved, or in n for dense arguments) for <CODE>DblArray1Vector</CODE>
+   * arguments and sparse arguments with zero default; O(n*nnz) otherwise.
+   * @param m double
+   * @param other VectorIntf
+   * @throws IllegalArgumentException if other is null or does not have the
+   * same dimensions as this vector, or if the result is not finite
+   */
+  public void addMul(double m, VectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("cannot call addMul(m,v) with v "+
+                                         "having different dimensions than "+
+                                         "this vector");
+    DblArray1SparseVector r =
+      SparseKernels.addMul(_indices, getDblValues(), _ilen, m, other);
+    if (r!=null) {
+      setValues(r.getIndices(), r.getValues(), r.getILen());
+      return;
+    }
+    double[] x = getDblArray1();
+    for (int i=0; i<_n; i++) x[i] += m*other.getCoord(i);
+    QuantizedArray1SparseVector v = (QuantizedArray1SparseVector) newInstance(x);
+    _indices = v._indices;
+    _codes8 = v._codes8;
+    _codes16 = v._codes16;
+    _ilen = v._ilen;
+    _scale = v._scale;
+  }
+
+
+  /**
+   * divide the components of this vector by the argument h, by dividing the
+   * scale.
+   * @param h double
+   * @throws IllegalArgumentException if h is (almost) zero or NaN
+   */
+  public void div(double h) {
+    if (Double.isNaN(h) || Math.abs(h)<1.e-120)
+      throw new IllegalArgumentException("division by (almost) zero or NaN");
+    _scale /= h;
+  }
+
+
+  /**
+   * multiplies the components of this vector by a, in O(1) time, by
+   * multiplying the scale.
+   * @param a double
+   * @throws IllegalArgumentException if a is NaN or the result is not finite
+   */
+  public void scale(double a) throws IllegalArgumentException {
+    if (Double.isNaN(a)) throw new IllegalArgumentException("a is NaN");
+    final double scale = _scale*a;
+    if (Double.isNaN(scale) || Double.isInfinite(scale))
+      throw new IllegalArgumentException("non-finite result scale "+scale);
+    if (scale==0.0) {
+      _ilen = 0;
+      _scale = 0.0;
+    }
+    else _scale = scale;
+  }
+
+
+  /**
+   * sets this vector to a*x + b*this, in place: <CODE>scale(b)</CODE>
+   * followed by <CODE>addMul(a,x)</CODE>, so the result is re-quantized once.
+   * When b is zero the old components of this vector are not read.
+   * @param a double
+   * @param x VectorIntf
+   * @param b double
+   * @throws IllegalArgumentException if x is null or does not have the same
+   * dimensions as this vector, if a or b is NaN, or if the result is not
+   * finite
+   */
+  public void axpby(double a, VectorIntf x, double b) 
+    throws IllegalArgumentException {
+    if (x==null || x.getNumCoords()!=_n || Double.isNaN(a) || Double.isNaN(b))
+      throw new IllegalArgumentException("cannot call axpby(a,x,b) with x "+
+                                         "having different dimensions than "+
+                                         "this vector or with a or b being "+
+                                         "NaN.");
+    if (x==this) {
+      scale(a+b);
+      return;
+    }
+    if (b==0.0) {
+      _ilen = 0;
+      _scale = 0.0;
+    }
+    else if (b!=1.0) scale(b);
+    addMul(a, x);
+  }
+
+
+  /**
+   * return true iff all components are zero.
+   * @return boolean
+   */
+  public boolean isAtOrigin() {
+    return _ilen==0;
+  }
+
+
+  /**
+   * compute the inner product of this vector with the argument, accumulating
+   * the codes times the other vector's values in double, and multiplying by
+   * the scale once. Against <CODE>DblArray1Vector</CODE> objects the values
+   * are gathered from the dense array, and against sparse vectors with zero
+   * default the product is a linear merge of the two index sequences.
+   * @param other VectorIntf
+   * @return double
+   * @throws IllegalArgumentException if other is null or its dimension
+   * doesn't match this vector's dimension
+   */
+  public double innerProduct(VectorIntf other) {
+    if (other==null || other.getNumCoords()!=_n)
+      throw new IllegalArgumentException("dimensions don't match or null "+
+                                         "argument passed in");
+    if (other instanceof DblArray1Vector) {
+      final double[] x = ((DblArray1Vector) other).get_x();
+      return _scale*(_codes8!=null ?
+                     SparseKernels.gather(_indices, _codes8, 0, _ilen, x) :
+                     SparseKernels.gather(_indices, _codes16, 0, _ilen, x));
+    }
+    int[] ib = null;
+    double[] vb = null;
+    int fb = 0;
+    int tb = 0;
+    if (other instanceof DblArray1SparseVector &&
+        Double.compare(((DblArray1SparseVector) other).getDefaultValue(),
+                       0.0)==0) {
+      DblArray1SparseVector o = (DblArray1SparseVector) other;
+      ib = o.getIndices(); vb = o.getValues(); tb = o.getILen();
+    }
+    else if (other instanceof DblArray1CSRRowView) {
+      DblArray1CSRRowView o = (DblArray1CSRRowView) other;
+      ib = o.getColInds(); vb = o.getVals(); fb = o.getFrom(); tb = o.getTo();
+    }
+    if (ib!=null) {
+      return _scale*(_codes8!=null ?
+                     SparseKernels.dot(_indices, _codes8, 0, _ilen,
+                                       ib, vb, fb, tb) :
+                     SparseKernels.dot(_indices, _codes16, 0, _ilen,
+                                       ib, vb, fb, tb));
+    }
+    if (SparseKernels.isZeroDefaultSparse(other)) {
+      return SparseKernels.dot(this, (SparseVectorIntf) other);
+    }
+    double sum = 0.0;
+    for (int i=0; i<_ilen; i++) sum += code(i)*other.getCoord(_indices[i]);
+    return _scale*sum;
+  }
+
+
+  /**
+   * return the k-th norm of this vector.
+   * @param k int
+   * @return double
+   * @throws IllegalArgumentException if k &le; 0
+   */
+  public double norm(int k) {
+    if (k<=0) throw new IllegalArgumentException("k<=0");
+    if (k==2) return norm2();
+    double res = 0.0;
+    for (int i=0; i<_ilen; i++) res += Math.pow(Math.abs(code(i)), k);
+    return Math.abs(_scale)*Math.pow(res, 1.0/k);
+  }
+
+
+  /**
+   * short-cut for norm(2).
+   * @return double
+   */
+  public double norm2() {
+    double res2 = 0.0;
+    for (int i=0; i<_ilen; i++) {
+      final double ci = code(i);
+      res2 += ci*ci;
+    }
+    return Math.abs(_scale)*Math.sqrt(res2);
+  }
+
+
+  /**
+   * computes the infinity norm of this vector.
+   * @return double
+   */
+  public double normInfinity() {
+    int res = 0;
+    for (int i=0; i<_ilen; i++) res = Math.max(res, Math.abs(code(i)));
+    return Math.abs(_scale)*res;
+  }
+
+
+  /**
+   * return true iff the other vector is exactly equal to this one
+   * component-wise (as decoded), regardless of its representation.
+   * @param other Object
+   * @return boolean
+   */
+  public boolean equals(Object other) {
+    if (other==null || other instanceof VectorIntf == false) return false;
+    VectorIntf o = (VectorIntf) other;
+    if (o.getNumCoords()!=_n) return false;
+    if (other instanceof SparseVectorIntf) {
+      return SparseKernels.equals(this, (SparseVectorIntf) other);
+    }
+    if (other instanceof DblArray1Vector) {
+      return SparseKernels.equals(this, ((DblArray1Vector) other).get_x());
+    }
+    for (int i=0; i<_n; i++) {
+      if (Double.compare(getCoord(i), o.getCoord(i))!=0) return false;
+    }
+    return true;
+  }
+
+
+  /**
+   * return the integer part of the first component of this vector, as the
+   * other vector classes of this package do.
+   * @return int
+   */
+  public int hashCode() {
+    return (int) getCoord(0);
+  }
+
+
+  /**
+   * return a String representation of this vector.
+   * @return String
+   */
+  public String toString() {
+    StringBuilder x = new StringBuilder("[");
+    for (int i=0; i<_ilen; i++) {
+      if (i>0) x.append(", ");
+      x.append("(").append(_indices[i]).append(",").append(code(i)*_scale).
+        append(")");
+    }
+    x.append("](_n=").append(_n).append("/ _ilen=").append(_ilen).
+      append("/ _bits=").append(_bits).append("/ _scale=").append(_scale).
+      append(")");
+    return x.toString();
+  }
+
+
+  /**
+   * package-private accessor to the indices array. Only the first
+   * <CODE>getILen()</CODE> positions are valid.
+   * @return int[]
+   */
+  int[] getIndices() {
+    return _indices;
+  }
+
+
+  /**
+   * package-private accessor to the 8-bit codes.
+   * @return byte[] null unless <CODE>getBits()</CODE> is 8
+   */
+  byte[] getCodes8() {
+    return _codes8;
+  }
+
+
+  /**
+   * package-private accessor to the 16-bit codes.
+   * @return short[] null unless <CODE>getBits()</CODE> is 16
+   */
+  short[] getCodes16() {
+    return _codes16;
+  }
+
+
+  /**
+   * package-private accessor to the number of non-zeros.
+   * @return int
+   */
+  int getILen() {
+    return _ilen;
+  }
+
+
+  /**
+   * return the largest code of the given width.
+   * @param bits int 8 or 16
+   * @return int
+   */
+  static int maxCode(int bits) {
+    return bits==8 ? Byte.MAX_VALUE : Short.MAX_VALUE;
+  }
+
+
+  /**
+   * return the code of the k-th non-zero.
+   * @param k int
+   * @return int
+   */
+  private int code(int k) {
+    return _codes8!=null ? _codes8[k] : _codes16[k];
+  }
+
+
+  /**
+   * sets the code of the k-th non-zero.
+   * @param k int
+   * @param code int within the range of the codes
+   */
+  private void setCode(int k, int code) {
+    if (_codes8!=null) _codes8[k] = (byte) code;
+    else _codes16[k] = (short) code;
+  }
+
+
+  /**
+   * return the decoded non-zero values of this vector as a new double[].
+   * @return double[]
+   */
+  private double[] getDblValues() {
+    double[] va = new double[_ilen];
+    for (int i=0; i<_ilen; i++) va[i] = code(i)*_scale;
+    return va;
+  }
+
+
+  /**
+   * replaces the contents of this vector with the quantization of the first
+   * ilen (index, value) pairs of the arrays passed in: the scale maps the
+   * largest absolute value to the largest code, and values whose code is zero
+   * are dropped.
+   * @param indices int[] in ascending order
+   * @param values double[]
+   * @param ilen int
+   * @throws IllegalArgumentException if some value is not finite
+   */
+  private void setValues(int[] indices, double[] values, int ilen) {
+    double max_abs = 0.0;
+    for (int i=0; i<ilen; i++) {
+      final double v = values[i];
+      if (Double.isNaN(v) || Double.isInfinite(v))
+        throw new IllegalArgumentException("non-finite value "+v+
+                                           " at index "+indices[i]);
+      max_abs = Math.max(max_abs, Math.abs(v));
+    }
+    final int max_code = maxCode(_bits);
+    final double scale = max_abs/max_code;
+    int[] inds = new int[ilen];
+    byte[] c8 = _bits==8 ? new byte[ilen] : null;
+    short[] c16 = _bits==16 ? new short[ilen] : null;
+    int k = 0;
+    for (int i=0; i<ilen; i++) {
+      final long c = Math.round(values[i]/scale);
+      if (c==0) continue;
+      final int code = (int) Math.max(-max_code, Math.min(max_code, c));
+      inds[k] = indices[i];
+      if (c8!=null) c8[k++] = (byte) code;
+      else c16[k++] = (short) code;
+    }
+    _indices = inds;
+    _codes8 = c8;
+    _codes16 = c16;
+    _ilen = k;
+    _scale = k>0 ? scale : 0.0;
+  }
+
+
+  /**
+   * checks the width of the codes.
+   * @param bits int
+   * @throws IllegalArgumentException if bits is not 8 or 16
+   */
+  private static void checkBits(int bits) {
+    if (bits!=8 && bits!=16)
+      throw new IllegalArgumentException("bits must be 8 or 16");
+  }
+}
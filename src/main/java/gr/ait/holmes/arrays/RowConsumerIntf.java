@@ -0,0 +1,22 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+
+/**
+ * interface of objects receiving the rows of a matrix one after the other, as
+ * passed by <CODE>MatrixIntf.forEachRow()</CODE> and 
+ * <CODE>MatrixOps.forEachRow()</CODE>.
+ * @author itc
+ */
+public interface RowConsumerIntf {
+  /**
+   * called with the i-th row of the matrix. The row must not be modified, as
+   * it may be the matrix's own row object.
+   * @param i int
+   * @param row VectorIntf
+   */
+  public void accept(int i, VectorIntf row);
+}
@@ -0,0 +1,497 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * inverted index over the rows of a <CODE>MatrixIntf</CODE> (typically a
+ * <CODE>BigDiskSupportedDblArray2SparseMatrix</CODE>) answering top-k cosine
+ * similarity queries: given a query vector q, find the k rows r maximizing
+ * q'r/(|q||r|). For every column j the index holds the posting list of the
+ * rows having a non-zero in column j, in ascending row order, each with the
+ * value of the row at j divided by the (precomputed) norm of the row, plus the
+ * max. absolute value in the list. A query only visits the posting lists of
+ * its non-zero columns, so its cost follows the sizes of these lists rather
+ * than the number of rows. The index is built by two sweeps over the rows of
+ * the matrix (one counting the non-zeros of each column, one filling the
+ * lists), and is a snapshot: later changes of the matrix are not reflected.
+ * <p>The rows are split into consecutive ranges processed in parallel in a
+ * fork/join pool; each range is searched document-at-a-time (the posting
+ * lists are merged in row order, and each row is scored in full once) into
+ * its own bounded min-heap of k entries, and the heaps are merged at the end.
+ * With pruning enabled (the default), each range is searched with the WAND
+ * algorithm: the max. value of each posting list times the query weight is an
+ * upper bound of the list's contribution to any row's score, and rows whose
+ * upper bounds sum to less than the k-th best score found so far are
+ * skipped without being scored, by jumping the lists forward via binary
+ * search. Pruning does not change the result.</p>
+ * Ties in score are broken in favor of the smaller row index. Rows of zero
+ * norm never appear in the results. The index is immutable and may be queried
+ * from many threads concurrently.
+ * @author itc
+ */
+public final class SparseCosineIndex {
+	private final static int _MIN_POSTINGS_PER_TASK = 1 << 15;
+
+	private final int _rows;
+	private final int _cols;
+	private final int[] _colPtr;  // column j's list is [_colPtr[j],_colPtr[j+1])
+	private final int[] _rowInds;
+	private final double[] _weights;  // value/row norm
+	private final double[] _maxAbs;  // max. abs. weight per posting list
+	private final double[] _rowNorms;
+
+
+	/**
+	 * builds the index of the rows of the given matrix.
+	 * @param m MatrixIntf
+	 * @throws IllegalArgumentException if m is null
+	 * @throws IllegalStateException if the matrix has more than
+	 * Integer.MAX_VALUE-8 non-zeros, or its rows are not available
+	 */
+	public SparseCosineIndex(MatrixIntf m) {
+		if (m==null) throw new IllegalArgumentException("null matrix");
+		_rows = m.getNumRows();
+		_cols = m.getNumCols();
+		_rowNorms = new double[_rows];
+		_colPtr = new int[_cols+1];
+		long nnz = 0;
+		for (int i=0; i<_rows; i++) {  // 1st sweep: row norms & column counts
+			final VectorIntf ri = m.getIthRow(i);
+			double norm2 = 0.0;
+			if (SparseKernels.isZeroDefaultSparse(ri)) {
+				final SparseVectorIntf r = (SparseVectorIntf) ri;
+				final int nz = r.getNumNonZeros();
+				for (int k=0; k<nz; k++) {
+					final double v = r.getIthNonZeroVal(k);
+					if (v==0.0) continue;
+					norm2 += v*v;
+					++_colPtr[r.getIthNonZeroPos(k)+1];
+					++nnz;
+				}
+			}
+			else {
+				for (int j=0; j<_cols; j++) {
+					final double v = ri.getCoord(j);
+					if (v==0.0) continue;
+					norm2 += v*v;
+					++_colPtr[j+1];
+					++nnz;
+				}
+			}
+			_rowNorms[i] = Math.sqrt(norm2);
+		}
+		if (nnz>Integer.MAX_VALUE-8)
+			throw new IllegalStateException("too many non-zeros for the index");
+		for (int j=0; j<_cols; j++) _colPtr[j+1] += _colPtr[j];
+		_rowInds = new int[(int) nnz];
+		_weights = new double[(int) nnz];
+		_maxAbs = new double[_cols];
+		final int[] next = Arrays.copyOf(_colPtr, _cols);
+		for (int i=0; i<_rows; i++) {  // 2nd sweep: fill the posting lists
+			final double norm = _rowNorms[i];
+			if (norm==0.0) continue;
+			final VectorIntf ri = m.getIthRow(i);
+			if (SparseKernels.isZeroDefaultSparse(ri)) {
+				final SparseVectorIntf r = (SparseVectorIntf) ri;
+				final int nz = r.getNumNonZeros();
+				for (int k=0; k<nz; k++) {
+					final double v = r.getIthNonZeroVal(k);
+					if (v!=0.0) addPosting(next, r.getIthNonZeroPos(k), i, v/norm);
+				}
+			}
+			else {
+				for (int j=0; j<_cols; j++) {
+					final double v = ri.getCoord(j);
+					if (v!=0.0) addPosting(next, j, i, v/norm);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * return the number of rows indexed.
+	 * @return int
+	 */
+	public int getNumRows() {
+		return _rows;
+	}
+
+
+	/**
+	 * return the number of columns of the matrix indexed, i.e. the dimension
+	 * of the query vectors.
+	 * @return int
+	 */
+	public int getNumCols() {
+		return _cols;
+	}
+
+
+	/**
+	 * return the (Euclidean) norm of the i-th row, as of the index build.
+	 * @param i int
+	 * @return double
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public double getRowNorm(int i) {
+		return _rowNorms[i];
+	}
+
+
+	/**
+	 * return the number of rows having a non-zero in column j.
+	 * @param j int
+	 * @return int
+	 * @throws IndexOutOfBoundsException if j is out of range
+	 */
+	public int getPostingListLength(int j) {
+		if (j<0 || j>=_cols)
+			throw new IndexOutOfBoundsException("column "+j+" out of bounds");
+		return _colPtr[j+1]-_colPtr[j];
+	}
+
+
+	/**
+	 * return the (at most) k rows most similar to the query, with pruning, in
+	 * the common fork/join pool.
+	 * @param q VectorIntf the query, of dimension <CODE>getNumCols()</CODE>
+	 * @param k int
+	 * @return Hit[] in order of decreasing similarity
+	 * @throws IllegalArgumentException if q is null or of the wrong dimension,
+	 * or k &le; 0
+	 */
+	public Hit[] topK(VectorIntf q, int k) {
+		return topK(q, k, true, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * return the (at most) k rows most similar to the query. Only rows sharing
+	 * a non-zero column with the query are returned, so there may be fewer
+	 * than k hits; a query at the origin has none.
+	 * @param q VectorIntf the query, of dimension <CODE>getNumCols()</CODE>
+	 * @param k int
+	 * @param prune boolean if true, rows that cannot make it into the top k
+	 * are skipped with the WAND algorithm
+	 * @param pool ForkJoinPool
+	 * @return Hit[] in order of decreasing similarity
+	 * @throws IllegalArgumentException if q or pool is null, q is of the wrong
+	 * dimension, or k &le; 0
+	 */
+	public Hit[] topK(VectorIntf q, int k, boolean prune, ForkJoinPool pool) {
+		if (q==null || pool==null || q.getNumCoords()!=_cols || k<=0)
+			throw new IllegalArgumentException("null args, dimensions mismatch "+
+				                                 "or k<=0");
+		// the query terms whose posting lists are not empty
+		int[] terms = new int[16];
+		double[] qw = new double[16];
+		int nt = 0;
+		double qnorm2 = 0.0;
+		long postings = 0;
+		final boolean sparse = SparseKernels.isZeroDefaultSparse(q);
+		final int nz = sparse ? ((SparseVectorIntf) q).getNumNonZeros() : _cols;
+		for (int t=0; t<nz; t++) {
+			final int j = sparse ? ((SparseVectorIntf) q).getIthNonZeroPos(t) : t;
+			final double v = sparse ? ((SparseVectorIntf) q).getIthNonZeroVal(t) :
+				                        q.getCoord(t);
+			if (v==0.0) continue;
+			qnorm2 += v*v;
+			if (_colPtr[j+1]==_colPtr[j]) continue;
+			if (nt==terms.length) {
+				terms = Arrays.copyOf(terms, 2*nt);
+				qw = Arrays.copyOf(qw, 2*nt);
+			}
+			terms[nt] = j;
+			qw[nt++] = v;
+			postings += _colPtr[j+1]-_colPtr[j];
+		}
+		if (nt==0) return new Hit[0];
+		final double qnorm = Math.sqrt(qnorm2);
+		for (int t=0; t<nt; t++) qw[t] /= qnorm;
+		final int[] qterms = Arrays.copyOf(terms, nt);
+		final double[] qweights = Arrays.copyOf(qw, nt);
+		final long tasks_by_work = postings/_MIN_POSTINGS_PER_TASK;
+		final int n = (int) Math.max(1, Math.min(Math.min(pool.getParallelism(),
+			                                                tasks_by_work), _rows));
+		final int[] bounds = MatrixOps.split(null, _rows, n);
+		final TopK[] heaps = new TopK[n];
+		RecursiveAction[] tasks = new RecursiveAction[n];
+		for (int b=0; b<n; b++) {
+			final int part = b;
+			tasks[b] = new RecursiveAction() {
+				protected void compute() {
+					heaps[part] = search(qterms, qweights, k, prune, bounds[part],
+						                   bounds[part+1]);
+				}
+			};
+		}
+		if (n==1) tasks[0].invoke();
+		else pool.invoke(new RecursiveAction() {
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		final TopK all = heaps[0];
+		for (int b=1; b<n; b++) {
+			final TopK h = heaps[b];
+			for (int e=0; e<h._size; e++) all.offer(h._rows[e], h._scores[e]);
+		}
+		return all.toSortedHits();
+	}
+
+
+	/**
+	 * appends the entry (i,w) to the posting list of column j.
+	 * @param next int[] the next free position of each posting list
+	 * @param j int
+	 * @param i int
+	 * @param w double
+	 */
+	private void addPosting(int[] next, int j, int i, double w) {
+		final int p = next[j]++;
+		_rowInds[p] = i;
+		_weights[p] = w;
+		final double a = Math.abs(w);
+		if (a>_maxAbs[j]) _maxAbs[j] = a;
+	}
+
+
+	/**
+	 * searches the rows [lo,hi) document-at-a-time, with WAND pruning if
+	 * prune is true.
+	 * @param terms int[] the query columns, with non-empty posting lists
+	 * @param qw double[] the normalized query values of the columns
+	 * @param k int
+	 * @param prune boolean
+	 * @param lo int
+	 * @param hi int
+	 * @return TopK the best rows of the range
+	 */
+	private TopK search(int[] terms, double[] qw, int k, boolean prune, int lo,
+		                  int hi) {
+		final int nt = terms.length;
+		final int[] pos = new int[nt];  // cursor into the posting list of term t
+		final int[] end = new int[nt];
+		final double[] ub = new double[nt];  // upper bound of term t's contribution
+		final int[] order = new int[nt];  // live terms, by cursor row
+		int live = 0;
+		for (int t=0; t<nt; t++) {
+			final int j = terms[t];
+			pos[t] = lowerBound(_colPtr[j], _colPtr[j+1], lo);
+			end[t] = lowerBound(pos[t], _colPtr[j+1], hi);
+			ub[t] = Math.abs(qw[t])*_maxAbs[j];
+			if (pos[t]<end[t]) order[live++] = t;
+		}
+		final TopK heap = new TopK(k);
+		while (live>0) {
+			// insertion sort by cursor row, then term, so that a row's score is
+			// summed in the same order with or without pruning; only the terms
+			// advanced are out of order
+			for (int a=1; a<live; a++) {
+				final int t = order[a];
+				final int r = _rowInds[pos[t]];
+				int b = a-1;
+				while (b>=0 && (_rowInds[pos[order[b]]]>r ||
+					              (_rowInds[pos[order[b]]]==r && order[b]>t))) {
+					order[b+1] = order[b];
+					--b;
+				}
+				order[b+1] = t;
+			}
+			// find the pivot: the first term where the bounds exceed the threshold
+			final double theta = prune && heap.isFull() ? heap.minScore() :
+				                   Double.NEGATIVE_INFINITY;
+			double bound = 0.0;
+			int p = -1;
+			for (int a=0; a<live; a++) {
+				bound += ub[order[a]];
+				if (bound>=theta) {  // a row tying the k-th best may still win
+					p = a;
+					break;
+				}
+			}
+			if (p<0) break;  // no row left can make it into the top k
+			final int pivot = _rowInds[pos[order[p]]];
+			if (_rowInds[pos[order[0]]]==pivot) {
+				// all terms up to p point at the pivot row: score it in full
+				double score = 0.0;
+				for (int a=0; a<live && _rowInds[pos[order[a]]]==pivot; a++) {
+					final int t = order[a];
+					score += qw[t]*_weights[pos[t]++];
+				}
+				heap.offer(pivot, score);
+			}
+			else {
+				// rows before the pivot cannot make it: skip them
+				for (int a=0; a<p; a++) {
+					final int t = order[a];
+					pos[t] = lowerBound(pos[t], end[t], pivot);
+				}
+			}
+			int w = 0;
+			for (int a=0; a<live; a++) {
+				if (pos[order[a]]<end[order[a]]) order[w++] = order[a];
+			}
+			live = w;
+		}
+		return heap;
+	}
+
+
+	/**
+	 * return the first position in [from,to) of _rowInds holding a row
+	 * &ge; row, or to if there is none.
+	 * @param from int
+	 * @param to int
+	 * @param row int
+	 * @return int
+	 */
+	private int lowerBound(int from, int to, int row) {
+		while (from<to) {
+			final int mid = (from+to) >>> 1;
+			if (_rowInds[mid]<row) from = mid+1;
+			else to = mid;
+		}
+		return from;
+	}
+
+
+	/**
+	 * a row of the matrix and its cosine similarity with the query.
+	 */
+	public static final class Hit {
+		private final int _row;
+		private final double _score;
+
+
+		/**
+		 * sole constructor.
+		 * @param row int
+		 * @param score double
+		 */
+		Hit(int row, double score) {
+			_row = row;
+			_score = score;
+		}
+
+
+		/**
+		 * return the row index.
+		 * @return int
+		 */
+		public int getRow() {
+			return _row;
+		}
+
+
+		/**
+		 * return the cosine similarity of the row with the query.
+		 * @return double
+		 */
+		public double getScore() {
+			return _score;
+		}
+
+
+		/**
+		 * return a String representation of this hit.
+		 * @return String
+		 */
+		public String toString() {
+			return "("+_row+","+_score+")";
+		}
+	}
+
+
+	/**
+	 * bounded min-heap keeping the best (at most) k (row,score) entries
+	 * offered; the root is the worst entry kept.
+	 */
+	private static final class TopK {
+		private final int[] _rows;
+		private final double[] _scores;
+		private int _size;
+
+
+		TopK(int k) {
+			_rows = new int[k];
+			_scores = new double[k];
+		}
+
+
+		boolean isFull() {
+			return _size==_rows.length;
+		}
+
+
+		double minScore() {
+			return _scores[0];
+		}
+
+
+		/**
+		 * keeps the entry if it is better than the worst entry kept, or the
+		 * heap is not full.
+		 * @param row int
+		 * @param score double
+		 */
+		void offer(int row, double score) {
+			if (_size<_rows.length) {
+				int c = _size++;
+				while (c>0) {  // sift up
+					final int p = (c-1) >>> 1;
+					if (!worse(row, score, _rows[p], _scores[p])) break;
+					_rows[c] = _rows[p];
+					_scores[c] = _scores[p];
+					c = p;
+				}
+				_rows[c] = row;
+				_scores[c] = score;
+				return;
+			}
+			if (!worse(_rows[0], _scores[0], row, score)) return;
+			int c = 0;
+			while (true) {  // sift down
+				int s = 2*c+1;
+				if (s>=_size) break;
+				if (s+1<_size && worse(_rows[s+1], _scores[s+1], _rows[s], _scores[s]))
+					++s;
+				if (!worse(_rows[s], _scores[s], row, score)) break;
+				_rows[c] = _rows[s];
+				_scores[c] = _scores[s];
+				c = s;
+			}
+			_rows[c] = row;
+			_scores[c] = score;
+		}
+
+
+		/**
+		 * return the entries kept, best first.
+		 * @return Hit[]
+		 */
+		Hit[] toSortedHits() {
+			Hit[] hits = new Hit[_size];
+			for (int e=0; e<_size; e++) hits[e] = new Hit(_rows[e], _scores[e]);
+			Arrays.sort(hits, (a, b) -> worse(a._row, a._score, b._row, b._score) ?
+				                          1 : (a._row==b._row ? 0 : -1));
+			return hits;
+		}
+
+
+		/**
+		 * return true iff entry a ranks below entry b.
+		 */
+		private static boolean worse(int ra, double sa, int rb, double sb) {
+			return sa<sb || (sa==sb && ra>rb);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * package-private append-only log of cell writes (row, column, value) made to
+ * a disk-backed matrix, so that writes not yet compacted into the matrix'
+ * base file survive the process. Records are 16 bytes (int row, int column,
+ * double value, little-endian), buffered in memory until the buffer fills up
+ * or <CODE>flush()</CODE> is called; a partial record at the end of the file
+ * (from a crash in the middle of a write) is ignored on replay. The class is
+ * thread-safe.
+ * @author itc
+ */
+final class SparseDeltaLog implements Closeable {
+  private final static int _BUF_SIZE = 1<<16;  // multiple of 16
+
+  private final FileChannel _ch;
+  private final ByteBuffer _buf;
+
+
+  /**
+   * opens the given log file for appending, creating it if needed.
+   * @param filename String
+   * @throws IOException
+   */
+  SparseDeltaLog(String filename) throws IOException {
+    _ch = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                           StandardOpenOption.WRITE,
+                           StandardOpenOption.APPEND);
+    _buf = ByteBuffer.allocateDirect(_BUF_SIZE);
+    _buf.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+
+  /**
+   * appends the record of a write.
+   * @param row int
+   * @param col int
+   * @param val double
+   * @throws IOException
+   */
+  synchronized void append(int row, int col, double val) throws IOException {
+    if (!_buf.hasRemaining()) drain();
+    _buf.putInt(row).putInt(col).putDouble(val);
+  }
+
+
+  /**
+   * writes all buffered records to the file, and forces them to the device.
+   * @throws IOException
+   */
+  synchronized void flush() throws IOException {
+    drain();
+    _ch.force(false);
+  }
+
+
+  /**
+   * flushes and closes the log.
+   * @throws IOException
+   */
+  public synchronized void close() throws IOException {
+    try {
+      flush();
+    }
+    finally {
+      _ch.close();
+    }
+  }
+
+
+  /**
+   * reads all complete records of the given log file, in the order they were
+   * written, and passes them to the consumer. Does nothing if the file does
+   * not exist.
+   * @param filename String
+   * @param consumer RecordConsumer
+   * @throws IOException
+   */
+  static void replay(String filename, RecordConsumer consumer)
+    throws IOException {
+    Path p = Paths.get(filename);
+    if (!Files.exists(p)) return;
+    try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+      ByteBuffer buf = ByteBuffer.allocate(_BUF_SIZE);
+      buf.order(ByteOrder.LITTLE_ENDIAN);
+      while (ch.read(buf)>=0) {
+        buf.flip();
+        while (buf.remaining()>=16) {
+          consumer.accept(buf.getInt(), buf.getInt(), buf.getDouble());
+        }
+        buf.compact();
+      }
+    }
+  }
+
+
+  /**
+   * writes the buffered records to the file.
+   * @throws IOException
+   */
+  private void drain() throws IOException {
+    _buf.flip();
+    while (_buf.hasRemaining()) _ch.write(_buf);
+    _buf.clear();
+  }
+
+
+  /**
+   * callback interface for <CODE>replay()</CODE>; an exception thrown by the
+   * consumer aborts the replay.
+   */
+  interface RecordConsumer {
+    void accept(int row, int col, double val) throws IOException;
+  }
+}
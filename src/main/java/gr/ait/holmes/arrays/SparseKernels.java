@@ -0,0 +1,781 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+
+/**
+ * package-private utility class holding the tight loops used by the sparse
+ * vector and matrix classes of this package. All kernels work directly on the
+ * index and value arrays of sparse vectors (indices strictly ascending) and
+ * cost time linear in the number of non-zeros involved: sparse-sparse
+ * operations are linear merges of the two index arrays (or, when one vector
+ * has far fewer non-zeros than the other, binary searches of the smaller one's
+ * indices into the larger one), and sparse-dense operations gather from or
+ * scatter into the dense array directly.
+ * Slices of arrays are given as [from,to) position ranges so that rows of CSR
+ * matrices can be passed in without copies.
+ * @author itc
+ */
+final class SparseKernels {
+	private final static int _GALLOP_RATIO = 16;
+
+
+	/**
+	 * no instances allowed.
+	 */
+	private SparseKernels() {
+		// no-op
+	}
+
+
+	/**
+	 * read access to the values of a sparse vector, whatever the primitive
+	 * type of the array storing them, so that each kernel below is written
+	 * once for all the value types of the vector classes of this package.
+	 * There is a final subclass per array type.
+	 */
+	static abstract class Values {
+		/**
+		 * return the k-th value, as a double.
+		 * @param k int
+		 * @return double
+		 */
+		abstract double get(int k);
+	}
+
+
+	private static final class DblValues extends Values {
+		private final double[] _v;
+		DblValues(double[] v) { _v = v; }
+		double get(int k) { return _v[k]; }
+	}
+
+
+	private static final class FltValues extends Values {
+		private final float[] _v;
+		FltValues(float[] v) { _v = v; }
+		double get(int k) { return _v[k]; }
+	}
+
+
+	private static final class IntValues extends Values {
+		private final int[] _v;
+		IntValues(int[] v) { _v = v; }
+		double get(int k) { return _v[k]; }
+	}
+
+
+	private static final class ShortValues extends Values {
+		private final short[] _v;
+		ShortValues(short[] v) { _v = v; }
+		double get(int k) { return _v[k]; }
+	}
+
+
+	private static final class ByteValues extends Values {
+		private final byte[] _v;
+		ByteValues(byte[] v) { _v = v; }
+		double get(int k) { return _v[k]; }
+	}
+
+
+	/**
+	 * return sum(vals[k]*x[inds[k]]) for k in [from,to), accumulated in
+	 * double. Like the reductions of <CODE>DenseKernels</CODE>, the loop is
+	 * unrolled into four independent accumulators, so that the (cache-missing)
+	 * loads of x for consecutive non-zeros are not serialized behind a chain of
+	 * dependent additions.
+	 * @param inds int[]
+	 * @param vals Values
+	 * @param from int
+	 * @param to int
+	 * @param x double[]
+	 * @return double
+	 */
+	static double gather(int[] inds, Values vals, int from, int to,
+		                   double[] x) {
+		double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+		int k = from;
+		for (final int to4 = to-3; k<to4; k+=4) {
+			s0 += vals.get(k)*x[inds[k]];
+			s1 += vals.get(k+1)*x[inds[k+1]];
+			s2 += vals.get(k+2)*x[inds[k+2]];
+			s3 += vals.get(k+3)*x[inds[k+3]];
+		}
+		for (; k<to; k++) s0 += vals.get(k)*x[inds[k]];
+		return (s0+s1)+(s2+s3);
+	}
+
+
+	/**
+	 * <CODE>gather()</CODE> for double values.
+	 * @param inds int[]
+	 * @param vals double[]
+	 * @param from int
+	 * @param to int
+	 * @param x double[]
+	 * @return double
+	 */
+	static double gather(int[] inds, double[] vals, int from, int to,
+		                   double[] x) {
+		return gather(inds, new DblValues(vals), from, to, x);
+	}
+
+
+	/**
+	 * <CODE>gather()</CODE> for int values.
+	 * @param inds int[]
+	 * @param vals int[]
+	 * @param from int
+	 * @param to int
+	 * @param x double[]
+	 * @return double
+	 */
+	static double gather(int[] inds, int[] vals, int from, int to, double[] x) {
+		return gather(inds, new IntValues(vals), from, to, x);
+	}
+
+
+	/**
+	 * <CODE>gather()</CODE> for float values.
+	 * @param inds int[]
+	 * @param vals float[]
+	 * @param from int
+	 * @param to int
+	 * @param x double[]
+	 * @return double
+	 */
+	static double gather(int[] inds, float[] vals, int from, int to,
+		                   double[] x) {
+		return gather(inds, new FltValues(vals), from, to, x);
+	}
+
+
+	/**
+	 * <CODE>gather()</CODE> for short values.
+	 * @param inds int[]
+	 * @param vals short[]
+	 * @param from int
+	 * @param to int
+	 * @param x double[]
+	 * @return double
+	 */
+	static double gather(int[] inds, short[] vals, int from, int to,
+		                   double[] x) {
+		return gather(inds, new ShortValues(vals), from, to, x);
+	}
+
+
+	/**
+	 * <CODE>gather()</CODE> for byte values.
+	 * @param inds int[]
+	 * @param vals byte[]
+	 * @param from int
+	 * @param to int
+	 * @param x double[]
+	 * @return double
+	 */
+	static double gather(int[] inds, byte[] vals, int from, int to,
+		                   double[] x) {
+		return gather(inds, new ByteValues(vals), from, to, x);
+	}
+
+
+	/**
+	 * performs acc[inds[k]] += a*vals[k] for k in [from,to).
+	 * @param a double
+	 * @param inds int[]
+	 * @param vals double[]
+	 * @param from int
+	 * @param to int
+	 * @param acc double[]
+	 */
+	static void scatter(double a, int[] inds, double[] vals, int from, int to,
+		                  double[] acc) {
+		for (int k=from; k<to; k++) acc[inds[k]] += a*vals[k];
+	}
+
+
+	/**
+	 * performs acc[inds[k]] += a*vals[k] for k in [from,to).
+	 * @param a double
+	 * @param inds int[]
+	 * @param vals int[]
+	 * @param from int
+	 * @param to int
+	 * @param acc double[]
+	 */
+	static void scatter(double a, int[] inds, int[] vals, int from, int to,
+		                  double[] acc) {
+		for (int k=from; k<to; k++) acc[inds[k]] += a*vals[k];
+	}
+
+
+	/**
+	 * inner product of two sparse vectors given as array slices, accumulated
+	 * in double. When one vector has far fewer non-zeros than the other, each
+	 * of its indices is binary searched in the rest of the other's (a
+	 * galloping intersection), otherwise the two index arrays are merged
+	 * linearly.
+	 * @param ia int[] indices of the first vector
+	 * @param va Values values of the first vector
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[] indices of the second vector
+	 * @param vb Values values of the second vector
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double dot(int[] ia, Values va, int fa, int ta,
+		                int[] ib, Values vb, int fb, int tb) {
+		final int la = ta-fa;
+		final int lb = tb-fb;
+		if (la==0 || lb==0) return 0.0;
+		if ((long) la*_GALLOP_RATIO < lb)
+			return gallop(ia, va, fa, ta, ib, vb, fb, tb);
+		if ((long) lb*_GALLOP_RATIO < la)
+			return gallop(ib, vb, fb, tb, ia, va, fa, ta);
+		return merge(ia, va, fa, ta, ib, vb, fb, tb);
+	}
+
+
+	/**
+	 * <CODE>dot()</CODE> by binary searching each index of the first vector in
+	 * the indices of the second one that follow the previous match.
+	 * @param ia int[] indices of the (much) shorter vector
+	 * @param va Values
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[] indices of the longer vector
+	 * @param vb Values
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double gallop(int[] ia, Values va, int fa, int ta,
+		                   int[] ib, Values vb, int fb, int tb) {
+		double sum = 0.0;
+		for (int k=fa; k<ta && fb<tb; k++) {
+			final int p = lowerBound(ib, fb, tb, ia[k]);
+			if (p<tb && ib[p]==ia[k]) sum += va.get(k)*vb.get(p);
+			fb = p;
+		}
+		return sum;
+	}
+
+
+	/**
+	 * <CODE>dot()</CODE> by a linear merge of the two index arrays.
+	 * @param ia int[]
+	 * @param va Values
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[]
+	 * @param vb Values
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double merge(int[] ia, Values va, int fa, int ta,
+		                  int[] ib, Values vb, int fb, int tb) {
+		int a = fa;
+		int b = fb;
+		double sum = 0.0;
+		while (a<ta && b<tb) {
+			final int xa = ia[a];
+			final int xb = ib[b];
+			if (xa==xb) sum += va.get(a++)*vb.get(b++);
+			else if (xa<xb) a++;
+			else b++;
+		}
+		return sum;
+	}
+
+
+	/**
+	 * <CODE>dot()</CODE> for double values.
+	 * @param ia int[] indices of the first vector
+	 * @param va double[] values of the first vector
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[] indices of the second vector
+	 * @param vb double[] values of the second vector
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double dot(int[] ia, double[] va, int fa, int ta,
+		                int[] ib, double[] vb, int fb, int tb) {
+		return dot(ia, new DblValues(va), fa, ta, ib, new DblValues(vb), fb, tb);
+	}
+
+
+	/**
+	 * <CODE>dot()</CODE> for double and int values.
+	 * @param ia int[] indices of the first vector
+	 * @param va double[] values of the first vector
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[] indices of the second vector
+	 * @param vb int[] values of the second vector
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double dot(int[] ia, double[] va, int fa, int ta,
+		                int[] ib, int[] vb, int fb, int tb) {
+		return dot(ia, new DblValues(va), fa, ta, ib, new IntValues(vb), fb, tb);
+	}
+
+
+	/**
+	 * <CODE>dot()</CODE> for int values.
+	 * @param ia int[] indices of the first vector
+	 * @param va int[] values of the first vector
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[] indices of the second vector
+	 * @param vb int[] values of the second vector
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double dot(int[] ia, int[] va, int fa, int ta,
+		                int[] ib, int[] vb, int fb, int tb) {
+		return dot(ia, new IntValues(va), fa, ta, ib, new IntValues(vb), fb, tb);
+	}
+
+
+	/**
+	 * <CODE>dot()</CODE> for float and double values.
+	 * @param ia int[] indices of the first vector
+	 * @param va float[] values of the first vector
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[] indices of the second vector
+	 * @param vb double[] values of the second vector
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double dot(int[] ia, float[] va, int fa, int ta,
+		                int[] ib, double[] vb, int fb, int tb) {
+		return dot(ia, new FltValues(va), fa, ta, ib, new DblValues(vb), fb, tb);
+	}
+
+
+	/**
+	 * <CODE>dot()</CODE> for float values.
+	 * @param ia int[] indices of the first vector
+	 * @param va float[] values of the first vector
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[] indices of the second vector
+	 * @param vb float[] values of the second vector
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double dot(int[] ia, float[] va, int fa, int ta,
+		                int[] ib, float[] vb, int fb, int tb) {
+		return dot(ia, new FltValues(va), fa, ta, ib, new FltValues(vb), fb, tb);
+	}
+
+
+	/**
+	 * <CODE>dot()</CODE> for short and double values.
+	 * @param ia int[] indices of the first vector
+	 * @param va short[] values of the first vector
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[] indices of the second vector
+	 * @param vb double[] values of the second vector
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double dot(int[] ia, short[] va, int fa, int ta,
+		                int[] ib, double[] vb, int fb, int tb) {
+		return dot(ia, new ShortValues(va), fa, ta, ib, new DblValues(vb), fb, tb);
+	}
+
+
+	/**
+	 * <CODE>dot()</CODE> for byte and double values.
+	 * @param ia int[] indices of the first vector
+	 * @param va byte[] values of the first vector
+	 * @param fa int
+	 * @param ta int
+	 * @param ib int[] indices of the second vector
+	 * @param vb double[] values of the second vector
+	 * @param fb int
+	 * @param tb int
+	 * @return double
+	 */
+	static double dot(int[] ia, byte[] va, int fa, int ta,
+		                int[] ib, double[] vb, int fb, int tb) {
+		return dot(ia, new ByteValues(va), fa, ta, ib, new DblValues(vb), fb, tb);
+	}
+
+
+	/**
+	 * inner product of two sparse vectors with zero default values of any
+	 * type, by a linear merge over their non-zeros.
+	 * @param a SparseVectorIntf
+	 * @param b SparseVectorIntf
+	 * @return double
+	 */
+	static double dot(SparseVectorIntf a, SparseVectorIntf b) {
+		final int la = a.getNumNonZeros();
+		final int lb = b.getNumNonZeros();
+		int i = 0;
+		int j = 0;
+		double sum = 0.0;
+		while (i<la && j<lb) {
+			final int pa = a.getIthNonZeroPos(i);
+			final int pb = b.getIthNonZeroPos(j);
+			if (pa==pb) sum += a.getIthNonZeroVal(i++)*b.getIthNonZeroVal(j++);
+			else if (pa<pb) i++;
+			else j++;
+		}
+		return sum;
+	}
+
+
+	/**
+	 * computes a + m*other for a sparse vector a with zero default value given
+	 * by its first la (index, value) pairs, as a new sparse vector with zero
+	 * default value, for the vector types that have fast kernels: dense
+	 * <CODE>DblArray1Vector</CODE> objects, and sparse vectors with zero
+	 * default value (whose non-zeros are copied as doubles first, unless they
+	 * are already stored as such). Used by the vector classes that store their
+	 * values in narrower types, and compute in double.
+	 * @param ia int[]
+	 * @param va double[]
+	 * @param la int
+	 * @param m double
+	 * @param other VectorIntf of the same dimension as a
+	 * @return DblArray1SparseVector null if other is of any other type
+	 */
+	static DblArray1SparseVector addMul(int[] ia, double[] va, int la,
+		                                  double m, VectorIntf other) {
+		final int n = other.getNumCoords();
+		if (other instanceof DblArray1Vector) {
+			final double[] x = ((DblArray1Vector) other).get_x();
+			final int len = addMulDense(ia, va, la, 0.0, m, x, null, null);
+			int[] outI = new int[len];
+			double[] outV = new double[len];
+			addMulDense(ia, va, la, 0.0, m, x, outI, outV);
+			return wrap(outI, outV, len, n);
+		}
+		if (!isZeroDefaultSparse(other)) return null;
+		int[] ib;
+		double[] vb;
+		int fb = 0;
+		int tb;
+		if (other instanceof DblArray1SparseVector) {
+			DblArray1SparseVector o = (DblArray1SparseVector) other;
+			ib = o.getIndices(); vb = o.getValues(); tb = o.getILen();
+		}
+		else if (other instanceof DblArray1CSRRowView) {
+			DblArray1CSRRowView o = (DblArray1CSRRowView) other;
+			ib = o.getColInds(); vb = o.getVals(); fb = o.getFrom(); tb = o.getTo();
+		}
+		else {
+			SparseVectorIntf o = (SparseVectorIntf) other;
+			tb = o.getNumNonZeros();
+			ib = new int[tb];
+			vb = new double[tb];
+			for (int k=0; k<tb; k++) {
+				ib[k] = o.getIthNonZeroPos(k);
+				vb[k] = o.getIthNonZeroVal(k);
+			}
+		}
+		int[] outI = new int[la+tb-fb];
+		double[] outV = new double[la+tb-fb];
+		final int len = mergeAddMul(ia, va, la, 0.0, m, ib, vb, fb, tb,
+			                          outI, outV);
+		return wrap(outI, outV, len, n);
+	}
+
+
+	/**
+	 * computes the non-default components of the sparse vector r = a + m*b,
+	 * where a has default value def, and b has default value zero, by a linear
+	 * merge of the two index arrays. The result is written in the output
+	 * arrays (which must have room for la+(tb-fb) elements) with the
+	 * components equal to def removed.
+	 * @param ia int[] indices of a
+	 * @param va double[] values of a
+	 * @param la int number of non-defaults of a
+	 * @param def double default value of a (and of the result)
+	 * @param m double
+	 * @param ib int[] indices of b
+	 * @param vb double[] values of b
+	 * @param fb int
+	 * @param tb int
+	 * @param outI int[]
+	 * @param outV double[]
+	 * @return int the number of non-defaults of the result
+	 */
+	static int mergeAddMul(int[] ia, double[] va, int la, double def, double m,
+		                     int[] ib, double[] vb, int fb, int tb,
+		                     int[] outI, double[] outV) {
+		int a = 0;
+		int b = fb;
+		int len = 0;
+		while (a<la || b<tb) {
+			int idx;
+			double v;
+			if (b>=tb || (a<la && ia[a]<ib[b])) {
+				idx = ia[a];
+				v = va[a++];
+			}
+			else if (a>=la || ib[b]<ia[a]) {
+				idx = ib[b];
+				v = def + m*vb[b++];
+			}
+			else {
+				idx = ia[a];
+				v = va[a++] + m*vb[b++];
+			}
+			if (Double.compare(v, def)!=0) {
+				outI[len] = idx;
+				outV[len++] = v;
+			}
+		}
+		return len;
+	}
+
+
+	/**
+	 * same as the other <CODE>mergeAddMul()</CODE> method, but b has int values.
+	 * @param ia int[] indices of a
+	 * @param va double[] values of a
+	 * @param la int number of non-defaults of a
+	 * @param def double default value of a (and of the result)
+	 * @param m double
+	 * @param ib int[] indices of b
+	 * @param vb int[] values of b
+	 * @param fb int
+	 * @param tb int
+	 * @param outI int[]
+	 * @param outV double[]
+	 * @return int the number of non-defaults of the result
+	 */
+	static int mergeAddMul(int[] ia, double[] va, int la, double def, double m,
+		                     int[] ib, int[] vb, int fb, int tb,
+		                     int[] outI, double[] outV) {
+		int a = 0;
+		int b = fb;
+		int len = 0;
+		while (a<la || b<tb) {
+			int idx;
+			double v;
+			if (b>=tb || (a<la && ia[a]<ib[b])) {
+				idx = ia[a];
+				v = va[a++];
+			}
+			else if (a>=la || ib[b]<ia[a]) {
+				idx = ib[b];
+				v = def + m*vb[b++];
+			}
+			else {
+				idx = ia[a];
+				v = va[a++] + m*vb[b++];
+			}
+			if (Double.compare(v, def)!=0) {
+				outI[len] = idx;
+				outV[len++] = v;
+			}
+		}
+		return len;
+	}
+
+
+	/**
+	 * computes the non-default components of the sparse vector r = a + m*x,
+	 * where a has default value def, and x is dense, in a single pass over x
+	 * that walks the index array of a alongside (no binary searches). If outI
+	 * is null, the components are only counted, so that callers can size the
+	 * output arrays exactly by calling the method twice.
+	 * @param ia int[] indices of a
+	 * @param va double[] values of a
+	 * @param la int number of non-defaults of a
+	 * @param def double default value of a (and of the result)
+	 * @param m double
+	 * @param x double[]
+	 * @param outI int[] may be null
+	 * @param outV double[] may be null if outI is null
+	 * @return int the number of non-defaults of the result
+	 */
+	static int addMulDense(int[] ia, double[] va, int la, double def, double m,
+		                     double[] x, int[] outI, double[] outV) {
+		int a = 0;
+		int len = 0;
+		for (int j=0; j<x.length; j++) {
+			double v;
+			if (a<la && ia[a]==j) v = va[a++] + m*x[j];
+			else v = def + m*x[j];
+			if (Double.compare(v, def)!=0) {
+				if (outI!=null) {
+					outI[len] = j;
+					outV[len] = v;
+				}
+				++len;
+			}
+		}
+		return len;
+	}
+
+
+	/**
+	 * component-wise exact equality test of two sparse vectors of the same
+	 * dimension n, in time linear in their numbers of non-defaults. Components
+	 * not stored in either vector are equal iff the two default values are.
+	 * @param a SparseVectorIntf
+	 * @param b SparseVectorIntf
+	 * @return boolean
+	 */
+	static boolean equals(SparseVectorIntf a, SparseVectorIntf b) {
+		final int n = a.getNumCoords();
+		final double da = a.getDefaultValue();
+		final double db = b.getDefaultValue();
+		final int la = a.getNumNonZeros();
+		final int lb = b.getNumNonZeros();
+		int i = 0;
+		int j = 0;
+		int union = 0;
+		while (i<la || j<lb) {
+			final int pa = i<la ? a.getIthNonZeroPos(i) : Integer.MAX_VALUE;
+			final int pb = j<lb ? b.getIthNonZeroPos(j) : Integer.MAX_VALUE;
+			double x;
+			double y;
+			if (pa<pb) {
+				x = a.getIthNonZeroVal(i++);
+				y = db;
+			}
+			else if (pb<pa) {
+				x = da;
+				y = b.getIthNonZeroVal(j++);
+			}
+			else {
+				x = a.getIthNonZeroVal(i++);
+				y = b.getIthNonZeroVal(j++);
+			}
+			if (Double.compare(x, y)!=0) return false;
+			++union;
+		}
+		return union==n || Double.compare(da, db)==0;
+	}
+
+
+	/**
+	 * component-wise exact equality test of a sparse vector with a dense array
+	 * of the same dimension, without any binary searches.
+	 * @param a SparseVectorIntf
+	 * @param x double[]
+	 * @return boolean
+	 */
+	static boolean equals(SparseVectorIntf a, double[] x) {
+		final double da = a.getDefaultValue();
+		final int la = a.getNumNonZeros();
+		int next = la>0 ? a.getIthNonZeroPos(0) : x.length;
+		int k = 0;
+		for (int j=0; j<x.length; j++) {
+			double v;
+			if (j==next) {
+				v = a.getIthNonZeroVal(k++);
+				next = k<la ? a.getIthNonZeroPos(k) : x.length;
+			}
+			else v = da;
+			if (Double.compare(v, x[j])!=0) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * return the sum of the squares of the coordinates of v: for sparse vectors
+	 * a pass over the non-zeros (plus the default value's share), for
+	 * <CODE>DblArray1Vector</CODE> objects over the dense array.
+	 * @param v VectorIntf
+	 * @return double
+	 */
+	static double sumSquares(VectorIntf v) {
+		if (v instanceof DblArray1Vector)
+			return DenseKernels.sumSquares(((DblArray1Vector) v).get_x());
+		final int n = v.getNumCoords();
+		double sum = 0.0;
+		if (v instanceof SparseVectorIntf) {
+			final SparseVectorIntf s = (SparseVectorIntf) v;
+			final int nnz = s.getNumNonZeros();
+			for (int k=0; k<nnz; k++) {
+				final double vk = s.getIthNonZeroVal(k);
+				sum += vk*vk;
+			}
+			final double def = s.getDefaultValue();
+			return sum + (n-nnz)*def*def;
+		}
+		for (int i=0; i<n; i++) {
+			final double vi = v.getCoord(i);
+			sum += vi*vi;
+		}
+		return sum;
+	}
+
+
+	/**
+	 * return true iff the argument is a sparse vector whose default value is
+	 * zero.
+	 * @param v VectorIntf
+	 * @return boolean
+	 */
+	static boolean isZeroDefaultSparse(VectorIntf v) {
+		return v instanceof SparseVectorIntf &&
+			     Double.compare(((SparseVectorIntf) v).getDefaultValue(), 0.0)==0;
+	}
+
+
+	/**
+	 * return a sparse vector with zero default value using (not copying) the
+	 * first len positions of the given arrays.
+	 * @param inds int[]
+	 * @param vals double[]
+	 * @param len int
+	 * @param n int
+	 * @return DblArray1SparseVector
+	 */
+	private static DblArray1SparseVector wrap(int[] inds, double[] vals,
+		                                        int len, int n) {
+		DblArray1SparseVector v = new DblArray1SparseVector(n);
+		v.setIndices(inds);
+		v.setValues(vals);
+		v.setILen(len);
+		return v;
+	}
+
+
+	/**
+	 * return the smallest position p in [from,to) with keys[p] &ge; key, or to
+	 * if there is none.
+	 * @param keys int[]
+	 * @param from int
+	 * @param to int
+	 * @param key int
+	 * @return int
+	 */
+	private static int lowerBound(int[] keys, int from, int to, int key) {
+		int lo = from;
+		int hi = to;
+		while (lo<hi) {
+			final int mid = (lo+hi) >>> 1;
+			if (keys[mid]<key) lo = mid+1;
+			else hi = mid;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,448 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * locality-sensitive hashing (LSH) index over the rows of a
+ * <CODE>MatrixIntf</CODE>, for approximate nearest-neighbour search: the rows
+ * similar to a query are found among the candidate rows the index returns,
+ * in time sub-linear in the number of rows. Each row gets a signature of
+ * bands*rowsPerBand hash values, under one of two families:
+ * <ul>
+ * <li><CODE>_SIMHASH</CODE> (cosine similarity): each value is the sign of the
+ * inner product of the row with a pseudo-random +-1 vector, so that two
+ * vectors at angle t agree on it with probability p = 1-t/pi.
+ * <li><CODE>_MINHASH</CODE> (Jaccard similarity of the sets of non-zero
+ * columns, ignoring the values): each value is the min. over the non-zero
+ * columns of a pseudo-random hash of the column, so that two rows agree on it
+ * with probability p equal to their Jaccard similarity.
+ * </ul>
+ * The signature is cut in bands of rowsPerBand values, each hashed to a
+ * 32-bit band key, and a row is a candidate for a query iff their keys agree
+ * in at least one band, which happens with probability about
+ * 1-(1-p^rowsPerBand)^bands: more rows per band cut the false candidates (and
+ * raise throughput), more bands raise the recall. The random vectors and
+ * hash functions are never stored, but derived from the seed, column and
+ * position by a mixing function, so the index takes 8 bytes per band per
+ * (non-zero) row: for each band, a sorted array of (key, row) pairs, which a
+ * query searches by binary search.
+ * <p>Signatures are computed in parallel over blocks of rows in a fork/join
+ * pool (so <CODE>getIthRow()</CODE> of the matrix must be thread-safe, as it
+ * is for the matrix classes of this package), and the band tables are sorted
+ * in parallel. Rows at the origin are not indexed. The index is a snapshot of
+ * the matrix, and is immutable and safe for concurrent queries.</p>
+ * @author itc
+ */
+public final class SparseLSHIndex {
+	/**
+	 * signatures for cosine similarity (random hyperplanes).
+	 */
+	public final static int _SIMHASH = 0;
+	/**
+	 * signatures for Jaccard similarity of the non-zero columns.
+	 */
+	public final static int _MINHASH = 1;
+
+	private final static int _MIN_ROWS_PER_TASK = 1 << 10;
+
+	private final int _type;
+	private final int _bands;
+	private final int _rowsPerBand;
+	private final long _seed;
+	private final int _rows;
+	private final int _cols;
+	/**
+	 * _tables[b] holds (key&lt;&lt;32 | row) for the rows indexed, in ascending
+	 * order.
+	 */
+	private final long[][] _tables;
+
+
+	/**
+	 * builds the index of the rows of the given matrix in the common fork/join
+	 * pool.
+	 * @param m MatrixIntf
+	 * @param type int one of <CODE>_SIMHASH, _MINHASH</CODE>
+	 * @param bands int &ge; 1
+	 * @param rowsPerBand int in [1,32]
+	 * @param seed long the seed of the hash functions; queries must be made
+	 * against an index of the same seed
+	 * @throws IllegalArgumentException if m is null or any other argument is
+	 * out of range
+	 */
+	public SparseLSHIndex(MatrixIntf m, int type, int bands, int rowsPerBand,
+		                    long seed) {
+		this(m, type, bands, rowsPerBand, seed, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * builds the index of the rows of the given matrix in the given pool.
+	 * @param m MatrixIntf
+	 * @param type int one of <CODE>_SIMHASH, _MINHASH</CODE>
+	 * @param bands int &ge; 1
+	 * @param rowsPerBand int in [1,32]
+	 * @param seed long
+	 * @param pool ForkJoinPool
+	 * @throws IllegalArgumentException if m or pool is null or any other
+	 * argument is out of range
+	 */
+	public SparseLSHIndex(MatrixIntf m, int type, int bands, int rowsPerBand,
+		                    long seed, ForkJoinPool pool) {
+		if (m==null || pool==null || (type!=_SIMHASH && type!=_MINHASH) ||
+			  bands<1 || rowsPerBand<1 || rowsPerBand>32)
+			throw new IllegalArgumentException("null args, unknown type, bands<1 "+
+				                                 "or rowsPerBand not in [1,32]");
+		_type = type;
+		_bands = bands;
+		_rowsPerBand = rowsPerBand;
+		_seed = seed;
+		_rows = m.getNumRows();
+		_cols = m.getNumCols();
+		final long[][] tables = new long[bands][_rows];
+		final boolean[] empty = new boolean[_rows];
+		final int n = Math.max(1, Math.min(pool.getParallelism(),
+			                                 _rows/_MIN_ROWS_PER_TASK));
+		final int[] bounds = MatrixOps.split(null, _rows, n);
+		RecursiveAction[] tasks = new RecursiveAction[n];
+		for (int t=0; t<n; t++) {
+			final int from = bounds[t];
+			final int to = bounds[t+1];
+			tasks[t] = new RecursiveAction() {
+				protected void compute() {
+					final Signer signer = new Signer();
+					for (int i=from; i<to; i++) {
+						final int[] keys = signer.bandKeys(m.getIthRow(i));
+						if (keys==null) {
+							empty[i] = true;
+							continue;
+						}
+						for (int b=0; b<_bands; b++) tables[b][i] = pack(keys[b], i);
+					}
+				}
+			};
+		}
+		invoke(pool, tasks);
+		int nonempty = 0;
+		for (int i=0; i<_rows; i++) if (!empty[i]) ++nonempty;
+		final int len = nonempty;
+		_tables = new long[bands][];
+		RecursiveAction[] sorts = new RecursiveAction[bands];
+		for (int b=0; b<bands; b++) {
+			final int band = b;
+			sorts[b] = new RecursiveAction() {
+				protected void compute() {
+					long[] tb = tables[band];
+					if (len<_rows) {
+						int w = 0;
+						for (int i=0; i<_rows; i++) if (!empty[i]) tb[w++] = tb[i];
+						tb = Arrays.copyOf(tb, len);
+					}
+					Arrays.sort(tb);
+					_tables[band] = tb;
+					tables[band] = null;
+				}
+			};
+		}
+		invoke(pool, sorts);
+	}
+
+
+	/**
+	 * return the signature family of this index.
+	 * @return int one of <CODE>_SIMHASH, _MINHASH</CODE>
+	 */
+	public int getType() {
+		return _type;
+	}
+
+
+	/**
+	 * return the number of bands.
+	 * @return int
+	 */
+	public int getNumBands() {
+		return _bands;
+	}
+
+
+	/**
+	 * return the number of signature values per band.
+	 * @return int
+	 */
+	public int getRowsPerBand() {
+		return _rowsPerBand;
+	}
+
+
+	/**
+	 * return the candidate neighbours of the query: the rows whose band key
+	 * equals the query's in at least one band, in ascending order. Takes time
+	 * O(bands*log(rows)) plus the number of candidates.
+	 * @param q VectorIntf of dimension equal to the number of columns of the
+	 * matrix indexed
+	 * @return int[] the candidate rows, empty if q is at the origin
+	 * @throws IllegalArgumentException if q is null or of the wrong dimension
+	 */
+	public int[] getCandidates(VectorIntf q) {
+		if (q==null || q.getNumCoords()!=_cols)
+			throw new IllegalArgumentException("null query or dimensions mismatch");
+		final int[] keys = new Signer().bandKeys(q);
+		if (keys==null) return new int[0];
+		int[] cands = new int[16];
+		int nc = 0;
+		for (int b=0; b<_bands; b++) {
+			final long[] tb = _tables[b];
+			final long key = pack(keys[b], 0);
+			int p = Arrays.binarySearch(tb, key);
+			if (p<0) p = -p-1;
+			for (; p<tb.length && (tb[p] & 0xFFFFFFFF00000000L)==key; p++) {
+				if (nc==cands.length) cands = Arrays.copyOf(cands, 2*nc);
+				cands[nc++] = (int) tb[p];
+			}
+		}
+		Arrays.sort(cands, 0, nc);
+		int w = 0;
+		for (int c=0; c<nc; c++) {
+			if (w==0 || cands[c]!=cands[w-1]) cands[w++] = cands[c];
+		}
+		return Arrays.copyOf(cands, w);
+	}
+
+
+	/**
+	 * return the (at most) k candidates of the query most similar to it, by
+	 * the exact similarity of the index's family (cosine for
+	 * <CODE>_SIMHASH</CODE>, Jaccard for <CODE>_MINHASH</CODE>), computed
+	 * against the rows of the given matrix, which should be the one indexed.
+	 * Ties are broken in favor of the smaller row index.
+	 * @param q VectorIntf
+	 * @param k int
+	 * @param m MatrixIntf
+	 * @return SparseCosineIndex.Hit[] in order of decreasing similarity
+	 * @throws IllegalArgumentException if q or m is null, of the wrong
+	 * dimensions, or k &le; 0
+	 */
+	public SparseCosineIndex.Hit[] topK(VectorIntf q, int k, MatrixIntf m) {
+		if (m==null || m.getNumRows()!=_rows || m.getNumCols()!=_cols || k<=0)
+			throw new IllegalArgumentException("null matrix, dimensions mismatch "+
+				                                 "or k<=0");
+		final int[] cands = getCandidates(q);
+		SparseCosineIndex.Hit[] hits = new SparseCosineIndex.Hit[cands.length];
+		for (int c=0; c<cands.length; c++) {
+			final VectorIntf r = m.getIthRow(cands[c]);
+			hits[c] = new SparseCosineIndex.Hit(cands[c], _type==_SIMHASH ?
+				                                  cosine(q, r) : jaccard(q, r));
+		}
+		Arrays.sort(hits, (a, b) -> a.getScore()!=b.getScore() ?
+			                          Double.compare(b.getScore(), a.getScore()) :
+			                          Integer.compare(a.getRow(), b.getRow()));
+		return hits.length<=k ? hits : Arrays.copyOf(hits, k);
+	}
+
+
+	/**
+	 * return the cosine of the angle of the two vectors, 0 if either is at the
+	 * origin.
+	 * @param x VectorIntf
+	 * @param y VectorIntf
+	 * @return double
+	 */
+	private static double cosine(VectorIntf x, VectorIntf y) {
+		final NonZeros xn = new NonZeros(x);
+		final NonZeros yn = new NonZeros(y);
+		double xy = 0.0, xx = 0.0, yy = 0.0;
+		for (int a=0; a<xn._len; a++) xx += xn._vals[a]*xn._vals[a];
+		for (int b=0; b<yn._len; b++) yy += yn._vals[b]*yn._vals[b];
+		int a = 0, b = 0;
+		while (a<xn._len && b<yn._len) {
+			if (xn._inds[a]==yn._inds[b]) xy += xn._vals[a++]*yn._vals[b++];
+			else if (xn._inds[a]<yn._inds[b]) ++a;
+			else ++b;
+		}
+		return xx==0.0 || yy==0.0 ? 0.0 : xy/Math.sqrt(xx*yy);
+	}
+
+
+	/**
+	 * return the Jaccard similarity of the sets of non-zero columns of the two
+	 * vectors.
+	 * @param x VectorIntf
+	 * @param y VectorIntf
+	 * @return double
+	 */
+	private static double jaccard(VectorIntf x, VectorIntf y) {
+		final NonZeros xn = new NonZeros(x);
+		final NonZeros yn = new NonZeros(y);
+		int a = 0, b = 0, common = 0;
+		while (a<xn._len && b<yn._len) {
+			if (xn._inds[a]==yn._inds[b]) {
+				++common;
+				++a;
+				++b;
+			}
+			else if (xn._inds[a]<yn._inds[b]) ++a;
+			else ++b;
+		}
+		final int union = xn._len+yn._len-common;
+		return union==0 ? 0.0 : common/(double) union;
+	}
+
+
+	/**
+	 * return the entry of a band table for the given key and row.
+	 * @param key int
+	 * @param row int
+	 * @return long
+	 */
+	private static long pack(int key, int row) {
+		return ((long) key << 32) | (row & 0xFFFFFFFFL);
+	}
+
+
+	/**
+	 * the SplitMix64 finalizer: a bijective mix of the bits of z.
+	 * @param z long
+	 * @return long
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+	/**
+	 * runs the tasks in the pool, or in the current thread if there is only
+	 * one.
+	 * @param pool ForkJoinPool
+	 * @param tasks RecursiveAction[]
+	 */
+	private static void invoke(ForkJoinPool pool, RecursiveAction[] tasks) {
+		if (tasks.length==1) tasks[0].invoke();
+		else pool.invoke(new RecursiveAction() {
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+
+	/**
+	 * the ascending non-zero columns of a vector and their values.
+	 */
+	private static final class NonZeros {
+		private int[] _inds;
+		private double[] _vals;
+		private int _len;
+
+		NonZeros(VectorIntf v) {
+			if (SparseKernels.isZeroDefaultSparse(v)) {
+				final SparseVectorIntf s = (SparseVectorIntf) v;
+				final int nz = s.getNumNonZeros();
+				_inds = new int[nz];
+				_vals = new double[nz];
+				for (int k=0; k<nz; k++) {
+					final double val = s.getIthNonZeroVal(k);
+					if (val==0.0) continue;
+					_inds[_len] = s.getIthNonZeroPos(k);
+					_vals[_len++] = val;
+				}
+			}
+			else {
+				final double[] a = v.getDblArray1();
+				_inds = new int[16];
+				_vals = new double[16];
+				for (int j=0; j<a.length; j++) {
+					if (a[j]==0.0) continue;
+					if (_len==_inds.length) {
+						_inds = Arrays.copyOf(_inds, 2*_len);
+						_vals = Arrays.copyOf(_vals, 2*_len);
+					}
+					_inds[_len] = j;
+					_vals[_len++] = a[j];
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * computes band keys, with scratch space reused across vectors; one per
+	 * thread.
+	 */
+	private final class Signer {
+		private final double[] _proj = new double[_rowsPerBand];
+		private final long[] _mins = new long[_rowsPerBand];
+
+
+		/**
+		 * return the band keys of the vector, or null if it is at the origin.
+		 * @param v VectorIntf
+		 * @return int[]
+		 */
+		int[] bandKeys(VectorIntf v) {
+			final NonZeros nz = new NonZeros(v);
+			if (nz._len==0) return null;
+			final int[] keys = new int[_bands];
+			for (int b=0; b<_bands; b++) {
+				keys[b] = _type==_SIMHASH ? simHash(nz, b) : minHash(nz, b);
+			}
+			return keys;
+		}
+
+
+		/**
+		 * return the signs of the projections of v on the rowsPerBand random
+		 * +-1 vectors of band b, as bits. The random vectors' components at
+		 * column j are the bits of one hash of (seed, b, j).
+		 * @param v NonZeros
+		 * @param b int
+		 * @return int
+		 */
+		private int simHash(NonZeros v, int b) {
+			Arrays.fill(_proj, 0.0);
+			final long bseed = mix64(_seed ^ mix64(b+1));
+			for (int k=0; k<v._len; k++) {
+				final long bits = mix64(bseed+v._inds[k]);
+				final long x = Double.doubleToRawLongBits(v._vals[k]);
+				for (int r=0; r<_rowsPerBand; r++) {  // flip the sign if bit r is 0
+					_proj[r] += Double.longBitsToDouble(x ^ ((~bits >>> r) << 63));
+				}
+			}
+			int key = 0;
+			for (int r=0; r<_rowsPerBand; r++) if (_proj[r]>=0.0) key |= 1 << r;
+			return key;
+		}
+
+
+		/**
+		 * return the 32-bit hash of the rowsPerBand min-hashes of band b of the
+		 * non-zero columns of v.
+		 * @param v NonZeros
+		 * @param b int
+		 * @return int
+		 */
+		private int minHash(NonZeros v, int b) {
+			for (int r=0; r<_rowsPerBand; r++) {
+				final long hseed = mix64(_seed ^ mix64(((long) b << 32) | r));
+				long min = Long.MAX_VALUE;
+				for (int k=0; k<v._len; k++) {
+					final long h = mix64(hseed+v._inds[k]);
+					if (h<min) min = h;
+				}
+				_mins[r] = min;
+			}
+			long h = mix64(_seed+b);
+			for (int r=0; r<_rowsPerBand; r++) h = mix64(h ^ _mins[r]);
+			return (int) (h >>> 32);
+		}
+	}
+}
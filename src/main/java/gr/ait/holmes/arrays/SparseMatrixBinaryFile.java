@@ -0,0 +1,666 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * indexed binary file format for large sparse matrices, and reader of such
+ * files. The file is read-only once written, and consists of:
+ * <ul>
+ * <li>a 32-byte header: the magic number <CODE>_MAGIC</CODE>, the format
+ * version, the number of rows, the number of columns (all ints), the total
+ * number of non-zeros (long), the max. number of non-zeros in any row (int)
+ * and the type of the stored values (int; always zero in version 1 files).
+ * <li>the row index: #rows+1 longs, the i-th of which is the file offset of
+ * the payload of row i; the last one equals the file length.
+ * <li>the row payloads: for each non-empty row, its scale (double) if the
+ * values are quantized, then the (0-based, strictly ascending) column indices
+ * of its non-zeros as ints, followed by their values: doubles, floats, or
+ * 16-bit or 8-bit codes to be multiplied by the row's scale (see
+ * <CODE>QuantizedArray1SparseVector</CODE>).
+ * </ul>
+ * Files of doubles are written as version 1, the others as version 2. Storing
+ * floats or codes reduces the file size (and so the I/O needed to read rows)
+ * by about a third, a half or more; <CODE>getIthRow()</CODE> decodes the
+ * values to doubles whatever the stored type, while
+ * <CODE>getIthRowCompact()</CODE> returns rows in the stored precision.
+ * All numbers are stored in little-endian byte-order. The file is memory-
+ * mapped on open (in segments of at most 1GB, overlapping by the size of the
+ * longest row so that no row straddles two segments), and any row is then read
+ * in time proportional to its number of non-zeros, regardless of its position
+ * in the file. Files are created from the text format via
+ * <CODE>convert(textfile, binfile)</CODE>, or from the command-line via
+ * <CODE>java gr.ait.holmes.arrays.SparseMatrixBinaryFile textfile binfile
+ * </CODE>. Objects of this class are immutable (until closed) and
+ * thread-safe.
+ * @author itc
+ */
+public final class SparseMatrixBinaryFile implements SparseRowSourceIntf {
+  /**
+   * the first 4 bytes of any file in this format ("HSM1" in ASCII).
+   */
+  public final static int _MAGIC = 0x314D5348;
+  /**
+   * type of files storing values as doubles.
+   */
+  public final static int _DOUBLE_VALUES = 0;
+  /**
+   * type of files storing values as floats.
+   */
+  public final static int _FLOAT_VALUES = 1;
+  /**
+   * type of files storing values as 16-bit codes with a scale per row.
+   */
+  public final static int _INT16_VALUES = 2;
+  /**
+   * type of files storing values as 8-bit codes with a scale per row.
+   */
+  public final static int _INT8_VALUES = 3;
+  private final static int _VERSION = 2;
+  private final static int _HEADER_SIZE = 32;
+  private final static long _SEGMENT_SIZE = 1L<<30;
+  private final static int _BUF_SIZE = 1<<20;
+
+  private final String _datafile;
+  private final int _r;
+  private final int _c;
+  private final long _nnz;
+  private final int _maxRowLen;
+  private final int _valueType;
+  private volatile MappedByteBuffer[] _segments;  // null once closed
+
+
+  /**
+   * opens and memory-maps the binary file with the given name.
+   * @param filename String
+   * @throws IOException if the file cannot be read or is not a valid file of
+   * this format
+   */
+  public SparseMatrixBinaryFile(String filename) throws IOException {
+    _datafile = filename;
+    try (RandomAccessFile raf = new RandomAccessFile(filename, "r");
+         FileChannel ch = raf.getChannel()) {
+      final long size = ch.size();
+      if (size<_HEADER_SIZE+8) throw new IOException(filename+" is too short");
+      ByteBuffer hdr = ByteBuffer.allocate(_HEADER_SIZE);
+      hdr.order(ByteOrder.LITTLE_ENDIAN);
+      while (hdr.hasRemaining()) {
+        if (ch.read(hdr, hdr.position())<0) throw new IOException("short read");
+      }
+      hdr.flip();
+      if (hdr.getInt()!=_MAGIC)
+        throw new IOException(filename+" is not a binary sparse matrix file");
+      final int version = hdr.getInt();
+      if (version<1 || version>_VERSION)
+        throw new IOException(filename+": unsupported version "+version);
+      _r = hdr.getInt();
+      _c = hdr.getInt();
+      _nnz = hdr.getLong();
+      _maxRowLen = hdr.getInt();
+      _valueType = hdr.getInt();
+      if (_valueType<_DOUBLE_VALUES || _valueType>_INT8_VALUES ||
+          (version==1 && _valueType!=_DOUBLE_VALUES))
+        throw new IOException(filename+": unsupported value type "+_valueType);
+      if (_r<0 || _c<=0 || _nnz<0 || _maxRowLen<0 || _maxRowLen>_c ||
+          size < _HEADER_SIZE+8L*(_r+1)+entrySize(_valueType)*_nnz)
+        throw new IOException(filename+" has an invalid header");
+      final long overlap = Math.max(16L, rowHeaderSize(_valueType)+
+                                         entrySize(_valueType)*_maxRowLen);
+      if (_SEGMENT_SIZE+overlap > Integer.MAX_VALUE)
+        throw new IOException(filename+" has rows too long to be mapped");
+      final int num_segs = (int) ((size-1)/_SEGMENT_SIZE + 1);
+      MappedByteBuffer[] segments = new MappedByteBuffer[num_segs];
+      for (int k=0; k<num_segs; k++) {
+        final long start = k*_SEGMENT_SIZE;
+        final long len = Math.min(_SEGMENT_SIZE+overlap, size-start);
+        segments[k] = ch.map(FileChannel.MapMode.READ_ONLY, start, len);
+        segments[k].order(ByteOrder.LITTLE_ENDIAN);
+      }
+      _segments = segments;
+      if (getOffset(_r)!=size)
+        throw new IOException(filename+" is truncated or corrupt");
+    }
+  }
+
+
+  /**
+   * checks whether the file with the given name starts with the magic number
+   * of this format.
+   * @param filename String
+   * @return boolean
+   * @throws IOException if the file cannot be read
+   */
+  public static boolean isBinaryFile(String filename) throws IOException {
+    try (DataInputStream dis =
+           new DataInputStream(new FileInputStream(filename))) {
+      byte[] b = new byte[4];
+      int n = 0;
+      while (n<4) {
+        int k = dis.read(b, n, 4-n);
+        if (k<0) return false;
+        n += k;
+      }
+      return ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN).getInt()==_MAGIC;
+    }
+  }
+
+
+  /**
+   * get the name of the underlying file.
+   * @return String
+   */
+  public String getFileName() {
+    return _datafile;
+  }
+
+
+  /**
+   * get the number of rows.
+   * @return int
+   */
+  public int getNumRows() {
+    return _r;
+  }
+
+
+  /**
+   * get the number of columns.
+   * @return int
+   */
+  public int getNumCols() {
+    return _c;
+  }
+
+
+  /**
+   * get the total number of non-zeros of the matrix.
+   * @return long
+   */
+  public long getNumNonZeros() {
+    return _nnz;
+  }
+
+
+  /**
+   * get the type of the values stored in the file, one of
+   * <CODE>_DOUBLE_VALUES, _FLOAT_VALUES, _INT16_VALUES, _INT8_VALUES</CODE>.
+   * @return int
+   */
+  public int getValueType() {
+    return _valueType;
+  }
+
+
+  /**
+   * get the number of non-zeros of the i-th row, without reading the row.
+   * @param i int in [0,#rows-1]
+   * @return int
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public int getRowLength(int i) {
+    if (i<0 || i>=_r)
+      throw new IndexOutOfBoundsException("row "+i+" out of range");
+    final long bytes = getOffset(i+1)-getOffset(i);
+    if (bytes==0) return 0;
+    return (int) ((bytes-rowHeaderSize(_valueType))/entrySize(_valueType));
+  }
+
+
+  /**
+   * reads the i-th row of the matrix in time proportional to its number of
+   * non-zeros, with its values decoded to doubles.
+   * @param i int in [0,#rows-1]
+   * @return DblArray1SparseVector a new vector with zero default value
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public DblArray1SparseVector getIthRow(int i) {
+    final int len = getRowLength(i);
+    DblArray1SparseVector v = new DblArray1SparseVector(_c);
+    if (len>0) {
+      ByteBuffer b = getPayload(i);
+      final int pos = b.position();
+      double[] vals = new double[len];
+      if (_valueType==_DOUBLE_VALUES) {
+        b.position(pos+4*len);
+        b.asDoubleBuffer().get(vals);
+      }
+      else if (_valueType==_FLOAT_VALUES) {
+        final int vpos = pos+4*len;
+        for (int k=0; k<len; k++) vals[k] = b.getFloat(vpos+4*k);
+      }
+      else {
+        final double scale = b.getDouble(pos-8);
+        final int vpos = pos+4*len;
+        if (_valueType==_INT16_VALUES) {
+          for (int k=0; k<len; k++) vals[k] = b.getShort(vpos+2*k)*scale;
+        }
+        else {
+          for (int k=0; k<len; k++) vals[k] = b.get(vpos+k)*scale;
+        }
+      }
+      b.position(pos);
+      int[] inds = new int[len];
+      b.asIntBuffer().get(inds);
+      v.setIndices(inds);
+      v.setValues(vals);
+      v.setILen(len);
+    }
+    return v;
+  }
+
+
+  /**
+   * reads the i-th row of the matrix in time proportional to its number of
+   * non-zeros, in the precision of the values stored, i.e. as a
+   * <CODE>DblArray1SparseVector</CODE>, a <CODE>FltArray1SparseVector</CODE>
+   * or a <CODE>QuantizedArray1SparseVector</CODE> depending on
+   * <CODE>getValueType()</CODE>. Rows of files storing floats or codes thus
+   * take less memory than those returned by <CODE>getIthRow()</CODE>.
+   * @param i int in [0,#rows-1]
+   * @return SparseVectorIntf a new vector with zero default value
+   * @throws IndexOutOfBoundsException if i is out of range
+   */
+  public SparseVectorIntf getIthRowCompact(int i) {
+    if (_valueType==_DOUBLE_VALUES) return getIthRow(i);
+    final int len = getRowLength(i);
+    if (len==0) {
+      if (_valueType==_FLOAT_VALUES) return new FltArray1SparseVector(_c);
+      return new QuantizedArray1SparseVector(_c, _valueType==_INT8_VALUES ?
+                                                   8 : 16);
+    }
+    ByteBuffer b = getPayload(i);
+    final int pos = b.position();
+    int[] inds = new int[len];
+    b.asIntBuffer().get(inds);
+    b.position(pos+4*len);
+    if (_valueType==_FLOAT_VALUES) {
+      float[] vals = new float[len];
+      b.asFloatBuffer().get(vals);
+      return new FltArray1SparseVector(_c, inds, vals, len);
+    }
+    final double scale = b.getDouble(pos-8);
+    if (_valueType==_INT16_VALUES) {
+      short[] codes = new short[len];
+      b.asShortBuffer().get(codes);
+      return new QuantizedArray1SparseVector(_c, inds, null, codes, len, scale);
+    }
+    byte[] codes = new byte[len];
+    b.get(codes);
+    return new QuantizedArray1SparseVector(_c, inds, codes, null, len, scale);
+  }
+
+
+  /**
+   * reads the rows from,...,to-1.
+   * @param from int inclusive
+   * @param to int exclusive
+   * @param rows DblArray1SparseVector[]
+   */
+  public void readRows(int from, int to, DblArray1SparseVector[] rows) {
+    for (int i=from; i<to; i++) rows[i-from] = getIthRow(i);
+  }
+
+
+  /**
+   * drops the mapped segments of the file, so that the mappings are released
+   * as soon as no read in progress uses them any more (the file itself is
+   * closed on open already). Reading rows afterwards throws an
+   * <CODE>IllegalStateException</CODE>. Closing twice has no effect.
+   */
+  public void close() {
+    _segments = null;
+  }
+
+
+  /**
+   * converts a sparse matrix from the text format to the binary format
+   * storing values as doubles; see <CODE>convert(textfile,binfile,type)</CODE>.
+   * @param textfile String
+   * @param binfile String will be overwritten if it exists
+   * @throws IOException if the text file cannot be read or is malformed, or
+   * the binary file cannot be written
+   */
+  public static void convert(String textfile, String binfile)
+    throws IOException {
+    convert(textfile, binfile, _DOUBLE_VALUES);
+  }
+
+
+  /**
+   * converts a sparse matrix from the text format read by
+   * <CODE>BigDiskSupportedDblArray2SparseMatrix</CODE> (a "rows cols" header
+   * line followed by one line of space-separated 1-based "index,value" pairs
+   * per row) to the binary format of this class, in a single sequential pass
+   * over the text file (parsed by <CODE>SparseTextMatrixReader</CODE>) and with
+   * memory requirements independent of the matrix size. Within each row,
+   * duplicate indices keep the last value and zeros are dropped, exactly as
+   * when the text file is read directly (and values that round to zero in
+   * the stored type are dropped).
+   * @param textfile String
+   * @param binfile String will be overwritten if it exists
+   * @param valueType int the type of the values stored, one of
+   * <CODE>_DOUBLE_VALUES, _FLOAT_VALUES, _INT16_VALUES, _INT8_VALUES</CODE>
+   * @throws IOException if the text file cannot be read or is malformed, or
+   * the binary file cannot be written
+   * @throws IllegalArgumentException if valueType is not valid
+   */
+  public static void convert(String textfile, String binfile, int valueType)
+    throws IOException {
+    try (SparseTextMatrixReader rd = new SparseTextMatrixReader(textfile);
+         Writer w = new Writer(binfile, rd.getNumRows(), rd.getNumCols(),
+                               valueType)) {
+      final int r = rd.getNumRows();
+      DblArray1SparseVectorBuilder vb =
+        new DblArray1SparseVectorBuilder(rd.getNumCols());
+      for (int i=0; i<r; i++) {
+        if (!rd.readRow(vb))
+          throw new IOException(textfile+" has only "+i+" rows, not "+r);
+        w.writeRow(vb.build());
+      }
+    }
+  }
+
+
+  /**
+   * command-line converter of text files to the binary format. Usage:
+   * <CODE>java gr.ait.holmes.arrays.SparseMatrixBinaryFile textfile binfile
+   * [double|float|int16|int8]</CODE>, storing doubles by default.
+   * @param args String[]
+   */
+  public static void main(String[] args) {
+    final int type = args.length!=3 ? _DOUBLE_VALUES :
+      Arrays.asList("double", "float", "int16", "int8").indexOf(args[2]);
+    if (args.length<2 || args.length>3 || type<0) {
+      System.err.println("usage: java gr.ait.holmes.arrays."+
+                         "SparseMatrixBinaryFile <textfile> <binfile> "+
+                         "[double|float|int16|int8]");
+      System.exit(-1);
+    }
+    try {
+      long start = System.currentTimeMillis();
+      convert(args[0], args[1], type);
+      SparseMatrixBinaryFile f = new SparseMatrixBinaryFile(args[1]);
+      System.out.println("converted "+f.getNumRows()+"x"+f.getNumCols()+
+                         " matrix with "+f.getNumNonZeros()+" non-zeros in "+
+                         (System.currentTimeMillis()-start)+" msecs");
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+      System.exit(-1);
+    }
+  }
+
+
+  /**
+   * package-private sequential writer of files in the binary format, with
+   * memory requirements independent of the matrix size. Rows must be written
+   * in order, all of them, before the writer is closed. Rows are converted to
+   * the value type of the file as they are written.
+   */
+  static final class Writer implements java.io.Closeable {
+    private final RandomAccessFile _raf;
+    private final FileChannel _ch;
+    private final int _numRows;
+    private final int _numCols;
+    private final int _valueType;
+    private final ByteBuffer _idx;
+    private final ByteBuffer _buf;
+    private long _idxPos = _HEADER_SIZE;  // file position of _idx contents
+    private long _off;  // offset of next row payload
+    private long _nnz = 0;
+    private int _maxLen = 0;
+    private int _row = 0;  // next row to write
+
+
+    /**
+     * creates (or truncates) the given file, which will store doubles.
+     * @param binfile String
+     * @param r int number of rows
+     * @param c int number of columns
+     * @throws IOException
+     */
+    Writer(String binfile, int r, int c) throws IOException {
+      this(binfile, r, c, _DOUBLE_VALUES);
+    }
+
+
+    /**
+     * creates (or truncates) the given file.
+     * @param binfile String
+     * @param r int number of rows
+     * @param c int number of columns
+     * @param valueType int the type of the values stored
+     * @throws IOException
+     * @throws IllegalArgumentException if valueType is not valid
+     */
+    Writer(String binfile, int r, int c, int valueType) throws IOException {
+      if (valueType<_DOUBLE_VALUES || valueType>_INT8_VALUES)
+        throw new IllegalArgumentException("invalid value type "+valueType);
+      _valueType = valueType;
+      _raf = new RandomAccessFile(binfile, "rw");
+      _ch = _raf.getChannel();
+      _numRows = r;
+      _numCols = c;
+      _ch.truncate(0);
+      _idx = ByteBuffer.allocateDirect(8*8192);
+      _idx.order(ByteOrder.LITTLE_ENDIAN);
+      _buf = ByteBuffer.allocateDirect(_BUF_SIZE);
+      _buf.order(ByteOrder.LITTLE_ENDIAN);
+      _off = _HEADER_SIZE+8L*(r+1);
+      _ch.position(_off);
+    }
+
+
+    /**
+     * appends the next row, which must have zero default value.
+     * @param v DblArray1SparseVector
+     * @throws IOException
+     */
+    void writeRow(DblArray1SparseVector v) throws IOException {
+      if (_row==_numRows) throw new IOException("too many rows written");
+      if (!_idx.hasRemaining()) _idxPos += writeFully(_ch, _idx, _idxPos);
+      _idx.putLong(_off);
+      ++_row;
+      int len;
+      switch (_valueType) {
+        case _DOUBLE_VALUES: {
+          len = v.getILen();
+          putInts(v.getIndices(), len);
+          final double[] vals = v.getValues();
+          for (int k=0; k<len; k++) {
+            if (_buf.remaining()<8) flush(_ch, _buf);
+            _buf.putDouble(vals[k]);
+          }
+          break;
+        }
+        case _FLOAT_VALUES: {
+          FltArray1SparseVector f = new FltArray1SparseVector(v);
+          len = f.getILen();
+          putInts(f.getIndices(), len);
+          final float[] vals = f.getValues();
+          for (int k=0; k<len; k++) {
+            if (_buf.remaining()<4) flush(_ch, _buf);
+            _buf.putFloat(vals[k]);
+          }
+          break;
+        }
+        default: {
+          QuantizedArray1SparseVector q =
+            new QuantizedArray1SparseVector(v, _valueType==_INT8_VALUES ?
+                                                 8 : 16);
+          len = q.getILen();
+          if (len==0) break;
+          if (_buf.remaining()<8) flush(_ch, _buf);
+          _buf.putDouble(q.getScale());
+          putInts(q.getIndices(), len);
+          final byte[] c8 = q.getCodes8();
+          final short[] c16 = q.getCodes16();
+          for (int k=0; k<len; k++) {
+            if (_buf.remaining()<2) flush(_ch, _buf);
+            if (c8!=null) _buf.put(c8[k]);
+            else _buf.putShort(c16[k]);
+          }
+        }
+      }
+      if (len>0) _off += rowHeaderSize(_valueType)+entrySize(_valueType)*len;
+      _nnz += len;
+      if (len>_maxLen) _maxLen = len;
+    }
+
+
+    /**
+     * buffers the first len indices of the array.
+     * @param inds int[]
+     * @param len int
+     * @throws IOException
+     */
+    private void putInts(int[] inds, int len) throws IOException {
+      for (int k=0; k<len; k++) {
+        if (_buf.remaining()<4) flush(_ch, _buf);
+        _buf.putInt(inds[k]);
+      }
+    }
+
+
+    /**
+     * writes the index end and the header, and closes the file. If not all
+     * rows were written, the file is left without a valid header.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+      try {
+        if (_row!=_numRows) return;
+        if (!_idx.hasRemaining()) _idxPos += writeFully(_ch, _idx, _idxPos);
+        _idx.putLong(_off);
+        flush(_ch, _buf);
+        writeFully(_ch, _idx, _idxPos);
+        ByteBuffer hdr = ByteBuffer.allocate(_HEADER_SIZE);
+        hdr.order(ByteOrder.LITTLE_ENDIAN);
+        hdr.putInt(_MAGIC).putInt(_valueType==_DOUBLE_VALUES ? 1 : _VERSION);
+        hdr.putInt(_numRows).putInt(_numCols);
+        hdr.putLong(_nnz).putInt(_maxLen).putInt(_valueType);
+        writeFully(_ch, hdr, 0);
+        _ch.force(false);
+      }
+      finally {
+        _raf.close();
+      }
+    }
+  }
+
+
+  /**
+   * return a view of the mapped segment holding the payload of the i-th row,
+   * positioned at the row's indices (after its scale, if any). The segment
+   * is the one the row starts in, as the overlap of the segments covers the
+   * whole row from its start, scale included.
+   * @param i int
+   * @return ByteBuffer
+   */
+  private ByteBuffer getPayload(int i) {
+    final long off = getOffset(i);
+    final int k = (int) (off/_SEGMENT_SIZE);
+    final int pos = (int) (off-k*_SEGMENT_SIZE)+rowHeaderSize(_valueType);
+    ByteBuffer b = getSegment(k).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    b.position(pos);
+    return b;
+  }
+
+
+  /**
+   * return the number of bytes of a non-zero (index and value) stored with
+   * the given value type.
+   * @param valueType int
+   * @return int
+   */
+  private static int entrySize(int valueType) {
+    switch (valueType) {
+      case _DOUBLE_VALUES: return 12;
+      case _FLOAT_VALUES: return 8;
+      case _INT16_VALUES: return 6;
+      default: return 5;
+    }
+  }
+
+
+  /**
+   * return the number of bytes preceding the indices of a non-empty row
+   * stored with the given value type.
+   * @param valueType int
+   * @return int
+   */
+  private static int rowHeaderSize(int valueType) {
+    return valueType==_INT16_VALUES || valueType==_INT8_VALUES ? 8 : 0;
+  }
+
+
+  /**
+   * get the i-th entry of the row index.
+   * @param i int in [0,#rows]
+   * @return long
+   */
+  private long getOffset(int i) {
+    final long pos = _HEADER_SIZE+8L*i;
+    final int k = (int) (pos/_SEGMENT_SIZE);
+    return getSegment(k).getLong((int) (pos-k*_SEGMENT_SIZE));
+  }
+
+
+  /**
+   * get the k-th mapped segment of the file.
+   * @param k int
+   * @return MappedByteBuffer
+   * @throws IllegalStateException if the file has been closed
+   */
+  private MappedByteBuffer getSegment(int k) {
+    final MappedByteBuffer[] segments = _segments;
+    if (segments==null) throw new IllegalStateException(_datafile+" is closed");
+    return segments[k];
+  }
+
+
+  /**
+   * writes the contents of the buffer (flipped first) at the current position
+   * of the channel, and clears the buffer.
+   * @param ch FileChannel
+   * @param buf ByteBuffer
+   * @throws IOException
+   */
+  private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+    buf.flip();
+    while (buf.hasRemaining()) ch.write(buf);
+    buf.clear();
+  }
+
+
+  /**
+   * writes the contents of the buffer (flipped first) at the given position
+   * of the channel, without moving the channel's position, and clears the
+   * buffer.
+   * @param ch FileChannel
+   * @param buf ByteBuffer
+   * @param pos long
+   * @return int the number of bytes written
+   * @throws IOException
+   */
+  private static int writeFully(FileChannel ch, ByteBuffer buf, long pos)
+    throws IOException {
+    buf.flip();
+    final int n = buf.remaining();
+    while (buf.hasRemaining()) ch.write(buf, pos+buf.position());
+    buf.clear();
+    return n;
+  }
+}
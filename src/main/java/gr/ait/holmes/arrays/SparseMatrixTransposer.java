@@ -0,0 +1,384 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * out-of-core transposer of large sparse matrices: given a matrix in either
+ * the text format or the binary format of <CODE>SparseMatrixBinaryFile</CODE>,
+ * writes its transpose in the binary format. The rows of the transpose are the
+ * columns of the matrix, so the file written is the compressed-sparse-column
+ * (CSC) form of the matrix, from which any column is read in time
+ * proportional to its number of non-zeros.
+ * <p>The transposer is an external sort of the (column, row, value) triples of
+ * the matrix by column. The rows are read sequentially, and their triples are
+ * collected in memory until a budget of entries is reached; the collected run
+ * is then counting-sorted by column (stably, so rows stay in ascending order
+ * within each column) and spilled to a temporary file. Since the runs hold
+ * consecutive ranges of rows, merging them needs no priority queue: the j-th
+ * column of the transpose is the concatenation of the j-th columns of the runs
+ * in order, so the merge is a single sequential pass over all runs at once.
+ * When the whole matrix fits in one run, nothing is spilled. The transpose
+ * stores its values in the same type as the input (doubles for text input).
+ * </p>
+ * @author itc
+ */
+public final class SparseMatrixTransposer {
+  private final static int _ROWS_PER_READ = 1024;
+  private final static int _RECORD_SIZE = 16;  // int col, int row, double val
+  private final static int _RUN_BUF_SIZE = 1<<18;  // multiple of 16
+  private final static int _INIT_RUN_SIZE = 1<<16;
+
+
+  /**
+   * no instances.
+   */
+  private SparseMatrixTransposer() {
+    // no-op
+  }
+
+
+  /**
+   * writes the transpose of the matrix in the given file (text or binary) to
+   * the given binary file, with an in-memory budget of a fraction of the max.
+   * heap size.
+   * @param infile String
+   * @param outfile String will be overwritten if it exists
+   * @throws IOException if the input cannot be read or is malformed, or the
+   * output cannot be written
+   */
+  public static void transpose(String infile, String outfile)
+    throws IOException {
+    transpose(infile, outfile, getDefaultMaxEntries());
+  }
+
+
+  /**
+   * get the default in-memory budget of entries: a 128-th of the max. heap 
+   * size, i.e. a quarter of the heap while sorting.
+   * @return long
+   */
+  public static long getDefaultMaxEntries() {
+    return Math.max(1<<16, Runtime.getRuntime().maxMemory()/128);
+  }
+
+
+  /**
+   * writes the transpose of the matrix in the given file (text or binary) to
+   * the given binary file. Temporary run files are created next to the output
+   * file, and removed before returning.
+   * @param infile String
+   * @param outfile String will be overwritten if it exists
+   * @param maxEntries long the max. number of non-zeros held in memory at once
+   * (each costing 32 bytes while being sorted)
+   * @throws IOException if the input cannot be read or is malformed, or the
+   * output cannot be written
+   * @throws IllegalArgumentException if maxEntries&le;0
+   */
+  public static void transpose(String infile, String outfile, long maxEntries)
+    throws IOException {
+    if (SparseMatrixBinaryFile.isBinaryFile(infile)) {
+      try (SparseMatrixBinaryFile src = new SparseMatrixBinaryFile(infile)) {
+        transpose(src, outfile, maxEntries, src.getValueType());
+      }
+    }
+    else {
+      try (TextSparseRowSource src = new TextSparseRowSource(infile)) {
+        transpose(src, outfile, maxEntries,
+                  SparseMatrixBinaryFile._DOUBLE_VALUES);
+      }
+    }
+  }
+
+
+  /**
+   * writes the transpose of the matrix of the given data source to the given
+   * binary file.
+   * @param src SparseRowSourceIntf
+   * @param outfile String
+   * @param maxEntries long
+   * @param valueType int the type of the values stored in the output
+   * @throws IOException
+   * @throws IllegalArgumentException if maxEntries&le;0
+   */
+  static void transpose(SparseRowSourceIntf src, String outfile,
+                        long maxEntries, int valueType) throws IOException {
+    if (maxEntries<=0)
+      throw new IllegalArgumentException("maxEntries must be positive");
+    final int r = src.getNumRows();
+    final int c = src.getNumCols();
+    int max_run = (int) Math.min(maxEntries, Integer.MAX_VALUE-8);
+    if (src instanceof SparseMatrixBinaryFile) {  // no run beyond the nnz
+      final long nnz = ((SparseMatrixBinaryFile) src).getNumNonZeros();
+      max_run = (int) Math.max(1, Math.min(max_run, nnz));
+    }
+    final Run run = new Run(max_run, c);
+    final List<Path> runfiles = new ArrayList<>();
+    try {
+      DblArray1SparseVector[] rows = new DblArray1SparseVector[_ROWS_PER_READ];
+      for (int from=0; from<r; from+=_ROWS_PER_READ) {
+        final int to = (int) Math.min((long)from+_ROWS_PER_READ, r);
+        src.readRows(from, to, rows);
+        for (int i=from; i<to; i++) {
+          DblArray1SparseVector row = rows[i-from];
+          final int nnz = row.getNumNonZeros();
+          for (int k=0; k<nnz; k++) {
+            if (run.isFull()) runfiles.add(run.spill(outfile, runfiles.size()));
+            run.add(row.getIthNonZeroPos(k), i, row.getIthNonZeroVal(k));
+          }
+        }
+      }
+      try (SparseMatrixBinaryFile.Writer w =
+             new SparseMatrixBinaryFile.Writer(outfile, c, r, valueType)) {
+        DblArray1SparseVectorBuilder vb = new DblArray1SparseVectorBuilder(r);
+        if (runfiles.isEmpty()) {  // all in memory
+          run.sort();
+          for (int j=0; j<c; j++) {
+            run.addColumn(j, vb);
+            w.writeRow(vb.build());
+          }
+        }
+        else {
+          if (run.size()>0) runfiles.add(run.spill(outfile, runfiles.size()));
+          merge(runfiles, c, vb, w);
+        }
+      }
+    }
+    finally {
+      for (Path p : runfiles) Files.deleteIfExists(p);
+    }
+  }
+
+
+  /**
+   * command-line transposer. Usage:
+   * <CODE>java gr.ait.holmes.arrays.SparseMatrixTransposer infile outfile
+   * [maxEntries]</CODE>.
+   * @param args String[]
+   */
+  public static void main(String[] args) {
+    if (args.length<2 || args.length>3) {
+      System.err.println("usage: java gr.ait.holmes.arrays."+
+                         "SparseMatrixTransposer <infile> <outfile> "+
+                         "[maxEntries]");
+      System.exit(-1);
+    }
+    try {
+      long start = System.currentTimeMillis();
+      if (args.length==3) transpose(args[0], args[1], Long.parseLong(args[2]));
+      else transpose(args[0], args[1]);
+      SparseMatrixBinaryFile f = new SparseMatrixBinaryFile(args[1]);
+      System.out.println("wrote "+f.getNumRows()+"x"+f.getNumCols()+
+                         " transpose with "+f.getNumNonZeros()+
+                         " non-zeros in "+(System.currentTimeMillis()-start)+
+                         " msecs");
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+      System.exit(-1);
+    }
+  }
+
+
+  /**
+   * merges the given sorted run files into the transpose.
+   * @param runfiles List&lt;Path&gt; in row order
+   * @param c int the number of columns of the matrix
+   * @param vb DblArray1SparseVectorBuilder
+   * @param w SparseMatrixBinaryFile.Writer
+   * @throws IOException
+   */
+  private static void merge(List<Path> runfiles, int c,
+                            DblArray1SparseVectorBuilder vb,
+                            SparseMatrixBinaryFile.Writer w)
+    throws IOException {
+    final RunReader[] readers = new RunReader[runfiles.size()];
+    try {
+      for (int k=0; k<readers.length; k++) {
+        readers[k] = new RunReader(runfiles.get(k));
+      }
+      for (int j=0; j<c; j++) {
+        for (int k=0; k<readers.length; k++) readers[k].addColumn(j, vb);
+        w.writeRow(vb.build());
+      }
+    }
+    finally {
+      for (int k=0; k<readers.length; k++) {
+        if (readers[k]!=null) readers[k].close();
+      }
+    }
+  }
+
+
+  /**
+   * auxiliary class holding the triples of a run in memory. The arrays grow
+   * geometrically up to the max. size of the run, so small matrices do not
+   * cost the whole budget.
+   */
+  private static final class Run {
+    private final int _max;
+    private int[] _cols;
+    private int[] _rows;
+    private double[] _vals;
+    private final int[] _start;  // after sort(), column j is in [_start[j],
+                                 // _start[j+1]) of _srows, _svals
+    private int[] _srows;
+    private double[] _svals;
+    private int _n;
+
+    private Run(int max, int c) {
+      _max = max;
+      final int cap = Math.min(max, _INIT_RUN_SIZE);
+      _cols = new int[cap];
+      _rows = new int[cap];
+      _vals = new double[cap];
+      _start = new int[c+1];
+    }
+
+    private boolean isFull() {
+      return _n==_max;
+    }
+
+    private int size() {
+      return _n;
+    }
+
+    private void add(int col, int row, double val) {
+      if (_n==_cols.length) {
+        final int cap = (int) Math.min(2L*_cols.length, _max);
+        _cols = Arrays.copyOf(_cols, cap);
+        _rows = Arrays.copyOf(_rows, cap);
+        _vals = Arrays.copyOf(_vals, cap);
+      }
+      _cols[_n] = col;
+      _rows[_n] = row;
+      _vals[_n++] = val;
+    }
+
+    /**
+     * counting-sort of the triples by column into _srows, _svals.
+     */
+    private void sort() {
+      final int c = _start.length-1;
+      Arrays.fill(_start, 0);
+      for (int k=0; k<_n; k++) ++_start[_cols[k]+1];
+      for (int j=0; j<c; j++) _start[j+1] += _start[j];
+      if (_srows==null || _srows.length<_n) {
+        _srows = new int[_cols.length];
+        _svals = new double[_cols.length];
+      }
+      int[] pos = _start.clone();
+      for (int k=0; k<_n; k++) {
+        final int p = pos[_cols[k]]++;
+        _srows[p] = _rows[k];
+        _svals[p] = _vals[k];
+      }
+    }
+
+    private void addColumn(int j, DblArray1SparseVectorBuilder vb) {
+      for (int p=_start[j]; p<_start[j+1]; p++) vb.add(_srows[p], _svals[p]);
+    }
+
+    /**
+     * sorts the run, writes it to the k-th run file of the given output file,
+     * and empties it.
+     */
+    private Path spill(String outfile, int k) throws IOException {
+      sort();
+      final Path p = Paths.get(outfile+".run"+k);
+      try (FileChannel ch =
+             FileChannel.open(p, StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(_RUN_BUF_SIZE);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        final int c = _start.length-1;
+        for (int j=0; j<c; j++) {
+          for (int q=_start[j]; q<_start[j+1]; q++) {
+            if (!buf.hasRemaining()) drain(ch, buf);
+            buf.putInt(j).putInt(_srows[q]).putDouble(_svals[q]);
+          }
+        }
+        drain(ch, buf);
+      }
+      _n = 0;
+      return p;
+    }
+  }
+
+
+  /**
+   * auxiliary class reading a run file sequentially, column by column.
+   */
+  private static final class RunReader {
+    private final FileChannel _ch;
+    private final ByteBuffer _buf;
+    private boolean _eof;
+
+    private RunReader(Path p) throws IOException {
+      _ch = FileChannel.open(p, StandardOpenOption.READ);
+      _buf = ByteBuffer.allocateDirect(_RUN_BUF_SIZE);
+      _buf.order(ByteOrder.LITTLE_ENDIAN);
+      _buf.flip();
+    }
+
+    /**
+     * adds the entries of column j, which must be the smallest column not
+     * read yet, to the builder.
+     */
+    private void addColumn(int j, DblArray1SparseVectorBuilder vb)
+      throws IOException {
+      while (true) {
+        if (_buf.remaining()<_RECORD_SIZE && !fill()) return;
+        if (_buf.getInt(_buf.position())!=j) return;
+        _buf.getInt();
+        vb.add(_buf.getInt(), _buf.getDouble());
+      }
+    }
+
+    private boolean fill() throws IOException {
+      if (_eof) return false;
+      _buf.compact();
+      while (_buf.position()<_RECORD_SIZE) {
+        if (_ch.read(_buf)<0) {
+          _eof = true;
+          break;
+        }
+      }
+      _buf.flip();
+      return _buf.remaining()>=_RECORD_SIZE;
+    }
+
+    private void close() throws IOException {
+      _ch.close();
+    }
+  }
+
+
+  /**
+   * writes the contents of the buffer (flipped first) to the channel, and
+   * clears the buffer.
+   * @param ch FileChannel
+   * @param buf ByteBuffer
+   * @throws IOException
+   */
+  private static void drain(FileChannel ch, ByteBuffer buf) throws IOException {
+    buf.flip();
+    while (buf.hasRemaining()) ch.write(buf);
+    buf.clear();
+  }
+}
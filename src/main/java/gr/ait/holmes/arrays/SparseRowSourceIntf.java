@@ -0,0 +1,43 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.IOException;
+
+
+/**
+ * package-private interface of the on-disk data sources from which the rows of
+ * a <CODE>BigDiskSupportedDblArray2SparseMatrix</CODE> are read on demand.
+ * Implementations must allow concurrent calls of <CODE>readRows()</CODE> from
+ * many threads, and release any resources they hold on <CODE>close()</CODE>,
+ * after which they need not be readable any more.
+ * @author itc
+ */
+interface SparseRowSourceIntf extends java.io.Closeable {
+  /**
+   * get the number of rows of the matrix stored in this source.
+   * @return int
+   */
+  public int getNumRows();
+
+
+  /**
+   * get the number of columns of the matrix stored in this source.
+   * @return int
+   */
+  public int getNumCols();
+
+
+  /**
+   * reads the rows from,...,to-1 of the matrix, and stores row from+k in
+   * position k of the array passed in.
+   * @param from int inclusive
+   * @param to int exclusive
+   * @param rows DblArray1SparseVector[] of length at least to-from
+   * @throws IOException if the data source cannot be read or is corrupt
+   */
+  public void readRows(int from, int to, DblArray1SparseVector[] rows)
+    throws IOException;
+}
@@ -0,0 +1,335 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * sequential reader of sparse matrices in the text format: the first line of
+ * the file holds the number of rows and columns separated by white-space, and
+ * each subsequent line holds one row as a white-space-separated list of
+ * "index,value" pairs with 1-based column indices. The reader parses the bytes
+ * of the file directly out of a buffer filled through a <CODE>FileChannel
+ * </CODE>, without creating any <CODE>String</CODE> or other object per
+ * non-zero, and feeds the pairs of each row to a
+ * <CODE>DblArray1SparseVectorBuilder</CODE>. Values with at most 15
+ * significant digits and decimal exponents in [-22,22] (which covers
+ * practically all values written by programs with fixed precision) are
+ * converted with a single correctly-rounded floating-point operation, so the
+ * result is identical to <CODE>Double.parseDouble()</CODE>; any other value
+ * is passed on to <CODE>Double.parseDouble()</CODE>.
+ * The reader also reports the byte offset of the next row in the file and can
+ * be positioned at any such offset, so that callers can remember where rows
+ * start and avoid re-scanning the file from the top.
+ * The class is not thread-safe.
+ * @author itc
+ */
+public final class SparseTextMatrixReader implements Closeable {
+  private final static int _BUF_SIZE = 1<<18;
+  private final static double[] _POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+    1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final String _datafile;
+  private final FileChannel _ch;
+  private final ByteBuffer _bb;
+  private final byte[] _buf;  // the array backing _bb
+  private int _pos;  // position of next byte to parse in _buf
+  private int _lim;  // number of valid bytes in _buf
+  private long _bufStart;  // file offset of _buf[0]
+  private byte[] _tok = new byte[32];  // current value token
+  private final int _r;
+  private final int _c;
+
+
+  /**
+   * opens the file and reads its header line.
+   * @param filename String
+   * @throws IOException if the file cannot be read or has no valid header
+   */
+  public SparseTextMatrixReader(String filename) throws IOException {
+    _datafile = filename;
+    _ch = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+    _buf = new byte[_BUF_SIZE];
+    _bb = ByteBuffer.wrap(_buf);
+    try {
+      int n = 0;
+      int b = next();
+      while (b>=0 && b!='\n') {
+        if (n==_tok.length) _tok = Arrays.copyOf(_tok, 2*n);
+        _tok[n++] = (byte) b;
+        b = next();
+      }
+      String line = new String(_tok, 0, n, StandardCharsets.US_ASCII);
+      String[] data = line.trim().split("\\s+");
+      try {
+        _r = Integer.parseInt(data[0]);
+        _c = Integer.parseInt(data[1]);
+      }
+      catch (RuntimeException e) {
+        throw new IOException("invalid header line in "+filename+": "+line);
+      }
+      if (_r<0 || _c<=0)
+        throw new IOException("invalid header line in "+filename+": "+line);
+    }
+    catch (IOException e) {
+      _ch.close();
+      throw e;
+    }
+  }
+
+
+  /**
+   * get the number of rows declared in the header.
+   * @return int
+   */
+  public int getNumRows() {
+    return _r;
+  }
+
+
+  /**
+   * get the number of columns declared in the header.
+   * @return int
+   */
+  public int getNumCols() {
+    return _c;
+  }
+
+
+  /**
+   * get the byte offset in the file of the next row to be read.
+   * @return long
+   */
+  public long getPosition() {
+    return _bufStart+_pos;
+  }
+
+
+  /**
+   * positions this reader at the given byte offset of the file, which must be
+   * the start of a row, as returned by <CODE>getPosition()</CODE>.
+   * @param pos long
+   * @throws IOException
+   */
+  public void seek(long pos) throws IOException {
+    if (pos>=_bufStart && pos<=_bufStart+_lim) {
+      _pos = (int) (pos-_bufStart);
+      return;
+    }
+    _ch.position(pos);
+    _bufStart = pos;
+    _pos = _lim = 0;
+  }
+
+
+  /**
+   * parses the next row of the file, and adds its (0-based index, value) pairs
+   * to the builder passed in. The caller is expected to call
+   * <CODE>vb.build()</CODE> afterwards.
+   * @param vb DblArray1SparseVectorBuilder
+   * @return boolean false iff the end of the file was reached before the row
+   * @throws IOException if the file cannot be read or the row is malformed
+   */
+  public boolean readRow(DblArray1SparseVectorBuilder vb) throws IOException {
+    int b = next();
+    if (b<0) return false;
+    while (true) {
+      while (b==' ' || b=='\t' || b=='\r') b = next();
+      if (b=='\n' || b<0) return true;
+      // column index
+      if (b<'0' || b>'9') throw malformed("index expected");
+      long idx = 0;
+      while (b>='0' && b<='9') {
+        idx = idx*10 + (b-'0');
+        if (idx>_c) throw malformed("index out of range");
+        b = next();
+      }
+      if (idx==0) throw malformed("index out of range");
+      if (b!=',') throw malformed("',' expected");
+      // value
+      int n = 0;
+      b = next();
+      while (b>=0 && b!=' ' && b!='\t' && b!='\r' && b!='\n') {
+        if (n==_tok.length) _tok = Arrays.copyOf(_tok, 2*n);
+        _tok[n++] = (byte) b;
+        b = next();
+      }
+      vb.add((int) idx-1, parseDouble(_tok, n));
+    }
+  }
+
+
+  /**
+   * skips the next row of the file without parsing it.
+   * @return boolean false iff the end of the file was reached before the row
+   * @throws IOException
+   */
+  public boolean skipRow() throws IOException {
+    boolean any = false;
+    while (true) {
+      final byte[] buf = _buf;
+      for (int p=_pos; p<_lim; p++) {
+        if (buf[p]=='\n') {
+          _pos = p+1;
+          return true;
+        }
+      }
+      any |= _pos<_lim;
+      _pos = _lim;
+      if (!fill()) return any;
+    }
+  }
+
+
+  /**
+   * closes the underlying file.
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    _ch.close();
+  }
+
+
+  /**
+   * parses the ASCII representation of a double in the first n bytes of t.
+   * @param t byte[]
+   * @param n int
+   * @return double
+   * @throws IOException if the bytes do not represent a double
+   */
+  private double parseDouble(byte[] t, int n) throws IOException {
+    int i = 0;
+    boolean neg = false;
+    if (n>0 && (t[0]=='-' || t[0]=='+')) {
+      neg = t[0]=='-';
+      ++i;
+    }
+    long m = 0;
+    int digits = 0;  // significant digits in m
+    int exp10 = 0;
+    boolean any = false;
+    for (; i<n && t[i]>='0' && t[i]<='9'; i++) {
+      any = true;
+      if (digits<18) {
+        m = m*10 + (t[i]-'0');
+        if (m>0) ++digits;
+      }
+      else {
+        ++digits;
+        ++exp10;
+      }
+    }
+    if (i<n && t[i]=='.') {
+      for (++i; i<n && t[i]>='0' && t[i]<='9'; i++) {
+        any = true;
+        if (digits<18) {
+          m = m*10 + (t[i]-'0');
+          if (m>0) ++digits;
+          --exp10;
+        }
+        else ++digits;
+      }
+    }
+    if (any && i<n && (t[i]=='e' || t[i]=='E')) {
+      ++i;
+      boolean eneg = false;
+      if (i<n && (t[i]=='-' || t[i]=='+')) {
+        eneg = t[i]=='-';
+        ++i;
+      }
+      int e = 0;
+      boolean edigits = false;
+      for (; i<n && t[i]>='0' && t[i]<='9'; i++) {
+        edigits = true;
+        if (e<100000) e = e*10 + (t[i]-'0');
+      }
+      if (!edigits) any = false;
+      exp10 += eneg ? -e : e;
+    }
+    if (any && i==n && digits<=15) {
+      double v = (double) m;  // exact
+      if (m==0) return neg ? -0.0 : 0.0;
+      if (exp10>=0 && exp10<=22) v *= _POW10[exp10];
+      else if (exp10<0 && exp10>=-22) v /= _POW10[-exp10];
+      else return slowParseDouble(t, n);
+      return neg ? -v : v;
+    }
+    return slowParseDouble(t, n);
+  }
+
+
+  /**
+   * fall-back of <CODE>parseDouble()</CODE> for values outside its fast path,
+   * including "NaN" and "Infinity".
+   * @param t byte[]
+   * @param n int
+   * @return double
+   * @throws IOException if the bytes do not represent a double
+   */
+  private double slowParseDouble(byte[] t, int n) throws IOException {
+    try {
+      return Double.parseDouble(new String(t, 0, n, StandardCharsets.US_ASCII));
+    }
+    catch (NumberFormatException e) {
+      throw malformed("invalid value");
+    }
+  }
+
+
+  /**
+   * return the next byte of the file (in [0,127]), or -1 at the end of the
+   * file.
+   * @return int
+   * @throws IOException if the file cannot be read, or the byte is not ASCII
+   * (which would otherwise be taken for the end of the file)
+   */
+  private int next() throws IOException {
+    if (_pos==_lim && !fill()) return -1;
+    final int b = _buf[_pos++] & 0xFF;
+    if (b>=0x80) throw malformed("non-ASCII byte "+b);
+    return b;
+  }
+
+
+  /**
+   * refills the buffer with the next bytes of the file, once all the bytes
+   * in it have been consumed.
+   * @return boolean false iff at the end of the file
+   * @throws IOException
+   */
+  private boolean fill() throws IOException {
+    _bufStart += _lim;
+    _pos = _lim = 0;
+    _bb.clear();
+    int n;
+    do {
+      n = _ch.read(_bb);
+    } while (n==0);
+    if (n<0) return false;
+    _lim = n;
+    return true;
+  }
+
+
+  /**
+   * creates the exception for a malformed row.
+   * @param msg String
+   * @return IOException
+   */
+  private IOException malformed(String msg) {
+    return new IOException(_datafile+": malformed row at byte offset "+
+                           (getPosition()-1)+": "+msg);
+  }
+}
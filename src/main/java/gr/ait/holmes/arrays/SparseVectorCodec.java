@@ -0,0 +1,337 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * compact binary encoding of sparse vectors, for sending them over the
+ * network or storing them, with no per-object metadata. Only the non-zeros
+ * are written: their indices as gaps from the previous index (minus one), and
+ * all counts, in a variable-length code of 7 bits per byte (the high bit
+ * marking that more bytes follow); double values as 8-byte IEEE doubles, and
+ * int values (of <CODE>IntArray1SparseVector</CODE> objects) zig-zag mapped
+ * to unsigned and variable-length coded. A vector with m non-zeros whose
+ * indices have small gaps takes a few bytes of header plus about 9*m bytes
+ * (double values) or 2*m to 3*m bytes (small int values). The codes are
+ * assembled in a byte[] per section, preceded by its length, so that each
+ * section is written and read with a single call on the stream.
+ * <p>The format of <CODE>write()</CODE> is: a kind byte (0 for double
+ * values, 1 for int values), the dimension n, for double values the default
+ * value as a double, the number of non-zeros m, the index section (its length
+ * in bytes and the m index gaps) and the values (8*m bytes for doubles, or a
+ * section as for the indices for ints). The Java serialization of
+ * <CODE>DblArray1SparseVector</CODE> and <CODE>IntArray1SparseVector</CODE>
+ * writes the indices and values of the vector in this encoding too.</p>
+ * @author itc
+ */
+public final class SparseVectorCodec {
+  private final static int _DOUBLE_VALUES = 0;
+  private final static int _INT_VALUES = 1;
+
+
+  /**
+   * no instances allowed.
+   */
+  private SparseVectorCodec() {
+    // no-op
+  }
+
+
+  /**
+   * writes the given vector to the output. <CODE>IntArray1SparseVector</CODE>
+   * objects are written with int values; any other vector with double values.
+   * @param v SparseVectorIntf
+   * @param out DataOutput
+   * @throws IOException
+   * @throws IllegalArgumentException if v is null
+   */
+  public static void write(SparseVectorIntf v, DataOutput out)
+    throws IOException {
+    if (v==null) throw new IllegalArgumentException("null vector");
+    if (v instanceof IntArray1SparseVector) {
+      IntArray1SparseVector iv = (IntArray1SparseVector) v;
+      out.writeByte(_INT_VALUES);
+      writeVarInt(iv.getNumCoords(), out);
+      writeVarInt(iv.getILen(), out);
+      writeIndices(iv.getIndices(), iv.getILen(), out);
+      writeInts(iv.getValues(), iv.getILen(), out);
+      return;
+    }
+    out.writeByte(_DOUBLE_VALUES);
+    writeVarInt(v.getNumCoords(), out);
+    out.writeDouble(v.getDefaultValue());
+    final int nnz = v.getNumNonZeros();
+    writeVarInt(nnz, out);
+    if (v instanceof DblArray1SparseVector) {
+      DblArray1SparseVector dv = (DblArray1SparseVector) v;
+      writeIndices(dv.getIndices(), nnz, out);
+      writeDoubles(dv.getValues(), nnz, out);
+      return;
+    }
+    int[] inds = new int[nnz];
+    double[] vals = new double[nnz];
+    for (int k=0; k<nnz; k++) {
+      inds[k] = v.getIthNonZeroPos(k);
+      vals[k] = v.getIthNonZeroVal(k);
+    }
+    writeIndices(inds, nnz, out);
+    writeDoubles(vals, nnz, out);
+  }
+
+
+  /**
+   * reads a vector written by <CODE>write()</CODE>.
+   * @param in DataInput
+   * @return SparseVectorIntf a <CODE>DblArray1SparseVector</CODE> or an
+   * <CODE>IntArray1SparseVector</CODE>, depending on the kind of values
+   * written
+   * @throws IOException if reading fails or the data are not a valid vector
+   * (<CODE>InvalidObjectException</CODE>)
+   */
+  public static SparseVectorIntf read(DataInput in) throws IOException {
+    final int kind = in.readByte();
+    if (kind!=_DOUBLE_VALUES && kind!=_INT_VALUES)
+      throw new InvalidObjectException("unknown vector kind "+kind);
+    final int n = readVarInt(in);
+    if (n<=0) throw new InvalidObjectException("dimension "+n);
+    final double def = kind==_DOUBLE_VALUES ? in.readDouble() : 0.0;
+    final int nnz = readVarInt(in);
+    if (nnz<0 || nnz>n) throw new InvalidObjectException("non-zeros "+nnz);
+    if (kind==_INT_VALUES) {
+      IntArray1SparseVector v = new IntArray1SparseVector(n);
+      if (nnz>0) v.setData(readIndices(in, nnz, n), readInts(in, nnz), nnz);
+      return v;
+    }
+    DblArray1SparseVector v = new DblArray1SparseVector(n, def);
+    if (nnz==0) return v;  // the arrays of an empty vector are null
+    final int[] inds = readIndices(in, nnz, n);
+    final double[] vals = readDoubles(in, nnz);
+    v.setIndices(inds);
+    v.setValues(vals);
+    v.setILen(nnz);
+    return v;
+  }
+
+
+  /**
+   * writes the first len indices as gaps: the number of bytes of the encoded
+   * gaps, then the bytes, written at once; nothing if len is 0.
+   * @param inds int[] strictly ascending
+   * @param len int
+   * @param out DataOutput
+   * @throws IOException
+   */
+  static void writeIndices(int[] inds, int len, DataOutput out)
+    throws IOException {
+    if (len==0) return;  // inds may be null
+    byte[] buf = new byte[5*len];
+    int p = 0;
+    int prev = -1;
+    for (int k=0; k<len; k++) {
+      p = putVarInt(inds[k]-prev-1, buf, p);
+      prev = inds[k];
+    }
+    writeVarInt(p, out);
+    out.write(buf, 0, p);
+  }
+
+
+  /**
+   * reads len indices written by <CODE>writeIndices()</CODE>, checking that
+   * they ascend and are below n.
+   * @param in DataInput
+   * @param len int
+   * @param n int
+   * @return int[]
+   * @throws IOException
+   */
+  static int[] readIndices(DataInput in, int len, int n) throws IOException {
+    final byte[] buf = readSection(in, len);
+    int[] inds = new int[len];
+    long prev = -1;
+    int p = 0;
+    for (int k=0; k<len; k++) {
+      int gap = 0;
+      byte c;
+      int shift = 0;
+      do {
+        if (p==buf.length || shift>28)
+          throw new InvalidObjectException("malformed index gaps");
+        c = buf[p++];
+        gap |= (c & 0x7F) << shift;
+        shift += 7;
+      } while (c<0);
+      prev += gap+1L;
+      if (gap<0 || prev>=n)
+        throw new InvalidObjectException("index "+prev+" out of range");
+      inds[k] = (int) prev;
+    }
+    if (p!=buf.length) throw new InvalidObjectException("malformed index gaps");
+    return inds;
+  }
+
+
+  /**
+   * writes the first len values as 8-byte doubles, at once.
+   * @param vals double[]
+   * @param len int
+   * @param out DataOutput
+   * @throws IOException
+   */
+  static void writeDoubles(double[] vals, int len, DataOutput out)
+    throws IOException {
+    if (len==0) return;  // vals may be null
+    byte[] buf = new byte[8*len];
+    ByteBuffer.wrap(buf).asDoubleBuffer().put(vals, 0, len);
+    out.write(buf);
+  }
+
+
+  /**
+   * reads len doubles. Values equal to the default value are accepted, since
+   * a <CODE>DblArray1SparseVector</CODE> may hold some (e.g. after a
+   * <CODE>div()</CODE> that underflows), and are read back as written.
+   * @param in DataInput
+   * @param len int
+   * @return double[]
+   * @throws IOException
+   */
+  static double[] readDoubles(DataInput in, int len) throws IOException {
+    byte[] buf = new byte[8*len];
+    in.readFully(buf);
+    double[] vals = new double[len];
+    ByteBuffer.wrap(buf).asDoubleBuffer().get(vals);
+    return vals;
+  }
+
+
+  /**
+   * writes the first len values as zig-zag variable-length ints: the number
+   * of bytes of the codes, then the bytes, written at once; nothing if len is
+   * 0.
+   * @param vals int[]
+   * @param len int
+   * @param out DataOutput
+   * @throws IOException
+   */
+  static void writeInts(int[] vals, int len, DataOutput out)
+    throws IOException {
+    if (len==0) return;  // vals may be null
+    byte[] buf = new byte[5*len];
+    int p = 0;
+    for (int k=0; k<len; k++) {
+      p = putVarInt((vals[k] << 1) ^ (vals[k] >> 31), buf, p);
+    }
+    writeVarInt(p, out);
+    out.write(buf, 0, p);
+  }
+
+
+  /**
+   * reads len ints written by <CODE>writeInts()</CODE>. Zeros are accepted,
+   * since an <CODE>IntArray1SparseVector</CODE> may hold some (e.g. after a
+   * <CODE>div()</CODE>), and are read back as written.
+   * @param in DataInput
+   * @param len int
+   * @return int[]
+   * @throws IOException
+   */
+  static int[] readInts(DataInput in, int len) throws IOException {
+    final byte[] buf = readSection(in, len);
+    int[] vals = new int[len];
+    int p = 0;
+    for (int k=0; k<len; k++) {
+      int z = 0;
+      byte c;
+      int shift = 0;
+      do {
+        if (p==buf.length || shift>28)
+          throw new InvalidObjectException("malformed int values");
+        c = buf[p++];
+        z |= (c & 0x7F) << shift;
+        shift += 7;
+      } while (c<0);
+      vals[k] = (z >>> 1) ^ -(z & 1);
+    }
+    if (p!=buf.length) throw new InvalidObjectException("malformed int values");
+    return vals;
+  }
+
+
+  /**
+   * reads a section of variable-length codes of len values: its length in
+   * bytes (between len and 5*len), then its bytes; nothing if len is 0.
+   * @param in DataInput
+   * @param len int
+   * @return byte[]
+   * @throws IOException
+   */
+  private static byte[] readSection(DataInput in, int len) throws IOException {
+    if (len==0) return new byte[0];
+    final int size = readVarInt(in);
+    if (size<len || size>5L*len)
+      throw new InvalidObjectException("invalid section length "+size);
+    byte[] buf = new byte[size];
+    in.readFully(buf);
+    return buf;
+  }
+
+
+  /**
+   * stores the 32 bits of v as an unsigned variable-length int of 1 to 5
+   * bytes at buf[p...], and returns the position after it.
+   * @param v int
+   * @param buf byte[]
+   * @param p int
+   * @return int
+   */
+  private static int putVarInt(int v, byte[] buf, int p) {
+    while ((v & ~0x7F)!=0) {
+      buf[p++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    buf[p++] = (byte) v;
+    return p;
+  }
+
+
+  /**
+   * writes the 32 bits of v as an unsigned variable-length int of 1 to 5
+   * bytes.
+   * @param v int
+   * @param out DataOutput
+   * @throws IOException
+   */
+  static void writeVarInt(int v, DataOutput out) throws IOException {
+    while ((v & ~0x7F)!=0) {
+      out.writeByte((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+
+  /**
+   * reads an int written by <CODE>writeVarInt()</CODE>.
+   * @param in DataInput
+   * @return int
+   * @throws IOException
+   */
+  static int readVarInt(DataInput in) throws IOException {
+    int v = 0;
+    for (int shift=0; shift<35; shift+=7) {
+      final byte c = in.readByte();
+      v |= (c & 0x7F) << shift;
+      if (c>=0) return v;
+    }
+    throw new InvalidObjectException("malformed variable-length int");
+  }
+}
@@ -4,6 +4,8 @@
 
 package gr.ait.holmes.arrays;
 
+import java.util.Arrays;
+
 /**
  * this interface extends the standard VectorIntf in that it provides two
  * methods to allow for (fast) loops over the non-zero (non-default-valued more 
@@ -60,6 +62,23 @@ public interface SparseVectorIntf extends VectorIntf {
 	public default double getDefaultValue() {
     return 0;
   }
+
+
+  /**
+   * copies the components of this vector into dst[0...getNumCoords()-1]: 
+   * fills it with the default value, then writes the non-default components.
+   * @param dst double[]
+   * @throws IllegalArgumentException if dst is null or shorter than the
+   * dimensions of this vector
+   */
+  public default void copyInto(double[] dst) throws IllegalArgumentException {
+    final int n = getNumCoords();
+    if (dst==null || dst.length<n)
+      throw new IllegalArgumentException("null or too short array");
+    Arrays.fill(dst, 0, n, getDefaultValue());
+    final int nnz = getNumNonZeros();
+    for (int k=0; k<nnz; k++) dst[getIthNonZeroPos(k)] = getIthNonZeroVal(k);
+  }
   
 }
 
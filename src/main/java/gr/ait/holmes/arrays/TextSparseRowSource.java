@@ -0,0 +1,109 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * package-private row source reading the text format of sparse matrices
+ * described in <CODE>SparseTextMatrixReader</CODE>. As the text format has no
+ * index, the source remembers the byte offset of every
+ * <CODE>_CHECKPOINT_ROWS</CODE>-th row the first time it scans past it, so
+ * that only the first access to a late row requires skipping all the lines
+ * before it; later accesses to rows near it skip at most
+ * <CODE>_CHECKPOINT_ROWS</CODE> lines. Still, large files should be converted
+ * once to the binary format of <CODE>SparseMatrixBinaryFile</CODE>.
+ * @author itc
+ */
+final class TextSparseRowSource implements SparseRowSourceIntf {
+  private final static int _CHECKPOINT_ROWS = 1024;
+
+  private final String _datafile;
+  private final int _r;
+  private final int _c;
+  /**
+   * _checkpoints[k] is the byte offset of row k*_CHECKPOINT_ROWS in the file,
+   * or zero if not known yet (no row starts at offset zero, the header does).
+   */
+  private final AtomicLongArray _checkpoints;
+
+
+  /**
+   * opens the text file to read its header only.
+   * @param filename String
+   * @throws IOException if the file cannot be read or has no valid header
+   */
+  TextSparseRowSource(String filename) throws IOException {
+    _datafile = filename;
+    try (SparseTextMatrixReader rd = new SparseTextMatrixReader(filename)) {
+      _r = rd.getNumRows();
+      _c = rd.getNumCols();
+      _checkpoints = new AtomicLongArray(_r/_CHECKPOINT_ROWS+1);
+      _checkpoints.set(0, rd.getPosition());
+    }
+  }
+
+
+  /**
+   * get the number of rows.
+   * @return int
+   */
+  public int getNumRows() {
+    return _r;
+  }
+
+
+  /**
+   * get the number of columns.
+   * @return int
+   */
+  public int getNumCols() {
+    return _c;
+  }
+
+
+  /**
+   * reads the rows from,...,to-1, starting from the nearest known row offset
+   * before row from.
+   * @param from int inclusive
+   * @param to int exclusive
+   * @param rows DblArray1SparseVector[]
+   * @throws IOException if the file cannot be read or ends before row to-1
+   */
+  public void readRows(int from, int to, DblArray1SparseVector[] rows)
+    throws IOException {
+    try (SparseTextMatrixReader rd = new SparseTextMatrixReader(_datafile)) {
+      int k = from/_CHECKPOINT_ROWS;
+      while (_checkpoints.get(k)==0) --k;
+      rd.seek(_checkpoints.get(k));
+      int row = k*_CHECKPOINT_ROWS;
+      for (; row<from; row++) {
+        if (row%_CHECKPOINT_ROWS==0)
+          _checkpoints.set(row/_CHECKPOINT_ROWS, rd.getPosition());
+        if (!rd.skipRow()) throw new IOException("unexpected EOF");
+      }
+      DblArray1SparseVectorBuilder vb = new DblArray1SparseVectorBuilder(_c);
+      for (; row<to; row++) {
+        if (row%_CHECKPOINT_ROWS==0)
+          _checkpoints.set(row/_CHECKPOINT_ROWS, rd.getPosition());
+        if (!rd.readRow(vb)) throw new IOException("unexpected EOF");
+        rows[row-from] = vb.build();
+      }
+      if (row<_r && row%_CHECKPOINT_ROWS==0)
+        _checkpoints.set(row/_CHECKPOINT_ROWS, rd.getPosition());
+    }
+  }
+
+
+  /**
+   * does nothing, as the file is only open during calls of
+   * <CODE>readRows()</CODE>.
+   */
+  public void close() {
+    // no-op
+  }
+}
@@ -109,4 +109,151 @@ public interface VectorIntf extends Serializable {
    */
   public double[] getDblArray1();
 
+
+  /**
+   * multiplies the components of this vector by a, in place.
+   * This default implementation goes through <CODE>getCoord()/setCoord()
+   * </CODE>, skipping zero components and writing products that are zero as
+   * 0.0 (never -0.0); the vector classes of this package override it with
+   * passes over their arrays (over their non-zeros for sparse vectors), or
+   * in O(1) time for <CODE>QuantizedArray1SparseVector</CODE>, whose scale
+   * alone changes (the immutable <CODE>CompressedDblArray1SparseVector</CODE>
+   * throws <CODE>UnsupportedOperationException</CODE>).
+   * @param a double
+   * @throws IllegalArgumentException if a is NaN
+   */
+  public default void scale(double a) throws IllegalArgumentException {
+    if (Double.isNaN(a)) throw new IllegalArgumentException("a is NaN");
+    final int n = getNumCoords();
+    for (int i=0; i<n; i++) {
+      final double v = getCoord(i);
+      if (v==0.0) continue;
+      final double av = a*v;
+      setCoord(i, av==0.0 ? 0.0 : av);
+    }
+  }
+
+
+  /**
+   * sets this vector to a*x + b*this, in place. When b is zero the old
+   * components of this vector are not read, so infinities or NaNs in them do
+   * not carry over. This default implementation goes through 
+   * <CODE>getCoord()/setCoord()</CODE>, writing results that are zero as 0.0
+   * (never -0.0); the vector classes of this package override it with a
+   * <CODE>scale(b)</CODE> followed by an <CODE>addMul(a,x)</CODE>, except
+   * <CODE>DblArray1Vector</CODE>, which makes a single pass over the two
+   * arrays when x is dense too.
+   * @param a double
+   * @param x VectorIntf
+   * @param b double
+   * @throws IllegalArgumentException if x is null or does not have the same
+   * dimensions as this vector, or if a or b is NaN
+   */
+  public default void axpby(double a, VectorIntf x, double b) 
+    throws IllegalArgumentException {
+    if (x==null || x.getNumCoords()!=getNumCoords() || 
+        Double.isNaN(a) || Double.isNaN(b))
+      throw new IllegalArgumentException("cannot call axpby(a,x,b) with x "+
+                                         "having different dimensions than "+
+                                         "this vector or with a or b being "+
+                                         "NaN.");
+    if (x==this) {
+      scale(a+b);
+      return;
+    }
+    final int n = getNumCoords();
+    for (int i=0; i<n; i++) {
+      final double yi = b==0.0 ? 0.0 : b*getCoord(i);
+      final double vi = a*x.getCoord(i)+yi;
+      setCoord(i, vi==0.0 ? 0.0 : vi);
+    }
+  }
+
+
+  /**
+   * sets this vector to the sum of coeffs[k]*vectors[k] over all k, in 
+   * place. This default implementation is an <CODE>axpby()</CODE> for the
+   * first term followed by an <CODE>addMul()</CODE> for each other term.
+   * @param coeffs double[]
+   * @param vectors VectorIntf[] of the same length as coeffs, not containing
+   * this vector
+   * @throws IllegalArgumentException if any argument is null or empty, their
+   * lengths differ, this vector is among the vectors, any vector does not
+   * have the same dimensions as this vector, or any coefficient is NaN
+   */
+  public default void linearCombination(double[] coeffs, VectorIntf[] vectors)
+    throws IllegalArgumentException {
+    if (coeffs==null || vectors==null || coeffs.length==0 || 
+        coeffs.length!=vectors.length)
+      throw new IllegalArgumentException("null or empty args or lengths "+
+                                         "mismatch");
+    for (int k=0; k<vectors.length; k++) {
+      if (vectors[k]==this) 
+        throw new IllegalArgumentException("this vector among the terms");
+    }
+    axpby(coeffs[0], vectors[0], 0.0);
+    for (int k=1; k<coeffs.length; k++) addMul(coeffs[k], vectors[k]);
+  }
+
+
+  /**
+   * copies the components of this vector into dst[0...getNumCoords()-1], 
+   * without allocating (unlike <CODE>getDblArray1()</CODE>).
+   * @param dst double[]
+   * @throws IllegalArgumentException if dst is null or shorter than the
+   * dimensions of this vector
+   */
+  public default void copyInto(double[] dst) throws IllegalArgumentException {
+    final int n = getNumCoords();
+    if (dst==null || dst.length<n)
+      throw new IllegalArgumentException("null or too short array");
+    for (int i=0; i<n; i++) dst[i] = getCoord(i);
+  }
+
+
+  /**
+   * return the inner product of this vector with other. This default 
+   * implementation goes through <CODE>getCoord()</CODE>; the vector classes 
+   * of this package override it.
+   * @param other VectorIntf
+   * @return double
+   * @throws IllegalArgumentException if other is null or vector dimensions 
+   * don't match
+   */
+  public default double innerProduct(VectorIntf other) 
+    throws IllegalArgumentException {
+    final int n = getNumCoords();
+    if (other==null || other.getNumCoords()!=n)
+      throw new IllegalArgumentException("dimensions don't match "+
+                                         "or null argument passed in");
+    double sum = 0.0;
+    for (int i=0; i<n; i++) sum += getCoord(i)*other.getCoord(i);
+    return sum;
+  }
+
+
+  /**
+   * return the inner product of this vector with other, and stores the 
+   * euclidean norms of this vector and of other in norms[0] and norms[1], 
+   * e.g. for the cosine similarity of the two vectors. This default
+   * implementation makes three passes, calling <CODE>innerProduct()</CODE>
+   * and summing the squares of each vector (over its non-zeros only, for
+   * sparse vectors); <CODE>DblArray1Vector</CODE> overrides it to read two
+   * dense vectors in a single pass.
+   * @param other VectorIntf
+   * @param norms double[] of length at least 2
+   * @return double
+   * @throws IllegalArgumentException if other is null, vector dimensions 
+   * don't match, or norms is null or too short
+   */
+  public default double innerProductAndNorms(VectorIntf other, double[] norms)
+    throws IllegalArgumentException {
+    if (norms==null || norms.length<2)
+      throw new IllegalArgumentException("null or too short norms array");
+    final double res = innerProduct(other);
+    norms[0] = Math.sqrt(SparseKernels.sumSquares(this));
+    norms[1] = Math.sqrt(SparseKernels.sumSquares(other));
+    return res;
+  }
+
 }
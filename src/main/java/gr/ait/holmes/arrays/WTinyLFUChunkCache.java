@@ -0,0 +1,274 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+
+/**
+ * chunk cache implementing the W-TinyLFU policy (Einziger, Friedman, Manes
+ * 2017): new chunks enter a small LRU "window" segment, which always keeps
+ * at least the newest chunk, however heavy; chunks leaving the window enter
+ * the "probation" segment of a main segmented-LRU area, and are promoted to
+ * its "protected" segment when accessed again. When the cache is over budget,
+ * each chunk that just left the window (the candidate) competes with the
+ * oldest chunk of the probation segment (the victim), and the one accessed
+ * less often recently is evicted. Access frequencies (of hits and misses
+ * alike) are estimated with a count-min sketch of 4-bit counters that are all
+ * halved periodically, so that old popularity fades. The policy resists scans (a
+ * sweep over many chunks does not flush frequently used ones) while still
+ * adapting to recency.
+ * @author itc
+ */
+public class WTinyLFUChunkCache extends AbstractChunkCache {
+  private final static int _WINDOW_PERCENT = 1;
+  private final static int _PROTECTED_PERCENT = 80;  // of the main area
+
+  private final HashMap<Integer, Entry> _map = new HashMap<>();
+  // segments, all in LRU order (eldest first)
+  private final LinkedHashMap<Integer, Entry> _window = new LinkedHashMap<>();
+  private final LinkedHashMap<Integer, Entry> _probation = new LinkedHashMap<>();
+  private final LinkedHashMap<Integer, Entry> _protected =
+    new LinkedHashMap<>();
+  private final long _windowMax;
+  private final long _protectedMax;
+  private long _windowWeight;
+  private long _protectedWeight;
+  private final FrequencySketch _sketch;
+
+  private final static int _WINDOW = 0;
+  private final static int _PROBATION = 1;
+  private final static int _PROTECTED = 2;
+
+
+  /**
+   * constructor for caches expected to hold up to a few thousand chunks.
+   * @param maxWeight long the budget of the cache
+   * @throws IllegalArgumentException if maxWeight&le;0
+   */
+  public WTinyLFUChunkCache(long maxWeight) {
+    this(maxWeight, 4096);
+  }
+
+
+  /**
+   * constructor.
+   * @param maxWeight long the budget of the cache
+   * @param numChunks int the number of distinct chunks expected to be
+   * accessed (e.g. the number of chunks of the matrix); sizes the frequency
+   * sketch
+   * @throws IllegalArgumentException if maxWeight&le;0 or numChunks&le;0
+   */
+  public WTinyLFUChunkCache(long maxWeight, int numChunks) {
+    super(maxWeight);
+    if (numChunks<=0)
+      throw new IllegalArgumentException("numChunks must be positive");
+    _windowMax = Math.max(1, maxWeight*_WINDOW_PERCENT/100);
+    _protectedMax = (maxWeight-_windowMax)*_PROTECTED_PERCENT/100;
+    _sketch = new FrequencySketch(numChunks);
+  }
+
+
+  protected DblArray1SparseVector[] lookup(int chunk, boolean access) {
+    if (access) _sketch.increment(chunk);
+    Entry e = _map.get(chunk);
+    if (e==null) return null;
+    if (access) {
+      switch (e._segment) {
+        case _WINDOW:
+          _window.remove(chunk);
+          _window.put(chunk, e);
+          break;
+        case _PROBATION:  // promote
+          _probation.remove(chunk);
+          e._segment = _PROTECTED;
+          _protected.put(chunk, e);
+          _protectedWeight += e._weight;
+          demoteProtected();
+          break;
+        default:
+          _protected.remove(chunk);
+          _protected.put(chunk, e);
+      }
+    }
+    return e._rows;
+  }
+
+
+  protected void insert(int chunk, DblArray1SparseVector[] rows, long weight) {
+    Entry e = new Entry(chunk, rows, weight);
+    _map.put(chunk, e);
+    _window.put(chunk, e);
+    _windowWeight += weight;
+  }
+
+
+  protected void evict() {
+    // chunks overflowing the window become candidates for the main area; the
+    // newest chunk stays, so that it is not evicted before its next access
+    ArrayList<Entry> candidates = new ArrayList<>();
+    Iterator<Entry> wit = _window.values().iterator();
+    while (_windowWeight>_windowMax && _window.size()>1) {
+      Entry e = wit.next();
+      wit.remove();
+      _windowWeight -= e._weight;
+      e._segment = _PROBATION;
+      _probation.put(e._chunk, e);
+      candidates.add(e);
+    }
+    int next = 0;  // the candidates before it have been admitted or evicted
+    while (isOverweight()) {
+      Iterator<Entry> pit = _probation.values().iterator();
+      if (!pit.hasNext()) {  // empty probation: take from protected or window
+        Iterator<Entry> it = !_protected.isEmpty() ?
+          _protected.values().iterator() : _window.values().iterator();
+        if (!it.hasNext()) return;
+        remove(it.next());
+        continue;
+      }
+      final Entry victim = pit.next();
+      final Entry candidate = next<candidates.size() ?
+        candidates.get(next) : null;
+      if (candidate==null) remove(victim);
+      else if (candidate==victim) {  // the eldest left: no competition
+        remove(victim);
+        ++next;
+      }
+      else if (_sketch.frequency(candidate._chunk) >
+               _sketch.frequency(victim._chunk)) remove(victim);
+      else {
+        remove(candidate);
+        ++next;
+      }
+    }
+  }
+
+
+  protected void removeAll() {
+    for (Entry e : _map.values()) removed(e._chunk, e._rows, e._weight, false);
+    _map.clear();
+    _window.clear();
+    _probation.clear();
+    _protected.clear();
+    _windowWeight = 0;
+    _protectedWeight = 0;
+  }
+
+
+  /**
+   * moves the eldest chunks of the protected segment to the probation segment
+   * while the protected segment is over its budget.
+   */
+  private void demoteProtected() {
+    Iterator<Entry> it = _protected.values().iterator();
+    while (_protectedWeight>_protectedMax && it.hasNext()) {
+      Entry e = it.next();
+      it.remove();
+      _protectedWeight -= e._weight;
+      e._segment = _PROBATION;
+      _probation.put(e._chunk, e);
+    }
+  }
+
+
+  /**
+   * evicts the given chunk.
+   * @param e Entry
+   */
+  private void remove(Entry e) {
+    _map.remove(e._chunk);
+    switch (e._segment) {
+      case _WINDOW:
+        _window.remove(e._chunk);
+        _windowWeight -= e._weight;
+        break;
+      case _PROBATION:
+        _probation.remove(e._chunk);
+        break;
+      default:
+        _protected.remove(e._chunk);
+        _protectedWeight -= e._weight;
+    }
+    removed(e._chunk, e._rows, e._weight, true);
+  }
+
+
+  /**
+   * auxiliary class holding a chunk, its weight and its segment.
+   */
+  private static final class Entry {
+    private final int _chunk;
+    private final DblArray1SparseVector[] _rows;
+    private final long _weight;
+    private int _segment = _WINDOW;
+
+    private Entry(int chunk, DblArray1SparseVector[] rows, long weight) {
+      _chunk = chunk;
+      _rows = rows;
+      _weight = weight;
+    }
+  }
+
+
+  /**
+   * count-min sketch with 4 rows of 4-bit saturating counters packed 16 per
+   * long. After 10 increments per counter of a row (the sample size), all
+   * counters are halved.
+   */
+  private static final class FrequencySketch {
+    private final long[] _table;
+    private final int _mask;  // number of counters per row - 1
+    private final int _sampleSize;
+    private int _size;  // increments since last halving
+
+    private final static int[] _SEEDS = {
+      0x97cb3127, 0xb1a7e2d5, 0x6c3d2e91, 0x2545f491
+    };
+
+    private FrequencySketch(int n) {
+      int w = 16;
+      while (w<n && w<(1<<26)) w <<= 1;
+      _mask = w-1;
+      _table = new long[4*w/16];
+      _sampleSize = 10*w;
+    }
+
+    private int index(int key, int i) {
+      int h = (key+_SEEDS[i])*0x9e3779b9;
+      h ^= h>>>16;
+      return (h & _mask) + i*(_mask+1);  // counter position in _table
+    }
+
+    private int frequency(int key) {
+      int f = 15;
+      for (int i=0; i<4; i++) {
+        final int c = index(key, i);
+        f = Math.min(f, (int) ((_table[c>>>4] >>> ((c & 15)<<2)) & 15L));
+      }
+      return f;
+    }
+
+    private void increment(int key) {
+      boolean added = false;
+      for (int i=0; i<4; i++) {
+        final int c = index(key, i);
+        final int shift = (c & 15)<<2;
+        if (((_table[c>>>4] >>> shift) & 15L) < 15L) {
+          _table[c>>>4] += 1L<<shift;
+          added = true;
+        }
+      }
+      if (added && ++_size>=_sampleSize) {
+        for (int k=0; k<_table.length; k++) {
+          _table[k] = (_table[k] >>> 1) & 0x7777777777777777L;
+        }
+        _size /= 2;
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+package gr.ait.holmes.benchmarks;
+
+import gr.ait.holmes.arrays.DblArray1SparseVector;
+import gr.ait.holmes.arrays.DblArray1Vector;
+import gr.ait.holmes.arrays.DblArray2DenseMatrix;
+import gr.ait.holmes.arrays.MatrixOps;
+import java.util.Random;
+
+/**
+ * compares the vector kernels of <CODE>gr.ait.holmes.arrays</CODE> against
+ * the plain scalar loops they replaced, on vectors of large dimension:
+ * <CODE>DblArray1Vector.addMul()</CODE>, <CODE>div()</CODE> and
+ * <CODE>isAtOrigin()</CODE>, the dense inner product (as the product of a
+ * 1 x n <CODE>DblArray2DenseMatrix</CODE> with a vector) and the sparse-dense
+ * gather (<CODE>DblArray1SparseVector.innerProduct()</CODE> with a dense
+ * vector). Each measurement is the best of several timed rounds after a
+ * warm-up, so that the JIT compiler has compiled both versions. Usage:
+ * <CODE>java gr.ait.holmes.benchmarks.BenchDenseKernels [n] [rounds]</CODE>
+ * (default n=4000000, 20 rounds).
+ *
+ * @author itc
+ */
+public class BenchDenseKernels {
+
+    private static double _sink;  // keeps results alive
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        final int n = args.length >= 1 ? Integer.parseInt(args[0]) : 4000000;
+        final int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 20;
+        Random r = new Random(7);
+        final double[] xa = new double[n];
+        final double[] ya = new double[n];
+        for (int i = 0; i < n; i++) {
+            xa[i] = r.nextDouble();
+            ya[i] = r.nextDouble();
+        }
+        final DblArray1Vector x = new DblArray1Vector(xa);
+        final DblArray1Vector y = new DblArray1Vector(ya);
+        final DblArray1Vector zero = new DblArray1Vector(n);
+        final double[] zeroa = new double[n];
+        final DblArray2DenseMatrix row = new DblArray2DenseMatrix(1, n, xa);
+        final DblArray1Vector dot = new DblArray1Vector(1);
+        final DblArray1SparseVector sp = new DblArray1SparseVector(n);
+        for (int k = 0; k < n / 16; k++) sp.setCoord(r.nextInt(n), 1.0 + k);
+        final int nnz = sp.getNumNonZeros();
+        final int[] spi = new int[nnz];
+        final double[] spv = new double[nnz];
+        for (int k = 0; k < nnz; k++) {
+            spi[k] = sp.getIthNonZeroPos(k);
+            spv[k] = sp.getIthNonZeroVal(k);
+        }
+
+        System.out.printf("n=%d, sparse nnz=%d%n", n, nnz);
+        System.out.printf("%-22s %10s %10s %9s%n", "kernel", "scalar ms",
+                "kernel ms", "speed-up");
+        report("addMul", rounds, () -> {
+            for (int i = 0; i < n; i++) xa[i] += 1e-9 * ya[i];
+        }, () -> x.addMul(1e-9, y));
+        report("div", rounds, () -> {
+            for (int i = 0; i < n; i++) xa[i] /= 1.0000001;
+        }, () -> x.div(1.0000001));
+        report("isAtOrigin", rounds, () -> {
+            boolean z = true;
+            for (int i = 0; i < n; i++) {
+                if (Double.compare(zeroa[i], 0.0) != 0) {
+                    z = false;
+                    break;
+                }
+            }
+            _sink += z ? 1 : 0;
+        }, () -> _sink += zero.isAtOrigin() ? 1 : 0);
+        report("dot", rounds, () -> {
+            double s = 0.0;
+            for (int i = 0; i < n; i++) s += xa[i] * ya[i];
+            _sink += s;
+        }, () -> {
+            MatrixOps.multiply(row, y, dot);
+            _sink += dot.getCoord(0);
+        });
+        report("sparse gather", rounds, () -> {
+            double s = 0.0;
+            for (int k = 0; k < nnz; k++) s += spv[k] * ya[spi[k]];
+            _sink += s;
+        }, () -> _sink += sp.innerProduct(y));
+        if (_sink == 42.0) System.out.println();  // never true
+    }
+
+    private static void report(String name, int rounds, Runnable scalar,
+            Runnable kernel) {
+        for (int k = 0; k < 5; k++) {  // warm-up
+            scalar.run();
+            kernel.run();
+        }
+        long best_s = Long.MAX_VALUE, best_k = Long.MAX_VALUE;
+        for (int k = 0; k < rounds; k++) {
+            long t0 = System.nanoTime();
+            scalar.run();
+            long t1 = System.nanoTime();
+            kernel.run();
+            long t2 = System.nanoTime();
+            best_s = Math.min(best_s, t1 - t0);
+            best_k = Math.min(best_k, t2 - t1);
+        }
+        System.out.printf("%-22s %10.3f %10.3f %8.2fx%n", name, best_s / 1e6,
+                best_k / 1e6, best_s / (double) best_k);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+package gr.ait.holmes.benchmarks;
+
+import gr.ait.holmes.arrays.DblArray1Vector;
+import gr.ait.holmes.arrays.DblArray2CSRMatrix;
+import gr.ait.holmes.arrays.DblArray2DenseMatrix;
+import gr.ait.holmes.arrays.DblArray2SparseMatrix;
+import gr.ait.holmes.arrays.MatrixIntf;
+import gr.ait.holmes.arrays.MatrixOps;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * compares <CODE>DblArray2DenseMatrix</CODE> against
+ * <CODE>DblArray2SparseMatrix</CODE> holding the same fully dense random
+ * n x n matrix, on element access (a sweep of <CODE>getCoord()</CODE> over all
+ * elements), the matrix-vector product (<CODE>MatrixOps.multiply()</CODE>),
+ * the transpose, and the matrix-matrix product (the tiled dense product
+ * against <CODE>MatrixOps.multiply(A,B)</CODE> on the sparse matrix). The
+ * results of the two classes must agree. Usage:
+ * <CODE>java gr.ait.holmes.benchmarks.BenchDenseMatrix [n] [repeats]</CODE>
+ * (default n=1000, 3 repeats); the best time of the repeats is reported.
+ *
+ * @author itc
+ */
+public class BenchDenseMatrix {
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        final int n = args.length >= 1 ? Integer.parseInt(args[0]) : 1000;
+        final int repeats = args.length >= 2 ? Integer.parseInt(args[1]) : 3;
+        Random r = new Random(7);
+        DblArray2DenseMatrix d = new DblArray2DenseMatrix(n, n);
+        DblArray2SparseMatrix s = new DblArray2SparseMatrix(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double v = r.nextDouble() + 0.5;
+                d.setCoord(i, j, v);
+                s.setCoord(i, j, v);
+            }
+        }
+        DblArray1Vector x = new DblArray1Vector(n);
+        for (int i = 0; i < n; i++) x.setCoord(i, r.nextDouble());
+        System.out.println("dense " + n + "x" + n + " matrix, "
+                + Runtime.getRuntime().availableProcessors() + " cpus");
+
+        long[] best = new long[8];
+        Arrays.fill(best, Long.MAX_VALUE);
+        double chk_d = 0, chk_s = 0;
+        for (int k = 0; k < repeats; k++) {
+            long t0 = System.nanoTime();
+            chk_d = sumAll(d, n);
+            long t1 = System.nanoTime();
+            chk_s = sumAll(s, n);
+            long t2 = System.nanoTime();
+            best[0] = Math.min(best[0], t1 - t0);
+            best[1] = Math.min(best[1], t2 - t1);
+        }
+        check("getCoord", chk_d, chk_s);
+
+        for (int k = 0; k < repeats; k++) {
+            DblArray1Vector yd = new DblArray1Vector(n);
+            DblArray1Vector ys = new DblArray1Vector(n);
+            long t0 = System.nanoTime();
+            for (int q = 0; q < 10; q++) MatrixOps.multiply(d, x, yd);
+            long t1 = System.nanoTime();
+            for (int q = 0; q < 10; q++) MatrixOps.multiply(s, x, ys);
+            long t2 = System.nanoTime();
+            best[2] = Math.min(best[2], (t1 - t0) / 10);
+            best[3] = Math.min(best[3], (t2 - t1) / 10);
+            chk_d = sum(yd.getDblArray1());
+            chk_s = sum(ys.getDblArray1());
+        }
+        check("A*x", chk_d, chk_s);
+
+        for (int k = 0; k < repeats; k++) {
+            long t0 = System.nanoTime();
+            DblArray2DenseMatrix td = d.transpose();
+            long t1 = System.nanoTime();
+            DblArray2SparseMatrix ts = new DblArray2SparseMatrix(n, n);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) ts.setCoord(j, i, s.getCoord(i, j));
+            }
+            long t2 = System.nanoTime();
+            best[4] = Math.min(best[4], t1 - t0);
+            best[5] = Math.min(best[5], t2 - t1);
+            chk_d = td.getCoord(n - 1, 0);
+            chk_s = ts.getCoord(n - 1, 0);
+        }
+        check("transpose", chk_d, chk_s);
+
+        for (int k = 0; k < repeats; k++) {
+            long t0 = System.nanoTime();
+            DblArray2DenseMatrix cd = d.multiply(d);
+            long t1 = System.nanoTime();
+            DblArray2CSRMatrix cs = MatrixOps.multiply(s, s);
+            long t2 = System.nanoTime();
+            best[6] = Math.min(best[6], t1 - t0);
+            best[7] = Math.min(best[7], t2 - t1);
+            chk_d = cd.getCoord(n / 2, n / 3);
+            chk_s = cs.getCoord(n / 2, n / 3);
+        }
+        check("A*B", chk_d, chk_s);
+
+        String[] names = {"getCoord sweep", "A*x", "transpose", "A*B"};
+        System.out.printf("%-16s %12s %12s %9s%n", "operation", "dense ms",
+                "sparse ms", "speed-up");
+        for (int q = 0; q < names.length; q++) {
+            System.out.printf("%-16s %12.2f %12.2f %8.1fx%n", names[q],
+                    best[2 * q] / 1e6, best[2 * q + 1] / 1e6,
+                    best[2 * q + 1] / (double) best[2 * q]);
+        }
+    }
+
+    private static double sumAll(MatrixIntf m, int n) {
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) sum += m.getCoord(i, j);
+        }
+        return sum;
+    }
+
+    private static double sum(double[] y) {
+        double sum = 0;
+        for (double v : y) sum += v;
+        return sum;
+    }
+
+    private static void check(String op, double a, double b) {
+        if (Math.abs(a - b) > 1e-9 * Math.max(1.0, Math.abs(a))) {
+            System.err.println(op + ": results differ: " + a + " vs " + b);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+package gr.ait.holmes.benchmarks;
+
+import gr.ait.holmes.arrays.DblArray1SparseVector;
+import gr.ait.holmes.arrays.DblArray1SparseVectorBuilder;
+import gr.ait.holmes.arrays.SparseTextMatrixReader;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+/**
+ * compares the throughput of parsing a sparse matrix text file with the
+ * <CODE>StringTokenizer</CODE>/<CODE>String.split()</CODE> path formerly used
+ * by <CODE>BigDiskSupportedDblArray2SparseMatrix</CODE> against the byte-level
+ * <CODE>SparseTextMatrixReader</CODE>. Both paths build every row into a
+ * <CODE>DblArray1SparseVector</CODE>, and the sums of all values they read
+ * must agree. Usage:
+ * <CODE>java gr.ait.holmes.benchmarks.BenchSparseTextParser [file | rows
+ * cols nnzPerRow] [repeats]</CODE>; when no file is given, a random one is
+ * generated in the temp directory (default 200000 x 1000000 with 50 non-zeros
+ * per row).
+ *
+ * @author itc
+ */
+public class BenchSparseTextParser {
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        String fname;
+        int repeats = 3;
+        File tmp = null;
+        if (args.length == 1 || args.length == 2) {
+            fname = args[0];
+            if (args.length == 2) repeats = Integer.parseInt(args[1]);
+        } else {
+            int rows = args.length >= 3 ? Integer.parseInt(args[0]) : 200000;
+            int cols = args.length >= 3 ? Integer.parseInt(args[1]) : 1000000;
+            int nnz = args.length >= 3 ? Integer.parseInt(args[2]) : 50;
+            if (args.length == 4) repeats = Integer.parseInt(args[3]);
+            tmp = File.createTempFile("sparse", ".txt");
+            tmp.deleteOnExit();
+            fname = tmp.getPath();
+            long t0 = System.currentTimeMillis();
+            generate(fname, rows, cols, nnz);
+            System.out.println("generated " + fname + " in "
+                    + (System.currentTimeMillis() - t0) + " msecs");
+        }
+        double mb = new File(fname).length() / (1024.0 * 1024.0);
+        System.out.printf("file size: %.1f MB%n", mb);
+
+        long best_old = Long.MAX_VALUE, best_new = Long.MAX_VALUE;
+        double sum_old = 0, sum_new = 0;
+        for (int k = 0; k < repeats; k++) {
+            long t0 = System.nanoTime();
+            sum_old = parseOld(fname);
+            long t1 = System.nanoTime();
+            sum_new = parseNew(fname);
+            long t2 = System.nanoTime();
+            best_old = Math.min(best_old, t1 - t0);
+            best_new = Math.min(best_new, t2 - t1);
+        }
+        if (Double.compare(sum_old, sum_new) != 0) {
+            System.err.println("results differ: " + sum_old + " vs " + sum_new);
+        }
+        System.out.printf("StringTokenizer path : %8d msecs  %7.1f MB/s%n",
+                best_old / 1000000, mb / (best_old / 1e9));
+        System.out.printf("byte-level parser    : %8d msecs  %7.1f MB/s%n",
+                best_new / 1000000, mb / (best_new / 1e9));
+        System.out.printf("speed-up: %.2fx%n", best_old / (double) best_new);
+        if (tmp != null) tmp.delete();
+    }
+
+    /**
+     * the parsing path used before <CODE>SparseTextMatrixReader</CODE>.
+     */
+    private static double parseOld(String fname) throws IOException {
+        double sum = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(fname))) {
+            String[] data = br.readLine().split(" ");
+            int r = Integer.parseInt(data[0]);
+            int c = Integer.parseInt(data[1]);
+            DblArray1SparseVectorBuilder vb = new DblArray1SparseVectorBuilder(c);
+            for (int i = 0; i < r; i++) {
+                String line = br.readLine();
+                StringTokenizer st = new StringTokenizer(line, " ");
+                while (st.hasMoreTokens()) {
+                    String token = st.nextToken();
+                    String[] nds = token.split(",");
+                    int dim = Integer.parseInt(nds[0]) - 1;
+                    double val = Double.parseDouble(nds[1]);
+                    vb.add(dim, val);
+                }
+                sum += checksum(vb.build());
+            }
+        }
+        return sum;
+    }
+
+    private static double parseNew(String fname) throws IOException {
+        double sum = 0;
+        try (SparseTextMatrixReader rd = new SparseTextMatrixReader(fname)) {
+            DblArray1SparseVectorBuilder vb
+                    = new DblArray1SparseVectorBuilder(rd.getNumCols());
+            for (int i = 0; i < rd.getNumRows(); i++) {
+                rd.readRow(vb);
+                sum += checksum(vb.build());
+            }
+        }
+        return sum;
+    }
+
+    private static double checksum(DblArray1SparseVector v) {
+        double s = 0;
+        for (int k = 0; k < v.getNumNonZeros(); k++) {
+            s += v.getIthNonZeroVal(k) * (v.getIthNonZeroPos(k) + 1);
+        }
+        return s;
+    }
+
+    private static void generate(String fname, int rows, int cols, int nnz)
+            throws IOException {
+        Random r = new Random(7);
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(
+                new FileWriter(fname), 1 << 20))) {
+            pw.println(rows + " " + cols);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < rows; i++) {
+                sb.setLength(0);
+                for (int k = 0; k < nnz; k++) {
+                    if (k > 0) sb.append(' ');
+                    sb.append(1 + r.nextInt(cols)).append(',');
+                    sb.append(Math.round(r.nextGaussian() * 1e6) / 1e4);
+                }
+                pw.println(sb);
+            }
+        }
+    }
+}
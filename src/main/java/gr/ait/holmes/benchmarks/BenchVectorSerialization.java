@@ -0,0 +1,203 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+package gr.ait.holmes.benchmarks;
+
+import gr.ait.holmes.arrays.DblArray1SparseVector;
+import gr.ait.holmes.arrays.IntArray1SparseVector;
+import gr.ait.holmes.arrays.SparseVectorCodec;
+import gr.ait.holmes.arrays.SparseVectorIntf;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * compares the size and the write+read time of sparse vectors encoded three
+ * ways: the default Java serialization of the fields (as the sparse vector
+ * classes used to be serialized, reproduced by replica classes with the same
+ * fields, whose arrays have the spare capacity that <CODE>setCoord()</CODE>
+ * leaves), the Java serialization of <CODE>DblArray1SparseVector</CODE> and
+ * <CODE>IntArray1SparseVector</CODE> (which now write only the non-zeros,
+ * with delta-encoded indices), and <CODE>SparseVectorCodec</CODE> on a
+ * <CODE>DataOutputStream</CODE>. Vectors have n dimensions and m non-zeros
+ * at random positions; the sizes are given both for a single vector per
+ * message and per vector in a stream of all vectors, where the class
+ * descriptors of Java serialization are written once. Usage:
+ * <CODE>java gr.ait.holmes.benchmarks.BenchVectorSerialization [n] [m]
+ * [count] [rounds]</CODE> (default n=100000, m=200, 10000 vectors, 10
+ * rounds); the best time of the rounds is reported.
+ *
+ * @author itc
+ */
+public class BenchVectorSerialization {
+
+    private static int _sink;  // keeps results alive
+
+    /**
+     * @param args the command line arguments
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static void main(String[] args)
+            throws IOException, ClassNotFoundException {
+        final int n = args.length >= 1 ? Integer.parseInt(args[0]) : 100000;
+        final int m = args.length >= 2 ? Integer.parseInt(args[1]) : 200;
+        final int count = args.length >= 3 ? Integer.parseInt(args[2]) : 10000;
+        final int rounds = args.length >= 4 ? Integer.parseInt(args[3]) : 10;
+        Random r = new Random(7);
+        final Object[] dbl = new Object[count];
+        final Object[] dbl_legacy = new Object[count];
+        final Object[] ints = new Object[count];
+        final Object[] ints_legacy = new Object[count];
+        for (int v = 0; v < count; v++) {
+            DblArray1SparseVector dv = new DblArray1SparseVector(n);
+            IntArray1SparseVector iv = new IntArray1SparseVector(n);
+            for (int k = 0; k < m; k++) {
+                final int i = r.nextInt(n);
+                dv.setCoord(i, r.nextGaussian());
+                iv.setCoord(i, 1 + r.nextInt(100));
+            }
+            dbl[v] = dv;
+            ints[v] = iv;
+            dbl_legacy[v] = new LegacyDblVector(dv);
+            ints_legacy[v] = new LegacyIntVector(iv);
+        }
+
+        System.out.printf("n=%d, m=%d, %d vectors%n", n, m, count);
+        System.out.printf("%-28s %12s %12s %12s%n", "encoding", "bytes/msg",
+                "bytes/vector", "us/vector");
+        report("double, default fields", dbl_legacy, rounds, false);
+        report("double, serialization", dbl, rounds, false);
+        report("double, SparseVectorCodec", dbl, rounds, true);
+        report("int, default fields", ints_legacy, rounds, false);
+        report("int, serialization", ints, rounds, false);
+        report("int, SparseVectorCodec", ints, rounds, true);
+        if (_sink == 42) System.out.println();  // hardly ever true
+    }
+
+    private static void report(String name, Object[] vs, int rounds,
+            boolean codec) throws IOException, ClassNotFoundException {
+        final int single = encode(new Object[]{vs[0]}, codec).length;
+        final byte[] all = encode(vs, codec);
+        long best = Long.MAX_VALUE;
+        for (int k = 0; k < rounds + 2; k++) {  // the first two warm up
+            long t0 = System.nanoTime();
+            _sink += decode(encode(vs, codec), vs.length, codec);
+            long t = System.nanoTime() - t0;
+            if (k >= 2) best = Math.min(best, t);
+        }
+        System.out.printf("%-28s %12d %12.1f %12.2f%n", name, single,
+                all.length / (double) vs.length, best / 1e3 / vs.length);
+    }
+
+    private static byte[] encode(Object[] vs, boolean codec)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        if (codec) {
+            try (DataOutputStream out = new DataOutputStream(bos)) {
+                for (Object v : vs) {
+                    SparseVectorCodec.write((SparseVectorIntf) v, out);
+                }
+            }
+        } else {
+            try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+                for (Object v : vs) out.writeObject(v);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static int decode(byte[] data, int count, boolean codec)
+            throws IOException, ClassNotFoundException {
+        int res = 0;
+        ByteArrayInputStream bis = new ByteArrayInputStream(data);
+        if (codec) {
+            try (DataInputStream in = new DataInputStream(bis)) {
+                for (int v = 0; v < count; v++) {
+                    res += SparseVectorCodec.read(in).getNumNonZeros();
+                }
+            }
+        } else {
+            try (ObjectInputStream in = new ObjectInputStream(bis)) {
+                for (int v = 0; v < count; v++) res += in.readObject().hashCode();
+            }
+        }
+        return res;
+    }
+
+    /**
+     * return the capacity of the arrays of a sparse vector after m
+     * insertions by <CODE>setCoord()</CODE>: 1, then 20% more when full.
+     */
+    private static int capacity(int m) {
+        int cap = 0;
+        for (int k = 0; k < m; k++) {
+            if (k == cap) cap = cap == 0 ? 1 : cap + cap / 5 + 1;
+        }
+        return cap;
+    }
+
+    /**
+     * the fields of <CODE>DblArray1SparseVector</CODE>, serialized by default.
+     */
+    private static final class LegacyDblVector implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final int[] _indices;
+        private final double[] _values;
+        private final int _ilen;
+        private final int _n;
+        private final double _defVal;
+
+        LegacyDblVector(DblArray1SparseVector v) {
+            _ilen = v.getNumNonZeros();
+            _n = v.getNumCoords();
+            _defVal = v.getDefaultValue();
+            final int cap = capacity(_ilen);
+            _indices = new int[cap];
+            _values = new double[cap];
+            for (int k = 0; k < _ilen; k++) {
+                _indices[k] = v.getIthNonZeroPos(k);
+                _values[k] = v.getIthNonZeroVal(k);
+            }
+        }
+
+        public int hashCode() {
+            return _ilen;
+        }
+    }
+
+    /**
+     * the fields of <CODE>IntArray1SparseVector</CODE>, serialized by default.
+     */
+    private static final class LegacyIntVector implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final int[] _indices;
+        private final int[] _values;
+        private final int _ilen;
+        private final int _n;
+
+        LegacyIntVector(IntArray1SparseVector v) {
+            _ilen = v.getNumNonZeros();
+            _n = v.getNumCoords();
+            final int cap = capacity(_ilen);
+            _indices = new int[cap];
+            _values = new int[cap];
+            for (int k = 0; k < _ilen; k++) {
+                _indices[k] = v.getIthNonZeroPos(k);
+                _values[k] = (int) v.getIthNonZeroVal(k);
+            }
+        }
+
+        public int hashCode() {
+            return _ilen;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * tests the durability of the writes made to a
+ * <CODE>BigDiskSupportedDblArray2SparseMatrix</CODE>: replay of the delta
+ * log after a crash, and compaction followed by re-opening the matrix, also
+ * with writes racing the compaction.
+ */
+public class BigDiskSupportedDblArray2SparseMatrixTest extends TestCase {
+  private static final int _R = 300;
+  private static final int _C = 40;
+
+  private File _dir;
+  private String _file;
+  private double[][] _expected;
+
+
+  public BigDiskSupportedDblArray2SparseMatrixTest(String testName) {
+    super(testName);
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(BigDiskSupportedDblArray2SparseMatrixTest.class);
+  }
+
+
+  /**
+   * writes a random text matrix file in a fresh temporary directory.
+   */
+  protected void setUp() throws IOException {
+    _dir = Files.createTempDirectory("bigdisk").toFile();
+    _file = new File(_dir, "m.txt").getPath();
+    _expected = new double[_R][_C];
+    final Random rnd = new Random(1);
+    try (PrintWriter pw = new PrintWriter(_file)) {
+      pw.println(_R+" "+_C);
+      for (int i=0; i<_R; i++) {
+        StringBuilder sb = new StringBuilder();
+        for (int j=0; j<_C; j++) {
+          if (rnd.nextInt(5)>0) continue;
+          _expected[i][j] = rnd.nextInt(100)+1;
+          sb.append(j+1).append(',').append(_expected[i][j]).append(' ');
+        }
+        pw.println(sb.toString().trim());
+      }
+    }
+  }
+
+
+  protected void tearDown() {
+    final File[] files = _dir.listFiles();
+    if (files!=null) for (File f : files) f.delete();
+    _dir.delete();
+  }
+
+
+  /**
+   * writes flushed to the delta log but never compacted, by a matrix that is
+   * then abandoned without being closed, are replayed when the file is opened
+   * again; a torn record at the end of the log is ignored.
+   */
+  public void testReplayAfterCrash() throws IOException {
+    final BigDiskSupportedDblArray2SparseMatrix crashed = open();
+    final int n = write(crashed, new Random(2), 500);
+    crashed.flush();
+    // a crash in the middle of appending a record
+    try (FileOutputStream out = new FileOutputStream(_file+".delta", true)) {
+      out.write(new byte[7]);
+    }
+    final BigDiskSupportedDblArray2SparseMatrix m = open();
+    check(m);
+    assertEquals(n, m.getNumDeltaWrites());
+    m.close();
+    crashed.close();  // only releases the log, whose buffer is empty
+  }
+
+
+  /**
+   * a compaction interrupted after it froze the overlay leaves two logs; the
+   * writes of both are replayed, the later ones winning, and the logs are
+   * merged into one.
+   */
+  public void testReplayAfterCrashDuringCompaction() throws IOException {
+    final Random rnd = new Random(3);
+    try (SparseDeltaLog frozen = new SparseDeltaLog(_file+".delta.compacting");
+         SparseDeltaLog log = new SparseDeltaLog(_file+".delta")) {
+      for (int k=0; k<400; k++) {
+        final int i = rnd.nextInt(_R);
+        final int j = rnd.nextInt(_C);
+        final double v = rnd.nextInt(3)==0 ? 0.0 : rnd.nextInt(100)+1;
+        (k<200 ? frozen : log).append(i, j, v);
+        _expected[i][j] = v;
+      }
+    }
+    BigDiskSupportedDblArray2SparseMatrix m = open();
+    check(m);
+    m.close();
+    assertFalse(new File(_file+".delta.compacting").exists());
+    m = open();
+    check(m);
+    m.close();
+  }
+
+
+  /**
+   * compaction replaces the data file with a binary one holding the writes,
+   * and removes the frozen log; writes made after it are kept in the log, and
+   * both survive re-opening the matrix.
+   */
+  public void testCompactThenReopen() throws IOException {
+    BigDiskSupportedDblArray2SparseMatrix m = open();
+    final Random rnd = new Random(4);
+    write(m, rnd, 500);
+    m.compact();
+    assertTrue(SparseMatrixBinaryFile.isBinaryFile(_file));
+    assertFalse(new File(_file+".delta.compacting").exists());
+    check(m);
+    final int n = write(m, rnd, 100);
+    assertEquals(n, m.getNumDeltaWrites());
+    m.close();
+    m = open();
+    check(m);
+    assertEquals(n, m.getNumDeltaWrites());
+    m.compact();
+    m.close();
+    m = open();
+    check(m);
+    assertEquals(0, m.getNumDeltaWrites());
+    m.close();
+  }
+
+
+  /**
+   * writes made from several threads while compactions run are all visible,
+   * before and after re-opening the matrix. Each thread writes its own rows,
+   * so the last value written to a cell is known.
+   */
+  public void testConcurrentWritesDuringCompaction() throws Exception {
+    final BigDiskSupportedDblArray2SparseMatrix m = open();
+    final int threads = 4;
+    final Thread[] writers = new Thread[threads];
+    final Throwable[] errors = new Throwable[threads];
+    for (int t=0; t<threads; t++) {
+      final int tid = t;
+      writers[t] = new Thread(() -> {
+        try {
+          final Random rnd = new Random(10+tid);
+          for (int k=0; k<3000; k++) {
+            final int i = threads*rnd.nextInt(_R/threads)+tid;
+            final int j = rnd.nextInt(_C);
+            final double v = rnd.nextInt(4)==0 ? 0.0 : rnd.nextInt(100)+1;
+            m.setCoord(i, j, v);
+            _expected[i][j] = v;
+            if (m.getCoord(i, j)!=v) throw new AssertionError("lost write");
+          }
+        }
+        catch (Throwable e) {
+          errors[tid] = e;
+        }
+      });
+      writers[t].start();
+    }
+    int compactions = 0;
+    for (int t=0; t<threads; t++) {
+      while (writers[t].isAlive()) {
+        m.compact();
+        ++compactions;
+      }
+      writers[t].join();
+      if (errors[t]!=null) throw new AssertionError(errors[t]);
+    }
+    assertTrue(compactions>0);
+    check(m);
+    m.close();
+    final BigDiskSupportedDblArray2SparseMatrix m2 = open();
+    check(m2);
+    m2.compact();
+    check(m2);
+    m2.close();
+  }
+
+
+  private BigDiskSupportedDblArray2SparseMatrix open() throws IOException {
+    BigDiskSupportedDblArray2SparseMatrix m =
+      new BigDiskSupportedDblArray2SparseMatrix(_file, 64,
+                                                new LRUChunkCache(2000));
+    m.setCompactionThreshold(0);
+    return m;
+  }
+
+
+  /**
+   * makes random writes, a quarter of them zeros, to the matrix and to the
+   * expected values.
+   * @return int the number of distinct cells written
+   */
+  private int write(BigDiskSupportedDblArray2SparseMatrix m, Random rnd,
+                    int count) {
+    final boolean[][] written = new boolean[_R][_C];
+    int n = 0;
+    for (int k=0; k<count; k++) {
+      final int i = rnd.nextInt(_R);
+      final int j = rnd.nextInt(_C);
+      final double v = rnd.nextInt(4)==0 ? 0.0 : rnd.nextInt(100)+1;
+      m.setCoord(i, j, v);
+      _expected[i][j] = v;
+      if (!written[i][j]) ++n;
+      written[i][j] = true;
+    }
+    return n;
+  }
+
+
+  private void check(BigDiskSupportedDblArray2SparseMatrix m) {
+    for (int i=0; i<_R; i++) {
+      final DblArray1SparseVector row = m.getIthRow(i);
+      for (int j=0; j<_C; j++) {
+        assertEquals("("+i+","+j+")", _expected[i][j], m.getCoord(i, j), 0.0);
+        assertEquals("("+i+","+j+")", _expected[i][j], row.getCoord(j), 0.0);
+      }
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * tests that the solvers of <CODE>IterativeSolver</CODE> reach the requested
+ * tolerance on the true residual, with and without the preconditioner and
+ * in pools of one or several threads, and that they stop on breakdown or
+ * after the max. number of iterations.
+ */
+public class IterativeSolverTest extends TestCase {
+  private static final int _GRID = 70;  // the systems have _GRID^2 unknowns
+  private static final double _TOL = 1.e-8;
+
+  private ForkJoinPool _pool;
+  private ForkJoinPool _pool1;
+
+
+  public IterativeSolverTest(String testName) {
+    super(testName);
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(IterativeSolverTest.class);
+  }
+
+
+  protected void setUp() {
+    _pool = new ForkJoinPool(4);
+    _pool1 = new ForkJoinPool(1);
+  }
+
+
+  protected void tearDown() {
+    _pool.shutdown();
+    _pool1.shutdown();
+  }
+
+
+  /**
+   * CG on the 5-point Laplacian of a grid (symmetric positive definite),
+   * with a non-constant diagonal so that the preconditioner matters.
+   */
+  public void testCG() {
+    final DblArray2SparseMatrix A = grid(0.0);
+    for (ForkJoinPool pool : new ForkJoinPool[]{ _pool1, _pool }) {
+      for (boolean jacobi : new boolean[]{ false, true }) {
+        final IterativeSolver s =
+          new IterativeSolver(_TOL, 10000, jacobi, pool);
+        final VectorIntf b = rhs(A);
+        final DblArray1Vector x = new DblArray1Vector(b.getNumCoords());
+        final IterativeSolver.Result res = s.solveCG(A, b, x);
+        assertTrue(res.toString(), res.isConverged());
+        assertTrue(res.getRelativeResidual()<=_TOL);
+        assertTrue(trueResidual(A, b, x)<=10*_TOL);
+        assertSolution(x);
+      }
+    }
+  }
+
+
+  /**
+   * BiCGSTAB on a non-symmetric convection-diffusion operator of the grid,
+   * with the solution returned in a sparse vector.
+   */
+  public void testBiCGSTAB() {
+    final DblArray2SparseMatrix A = grid(0.4);
+    for (boolean jacobi : new boolean[]{ false, true }) {
+      final IterativeSolver s = new IterativeSolver(_TOL, 10000, jacobi, _pool);
+      final VectorIntf b = rhs(A);
+      final DblArray1SparseVector x = new DblArray1SparseVector(
+        b.getNumCoords());
+      final IterativeSolver.Result res = s.solveBiCGSTAB(A, b, x);
+      assertTrue(res.toString(), res.isConverged());
+      assertTrue(trueResidual(A, b, x)<=10*_TOL);
+      assertSolution(x);
+    }
+  }
+
+
+  /**
+   * a zero right-hand side gives the zero solution at once, whatever the
+   * initial guess.
+   */
+  public void testZeroRhs() {
+    final DblArray2SparseMatrix A = grid(0.0);
+    final int n = A.getNumRows();
+    final DblArray1Vector x = new DblArray1Vector(n);
+    for (int i=0; i<n; i++) x.setCoord(i, i);
+    IterativeSolver.Result res = new IterativeSolver(_TOL, 100, true, _pool).
+      solveCG(A, new DblArray1Vector(n), x);
+    assertTrue(res.isConverged());
+    assertEquals(0, res.getIterations());
+    assertTrue(x.isAtOrigin());
+  }
+
+
+  /**
+   * CG stops on the breakdown of an indefinite matrix, and both methods
+   * stop after the max. number of iterations.
+   */
+  public void testStops() {
+    final DblArray2SparseMatrix D = new DblArray2SparseMatrix(2, 2);
+    D.setCoord(0, 0, 1.0);
+    D.setCoord(1, 1, -1.0);
+    final DblArray1Vector ones = new DblArray1Vector(new double[]{ 1, 1 });
+    IterativeSolver.Result res = new IterativeSolver(_TOL, 100, false, _pool).
+      solveCG(D, ones, new DblArray1Vector(2));
+    assertFalse(res.isConverged());
+    assertEquals(0, res.getIterations());
+    final DblArray2SparseMatrix A = grid(0.4);
+    final IterativeSolver s = new IterativeSolver(_TOL, 3, true, _pool);
+    res = s.solveBiCGSTAB(A, rhs(A), new DblArray1Vector(A.getNumRows()));
+    assertFalse(res.isConverged());
+    assertEquals(3, res.getIterations());
+    final DblArray2SparseMatrix L = grid(0.0);
+    res = s.solveCG(L, rhs(L), new DblArray1Vector(L.getNumRows()));
+    assertFalse(res.isConverged());
+    assertEquals(3, res.getIterations());
+  }
+
+
+  /**
+   * return the matrix of the 5-point stencil on the grid, with diagonal 4
+   * plus a term growing along the grid, and the east/west couplings skewed
+   * by the given convection term (0 for a symmetric matrix).
+   */
+  private static DblArray2SparseMatrix grid(double convection) {
+    final int n = _GRID*_GRID;
+    DblArray2SparseMatrix A = new DblArray2SparseMatrix(n, n);
+    for (int gi=0; gi<_GRID; gi++) {
+      for (int gj=0; gj<_GRID; gj++) {
+        final int i = gi*_GRID+gj;
+        A.setCoord(i, i, 4.0+(double) i/n*10);
+        if (gi>0) A.setCoord(i, i-_GRID, -1.0);
+        if (gi<_GRID-1) A.setCoord(i, i+_GRID, -1.0);
+        if (gj>0) A.setCoord(i, i-1, -1.0-convection);
+        if (gj<_GRID-1) A.setCoord(i, i+1, -1.0+convection);
+      }
+    }
+    return A;
+  }
+
+
+  /**
+   * return A times the expected solution.
+   */
+  private static VectorIntf rhs(DblArray2SparseMatrix A) {
+    final int n = A.getNumRows();
+    final DblArray1Vector b = new DblArray1Vector(n);
+    MatrixOps.multiply(A, expected(n), b);
+    return b;
+  }
+
+
+  private static DblArray1Vector expected(int n) {
+    final DblArray1Vector x = new DblArray1Vector(n);
+    for (int i=0; i<n; i++) x.setCoord(i, Math.sin(i*0.01)+(i%3));
+    return x;
+  }
+
+
+  private static double trueResidual(DblArray2SparseMatrix A, VectorIntf b,
+                                     VectorIntf x) {
+    final DblArray1Vector ax = new DblArray1Vector(b.getNumCoords());
+    MatrixOps.multiply(A, x, ax);
+    ax.addMul(-1.0, b);
+    return Math.sqrt(ax.innerProduct(ax)/b.innerProduct(b));
+  }
+
+
+  private static void assertSolution(VectorIntf x) {
+    final DblArray1Vector e = expected(x.getNumCoords());
+    for (int i=0; i<x.getNumCoords(); i++) {
+      assertEquals(e.getCoord(i), x.getCoord(i), 1.e-5);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * tests that the sparse kernels agree whatever the path they take and the
+ * value types of their arguments.
+ */
+public class SparseKernelsTest extends TestCase {
+  private final Random _rnd = new Random(7);
+
+
+  public SparseKernelsTest(String testName) {
+    super(testName);
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(SparseKernelsTest.class);
+  }
+
+
+  /**
+   * the galloping intersection and the linear merge give the same inner
+   * product, and so does <CODE>dot()</CODE> whichever vector is the shorter
+   * one, for slices not starting at zero too.
+   */
+  public void testGallopAgreesWithMerge() {
+    for (int t=0; t<500; t++) {
+      final int n = 1+_rnd.nextInt(5000);
+      final int[] ia = indices(n, _rnd.nextInt(Math.min(n, 20)+1));
+      final int[] ib = indices(n, _rnd.nextInt(n+1));
+      final double[] va = values(ia.length);
+      final double[] vb = values(ib.length);
+      final SparseKernels.Values a = wrap(va);
+      final SparseKernels.Values b = wrap(vb);
+      final int fb = ib.length>0 ? _rnd.nextInt(ib.length) : 0;
+      final double m = SparseKernels.merge(ia, a, 0, ia.length,
+                                           ib, b, fb, ib.length);
+      assertEquals(m, SparseKernels.gallop(ia, a, 0, ia.length,
+                                           ib, b, fb, ib.length), 0.0);
+      assertEquals(m, SparseKernels.dot(ia, va, 0, ia.length,
+                                        ib, vb, fb, ib.length), 0.0);
+      assertEquals(m, SparseKernels.dot(ib, vb, fb, ib.length,
+                                        ia, va, 0, ia.length), 0.0);
+      assertEquals(m, naiveDot(n, ia, va, 0, ia.length,
+                               ib, vb, fb, ib.length), 1.e-9);
+    }
+  }
+
+
+  /**
+   * the overloads for narrower value types give the same results as the
+   * double ones on the same (exactly representable) values.
+   */
+  public void testNarrowTypesAgreeWithDouble() {
+    for (int t=0; t<200; t++) {
+      final int n = 1+_rnd.nextInt(3000);
+      final int[] ia = indices(n, _rnd.nextInt(n+1));
+      final int[] ib = indices(n, _rnd.nextInt(n+1));
+      final byte[] bytes = new byte[ia.length];
+      final short[] shorts = new short[ia.length];
+      final int[] ints = new int[ia.length];
+      final float[] floats = new float[ia.length];
+      final double[] dbls = new double[ia.length];
+      for (int k=0; k<ia.length; k++) {
+        bytes[k] = (byte) (_rnd.nextInt(255)-127);
+        shorts[k] = bytes[k];
+        ints[k] = bytes[k];
+        floats[k] = bytes[k];
+        dbls[k] = bytes[k];
+      }
+      final double[] vb = values(ib.length);
+      final double[] x = values(n);
+      final double d = SparseKernels.dot(ia, dbls, 0, ia.length,
+                                         ib, vb, 0, ib.length);
+      assertEquals(d, SparseKernels.dot(ia, bytes, 0, ia.length,
+                                        ib, vb, 0, ib.length), 0.0);
+      assertEquals(d, SparseKernels.dot(ia, shorts, 0, ia.length,
+                                        ib, vb, 0, ib.length), 0.0);
+      assertEquals(d, SparseKernels.dot(ia, floats, 0, ia.length,
+                                        ib, vb, 0, ib.length), 0.0);
+      assertEquals(d, SparseKernels.dot(ib, vb, 0, ib.length,
+                                        ia, ints, 0, ia.length), 0.0);
+      final double g = SparseKernels.gather(ia, dbls, 0, ia.length, x);
+      assertEquals(g, SparseKernels.gather(ia, bytes, 0, ia.length, x), 0.0);
+      assertEquals(g, SparseKernels.gather(ia, shorts, 0, ia.length, x), 0.0);
+      assertEquals(g, SparseKernels.gather(ia, ints, 0, ia.length, x), 0.0);
+      assertEquals(g, SparseKernels.gather(ia, floats, 0, ia.length, x), 0.0);
+    }
+  }
+
+
+  private int[] indices(int n, int nnz) {
+    final boolean[] in = new boolean[n];
+    for (int k=0; k<nnz; k++) in[_rnd.nextInt(n)] = true;
+    int len = 0;
+    for (int i=0; i<n; i++) if (in[i]) ++len;
+    final int[] inds = new int[len];
+    len = 0;
+    for (int i=0; i<n; i++) if (in[i]) inds[len++] = i;
+    return inds;
+  }
+
+
+  private double[] values(int len) {
+    final double[] vals = new double[len];
+    for (int k=0; k<len; k++) vals[k] = _rnd.nextGaussian();
+    return vals;
+  }
+
+
+  private static SparseKernels.Values wrap(final double[] vals) {
+    return new SparseKernels.Values() {
+      double get(int k) {
+        return vals[k];
+      }
+    };
+  }
+
+
+  private static double naiveDot(int n, int[] ia, double[] va, int fa, int ta,
+                                 int[] ib, double[] vb, int fb, int tb) {
+    final double[] x = new double[n];
+    for (int k=fa; k<ta; k++) x[ia[k]] = va[k];
+    double sum = 0.0;
+    for (int k=fb; k<tb; k++) sum += x[ib[k]]*vb[k];
+    return sum;
+  }
+}
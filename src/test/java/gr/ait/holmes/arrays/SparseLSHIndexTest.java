@@ -0,0 +1,141 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * tests the candidates and top-k hits of <CODE>SparseLSHIndex</CODE> under
+ * both hash families: rows always find themselves, near duplicates are found
+ * with high recall, and the index does not depend on the parallelism of its
+ * construction.
+ */
+public class SparseLSHIndexTest extends TestCase {
+  private static final int _R = 2000;
+  private static final int _C = 5000;
+
+  private DblArray2SparseMatrix _m;
+
+
+  public SparseLSHIndexTest(String testName) {
+    super(testName);
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(SparseLSHIndexTest.class);
+  }
+
+
+  /**
+   * a random matrix of rows with about 40 non-zeros, some of them left at
+   * the origin.
+   */
+  protected void setUp() {
+    _m = new DblArray2SparseMatrix(_R, _C);
+    final Random rnd = new Random(13);
+    for (int i=0; i<_R; i++) {
+      if (i%100==99) continue;
+      for (int k=0; k<40; k++) {
+        _m.setCoord(i, rnd.nextInt(_C), 1.0+rnd.nextInt(9));
+      }
+    }
+  }
+
+
+  /**
+   * every row is a candidate for itself (or a copy of itself, scaled for
+   * SimHash) and its own best hit; rows and queries at the origin are never
+   * candidates.
+   */
+  public void testRowsFindThemselves() {
+    for (int type : new int[]{ SparseLSHIndex._SIMHASH,
+                               SparseLSHIndex._MINHASH }) {
+      final SparseLSHIndex idx = new SparseLSHIndex(_m, type, 8, 12, 17);
+      for (int i=0; i<_R; i++) {
+        final DblArray1SparseVector row = _m.getIthRow(i);
+        final int[] cands = idx.getCandidates(row);
+        if (row.isAtOrigin()) {
+          assertEquals(0, cands.length);
+          continue;
+        }
+        assertTrue(Arrays.binarySearch(cands, i)>=0);
+        assertTrue(Arrays.equals(cands,
+                                 idx.getCandidates(row.newCopyMultBy(3.0))));
+        final SparseCosineIndex.Hit[] hits = idx.topK(row, 1, _m);
+        assertEquals(i, hits[0].getRow());
+        assertEquals(1.0, hits[0].getScore(), 1.e-12);
+      }
+      for (int i=99; i<_R; i+=100) {
+        for (int j=0; j<_R; j++) {
+          if (j%100==99) continue;
+          assertTrue(Arrays.binarySearch(
+            idx.getCandidates(_m.getIthRow(j)), i)<0);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * rows with a few non-zeros changed are found from the originals in at
+   * least 95% of the cases, for both families (the expected recall with
+   * these parameters is above 99%).
+   */
+  public void testNearDuplicateRecall() {
+    final Random rnd = new Random(19);
+    for (int type : new int[]{ SparseLSHIndex._SIMHASH,
+                               SparseLSHIndex._MINHASH }) {
+      final SparseLSHIndex idx = new SparseLSHIndex(_m, type, 20, 6, 23);
+      int found = 0;
+      int queries = 0;
+      for (int i=0; i<_R; i+=7) {
+        final DblArray1SparseVector q = _m.getIthRow(i);
+        if (q.isAtOrigin()) continue;
+        ++queries;
+        q.setCoord(q.getIthNonZeroPos(0), 0.0);
+        q.setCoord(rnd.nextInt(_C), 5.0);
+        if (Arrays.binarySearch(idx.getCandidates(q), i)>=0) ++found;
+      }
+      assertTrue(found+"/"+queries, found>=0.95*queries);
+    }
+  }
+
+
+  /**
+   * indexes built with the same seed in pools of different sizes are the
+   * same, and differ under another seed. Few rows per band make for many
+   * candidates, which depend on the seed.
+   */
+  public void testDeterministicBuild() {
+    final ForkJoinPool one = new ForkJoinPool(1);
+    final ForkJoinPool four = new ForkJoinPool(4);
+    try {
+      for (int type : new int[]{ SparseLSHIndex._SIMHASH,
+                                 SparseLSHIndex._MINHASH }) {
+        final SparseLSHIndex a = new SparseLSHIndex(_m, type, 4, 2, 29, one);
+        final SparseLSHIndex b = new SparseLSHIndex(_m, type, 4, 2, 29, four);
+        final SparseLSHIndex c = new SparseLSHIndex(_m, type, 4, 2, 31, four);
+        int differ = 0;
+        for (int i=0; i<_R; i+=11) {
+          final DblArray1SparseVector q = _m.getIthRow(i);
+          assertTrue(Arrays.equals(a.getCandidates(q), b.getCandidates(q)));
+          if (!Arrays.equals(a.getCandidates(q), c.getCandidates(q))) ++differ;
+        }
+        assertTrue(differ>0);
+      }
+    }
+    finally {
+      one.shutdown();
+      four.shutdown();
+    }
+  }
+}
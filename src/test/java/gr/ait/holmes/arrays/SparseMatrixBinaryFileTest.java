@@ -0,0 +1,214 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * tests the on-disk format of <CODE>SparseMatrixBinaryFile</CODE>: the header
+ * and row index, the rows read back for every value type, and the rejection
+ * of damaged files.
+ */
+public class SparseMatrixBinaryFileTest extends TestCase {
+  private static final int _R = 200;
+  private static final int _C = 70;
+  private static final int[] _TYPES = {
+    SparseMatrixBinaryFile._DOUBLE_VALUES, SparseMatrixBinaryFile._FLOAT_VALUES,
+    SparseMatrixBinaryFile._INT16_VALUES, SparseMatrixBinaryFile._INT8_VALUES
+  };
+
+  private File _dir;
+  private String _text;
+  private double[][] _m;
+
+
+  public SparseMatrixBinaryFileTest(String testName) {
+    super(testName);
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(SparseMatrixBinaryFileTest.class);
+  }
+
+
+  /**
+   * writes a random text matrix file, with some empty rows, in a fresh
+   * temporary directory.
+   */
+  protected void setUp() throws IOException {
+    _dir = Files.createTempDirectory("smbf").toFile();
+    _text = new File(_dir, "m.txt").getPath();
+    _m = new double[_R][_C];
+    final Random rnd = new Random(5);
+    try (PrintWriter pw = new PrintWriter(_text)) {
+      pw.println(_R+" "+_C);
+      for (int i=0; i<_R; i++) {
+        StringBuilder sb = new StringBuilder();
+        for (int j=0; i%7!=0 && j<_C; j++) {
+          if (rnd.nextInt(4)>0) continue;
+          _m[i][j] = rnd.nextGaussian()*1000;
+          sb.append(j+1).append(',').append(_m[i][j]).append(' ');
+        }
+        pw.println(sb.toString().trim());
+      }
+    }
+  }
+
+
+  protected void tearDown() {
+    final File[] files = _dir.listFiles();
+    if (files!=null) for (File f : files) f.delete();
+    _dir.delete();
+  }
+
+
+  /**
+   * the header and row index are laid out as documented, for every value
+   * type.
+   */
+  public void testHeaderAndIndex() throws IOException {
+    for (int type : _TYPES) {
+      final String bin = convert(type);
+      final byte[] bytes = Files.readAllBytes(new File(bin).toPath());
+      final ByteBuffer b = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+      long nnz = 0;
+      int max_len = 0;
+      for (int i=0; i<_R; i++) {
+        final int len = expected(i, type).getNumNonZeros();  // codes drop some
+        nnz += len;
+        max_len = Math.max(max_len, len);
+      }
+      assertEquals(SparseMatrixBinaryFile._MAGIC, b.getInt(0));
+      assertEquals(type==SparseMatrixBinaryFile._DOUBLE_VALUES ? 1 : 2,
+                   b.getInt(4));
+      assertEquals(_R, b.getInt(8));
+      assertEquals(_C, b.getInt(12));
+      assertEquals(nnz, b.getLong(16));
+      assertEquals(max_len, b.getInt(24));
+      assertEquals(type, b.getInt(28));
+      assertEquals(32+8L*(_R+1), b.getLong(32));
+      assertEquals(bytes.length, b.getLong(32+8*_R));
+      SparseMatrixBinaryFile f = new SparseMatrixBinaryFile(bin);
+      assertEquals(nnz, f.getNumNonZeros());
+      assertEquals(type, f.getValueType());
+      for (int i=0; i<_R; i++) {
+        assertEquals(expected(i, type).getNumNonZeros(), f.getRowLength(i));
+      }
+      f.close();
+    }
+  }
+
+
+  /**
+   * rows read back equal those of the text file, converted to the stored
+   * type: exactly for doubles, rounded to float for floats, and quantized
+   * with a scale per row for codes; compact rows have the stored type's
+   * class and the same values.
+   */
+  public void testRows() throws IOException {
+    final Class<?>[] compact = {
+      DblArray1SparseVector.class, FltArray1SparseVector.class,
+      QuantizedArray1SparseVector.class, QuantizedArray1SparseVector.class
+    };
+    for (int type : _TYPES) {
+      SparseMatrixBinaryFile f = new SparseMatrixBinaryFile(convert(type));
+      DblArray1SparseVector[] rows = new DblArray1SparseVector[10];
+      for (int i=0; i<_R; i++) {
+        final double[] e = expected(i, type).getDblArray1();
+        assertTrue("row "+i+" type "+type,
+                   Arrays.equals(e, f.getIthRow(i).getDblArray1()));
+        final SparseVectorIntf c = f.getIthRowCompact(i);
+        assertSame(compact[type], c.getClass());
+        assertTrue(Arrays.equals(e, c.getDblArray1()));
+        if (i%10==0) {
+          f.readRows(i, i+10, rows);
+          for (int k=0; k<10; k++) {
+            assertTrue(Arrays.equals(expected(i+k, type).getDblArray1(),
+                                     rows[k].getDblArray1()));
+          }
+        }
+      }
+      f.close();
+      try {
+        f.getIthRow(1);
+        fail("row read after close");
+      }
+      catch (IllegalStateException e) {
+        // expected
+      }
+    }
+  }
+
+
+  /**
+   * text files, files with another magic number or version, and truncated
+   * files are not opened.
+   */
+  public void testDamagedFiles() throws IOException {
+    assertFalse(SparseMatrixBinaryFile.isBinaryFile(_text));
+    final String bin = convert(SparseMatrixBinaryFile._FLOAT_VALUES);
+    assertTrue(SparseMatrixBinaryFile.isBinaryFile(bin));
+    final byte[] good = Files.readAllBytes(new File(bin).toPath());
+    final String bad = new File(_dir, "bad.bin").getPath();
+    for (int t=0; t<4; t++) {
+      byte[] bytes = good.clone();
+      if (t==0) bytes[0] ^= 1;  // magic
+      else if (t==1) bytes[4] = 3;  // version
+      else if (t==2) bytes[28] = 9;  // value type
+      else bytes = Arrays.copyOf(good, good.length-1);
+      Files.write(new File(bad).toPath(), bytes);
+      try {
+        new SparseMatrixBinaryFile(bad).close();
+        fail("damaged file "+t+" opened");
+      }
+      catch (IOException e) {
+        // expected
+      }
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(bad, "rw")) {
+      raf.setLength(0);
+    }
+    assertFalse(SparseMatrixBinaryFile.isBinaryFile(bad));
+  }
+
+
+  private String convert(int type) throws IOException {
+    final String bin = new File(_dir, "m"+type+".bin").getPath();
+    SparseMatrixBinaryFile.convert(_text, bin, type);
+    return bin;
+  }
+
+
+  /**
+   * return the i-th row of the text matrix, in the given stored type.
+   */
+  private SparseVectorIntf expected(int i, int type) {
+    final SparseVectorIntf row = (SparseVectorIntf)
+      new DblArray1SparseVector(_C).newInstance(_m[i]);
+    switch (type) {
+      case SparseMatrixBinaryFile._DOUBLE_VALUES:
+        return row;
+      case SparseMatrixBinaryFile._FLOAT_VALUES:
+        return new FltArray1SparseVector(row);
+      case SparseMatrixBinaryFile._INT16_VALUES:
+        return new QuantizedArray1SparseVector(row, 16);
+      default:
+        return new QuantizedArray1SparseVector(row, 8);
+    }
+  }
+}
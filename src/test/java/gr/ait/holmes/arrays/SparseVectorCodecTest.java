@@ -0,0 +1,202 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * tests the format of <CODE>SparseVectorCodec</CODE>: the exact bytes of
+ * small vectors, round trips of random ones, and the rejection of corrupt
+ * data.
+ */
+public class SparseVectorCodecTest extends TestCase {
+  private final Random _rnd = new Random(11);
+
+
+  public SparseVectorCodecTest(String testName) {
+    super(testName);
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(SparseVectorCodecTest.class);
+  }
+
+
+  /**
+   * the documented layout of a vector with double values: kind, varint
+   * dimension, default value, varint count, index gap section, values.
+   */
+  public void testDoubleFormat() throws IOException {
+    DblArray1SparseVector v = new DblArray1SparseVector(300);
+    v.setCoord(0, 1.5);
+    v.setCoord(5, -2.0);
+    v.setCoord(200, 3.0);
+    byte[] head = { 0, (byte) 0xAC, 0x02, 0, 0, 0, 0, 0, 0, 0, 0, 3,
+                    4, 0, 4, (byte) 0xC2, 0x01 };
+    final byte[] bytes = encode(v);
+    assertEquals(head.length+24, bytes.length);
+    assertTrue(Arrays.equals(head, Arrays.copyOf(bytes, head.length)));
+    DataInputStream in = new DataInputStream(
+      new ByteArrayInputStream(bytes, head.length, 24));
+    assertEquals(1.5, in.readDouble(), 0.0);
+    assertEquals(-2.0, in.readDouble(), 0.0);
+    assertEquals(3.0, in.readDouble(), 0.0);
+  }
+
+
+  /**
+   * the documented layout of a vector with int values: kind, varint
+   * dimension, varint count, index gap section, zig-zag value section.
+   */
+  public void testIntFormat() throws IOException {
+    IntArray1SparseVector v = (IntArray1SparseVector)
+      new IntArray1SparseVector(10).newInstance(new double[]{0, -1, 0, 64});
+    byte[] expected = { 1, 4, 2, 2, 1, 1, 3, 1, (byte) 0x80, 0x01 };
+    assertTrue(Arrays.toString(encode(v)),
+               Arrays.equals(expected, encode(v)));
+  }
+
+
+  /**
+   * random vectors of every kind read back equal to what was written, with
+   * the class the format promises.
+   */
+  public void testRoundTrip() throws IOException {
+    for (int t=0; t<300; t++) {
+      final int n = 1+_rnd.nextInt(t<10 ? 3 : 100000);
+      final double[] x = new double[n];
+      final int nnz = _rnd.nextInt(Math.min(n, 200)+1);
+      for (int k=0; k<nnz; k++) {
+        x[_rnd.nextInt(n)] = _rnd.nextInt(3)==0 ?
+          _rnd.nextInt()/(_rnd.nextInt(7)+1) : _rnd.nextInt();
+      }
+      for (int k=0; k<n && k<3 && t%4==0; k++) {
+        x[k] = k==0 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+      }
+      IntArray1SparseVector iv = new IntArray1SparseVector(n);
+      for (int k=0; k<n; k++) if (x[k]!=0.0) iv.setCoord(k, x[k]);
+      for (int k=0; k<n; k++) if (x[k]!=0.0) x[k] += _rnd.nextGaussian();
+      SparseVectorIntf dv = (SparseVectorIntf)
+        new DblArray1SparseVector(n).newInstance(x);
+      SparseVectorIntf hv = (SparseVectorIntf)
+        new DblHashSparseVector(n).newInstance(x);
+      DblArray1SparseVector defv = new DblArray1SparseVector(n, -0.5);
+      for (int k=0; k<n; k++) if (x[k]!=0.0) defv.setCoord(k, x[k]);
+      assertEquals(iv, decode(encode(iv)), IntArray1SparseVector.class);
+      assertEquals(dv, decode(encode(dv)), DblArray1SparseVector.class);
+      assertEquals(dv, decode(encode(hv)), DblArray1SparseVector.class);
+      assertEquals(defv, decode(encode(defv)), DblArray1SparseVector.class);
+    }
+  }
+
+
+  /**
+   * the Java serialization of the vector classes that use the codec gives
+   * back equal vectors.
+   */
+  public void testSerialization() throws Exception {
+    final double[] x = new double[1000];
+    for (int k=0; k<50; k++) x[_rnd.nextInt(x.length)] = _rnd.nextInt(100)-50;
+    for (VectorIntf v : new VectorIntf[]{
+           new DblArray1SparseVector(x.length).newInstance(x),
+           new IntArray1SparseVector(x.length).newInstance(x),
+           new DblArray1SparseVector(x.length)}) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+        out.writeObject(v);
+      }
+      try (ObjectInputStream in = new ObjectInputStream(
+             new ByteArrayInputStream(bos.toByteArray()))) {
+        assertEquals((SparseVectorIntf) v, (SparseVectorIntf) in.readObject(),
+                     v.getClass());
+      }
+    }
+  }
+
+
+  /**
+   * corrupt data are rejected with <CODE>InvalidObjectException</CODE>, and
+   * truncated data with <CODE>EOFException</CODE>.
+   */
+  public void testCorruptData() throws IOException {
+    final byte[][] corrupt = {
+      { 2, 4 },  // unknown kind
+      { 1, 0, 0 },  // zero dimension
+      { 1, 4, 5 },  // more non-zeros than dimensions
+      { 1, 4, 2, 2, 1, 3, 2, 1, 2 },  // index 5 out of range
+      { 1, 4, 2, 1, 1, 2, 1, 2 },  // section shorter than its values
+      { 1, 4, 1, 6, 0, 0, 0, 0, 0, 0 },  // index section too long
+      { 1, 4, 1, 1, 0, 1, (byte) 0x80 },  // int code cut by its section
+    };
+    for (int t=0; t<corrupt.length; t++) {
+      try {
+        decode(corrupt[t]);
+        fail("corrupt vector "+t+" accepted");
+      }
+      catch (InvalidObjectException e) {
+        // expected
+      }
+    }
+    DblArray1SparseVector v = new DblArray1SparseVector(100);
+    v.setCoord(7, 1.0);
+    v.setCoord(70, 2.0);
+    final byte[] bytes = encode(v);
+    for (int len=0; len<bytes.length; len++) {
+      try {
+        decode(Arrays.copyOf(bytes, len));
+        fail("truncated vector of "+len+" bytes accepted");
+      }
+      catch (EOFException e) {
+        // expected
+      }
+    }
+  }
+
+
+  private static byte[] encode(SparseVectorIntf v) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bos)) {
+      SparseVectorCodec.write(v, out);
+    }
+    return bos.toByteArray();
+  }
+
+
+  private static SparseVectorIntf decode(byte[] bytes) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    SparseVectorIntf v = SparseVectorCodec.read(in);
+    assertEquals(-1, in.read());
+    return v;
+  }
+
+
+  private static void assertEquals(SparseVectorIntf expected,
+                                   SparseVectorIntf actual, Class<?> cls) {
+    assertSame(cls, actual.getClass());
+    assertEquals(expected.getNumCoords(), actual.getNumCoords());
+    assertEquals(expected.getDefaultValue(), actual.getDefaultValue(), 0.0);
+    assertEquals(expected.getNumNonZeros(), actual.getNumNonZeros());
+    for (int k=0; k<expected.getNumNonZeros(); k++) {
+      assertEquals(expected.getIthNonZeroPos(k), actual.getIthNonZeroPos(k));
+      assertEquals(expected.getIthNonZeroVal(k), actual.getIthNonZeroVal(k),
+                   0.0);
+    }
+  }
+}
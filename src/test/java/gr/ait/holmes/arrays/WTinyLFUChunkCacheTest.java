@@ -0,0 +1,96 @@
+/*
+ * Code is distibuted as Open Source, under the LGPL2 license, without any waranty of fitness of use.
+ */
+
+package gr.ait.holmes.arrays;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * tests the hit rate of <CODE>WTinyLFUChunkCache</CODE> against
+ * <CODE>LRUChunkCache</CODE> on simple access patterns.
+ */
+public class WTinyLFUChunkCacheTest extends TestCase {
+  public WTinyLFUChunkCacheTest(String testName) {
+    super(testName);
+  }
+
+
+  public static Test suite() {
+    return new TestSuite(WTinyLFUChunkCacheTest.class);
+  }
+
+
+  /**
+   * repeated sweeps over a working set slightly larger than the budget, with
+   * chunks far heavier than the window's share of it and each chunk read
+   * many times in a row, as a row by row scan does: LRU misses once per
+   * chunk and sweep, and W-TinyLFU must miss no more often.
+   */
+  public void testSweepHitRateVsLRU() {
+    final ChunkCacheIntf lru = new LRUChunkCache(200);
+    final ChunkCacheIntf tlfu = new WTinyLFUChunkCache(200, 100);
+    for (int pass=0; pass<10; pass++) {
+      for (int chunk=0; chunk<25; chunk++) {
+        for (int i=0; i<100; i++) {
+          access(lru, chunk);
+          access(tlfu, chunk);
+        }
+      }
+    }
+    assertEquals(250, lru.getMissCount());
+    assertTrue("W-TinyLFU missed "+tlfu.getMissCount()+" times",
+               tlfu.getMissCount()<=lru.getMissCount());
+  }
+
+
+  /**
+   * a small hot set interleaved with a scan over chunks seen only once: the
+   * scan must not flush the hot set, so W-TinyLFU beats LRU.
+   */
+  public void testScanResistanceVsLRU() {
+    final ChunkCacheIntf lru = new LRUChunkCache(200);
+    final ChunkCacheIntf tlfu = new WTinyLFUChunkCache(200, 10000);
+    final Random r1 = new Random(3);
+    final Random r2 = new Random(3);
+    int scan1 = 1000;
+    int scan2 = 1000;
+    for (int k=0; k<50000; k++) {
+      access(lru, r1.nextInt(3)==0 ? scan1++ : r1.nextInt(12));
+      access(tlfu, r2.nextInt(3)==0 ? scan2++ : r2.nextInt(12));
+    }
+    assertTrue("W-TinyLFU "+tlfu.getHitCount()+" hits, LRU "+
+               lru.getHitCount(),
+               tlfu.getHitCount()>lru.getHitCount());
+    assertTrue(tlfu.getWeight()<=tlfu.getMaxWeight());
+  }
+
+
+  /**
+   * a chunk as heavy as the whole budget is still admitted, i.e. the chunk
+   * just inserted is never the one rejected.
+   */
+  public void testNewestChunkIsKept() {
+    final ChunkCacheIntf tlfu = new WTinyLFUChunkCache(9, 100);
+    for (int chunk=0; chunk<50; chunk++) {
+      access(tlfu, chunk);
+      assertNotNull(tlfu.peek(chunk));
+    }
+  }
+
+
+  private static void access(ChunkCacheIntf cache, int chunk) {
+    if (cache.get(chunk)==null) cache.put(chunk, rows());
+  }
+
+
+  private static DblArray1SparseVector[] rows() {
+    final DblArray1SparseVector[] rows = new DblArray1SparseVector[9];
+    for (int i=0; i<rows.length; i++) rows[i] = new DblArray1SparseVector(5);
+    return rows;
+  }
+}